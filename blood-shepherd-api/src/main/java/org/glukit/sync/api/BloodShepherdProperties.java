@@ -9,4 +9,27 @@ import java.util.Properties;
  */
 public class BloodShepherdProperties extends Properties {
   public static final String OUTPUT_PATH = "OUTPUT_PATH";
+  /**
+   * Optional path of a session log to capture the raw receiver traffic of every sync to.
+   */
+  public static final String CAPTURE_PATH = "CAPTURE_PATH";
+  /**
+   * Optional directory to write the performance report of every sync to, the reports go next to the exports if it's
+   * not set.
+   */
+  public static final String STATS_PATH = "STATS_PATH";
+  /**
+   * Optional number of milliseconds to wait for each receiver response before failing the sync, 5000 by default.
+   * {@code 0} disables the deadline and responses are waited for as long as it takes, a value that isn't a number or
+   * is negative is ignored.
+   */
+  public static final String RESPONSE_TIMEOUT_MILLIS = "RESPONSE_TIMEOUT_MILLIS";
+  /**
+   * Optional number of database pages to read per command from receivers that don't have their own setting.
+   */
+  public static final String PAGES_PER_COMMAND = "PAGES_PER_COMMAND";
+  /**
+   * Set to {@code true} to tune the number of pages per command for each receiver firmware version.
+   */
+  public static final String AUTO_TUNE_PAGES_PER_COMMAND = "AUTO_TUNE_PAGES_PER_COMMAND";
 }
@@ -33,7 +33,7 @@ import org.glukit.dexcom.sync.DexcomAdapterService;
 import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
 import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
 import org.glukit.dexcom.sync.g4.DexcomG4DeviceFilter;
-import org.glukit.export.XmlDataExporter;
+import org.glukit.export.StreamingXmlDataExporter;
 import org.glukit.sync.AdapterService;
 import org.glukit.sync.api.BloodShepherdPreferences;
 import org.glukit.sync.api.BloodShepherdProperties;
@@ -63,7 +63,7 @@ public class DexcomModule extends AbstractModule {
     bind(DataOutputFactory.class).to(LittleEndianDataOutputFactory.class);
     bind(DataInputFactory.class).to(LittleEndianDataInputFactory.class);
     bind(AdapterService.class).to(DexcomAdapterService.class);
-    bind(DataExporter.class).to(XmlDataExporter.class);
+    bind(DataExporter.class).to(StreamingXmlDataExporter.class);
   }
 
   @Provides
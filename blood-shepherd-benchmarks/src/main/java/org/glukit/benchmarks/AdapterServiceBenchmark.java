@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.DexcomAdapterService;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.sync.api.SyncData;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link DexcomAdapterService#convertData} for 1 day, 3 months and 1 year of data, converted on the
+ * calling thread and in parallel.
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AdapterServiceBenchmark {
+  @Param({"1", "90", "365"})
+  public int days;
+
+  // Integer.MAX_VALUE never converts in parallel, 32768 is the default threshold
+  @Param({"2147483647", "32768"})
+  public int parallelConversionThreshold;
+
+  private DexcomAdapterService adapterService;
+  private DexcomSyncData dexcomSyncData;
+
+  @Setup
+  public void setUp() {
+    this.adapterService = new DexcomAdapterService();
+    this.adapterService.setParallelConversionThreshold(this.parallelConversionThreshold);
+    this.dexcomSyncData = ProtocolFixtures.dexcomSyncData(this.days);
+  }
+
+  @Benchmark
+  public SyncData convertData() {
+    return this.adapterService.convertData(this.dexcomSyncData);
+  }
+}
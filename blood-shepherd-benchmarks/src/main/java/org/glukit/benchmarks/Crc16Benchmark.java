@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.DecodingUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the legacy copying crc16 with {@link DecodingUtils#getCrc16} and the {@link Crc16} variants. Sizes match a page header (26 bytes), an
+ * egv record (11 bytes) and a full 4 pages database packet (2118 bytes).
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Crc16Benchmark {
+  @Param({"11", "26", "2118"})
+  public int size;
+
+  private byte[] bytes;
+  private ByteBuffer buffer;
+  private final Crc16 crc16 = new Crc16();
+
+  @Setup
+  public void setUp() {
+    this.bytes = new byte[this.size];
+    new Random(42).nextBytes(this.bytes);
+    this.buffer = ByteBuffer.wrap(this.bytes);
+  }
+
+  @Benchmark
+  public int legacy() {
+    return LegacyCrc16.getCrc16(this.bytes, 0, this.bytes.length);
+  }
+
+  @Benchmark
+  @SuppressWarnings("deprecation")
+  public int decodingUtils() {
+    return DecodingUtils.getCrc16(this.bytes, 0, this.bytes.length);
+  }
+
+  @Benchmark
+  public int bytewise() {
+    return Crc16.computeBytewise(this.bytes, 0, this.bytes.length);
+  }
+
+  @Benchmark
+  public int slicingBy4() {
+    return Crc16.computeSlicingBy4(this.bytes, 0, this.bytes.length);
+  }
+
+  @Benchmark
+  public int slicingBy8() {
+    return Crc16.computeSlicingBy8(this.bytes, 0, this.bytes.length);
+  }
+
+  @Benchmark
+  public int incrementalOverBuffer() {
+    return this.crc16.reset().update(this.buffer, 0, this.size).getValue();
+  }
+}
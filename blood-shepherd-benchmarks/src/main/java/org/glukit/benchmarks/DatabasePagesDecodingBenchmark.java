@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.model.GlucoseReadRecord;
+import org.glukit.dexcom.sync.responses.DatabasePagesResponse;
+import org.glukit.dexcom.sync.responses.GlucoseReadsDatabasePagesResponse;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the decoding of a 4 pages payload of glucose reads: the page headers with
+ * {@link DatabasePagesResponse#fromBytes} and the records with {@link GlucoseReadsDatabasePagesResponse#getRecords}.
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DatabasePagesDecodingBenchmark {
+  private LittleEndianDataInputFactory dataInputFactory;
+  private byte[] payload;
+  private GlucoseReadsDatabasePagesResponse decodedResponse;
+
+  @Setup
+  public void setUp() {
+    this.dataInputFactory = new LittleEndianDataInputFactory();
+    this.payload = ProtocolFixtures.glucoseReadPagesPayload();
+    this.decodedResponse = new GlucoseReadsDatabasePagesResponse(this.dataInputFactory);
+    this.decodedResponse.fromBytes(this.payload);
+  }
+
+  @Benchmark
+  public DatabasePagesResponse pagesFromBytes() {
+    DatabasePagesResponse response = new DatabasePagesResponse(this.dataInputFactory);
+    response.fromBytes(this.payload);
+    return response;
+  }
+
+  @Benchmark
+  public List<GlucoseReadRecord> glucoseReadRecords() {
+    return this.decodedResponse.getRecords(0);
+  }
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+/**
+ * Copy of the crc16 implementation that {@link org.glukit.dexcom.sync.Crc16} replaced: it copies its input before
+ * running the bytewise table lookup. It's only kept as a baseline for {@link Crc16Benchmark}.
+ *
+ * @author alexandre.normand
+ */
+final class LegacyCrc16 {
+  private static final int[] CRC16_TABLE = buildTable();
+
+  private LegacyCrc16() {
+  }
+
+  static int getCrc16(byte[] bytes, int offset, int length) {
+    int contentSize = length - offset;
+    byte[] content = new byte[contentSize];
+    System.arraycopy(bytes, offset, content, 0, contentSize);
+
+    int value = 0;
+    for (byte element : content) {
+      value = ((value << 8) ^ CRC16_TABLE[((value >>> 8) ^ element) & 0xff]) & 0xFFFF;
+    }
+    return value;
+  }
+
+  private static int[] buildTable() {
+    int[] table = new int[256];
+    for (int i = 0; i < 256; i++) {
+      int crc = i << 8;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+      }
+      table[i] = crc & 0xFFFF;
+    }
+    return table;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.GlucoseReadColumns;
+import org.glukit.dexcom.sync.model.ManufacturingParameters;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.model.UserEventRecord;
+import org.threeten.bp.Instant;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Random;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_DATA_SIZE;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_HEADER_SIZE;
+
+/**
+ * Builds realistic receiver data for the benchmarks: database pages laid out byte for byte like the receiver's,
+ * with valid crcs, and sync data with a read every 5 minutes and a handful of user events per day.
+ *
+ * @author alexandre.normand
+ */
+final class ProtocolFixtures {
+  static final int READS_PER_DAY = 24 * 12;
+  static final int GLUCOSE_RECORD_LENGTH = 13;
+  static final int GLUCOSE_RECORDS_PER_PAGE = PAGE_DATA_SIZE / GLUCOSE_RECORD_LENGTH;
+  static final int READ_INTERVAL_IN_SECONDS = 300;
+  static final long START_SECONDS_SINCE_DEXCOM_EPOCH = 150000000L;
+  static final long LOCAL_TIME_OFFSET_IN_SECONDS = -7 * 3600;
+
+  private ProtocolFixtures() {
+  }
+
+  /**
+   * @return the payload of a {@link ReceiverCommand#ReadDatabasePages} response for full pages of glucose reads,
+   * as many as the receiver sends for a single command.
+   */
+  static byte[] glucoseReadPagesPayload() {
+    return glucoseReadPagesPayload(DEFAULT_PAGES_PER_COMMAND);
+  }
+
+  static byte[] glucoseReadPagesPayload(int pageCount) {
+    ByteBuffer payload = ByteBuffer.allocate(pageCount * (PAGE_HEADER_SIZE + PAGE_DATA_SIZE))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    Random random = new Random(42);
+    for (int page = 0; page < pageCount; page++) {
+      int pageStart = payload.position();
+      long firstRecordIndex = page * GLUCOSE_RECORDS_PER_PAGE;
+      payload.putInt((int) firstRecordIndex);
+      payload.putInt(GLUCOSE_RECORDS_PER_PAGE);
+      payload.put(RecordType.EGVData.getId());
+      payload.put((byte) 1);
+      payload.putInt(page);
+      payload.putInt(0);
+      payload.putInt(0);
+      payload.putInt(0);
+      payload.putShort((short) Crc16.compute(payload, pageStart, PAGE_HEADER_SIZE - 2));
+
+      int dataStart = payload.position();
+      for (int record = 0; record < GLUCOSE_RECORDS_PER_PAGE; record++) {
+        int recordStart = payload.position();
+        long internalSeconds = START_SECONDS_SINCE_DEXCOM_EPOCH + (firstRecordIndex + record) * READ_INTERVAL_IN_SECONDS;
+        payload.putInt((int) internalSeconds);
+        payload.putInt((int) (internalSeconds + LOCAL_TIME_OFFSET_IN_SECONDS));
+        payload.putShort((short) (40 + random.nextInt(360)));
+        payload.put((byte) random.nextInt(8));
+        payload.putShort((short) Crc16.compute(payload, recordStart, GLUCOSE_RECORD_LENGTH - 2));
+      }
+      // The unused end of a page is filled with 0xFF like on the receiver
+      while (payload.position() < dataStart + PAGE_DATA_SIZE) {
+        payload.put((byte) 0xFF);
+      }
+    }
+    return payload.array();
+  }
+
+  /**
+   * @return a full packet (header, payload and crc) as sent by the receiver.
+   */
+  static byte[] packet(ReceiverCommand command, byte[] payload) {
+    int packetSize = 4 + payload.length + 2;
+    ByteBuffer packet = ByteBuffer.allocate(packetSize).order(ByteOrder.LITTLE_ENDIAN);
+    packet.put((byte) 1);
+    packet.putShort((short) packetSize);
+    packet.put(command.getId());
+    packet.put(payload);
+    packet.putShort((short) Crc16.compute(packet, 0, packetSize - 2));
+    return packet.array();
+  }
+
+  /**
+   * @return sync data covering {@code days} with a read every 5 minutes, 3 meals, 3 injections and an exercise
+   * session per day.
+   */
+  static DexcomSyncData dexcomSyncData(int days) {
+    Random random = new Random(42);
+    GlucoseReadColumns glucoseReads = new GlucoseReadColumns(days * READS_PER_DAY);
+    for (int i = 0; i < days * READS_PER_DAY; i++) {
+      long internalSeconds = START_SECONDS_SINCE_DEXCOM_EPOCH + i * READ_INTERVAL_IN_SECONDS;
+      glucoseReads.add(internalSeconds, internalSeconds + LOCAL_TIME_OFFSET_IN_SECONDS, 40 + random.nextInt(360),
+              (byte) random.nextInt(8), i, i / GLUCOSE_RECORDS_PER_PAGE);
+    }
+
+    List<UserEventRecord> userEvents = newArrayList();
+    for (int day = 0; day < days; day++) {
+      long dayStart = START_SECONDS_SINCE_DEXCOM_EPOCH + day * READS_PER_DAY * READ_INTERVAL_IN_SECONDS;
+      for (int meal = 0; meal < 3; meal++) {
+        long eventSeconds = dayStart + (7 + meal * 5) * 3600;
+        userEvents.add(userEvent(eventSeconds, UserEventRecord.UserEventType.CARBS, (byte) 0,
+                20 + random.nextInt(80)));
+        userEvents.add(userEvent(eventSeconds, UserEventRecord.UserEventType.INSULIN, (byte) 0,
+                100 + random.nextInt(900)));
+      }
+      userEvents.add(userEvent(dayStart + 18 * 3600, UserEventRecord.UserEventType.EXERCISE,
+              UserEventRecord.ExerciseIntensity.MEDIUM.getId(), 30 + random.nextInt(60)));
+    }
+
+    return new DexcomSyncData(glucoseReads, userEvents,
+            new ManufacturingParameters("SM00000000", "1234-56", "2", "2013-01-01 00:00:00", "{00000000-0000}"),
+            Instant.ofEpochSecond(1400000000L));
+  }
+
+  private static UserEventRecord userEvent(long eventSeconds, UserEventRecord.UserEventType eventType,
+                                           byte eventSubType, long eventValue) {
+    return new UserEventRecord(eventSeconds + 60, eventSeconds + 60 + LOCAL_TIME_OFFSET_IN_SECONDS,
+            eventSeconds + LOCAL_TIME_OFFSET_IN_SECONDS, eventType, eventSubType, eventValue);
+  }
+}
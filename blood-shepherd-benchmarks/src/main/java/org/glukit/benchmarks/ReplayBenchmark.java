@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
+import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.PageHighWaterMark;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.simulator.SimulatedDatabase;
+import org.glukit.dexcom.sync.simulator.SimulatedReceiver;
+import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.glukit.dexcom.sync.transport.RecordingTransport;
+import org.glukit.dexcom.sync.transport.ReplayTransport;
+import org.glukit.dexcom.sync.transport.SessionLog;
+import org.openjdk.jmh.annotations.*;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+
+/**
+ * Benchmark of {@link FetchNewDataRunner#fetchData} replaying a captured session at full speed. Pass a capture of a
+ * real receiver with {@code -p capturePath=<session log> -p since=<epoch millis of the captured sync>} to
+ * benchmark against its exact byte stream, the last session of the log is used. The replay runs without page
+ * high-water marks so the capture has to be of a sync that didn't have any either, like a first sync or one started
+ * with {@code -sinceAsEpochMillis}. Without a capture, a first sync of 90 days of simulated data is captured and
+ * replayed.
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ReplayBenchmark {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+
+  @Param({""})
+  public String capturePath;
+
+  @Param({"0"})
+  public long since;
+
+  private FetchNewDataRunner fetchNewDataRunner;
+  private SessionLog.Session session;
+  private Instant sinceTime;
+
+  @Setup
+  public void setUp() throws IOException {
+    DexcomSyncPreferences noHighWaterMarks = new DexcomSyncPreferences() {
+      @Override
+      public PageHighWaterMark getHighWaterMark(String receiverSerialNumber, RecordType recordType) {
+        return null;
+      }
+    };
+    this.fetchNewDataRunner = new FetchNewDataRunner(new LittleEndianDataOutputFactory(),
+            new LittleEndianDataInputFactory(), new ResponseReader(new LittleEndianDataInputFactory()),
+            noHighWaterMarks);
+
+    if (this.capturePath.isEmpty()) {
+      this.sinceTime = DEXCOM_EPOCH;
+      this.session = captureSimulatedSync();
+    } else {
+      this.sinceTime = this.since == 0L ? DEXCOM_EPOCH : Instant.ofEpochMilli(this.since);
+      List<SessionLog.Session> sessions = SessionLog.read(new File(this.capturePath));
+      this.session = sessions.get(sessions.size() - 1);
+    }
+  }
+
+  @Benchmark
+  public DexcomSyncData replay() {
+    return this.fetchNewDataRunner.fetchData(new ReplayTransport(this.session, ReplayTransport.Pacing.FULL_SPEED),
+            this.sinceTime);
+  }
+
+  private SessionLog.Session captureSimulatedSync() throws IOException {
+    File logFile = File.createTempFile("replay-benchmark", ".log");
+    try {
+      RecordingTransport recordingTransport = new RecordingTransport(
+              new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME)), logFile);
+      try {
+        this.fetchNewDataRunner.fetchData(recordingTransport, this.sinceTime);
+      } finally {
+        recordingTransport.stopRecording();
+      }
+      return SessionLog.read(logFile).get(0);
+    } finally {
+      logFile.delete();
+    }
+  }
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.transport.SerialTransport;
+
+import java.util.Arrays;
+
+/**
+ * {@link SerialTransport} that replays the same bytes over and over rather than talking to a receiver. Reads never
+ * block and writes are ignored.
+ *
+ * @author alexandre.normand
+ */
+class StubTransport implements SerialTransport {
+  private final byte[] bytes;
+  private int position = 0;
+
+  StubTransport(byte[] bytes) {
+    this.bytes = bytes;
+  }
+
+  @Override
+  public String getName() {
+    return "stub";
+  }
+
+  @Override
+  public void open() {
+  }
+
+  @Override
+  public boolean isOpened() {
+    return true;
+  }
+
+  @Override
+  public byte[] read(int byteCount) {
+    if (this.position + byteCount > this.bytes.length) {
+      this.position = 0;
+    }
+    byte[] read = Arrays.copyOfRange(this.bytes, this.position, this.position + byteCount);
+    this.position += byteCount;
+    return read;
+  }
+
+  @Override
+  public void write(byte[] bytes) {
+  }
+
+  @Override
+  public void close() {
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
+import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.PageHighWaterMark;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.simulator.SimulatedDatabase;
+import org.glukit.dexcom.sync.simulator.SimulatedReceiver;
+import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.openjdk.jmh.annotations.*;
+import org.threeten.bp.Instant;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+
+/**
+ * End-to-end benchmark of {@link FetchNewDataRunner#fetchData} against a {@link SimulatedReceiver}: a first sync
+ * of a receiver with 1 day or 90 days of data and an incremental sync of the last day. There's no transfer latency
+ * so this measures our side of the protocol only.
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SyncBenchmark {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+
+  @Param({"1", "90"})
+  public int days;
+
+  private FetchNewDataRunner fetchNewDataRunner;
+  private SimulatedDatabase database;
+
+  @Setup
+  public void setUp() {
+    DexcomSyncPreferences noHighWaterMarks = new DexcomSyncPreferences() {
+      @Override
+      public PageHighWaterMark getHighWaterMark(String receiverSerialNumber, RecordType recordType) {
+        return null;
+      }
+    };
+    this.fetchNewDataRunner = new FetchNewDataRunner(new LittleEndianDataOutputFactory(),
+            new LittleEndianDataInputFactory(), new ResponseReader(new LittleEndianDataInputFactory()),
+            noHighWaterMarks);
+    this.database = SimulatedDatabase.ofDays(this.days, LAST_READ_TIME);
+  }
+
+  @Benchmark
+  public DexcomSyncData firstSync() {
+    return this.fetchNewDataRunner.fetchData(new SimulatedReceiver(this.database), DEXCOM_EPOCH);
+  }
+
+  @Benchmark
+  public DexcomSyncData lastDaySync() {
+    return this.fetchNewDataRunner.fetchData(new SimulatedReceiver(this.database),
+            LAST_READ_TIME.minusSeconds(24 * 3600));
+  }
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.benchmarks;
+
+import com.google.common.io.Files;
+import org.glukit.dexcom.sync.DexcomAdapterService;
+import org.glukit.export.StreamingXmlDataExporter;
+import org.glukit.export.XmlDataExporter;
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.glukit.sync.api.SyncData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark of {@link XmlDataExporter#exportData} and {@link StreamingXmlDataExporter#exportData} for 1 day, 3 months
+ * and 1 year of data. Exported files are deleted after each invocation so the benchmark doesn't fill up the disk.
+ *
+ * @author alexandre.normand
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class XmlDataExporterBenchmark {
+  @Param({"1", "90", "365"})
+  public int days;
+
+  private File outputDirectory;
+  private XmlDataExporter exporter;
+  private StreamingXmlDataExporter streamingExporter;
+  private SyncData syncData;
+
+  @Setup
+  public void setUp() {
+    this.outputDirectory = Files.createTempDir();
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    properties.put(BloodShepherdProperties.OUTPUT_PATH, this.outputDirectory.getAbsolutePath());
+    this.exporter = new XmlDataExporter(properties);
+    this.streamingExporter = new StreamingXmlDataExporter(properties);
+    this.syncData = new DexcomAdapterService().convertData(ProtocolFixtures.dexcomSyncData(this.days));
+  }
+
+  @TearDown(Level.Invocation)
+  public void deleteExports() {
+    File[] exports = this.outputDirectory.listFiles();
+    if (exports != null) {
+      for (File export : exports) {
+        export.delete();
+      }
+    }
+  }
+
+  @TearDown
+  public void tearDown() {
+    this.outputDirectory.delete();
+  }
+
+  @Benchmark
+  public void exportData() {
+    this.exporter.exportData(this.syncData);
+  }
+
+  @Benchmark
+  public void streamingExportData() {
+    this.streamingExporter.exportData(this.syncData);
+  }
+}
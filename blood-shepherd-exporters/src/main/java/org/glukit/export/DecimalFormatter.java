@@ -0,0 +1,93 @@
+package org.glukit.export;
+
+import java.util.Locale;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Formats decimals with a fixed number of fraction digits into a caller's {@code char[]}, the same way
+ * {@code String.format("%.2f")} does (half-up rounding, no grouping) but always with a {@code '.'} separator and
+ * without going through {@link java.util.Formatter}.
+ * <p/>
+ * The rounding is exact for any {@code float} value, which is what all our values are. Values that are not finite or
+ * that are at least 10^9 in magnitude, far more than any of ours, fall back to {@link String#format}.
+ *
+ * @author alexandre.normand
+ */
+public final class DecimalFormatter {
+  public static final int MAX_FRACTION_DIGITS = 6;
+  /**
+   * Enough room for any value below 10^9 formatted with up to {@link #MAX_FRACTION_DIGITS}.
+   */
+  public static final int MAX_LENGTH = 1 + 9 + 1 + MAX_FRACTION_DIGITS;
+
+  private static final long[] POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L};
+  // Keeps the scaled value under 2^52 so that adding 0.5 to it is exact
+  private static final double MAX_FAST_PATH_VALUE = 1e9;
+
+  private DecimalFormatter() {
+  }
+
+  /**
+   * @return the offset right after the formatted value.
+   */
+  public static int format(double value, int fractionDigits, char[] buffer, int offset) {
+    checkArgument(fractionDigits >= 0 && fractionDigits <= MAX_FRACTION_DIGITS,
+            "Invalid number of fraction digits [%s]", fractionDigits);
+    if (needsFallback(value)) {
+      String formatted = fallbackFormat(value, fractionDigits);
+      formatted.getChars(0, formatted.length(), buffer, offset);
+      return offset + formatted.length();
+    }
+
+    int position = offset;
+    if (Double.compare(value, 0.0) < 0) {
+      buffer[position++] = '-';
+    }
+
+    long powerOfTen = POWERS_OF_TEN[fractionDigits];
+    // Scaling a float by a power of ten up to 10^6 is exact in a double, which makes this half-up rounding exact too
+    long scaled = (long) Math.floor(Math.abs(value) * powerOfTen + 0.5);
+    position = writeDigits(scaled / powerOfTen, buffer, position);
+    if (fractionDigits > 0) {
+      buffer[position++] = '.';
+      long fraction = scaled % powerOfTen;
+      for (int i = fractionDigits - 1; i >= 0; i--) {
+        buffer[position + i] = (char) ('0' + fraction % 10);
+        fraction /= 10;
+      }
+      position += fractionDigits;
+    }
+    return position;
+  }
+
+  public static String format(double value, int fractionDigits) {
+    if (needsFallback(value)) {
+      return fallbackFormat(value, fractionDigits);
+    }
+    char[] buffer = new char[MAX_LENGTH];
+    int length = format(value, fractionDigits, buffer, 0);
+    return new String(buffer, 0, length);
+  }
+
+  private static boolean needsFallback(double value) {
+    return Double.isNaN(value) || Math.abs(value) >= MAX_FAST_PATH_VALUE;
+  }
+
+  private static String fallbackFormat(double value, int fractionDigits) {
+    return String.format(Locale.ROOT, "%." + fractionDigits + "f", value);
+  }
+
+  private static int writeDigits(long value, char[] buffer, int offset) {
+    int digitCount = 1;
+    for (long remaining = value / 10; remaining > 0; remaining /= 10) {
+      digitCount++;
+    }
+    long remaining = value;
+    for (int i = offset + digitCount - 1; i >= offset; i--) {
+      buffer[i] = (char) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    return offset + digitCount;
+  }
+}
@@ -0,0 +1,282 @@
+package org.glukit.export;
+
+import com.ctc.wstx.stax.WstxOutputFactory;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Ordering;
+import org.codehaus.stax2.XMLStreamWriter2;
+import org.glukit.sync.api.*;
+
+import javax.inject.Inject;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.glukit.export.XmlDataExporter.FOOD_EVENT_TYPE;
+import static org.glukit.export.XmlDataExporter.INSULIN_EVENT_TYPE;
+import static org.glukit.export.XmlDataExporter.getEventType;
+import static org.glukit.export.XmlDataExporter.getIntensityLabel;
+import static org.glukit.export.XmlDataExporter.getOutputFile;
+
+/**
+ * Exports the same document as {@link XmlDataExporter} but writes it element by element with a StAX writer as it
+ * goes through the {@link SyncData} rather than building the whole {@link XmlDataExporter.Patient} graph first. Memory
+ * use doesn't grow with the number of glucose reads and events and there's no reflection involved.
+ *
+ * @author alexandre.normand
+ */
+public class StreamingXmlDataExporter implements DataExporter {
+  private static final XMLOutputFactory OUTPUT_FACTORY = new WstxOutputFactory();
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // Same line separator as jackson's default pretty printer so both exporters produce identical files
+  private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+  private static final String FIRST_LEVEL_INDENT = LINE_SEPARATOR + "  ";
+  private static final String SECOND_LEVEL_INDENT = FIRST_LEVEL_INDENT + "  ";
+
+  private static final String[] EMPTY_PATIENT_ATTRIBUTES = {"Id", "FirstName", "LastName", "MiddleName"};
+  private static final String[] EMPTY_PATIENT_DETAILS_ATTRIBUTES = {"Initials", "PreferredName", "PatientNumber",
+          "PatientIdentifier", "OtherIdentifier", "Gender", "DateOfBirth", "DoctorsName", "Email", "PhoneNumber",
+          "PhoneExtension", "SiteIdentifier", "StudyIdentifier", "Comments", "IsDataBlinded", "IsKeepPrivate"};
+
+  private static final Ordering<TimestampedEvent> EVENT_ORDERING = new Ordering<TimestampedEvent>() {
+    @Override
+    public int compare(TimestampedEvent left, TimestampedEvent right) {
+      long leftSeconds = left.getInternalTime().getEpochSecond();
+      long rightSeconds = right.getInternalTime().getEpochSecond();
+      return leftSeconds < rightSeconds ? -1 : (leftSeconds == rightSeconds ? 0 : 1);
+    }
+  };
+
+  private final BloodShepherdProperties properties;
+
+  @Inject
+  public StreamingXmlDataExporter(BloodShepherdProperties properties) {
+    this.properties = properties;
+  }
+
+  @Override
+  public void exportData(SyncData syncData) {
+    File outputFile = getOutputFile(this.properties, syncData);
+
+    try {
+      OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(outputFile, false), BUFFER_SIZE);
+      try {
+        XMLStreamWriter2 writer = (XMLStreamWriter2) OUTPUT_FACTORY.createXMLStreamWriter(outputStream, "UTF-8");
+        writePatient(writer, syncData);
+        writer.close();
+      } finally {
+        outputStream.close();
+      }
+    } catch (IOException e) {
+      throw Throwables.propagate(e);
+    } catch (XMLStreamException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private void writePatient(XMLStreamWriter2 writer, SyncData syncData) throws XMLStreamException {
+    writer.writeStartElement("Patient");
+    for (String attribute : EMPTY_PATIENT_ATTRIBUTES) {
+      writer.writeAttribute(attribute, "");
+    }
+    String serialNumber = syncData.getDeviceInfo().getSerialNumber();
+    writer.writeAttribute("SerialNumber", serialNumber == null ? "" : serialNumber);
+    for (String attribute : EMPTY_PATIENT_DETAILS_ATTRIBUTES) {
+      writer.writeAttribute(attribute, "");
+    }
+
+    writer.writeCharacters(FIRST_LEVEL_INDENT);
+    writer.writeEmptyElement("MeterReadings");
+
+    RecordWriter recordWriter = new RecordWriter(writer);
+    writer.writeCharacters(FIRST_LEVEL_INDENT);
+    writeGlucoseReads(writer, recordWriter, syncData.getGlucoseReads());
+
+    writer.writeCharacters(FIRST_LEVEL_INDENT);
+    writeEvents(writer, recordWriter, sortedByInternalTime(syncData.getExerciseSessions()),
+            sortedByInternalTime(syncData.getFoodEvents()), sortedByInternalTime(syncData.getInsulinInjections()));
+
+    writer.writeCharacters(LINE_SEPARATOR);
+    writer.writeEndElement();
+    writer.writeCharacters(LINE_SEPARATOR);
+  }
+
+  private void writeGlucoseReads(XMLStreamWriter writer, RecordWriter recordWriter, List<GlucoseRead> glucoseReads)
+          throws XMLStreamException {
+    if (glucoseReads.isEmpty()) {
+      writer.writeEmptyElement("GlucoseReadings");
+      return;
+    }
+
+    // Same in place sort as the object mapping export, skipped when they're already ordered as they should be
+    if (!Ordering.<TimestampedValue>natural().isOrdered(glucoseReads)) {
+      Collections.sort(glucoseReads);
+    }
+
+    writer.writeStartElement("GlucoseReadings");
+    for (GlucoseRead glucoseRead : glucoseReads) {
+      recordWriter.writeGlucoseRead(glucoseRead);
+    }
+    writer.writeCharacters(FIRST_LEVEL_INDENT);
+    writer.writeEndElement();
+  }
+
+  /**
+   * Merges the three kinds of events by internal time. Ties are broken by kind, exercise sessions first, then food
+   * events and then insulin injections which is the order the stable sort of {@link XmlDataExporter} leaves them in.
+   */
+  private void writeEvents(XMLStreamWriter writer, RecordWriter recordWriter, List<ExerciseSession> exerciseSessions,
+                           List<FoodEvent> foodEvents, List<InsulinInjection> insulinInjections)
+          throws XMLStreamException {
+    if (exerciseSessions.isEmpty() && foodEvents.isEmpty() && insulinInjections.isEmpty()) {
+      writer.writeEmptyElement("EventMarkers");
+      return;
+    }
+
+    writer.writeStartElement("EventMarkers");
+    int exerciseIndex = 0;
+    int foodIndex = 0;
+    int insulinIndex = 0;
+    while (exerciseIndex < exerciseSessions.size() || foodIndex < foodEvents.size()
+            || insulinIndex < insulinInjections.size()) {
+      long exerciseTime = secondsAt(exerciseSessions, exerciseIndex);
+      long foodTime = secondsAt(foodEvents, foodIndex);
+      long insulinTime = secondsAt(insulinInjections, insulinIndex);
+
+      if (exerciseTime <= foodTime && exerciseTime <= insulinTime) {
+        recordWriter.writeExerciseSession(exerciseSessions.get(exerciseIndex++));
+      } else if (foodTime <= insulinTime) {
+        recordWriter.writeFoodEvent(foodEvents.get(foodIndex++));
+      } else {
+        recordWriter.writeInsulinInjection(insulinInjections.get(insulinIndex++));
+      }
+    }
+    writer.writeCharacters(FIRST_LEVEL_INDENT);
+    writer.writeEndElement();
+  }
+
+  /**
+   * @return the internal time of the event at {@code index} in seconds, which is the precision the events are
+   *         ordered at in the export, or {@link Long#MAX_VALUE} when there are no more events.
+   */
+  private static long secondsAt(List<? extends TimestampedEvent> events, int index) {
+    return index < events.size() ? events.get(index).getInternalTime().getEpochSecond() : Long.MAX_VALUE;
+  }
+
+  /**
+   * @return {@code events} if they're already ordered by internal time to the second or a sorted copy otherwise. The
+   *         sort is stable so events with the same time keep their relative order.
+   */
+  private static <T extends TimestampedEvent> List<T> sortedByInternalTime(List<T> events) {
+    if (EVENT_ORDERING.isOrdered(events)) {
+      return events;
+    }
+    List<T> sortedEvents = newArrayList(events);
+    Collections.sort(sortedEvents, EVENT_ORDERING);
+    return sortedEvents;
+  }
+
+  /**
+   * Writes glucose reads and events as raw markup, one line at a time, from a reusable buffer. Only the timestamps and
+   * numbers vary and none of them needs escaping so there's no need for a {@link String} per attribute.
+   */
+  private static class RecordWriter {
+    private static final char[] GLUCOSE_START = (SECOND_LEVEL_INDENT + "<Glucose InternalTime=\"").toCharArray();
+    private static final char[] EVENT_START = (SECOND_LEVEL_INDENT + "<Event InternalTime=\"").toCharArray();
+    private static final char[] DISPLAY_TIME = "\" DisplayTime=\"".toCharArray();
+    private static final char[] VALUE = "\" Value=\"".toCharArray();
+    private static final char[] EVENT_TIME = "\" EventTime=\"".toCharArray();
+    private static final char[] EVENT_TYPE = "\" EventType=\"".toCharArray();
+    private static final char[] DESCRIPTION = "\" Decription=\"".toCharArray();
+    private static final char[] END = "\"/>".toCharArray();
+
+    private final XMLStreamWriter2 writer;
+    private final TimestampFormatter internalTimeFormatter = new TimestampFormatter();
+    private final TimestampFormatter displayTimeFormatter = new TimestampFormatter();
+    private final TimestampFormatter eventTimeFormatter = new TimestampFormatter();
+    private final char[] line = new char[256];
+    private int position;
+
+    private RecordWriter(XMLStreamWriter2 writer) {
+      this.writer = writer;
+    }
+
+    void writeGlucoseRead(GlucoseRead glucoseRead) throws XMLStreamException {
+      append(GLUCOSE_START, 0);
+      this.position = this.internalTimeFormatter.format(glucoseRead.getInternalTime(), this.line, this.position);
+      append(DISPLAY_TIME);
+      this.position = this.displayTimeFormatter.format(glucoseRead.getLocalTime(), this.line, this.position);
+      append(VALUE);
+      this.position = DecimalFormatter.format(glucoseRead.getValue(), 0, this.line, this.position);
+      append(END);
+      flushLine();
+    }
+
+    void writeFoodEvent(FoodEvent foodEvent) throws XMLStreamException {
+      startEvent(foodEvent, FOOD_EVENT_TYPE);
+      append("Carbs ");
+      this.position = DecimalFormatter.format(foodEvent.getCarbohydrates(), 2, this.line, this.position);
+      append(" grams");
+      append(END);
+      flushLine();
+    }
+
+    void writeInsulinInjection(InsulinInjection insulinInjection) throws XMLStreamException {
+      startEvent(insulinInjection, INSULIN_EVENT_TYPE);
+      append("Insulin ");
+      this.position = DecimalFormatter.format(insulinInjection.getUnitValue(), 2, this.line, this.position);
+      append(" units");
+      append(END);
+      flushLine();
+    }
+
+    void writeExerciseSession(ExerciseSession exerciseSession) throws XMLStreamException {
+      startEvent(exerciseSession, getEventType(exerciseSession));
+      append("Exercise ");
+      append(getIntensityLabel(exerciseSession));
+      append(" (");
+      this.position = DecimalFormatter.format(exerciseSession.getDuration().toMinutes(), 0, this.line,
+              this.position);
+      append(" minutes)");
+      append(END);
+      flushLine();
+    }
+
+    private void startEvent(TimestampedEvent event, String eventType) {
+      append(EVENT_START, 0);
+      this.position = this.internalTimeFormatter.format(event.getInternalTime(), this.line, this.position);
+      append(DISPLAY_TIME);
+      this.position = this.displayTimeFormatter.format(event.getLocalTime(), this.line, this.position);
+      append(EVENT_TIME);
+      this.position = this.eventTimeFormatter.format(event.getEventLocalTime(), this.line, this.position);
+      append(EVENT_TYPE);
+      append(eventType);
+      append(DESCRIPTION);
+    }
+
+    private void append(char[] chars, int offset) {
+      System.arraycopy(chars, 0, this.line, offset, chars.length);
+      this.position = offset + chars.length;
+    }
+
+    private void append(char[] chars) {
+      append(chars, this.position);
+    }
+
+    private void append(String string) {
+      string.getChars(0, string.length(), this.line, this.position);
+      this.position += string.length();
+    }
+
+    private void flushLine() throws XMLStreamException {
+      this.writer.writeRaw(this.line, 0, this.position);
+    }
+  }
+}
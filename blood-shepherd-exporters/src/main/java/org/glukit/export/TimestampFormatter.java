@@ -0,0 +1,90 @@
+package org.glukit.export;
+
+import org.threeten.bp.Instant;
+import org.threeten.bp.LocalDate;
+import org.threeten.bp.LocalDateTime;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.threeten.bp.jdk8.Jdk8Methods.floorDiv;
+import static org.threeten.bp.jdk8.Jdk8Methods.floorMod;
+
+/**
+ * Formats timestamps as {@code yyyy-MM-dd HH:mm:ss} into a caller's {@code char[]}. {@link Instant}s are formatted
+ * in UTC. The {@code yyyy-MM-dd } prefix of the last day formatted is kept so consecutive timestamps of the same day,
+ * which is most of them in an export, only need their time of day to be written.
+ * <p/>
+ * Not thread-safe, use one instance per export and preferably one per column so the day cache isn't shared between
+ * internal and display times that can be on different days around midnight.
+ *
+ * @author alexandre.normand
+ */
+public final class TimestampFormatter {
+  public static final int LENGTH = 19;
+  private static final int DAY_PREFIX_LENGTH = 11;
+  private static final int SECONDS_PER_DAY = 24 * 60 * 60;
+
+  private final char[] dayPrefix = new char[DAY_PREFIX_LENGTH];
+  private long cachedEpochDay = Long.MIN_VALUE;
+
+  /**
+   * @return the offset right after the formatted timestamp.
+   */
+  public int format(Instant instant, char[] buffer, int offset) {
+    long epochSecond = instant.getEpochSecond();
+    return format(floorDiv(epochSecond, SECONDS_PER_DAY), floorMod(epochSecond, SECONDS_PER_DAY), buffer, offset);
+  }
+
+  /**
+   * @return the offset right after the formatted timestamp.
+   */
+  public int format(LocalDateTime dateTime, char[] buffer, int offset) {
+    return format(dateTime.toLocalDate().toEpochDay(), dateTime.toLocalTime().toSecondOfDay(), buffer, offset);
+  }
+
+  public String format(Instant instant) {
+    char[] buffer = new char[LENGTH];
+    format(instant, buffer, 0);
+    return new String(buffer);
+  }
+
+  public String format(LocalDateTime dateTime) {
+    char[] buffer = new char[LENGTH];
+    format(dateTime, buffer, 0);
+    return new String(buffer);
+  }
+
+  private int format(long epochDay, int secondOfDay, char[] buffer, int offset) {
+    if (epochDay != this.cachedEpochDay) {
+      cacheDayPrefix(epochDay);
+    }
+    System.arraycopy(this.dayPrefix, 0, buffer, offset, DAY_PREFIX_LENGTH);
+
+    int position = offset + DAY_PREFIX_LENGTH;
+    position = writeTwoDigits(secondOfDay / 3600, buffer, position);
+    buffer[position++] = ':';
+    position = writeTwoDigits(secondOfDay / 60 % 60, buffer, position);
+    buffer[position++] = ':';
+    return writeTwoDigits(secondOfDay % 60, buffer, position);
+  }
+
+  private void cacheDayPrefix(long epochDay) {
+    LocalDate date = LocalDate.ofEpochDay(epochDay);
+    int year = date.getYear();
+    checkArgument(year >= 0 && year <= 9999, "Year [%s] doesn't fit the fixed yyyy-MM-dd layout", year);
+
+    int position = writeTwoDigits(year / 100, this.dayPrefix, 0);
+    position = writeTwoDigits(year % 100, this.dayPrefix, position);
+    this.dayPrefix[position++] = '-';
+    position = writeTwoDigits(date.getMonthValue(), this.dayPrefix, position);
+    this.dayPrefix[position++] = '-';
+    position = writeTwoDigits(date.getDayOfMonth(), this.dayPrefix, position);
+    this.dayPrefix[position] = ' ';
+    this.cachedEpochDay = epochDay;
+  }
+
+  private static int writeTwoDigits(int value, char[] buffer, int offset) {
+    buffer[offset] = (char) ('0' + value / 10);
+    buffer[offset + 1] = (char) ('0' + value % 10);
+    return offset + 2;
+  }
+}
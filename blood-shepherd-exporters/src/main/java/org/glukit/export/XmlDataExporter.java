@@ -4,20 +4,18 @@ import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlElementWrapper;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import com.google.common.base.Function;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Collections2;
 import org.apache.commons.lang3.StringUtils;
 import org.glukit.sync.api.*;
-import org.threeten.bp.ZoneId;
-import org.threeten.bp.format.DateTimeFormatter;
-import org.threeten.bp.format.DateTimeFormatterBuilder;
 
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import java.io.*;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
@@ -27,13 +25,33 @@ import static java.util.Collections.sort;
 import static org.glukit.sync.api.BloodShepherdProperties.OUTPUT_PATH;
 
 /**
- * Exports the data as a XML file resembling the Dexcom Studio files.
+ * Exports the data as a XML file resembling the Dexcom Studio files. Not thread-safe as it reuses its timestamp
+ * formatters from one export to the next.
  *
  * @author alexandre.normand
  */
 public class XmlDataExporter implements DataExporter {
-  private static DateTimeFormatter dateTimeFormatter;
+  static final String FOOD_EVENT_TYPE = "Carbs";
+  static final String INSULIN_EVENT_TYPE = "Insulin";
 
+  // Mappers are thread-safe and expensive to create, there's no reason to build one per export
+  private static final ObjectWriter OBJECT_WRITER = new XmlMapper().writerWithDefaultPrettyPrinter();
+  private static final Map<ExerciseSession.Intensity, String> INTENSITY_LABELS =
+          new EnumMap<ExerciseSession.Intensity, String>(ExerciseSession.Intensity.class);
+  private static final Map<ExerciseSession.Intensity, String> EXERCISE_EVENT_TYPES =
+          new EnumMap<ExerciseSession.Intensity, String>(ExerciseSession.Intensity.class);
+
+  static {
+    for (ExerciseSession.Intensity intensity : ExerciseSession.Intensity.values()) {
+      String label = StringUtils.capitalize(StringUtils.lowerCase(intensity.name()));
+      INTENSITY_LABELS.put(intensity, label);
+      EXERCISE_EVENT_TYPES.put(intensity, "Exercise" + label);
+    }
+  }
+
+  private final TimestampFormatter internalTimeFormatter = new TimestampFormatter();
+  private final TimestampFormatter displayTimeFormatter = new TimestampFormatter();
+  private final TimestampFormatter eventTimeFormatter = new TimestampFormatter();
   private BloodShepherdProperties properties;
 
   @Inject
@@ -41,23 +59,14 @@ public class XmlDataExporter implements DataExporter {
     this.properties = properties;
   }
 
-  static {
-    DateTimeFormatterBuilder builder = new DateTimeFormatterBuilder();
-    builder.parseCaseInsensitive();
-    builder.appendPattern("yyyy-MM-dd HH:mm:ss");
-
-
-    dateTimeFormatter = builder.toFormatter().withZone(ZoneId.of("UTC"));
-  }
-
   private Function<GlucoseRead, Timestamped> GLUCOSE_READ_TO_TIMESTAMPED_VALUE =
           new Function<GlucoseRead, Timestamped>() {
             @Override
             public Timestamped apply(@javax.annotation.Nullable GlucoseRead glucoseRead) {
               checkNotNull(glucoseRead, "glucoseRead should be non-null");
 
-              return new TimestampedValue(dateTimeFormatter.format(glucoseRead.getInternalTime()),
-                      dateTimeFormatter.format(glucoseRead.getLocalTime()), format("%.0f", glucoseRead.getValue()));
+              return new TimestampedValue(internalTimeFormatter.format(glucoseRead.getInternalTime()),
+                      displayTimeFormatter.format(glucoseRead.getLocalTime()), formatGlucoseValue(glucoseRead));
             }
           };
 
@@ -67,12 +76,11 @@ public class XmlDataExporter implements DataExporter {
             public EventMarker apply(@Nullable FoodEvent foodEvent) {
               checkNotNull(foodEvent, "foodEvent should be non-null");
 
-              String formattedValue = format("%.2f", foodEvent.getCarbohydrates());
               return new EventMarker(
-                      dateTimeFormatter.format(foodEvent.getInternalTime()),
-                      dateTimeFormatter.format(foodEvent.getLocalTime()),
-                      dateTimeFormatter.format(foodEvent.getEventLocalTime()), "Carbs",
-                      format("Carbs %s grams", formattedValue));
+                      internalTimeFormatter.format(foodEvent.getInternalTime()),
+                      displayTimeFormatter.format(foodEvent.getLocalTime()),
+                      eventTimeFormatter.format(foodEvent.getEventLocalTime()), FOOD_EVENT_TYPE,
+                      describe(foodEvent));
             }
           };
 
@@ -82,22 +90,11 @@ public class XmlDataExporter implements DataExporter {
             public EventMarker apply(@javax.annotation.Nullable InsulinInjection insulinInjection) {
               checkNotNull(insulinInjection, "insulinInjection should be non-null");
 
-              String formattedValue = format("%.2f", insulinInjection.getUnitValue());
               return new EventMarker(
-                      dateTimeFormatter.format(insulinInjection.getInternalTime()),
-                      dateTimeFormatter.format(insulinInjection.getLocalTime()),
-                      dateTimeFormatter.format(insulinInjection.getEventLocalTime()), "Insulin",
-                      format("Insulin %s units", formattedValue));
-            }
-          };
-
-  private Function<ExerciseSession.Intensity, String> EXERCISE_INTENSITY_TO_EVENT_TYPE =
-          new Function<ExerciseSession.Intensity, String>() {
-            @Nullable
-            @Override
-            public String apply(@Nullable ExerciseSession.Intensity intensity) {
-              checkNotNull(intensity, "intensity must be non-null");
-              return StringUtils.capitalize(StringUtils.lowerCase(intensity.name()));
+                      internalTimeFormatter.format(insulinInjection.getInternalTime()),
+                      displayTimeFormatter.format(insulinInjection.getLocalTime()),
+                      eventTimeFormatter.format(insulinInjection.getEventLocalTime()), INSULIN_EVENT_TYPE,
+                      describe(insulinInjection));
             }
           };
 
@@ -107,27 +104,57 @@ public class XmlDataExporter implements DataExporter {
             public EventMarker apply(@javax.annotation.Nullable ExerciseSession exerciseSession) {
               checkNotNull(exerciseSession, "exerciseSession should be non-null");
 
-              String intensityLabel = EXERCISE_INTENSITY_TO_EVENT_TYPE.apply(exerciseSession.getIntensity());
               return new EventMarker(
-                      dateTimeFormatter.format(exerciseSession.getInternalTime()),
-                      dateTimeFormatter.format(exerciseSession.getLocalTime()),
-                      dateTimeFormatter.format(exerciseSession.getEventLocalTime()),
-                      format("Exercise%s", intensityLabel),
-                      format("Exercise %s (%d minutes)", intensityLabel,
-                              exerciseSession.getDuration().toMinutes()));
+                      internalTimeFormatter.format(exerciseSession.getInternalTime()),
+                      displayTimeFormatter.format(exerciseSession.getLocalTime()),
+                      eventTimeFormatter.format(exerciseSession.getEventLocalTime()),
+                      getEventType(exerciseSession),
+                      describe(exerciseSession));
             }
           };
 
-  @Override
-  public void exportData(SyncData syncData) {
+  static String formatGlucoseValue(GlucoseRead glucoseRead) {
+    return DecimalFormatter.format(glucoseRead.getValue(), 0);
+  }
+
+  static String describe(FoodEvent foodEvent) {
+    return "Carbs " + DecimalFormatter.format(foodEvent.getCarbohydrates(), 2) + " grams";
+  }
+
+  static String describe(InsulinInjection insulinInjection) {
+    return "Insulin " + DecimalFormatter.format(insulinInjection.getUnitValue(), 2) + " units";
+  }
+
+  static String getEventType(ExerciseSession exerciseSession) {
+    return EXERCISE_EVENT_TYPES.get(checkNotNull(exerciseSession.getIntensity(), "intensity must be non-null"));
+  }
+
+  static String getIntensityLabel(ExerciseSession exerciseSession) {
+    return INTENSITY_LABELS.get(checkNotNull(exerciseSession.getIntensity(), "intensity must be non-null"));
+  }
+
+  static String describe(ExerciseSession exerciseSession) {
+    return "Exercise " + getIntensityLabel(exerciseSession) + " ("
+            + DecimalFormatter.format(exerciseSession.getDuration().toMinutes(), 0) + " minutes)";
+  }
+
+  /**
+   * @return the file to export {@code syncData} to, after validating the configured output directory.
+   */
+  static File getOutputFile(BloodShepherdProperties properties, SyncData syncData) {
     String outputPath = properties.getProperty(OUTPUT_PATH);
     checkNotNull(outputPath, "Missing %s in properties", OUTPUT_PATH);
     File outputDirectory = new File(outputPath);
     checkState(outputDirectory.exists(), "Invalid destination: %s doesn't exist", outputPath);
     checkState(outputDirectory.isDirectory(), "Invalid destination: %s is not a directory", outputPath);
 
-    XmlMapper xmlMapper = new XmlMapper();
-    ObjectWriter objectWriter = xmlMapper.writerWithDefaultPrettyPrinter();
+    String fileName = format("blood-shepherd-export-%s.xml", syncData.getUpdateTime().toEpochMilli());
+    return new File(outputDirectory, fileName);
+  }
+
+  @Override
+  public void exportData(SyncData syncData) {
+    File outputFile = getOutputFile(this.properties, syncData);
 
     Patient patient = new Patient();
     patient.SerialNumber = syncData.getDeviceInfo().getSerialNumber();
@@ -142,19 +169,14 @@ public class XmlDataExporter implements DataExporter {
     patient.Event = eventMarkers;
 
     try {
-      OutputStream outputStream = getOutputStream(outputDirectory, syncData);
-      objectWriter.writeValue(outputStream, patient);
+      OutputStream outputStream = new FileOutputStream(outputFile, false);
+      OBJECT_WRITER.writeValue(outputStream, patient);
       outputStream.close();
     } catch (IOException e) {
       throw Throwables.propagate(e);
     }
   }
 
-  private OutputStream getOutputStream(File destinationDirectory, SyncData syncData) throws FileNotFoundException {
-    String fileName = format("blood-shepherd-export-%s.xml", syncData.getUpdateTime().toEpochMilli());
-    return new FileOutputStream(new File(destinationDirectory, fileName), false);
-  }
-
   public static final class Patient {
     @JacksonXmlProperty(isAttribute = true)
     public String Id = "";
@@ -0,0 +1,64 @@
+package org.glukit.export;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link DecimalFormatter}.
+ *
+ * @author alexandre.normand
+ */
+public class TestDecimalFormatter {
+  @Test
+  public void valuesShouldBeRoundedHalfUp() throws Exception {
+    assertThat(DecimalFormatter.format(83f, 0), equalTo("83"));
+    assertThat(DecimalFormatter.format(0.5f, 0), equalTo("1"));
+    assertThat(DecimalFormatter.format(0.125f, 2), equalTo("0.13"));
+    assertThat(DecimalFormatter.format(2.675f, 2), equalTo("2.67"));
+    assertThat(DecimalFormatter.format(10.25f, 2), equalTo("10.25"));
+    assertThat(DecimalFormatter.format(0f, 2), equalTo("0.00"));
+  }
+
+  @Test
+  public void negativeValuesShouldKeepTheirSign() throws Exception {
+    assertThat(DecimalFormatter.format(-12.5f, 2), equalTo("-12.50"));
+    assertThat(DecimalFormatter.format(-0.001f, 2), equalTo("-0.00"));
+    assertThat(DecimalFormatter.format(-0f, 0), equalTo("-0"));
+  }
+
+  @Test
+  public void formattingShouldMatchStringFormat() throws Exception {
+    Random random = new Random(42L);
+    for (int i = 0; i < 100000; i++) {
+      float value = i % 2 == 0 ? random.nextInt(40000) / 100f : (random.nextFloat() - 0.5f) * 2000000f;
+      for (int fractionDigits = 0; fractionDigits <= DecimalFormatter.MAX_FRACTION_DIGITS; fractionDigits++) {
+        assertThat(DecimalFormatter.format(value, fractionDigits),
+                equalTo(String.format(Locale.ROOT, "%." + fractionDigits + "f", value)));
+      }
+    }
+  }
+
+  @Test
+  public void outOfRangeValuesShouldFallBackToStringFormat() throws Exception {
+    assertThat(DecimalFormatter.format(Float.NaN, 2), equalTo("NaN"));
+    assertThat(DecimalFormatter.format(Float.POSITIVE_INFINITY, 2), equalTo("Infinity"));
+    assertThat(DecimalFormatter.format(Float.MAX_VALUE, 0), equalTo(String.format(Locale.ROOT, "%.0f",
+            Float.MAX_VALUE)));
+  }
+
+  @Test
+  public void formattingShouldWriteAtTheOffset() throws Exception {
+    char[] buffer = "Value=\"......\"".toCharArray();
+
+    int end = DecimalFormatter.format(123.456f, 2, buffer, 7);
+
+    assertThat(end, is(13));
+    assertThat(new String(buffer, 0, end), equalTo("Value=\"123.46"));
+  }
+}
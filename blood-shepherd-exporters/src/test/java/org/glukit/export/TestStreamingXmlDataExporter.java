@@ -0,0 +1,140 @@
+package org.glukit.export;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.glukit.sync.api.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threeten.bp.Duration;
+import org.threeten.bp.Instant;
+import org.threeten.bp.LocalDateTime;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link StreamingXmlDataExporter}, mostly checking that it writes exactly what {@link XmlDataExporter}
+ * writes.
+ *
+ * @author alexandre.normand
+ */
+public class TestStreamingXmlDataExporter {
+  private static final Instant UPDATE_TIME = Instant.ofEpochSecond(1400000000L);
+  private static final LocalDateTime LOCAL_TIME = LocalDateTime.of(2013, 10, 10, 12, 0);
+
+  private File streamingDirectory;
+  private File mappingDirectory;
+
+  @Before
+  public void setup() throws Exception {
+    this.streamingDirectory = Files.createTempDir();
+    this.mappingDirectory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteDirectory(this.streamingDirectory);
+    deleteDirectory(this.mappingDirectory);
+  }
+
+  @Test
+  public void emptyExportShouldMatchTheMappedOne() throws Exception {
+    List<GlucoseRead> glucoseReads = Collections.emptyList();
+    List<InsulinInjection> injections = Collections.emptyList();
+    List<FoodEvent> foods = Collections.emptyList();
+    List<ExerciseSession> exerciseSessions = Collections.emptyList();
+
+    assertSameExport(new SyncData(glucoseReads, injections, foods, exerciseSessions,
+            new DeviceInfo("serialNumber", "hId", "hRv"), UPDATE_TIME));
+  }
+
+  @Test
+  public void glucoseReadsShouldMatchTheMappedOnes() throws Exception {
+    List<GlucoseRead> glucoseReads = newArrayList();
+    for (int i = 0; i < 288; i++) {
+      glucoseReads.add(new GlucoseRead(UPDATE_TIME.minusSeconds(300 * i), LOCAL_TIME.minusMinutes(5 * i),
+              40f + i * 1.5f, GlucoseRead.Unit.MG_PER_DL));
+    }
+    List<InsulinInjection> injections = Collections.emptyList();
+    List<FoodEvent> foods = Collections.emptyList();
+    List<ExerciseSession> exerciseSessions = Collections.emptyList();
+
+    assertSameExport(new SyncData(glucoseReads, injections, foods, exerciseSessions,
+            new DeviceInfo("serialNumber", "hId", "hRv"), UPDATE_TIME));
+  }
+
+  @Test
+  public void eventsShouldBeMergedInTheMappedOrder() throws Exception {
+    List<GlucoseRead> glucoseReads = Collections.emptyList();
+    List<InsulinInjection> injections = newArrayList();
+    injections.add(new InsulinInjection(Instant.ofEpochSecond(3000), LOCAL_TIME, LOCAL_TIME, 2.5f,
+            InsulinInjection.InsulinType.UNKNOWN, "Humalog"));
+    injections.add(new InsulinInjection(Instant.ofEpochSecond(100), LOCAL_TIME, LOCAL_TIME, 10f,
+            InsulinInjection.InsulinType.UNKNOWN, "Humalog"));
+    List<FoodEvent> foods = newArrayList();
+    foods.add(new FoodEvent(Instant.ofEpochSecond(2000), LOCAL_TIME, LOCAL_TIME, 10.25f, 0));
+    foods.add(new FoodEvent(Instant.ofEpochSecond(100), LOCAL_TIME, LOCAL_TIME, 12.5f, 0));
+    foods.add(new FoodEvent(Instant.ofEpochSecond(100, 500000000), LOCAL_TIME, LOCAL_TIME, 30f, 0));
+    List<ExerciseSession> exerciseSessions = newArrayList();
+    exerciseSessions.add(new ExerciseSession(Instant.ofEpochSecond(2000), LOCAL_TIME, LOCAL_TIME,
+            ExerciseSession.Intensity.MEDIUM, Duration.ofMinutes(45), "run"));
+    exerciseSessions.add(new ExerciseSession(Instant.ofEpochSecond(5000), LOCAL_TIME, LOCAL_TIME,
+            ExerciseSession.Intensity.HEAVY, Duration.ofMinutes(20), "sprints"));
+
+    assertSameExport(new SyncData(glucoseReads, injections, foods, exerciseSessions,
+            new DeviceInfo("serialNumber", "hId", "hRv"), UPDATE_TIME));
+  }
+
+  @Test
+  public void recordsShouldBeWrittenInTheStudioLayout() throws Exception {
+    List<GlucoseRead> glucoseReads = newArrayList(new GlucoseRead(Instant.EPOCH, LOCAL_TIME, 83f,
+            GlucoseRead.Unit.MG_PER_DL));
+    List<InsulinInjection> injections = newArrayList(new InsulinInjection(Instant.ofEpochSecond(60), LOCAL_TIME,
+            LOCAL_TIME, 2.5f, InsulinInjection.InsulinType.UNKNOWN, "Humalog"));
+    List<FoodEvent> foods = Collections.emptyList();
+    List<ExerciseSession> exerciseSessions = Collections.emptyList();
+
+    String streamed = assertSameExport(new SyncData(glucoseReads, injections, foods, exerciseSessions,
+            new DeviceInfo("serialNumber", "hId", "hRv"), UPDATE_TIME));
+
+    assertThat(streamed.contains(
+            "<Glucose InternalTime=\"1970-01-01 00:00:00\" DisplayTime=\"2013-10-10 12:00:00\" Value=\"83\"/>"),
+            is(true));
+    assertThat(streamed.contains("<Event InternalTime=\"1970-01-01 00:01:00\" DisplayTime=\"2013-10-10 12:00:00\" "
+            + "EventTime=\"2013-10-10 12:00:00\" EventType=\"Insulin\" Decription=\"Insulin 2.50 units\"/>"), is(true));
+  }
+
+  private String assertSameExport(SyncData syncData) throws Exception {
+    new StreamingXmlDataExporter(propertiesFor(this.streamingDirectory)).exportData(syncData);
+    new XmlDataExporter(propertiesFor(this.mappingDirectory)).exportData(syncData);
+
+    String fileName = String.format("blood-shepherd-export-%s.xml", UPDATE_TIME.toEpochMilli());
+    String streamed = Files.toString(new File(this.streamingDirectory, fileName), Charsets.UTF_8);
+    String mapped = Files.toString(new File(this.mappingDirectory, fileName), Charsets.UTF_8);
+    assertThat(streamed, equalTo(mapped));
+    return streamed;
+  }
+
+  private static BloodShepherdProperties propertiesFor(File outputDirectory) {
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    properties.put(BloodShepherdProperties.OUTPUT_PATH, outputDirectory.getAbsolutePath());
+    return properties;
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+}
@@ -0,0 +1,68 @@
+package org.glukit.export;
+
+import org.junit.Test;
+import org.threeten.bp.Instant;
+import org.threeten.bp.LocalDateTime;
+import org.threeten.bp.ZoneId;
+import org.threeten.bp.format.DateTimeFormatter;
+
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link TimestampFormatter}.
+ *
+ * @author alexandre.normand
+ */
+public class TestTimestampFormatter {
+  private static final DateTimeFormatter REFERENCE_FORMATTER =
+          DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.of("UTC"));
+
+  @Test
+  public void instantsShouldBeFormattedInUtc() throws Exception {
+    TimestampFormatter formatter = new TimestampFormatter();
+
+    assertThat(formatter.format(Instant.EPOCH), equalTo("1970-01-01 00:00:00"));
+    assertThat(formatter.format(Instant.ofEpochSecond(1400000000L, 999999999)), equalTo("2014-05-13 16:53:20"));
+    assertThat(formatter.format(Instant.ofEpochSecond(-1L)), equalTo("1969-12-31 23:59:59"));
+  }
+
+  @Test
+  public void localDateTimesShouldBeFormattedAsIs() throws Exception {
+    TimestampFormatter formatter = new TimestampFormatter();
+
+    assertThat(formatter.format(LocalDateTime.of(2013, 10, 10, 12, 5, 9)), equalTo("2013-10-10 12:05:09"));
+    assertThat(formatter.format(LocalDateTime.of(2, 1, 31, 0, 0)), equalTo("0002-01-31 00:00:00"));
+  }
+
+  @Test
+  public void formattingShouldMatchTheDateTimeFormatter() throws Exception {
+    TimestampFormatter formatter = new TimestampFormatter();
+    Random random = new Random(42L);
+    // Mostly five minutes apart like glucose reads, with the odd jump to another year to invalidate the day cache
+    long epochSecond = 1400000000L;
+    for (int i = 0; i < 100000; i++) {
+      epochSecond += i % 1000 == 0 ? random.nextInt(Integer.MAX_VALUE) - Integer.MAX_VALUE / 2 : 300 + i % 7;
+      Instant instant = Instant.ofEpochSecond(epochSecond);
+      assertThat(formatter.format(instant), equalTo(REFERENCE_FORMATTER.format(instant)));
+    }
+  }
+
+  @Test
+  public void formattingShouldWriteAtTheOffset() throws Exception {
+    char[] buffer = "Time=\"...................\"".toCharArray();
+
+    int end = new TimestampFormatter().format(LocalDateTime.of(2013, 10, 10, 12, 0), buffer, 6);
+
+    assertThat(end, is(6 + TimestampFormatter.LENGTH));
+    assertThat(new String(buffer), equalTo("Time=\"2013-10-10 12:00:00\""));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void yearsBeyondFourDigitsShouldBeRejected() throws Exception {
+    new TimestampFormatter().format(LocalDateTime.of(10000, 1, 1, 0, 0));
+  }
+}
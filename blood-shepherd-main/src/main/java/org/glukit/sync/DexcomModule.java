@@ -28,7 +28,7 @@ import com.google.inject.AbstractModule;
 import com.google.inject.Provides;
 import org.glukit.dexcom.sync.*;
 import org.glukit.dexcom.sync.g4.DexcomG4DeviceFilter;
-import org.glukit.export.XmlDataExporter;
+import org.glukit.export.StreamingXmlDataExporter;
 import org.glukit.sync.api.BloodShepherdPreferences;
 import org.glukit.sync.api.BloodShepherdProperties;
 import org.glukit.sync.api.DataExporter;
@@ -57,7 +57,7 @@ public class DexcomModule extends AbstractModule {
     bind(DataOutputFactory.class).to(LittleEndianDataOutputFactory.class);
     bind(DataInputFactory.class).to(LittleEndianDataInputFactory.class);
     bind(AdapterService.class).to(DexcomAdapterService.class);
-    bind(DataExporter.class).to(XmlDataExporter.class);
+    bind(DataExporter.class).to(StreamingXmlDataExporter.class);
   }
 
   @Provides
@@ -30,6 +30,7 @@ import com.google.inject.Guice;
 import com.google.inject.Inject;
 import com.google.inject.Injector;
 import org.glukit.dexcom.sync.DexcomDaemon;
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
 import org.glukit.export.XmlDataExporter;
 import org.glukit.sync.api.BloodShepherdPreferences;
 import org.glukit.sync.api.BloodShepherdProperties;
@@ -60,6 +61,23 @@ public class DexcomReceiverSyncService {
   @Parameter(names = "-sinceAsEpochMillis", required = false, description = "resets the value of the last sync time to the provided value")
   Long since;
 
+  @Parameter(names = "-capturePath", required = false,
+          description = "appends the raw receiver traffic of every sync to this session log, to replay it later")
+  String capturePath;
+
+  @Parameter(names = "-statsPath", required = false,
+          description = "the directory to write the performance report of every sync to, defaults to the output path",
+          validateWith = ExistingDirectoryValidator.class)
+  String statsPath;
+
+  @Parameter(names = "-pagesPerCommand", required = false,
+          description = "the number of database pages to read per command, defaults to 4")
+  Integer pagesPerCommand;
+
+  @Parameter(names = "-autoTunePagesPerCommand", required = false,
+          description = "measures which number of pages per command reads the fastest for the receiver's firmware")
+  boolean autoTunePagesPerCommand;
+
   public DexcomReceiverSyncService() {
 
   }
@@ -68,11 +86,25 @@ public class DexcomReceiverSyncService {
     BloodShepherdProperties properties = new BloodShepherdProperties();
     properties.putAll(System.getProperties());
     properties.put(BloodShepherdProperties.OUTPUT_PATH, this.outputPath);
+    if (this.capturePath != null) {
+      properties.put(BloodShepherdProperties.CAPTURE_PATH, this.capturePath);
+    }
+    if (this.statsPath != null) {
+      properties.put(BloodShepherdProperties.STATS_PATH, this.statsPath);
+    }
+    if (this.pagesPerCommand != null) {
+      properties.put(BloodShepherdProperties.PAGES_PER_COMMAND, String.valueOf(this.pagesPerCommand));
+    }
+    if (this.autoTunePagesPerCommand) {
+      properties.put(BloodShepherdProperties.AUTO_TUNE_PAGES_PER_COMMAND, Boolean.TRUE.toString());
+    }
 
     BloodShepherdPreferences preferences = new BloodShepherdPreferences();
     if (this.since != null) {
       LOGGER.info("Overriding last sync time to {}.", this.since);
       preferences.saveLastSyncTime(Instant.ofEpochMilli(this.since));
+      // The page high-water marks would otherwise keep us from going back further than the last sync
+      new DexcomSyncPreferences().clear();
     }
 
     Injector injector = Guice.createInjector(new DexcomModule(properties));
@@ -0,0 +1,76 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.sync.api.ExerciseSession;
+import org.glukit.sync.api.FoodEvent;
+import org.glukit.sync.api.InsulinInjection;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * The user events of a sync once converted, in the order they were handled.
+ *
+ * @author alexandre.normand
+ */
+public class ConvertedUserEvents {
+  private final List<InsulinInjection> insulinInjections = newArrayList();
+  private final List<FoodEvent> foodEvents = newArrayList();
+  private final List<ExerciseSession> exerciseSessions = newArrayList();
+
+  public void addInsulinInjection(InsulinInjection insulinInjection) {
+    this.insulinInjections.add(insulinInjection);
+  }
+
+  public void addFoodEvent(FoodEvent foodEvent) {
+    this.foodEvents.add(foodEvent);
+  }
+
+  public void addExerciseSession(ExerciseSession exerciseSession) {
+    this.exerciseSessions.add(exerciseSession);
+  }
+
+  /**
+   * Appends the events converted from records that came after the ones converted here.
+   */
+  public void addAll(ConvertedUserEvents other) {
+    this.insulinInjections.addAll(other.insulinInjections);
+    this.foodEvents.addAll(other.foodEvents);
+    this.exerciseSessions.addAll(other.exerciseSessions);
+  }
+
+  public List<InsulinInjection> getInsulinInjections() {
+    return insulinInjections;
+  }
+
+  public List<FoodEvent> getFoodEvents() {
+    return foodEvents;
+  }
+
+  public List<ExerciseSession> getExerciseSessions() {
+    return exerciseSessions;
+  }
+}
@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkPositionIndexes;
+
+/**
+ * CRC16 (CCITT/XModem: polynomial 0x1021, initial value of 0, msb-first) as used by the receiver for packets,
+ * page headers and records.
+ * <p/>
+ * Instances compute a crc incrementally with {@link #update}, which is handy to check a packet as it comes in.
+ * The static {@link #compute} methods are for one-shot crcs. Nothing is ever copied: all methods work on offsets
+ * of the given array or buffer.
+ * <p/>
+ * Longer inputs go through slicing-by-8 tables which process 8 bytes per iteration rather than one. Each
+ * {@code TABLES[k][i]} is the crc of byte {@code i} followed by {@code k} zero bytes so the contribution of each byte
+ * of a block can be looked up independently and xor'ed together.
+ *
+ * @author alexandre.normand
+ */
+public final class Crc16 {
+  private static final int POLYNOMIAL = 0x1021;
+  private static final int SLICES = 8;
+  private static final int[][] TABLES = buildTables();
+
+  private int value = 0;
+
+  public Crc16 update(byte element) {
+    this.value = updateByte(this.value, element);
+    return this;
+  }
+
+  public Crc16 update(byte[] bytes) {
+    return update(bytes, 0, bytes.length);
+  }
+
+  public Crc16 update(byte[] bytes, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, bytes.length);
+    this.value = updateSlicingBy8(this.value, bytes, offset, length);
+    return this;
+  }
+
+  /**
+   * Updates with {@code length} bytes of the buffer starting at absolute index {@code offset}. The buffer's
+   * position is left untouched.
+   */
+  public Crc16 update(ByteBuffer buffer, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, buffer.limit());
+    if (buffer.hasArray()) {
+      this.value = updateSlicingBy8(this.value, buffer.array(), buffer.arrayOffset() + offset, length);
+    } else {
+      for (int i = offset; i < offset + length; i++) {
+        this.value = updateByte(this.value, buffer.get(i));
+      }
+    }
+    return this;
+  }
+
+  public int getValue() {
+    return this.value;
+  }
+
+  public Crc16 reset() {
+    this.value = 0;
+    return this;
+  }
+
+  public static int compute(byte[] bytes, int offset, int length) {
+    return new Crc16().update(bytes, offset, length).getValue();
+  }
+
+  public static int compute(ByteBuffer buffer, int offset, int length) {
+    return new Crc16().update(buffer, offset, length).getValue();
+  }
+
+  /**
+   * Reference implementation processing a byte at a time.
+   */
+  public static int computeBytewise(byte[] bytes, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, bytes.length);
+    int crc = 0;
+    for (int i = offset; i < offset + length; i++) {
+      crc = updateByte(crc, bytes[i]);
+    }
+    return crc;
+  }
+
+  /**
+   * Slicing-by-4 variant, processing 4 bytes per iteration with half the tables of slicing-by-8.
+   */
+  public static int computeSlicingBy4(byte[] bytes, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, bytes.length);
+    int crc = 0;
+    int i = offset;
+    int end = offset + length;
+    for (; i + 4 <= end; i += 4) {
+      crc = TABLES[3][((crc >>> 8) ^ bytes[i]) & 0xFF] ^
+              TABLES[2][(crc ^ bytes[i + 1]) & 0xFF] ^
+              TABLES[1][bytes[i + 2] & 0xFF] ^
+              TABLES[0][bytes[i + 3] & 0xFF];
+    }
+    for (; i < end; i++) {
+      crc = updateByte(crc, bytes[i]);
+    }
+    return crc;
+  }
+
+  /**
+   * Slicing-by-8, processing 8 bytes per iteration.
+   */
+  public static int computeSlicingBy8(byte[] bytes, int offset, int length) {
+    checkPositionIndexes(offset, offset + length, bytes.length);
+    return updateSlicingBy8(0, bytes, offset, length);
+  }
+
+  private static int updateSlicingBy8(int crc, byte[] bytes, int offset, int length) {
+    int i = offset;
+    int end = offset + length;
+    for (; i + SLICES <= end; i += SLICES) {
+      crc = TABLES[7][((crc >>> 8) ^ bytes[i]) & 0xFF] ^
+              TABLES[6][(crc ^ bytes[i + 1]) & 0xFF] ^
+              TABLES[5][bytes[i + 2] & 0xFF] ^
+              TABLES[4][bytes[i + 3] & 0xFF] ^
+              TABLES[3][bytes[i + 4] & 0xFF] ^
+              TABLES[2][bytes[i + 5] & 0xFF] ^
+              TABLES[1][bytes[i + 6] & 0xFF] ^
+              TABLES[0][bytes[i + 7] & 0xFF];
+    }
+    for (; i < end; i++) {
+      crc = updateByte(crc, bytes[i]);
+    }
+    return crc;
+  }
+
+  private static int updateByte(int crc, byte element) {
+    return ((crc << 8) ^ TABLES[0][((crc >>> 8) ^ element) & 0xFF]) & 0xFFFF;
+  }
+
+  private static int[][] buildTables() {
+    int[][] tables = new int[SLICES][256];
+    for (int i = 0; i < 256; i++) {
+      int crc = i << 8;
+      for (int bit = 0; bit < 8; bit++) {
+        crc = (crc & 0x8000) != 0 ? (crc << 1) ^ POLYNOMIAL : crc << 1;
+      }
+      tables[0][i] = crc & 0xFFFF;
+    }
+
+    for (int k = 1; k < SLICES; k++) {
+      for (int i = 0; i < 256; i++) {
+        int previous = tables[k - 1][i];
+        tables[k][i] = ((previous << 8) ^ tables[0][(previous >>> 8) & 0xFF]) & 0xFFFF;
+      }
+    }
+    return tables;
+  }
+}
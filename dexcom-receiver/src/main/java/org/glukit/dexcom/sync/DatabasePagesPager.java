@@ -23,43 +23,79 @@
 
 package org.glukit.dexcom.sync;
 
-import com.google.common.primitives.UnsignedBytes;
 import org.glukit.dexcom.sync.model.DatabaseReadRequestSpec;
 
 import java.util.Iterator;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
 import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND;
 
 /**
  * Pager/iterator to go through all pages of a database. This uses the data from a
  * {@link org.glukit.dexcom.sync.responses.PageRangeResponse} and returns an iterator that will
  * go over all {@link DatabaseReadRequestSpec}s required to read all of it.
+ * <p/>
+ * With {@link Direction#DESCENDING}, the chunks start from the last page and go back towards the first one which
+ * lets callers stop as soon as they've reached data they already have. Pages within a chunk are still in ascending
+ * order since that's how the receiver returns them.
+ * <p/>
+ * Chunks are of {@link DatabaseReadRequestSpec#DEFAULT_PAGES_PER_COMMAND} pages unless the receiver is known to
+ * support more, see {@link PagesPerCommandTuner}.
  *
  * @author alexandre.normand
  */
 public class DatabasePagesPager implements Iterable<DatabaseReadRequestSpec> {
   private long firstPage;
   private long lastPage;
+  private Direction direction;
+  private int pagesPerCommand;
 
   public DatabasePagesPager(long firstPage, long lastPage) {
+    this(firstPage, lastPage, Direction.ASCENDING);
+  }
+
+  public DatabasePagesPager(long firstPage, long lastPage, Direction direction) {
+    this(firstPage, lastPage, direction, DEFAULT_PAGES_PER_COMMAND);
+  }
+
+  public DatabasePagesPager(long firstPage, long lastPage, Direction direction, int pagesPerCommand) {
+    checkArgument(pagesPerCommand > 0 && pagesPerCommand <= MAX_PAGES_PER_COMMAND, "Command is limited to [%s] " +
+            "pages or less, given invalid value of [%s]", MAX_PAGES_PER_COMMAND, pagesPerCommand);
     this.firstPage = firstPage;
     this.lastPage = lastPage;
+    this.direction = direction;
+    this.pagesPerCommand = pagesPerCommand;
   }
 
   @Override
   public Iterator<DatabaseReadRequestSpec> iterator() {
-    List<DatabaseReadRequestSpec> chunks = buildListOfChunks();
+    List<DatabaseReadRequestSpec> chunks = this.direction == Direction.ASCENDING ?
+            buildListOfChunks() : buildListOfDescendingChunks();
     return chunks.iterator();
   }
 
   private List<DatabaseReadRequestSpec> buildListOfChunks() {
     List<DatabaseReadRequestSpec> specs = newArrayList();
-    for (long chunkStart = this.firstPage; chunkStart <= lastPage; chunkStart+= MAX_PAGES_PER_COMMAND) {
+    for (long chunkStart = this.firstPage; chunkStart <= lastPage; chunkStart+= this.pagesPerCommand) {
       specs.add(new DatabaseReadRequestSpec(chunkStart,
-              UnsignedBytes.min((byte) (lastPage - chunkStart + 1), MAX_PAGES_PER_COMMAND)));
+              (byte) Math.min(lastPage - chunkStart + 1, this.pagesPerCommand)));
     }
     return specs;
   }
+
+  private List<DatabaseReadRequestSpec> buildListOfDescendingChunks() {
+    List<DatabaseReadRequestSpec> specs = newArrayList();
+    for (long chunkEnd = this.lastPage; chunkEnd >= firstPage; chunkEnd -= this.pagesPerCommand) {
+      long chunkStart = Math.max(this.firstPage, chunkEnd - this.pagesPerCommand + 1);
+      specs.add(new DatabaseReadRequestSpec(chunkStart, (byte) (chunkEnd - chunkStart + 1)));
+    }
+    return specs;
+  }
+
+  public static enum Direction {
+    ASCENDING, DESCENDING
+  }
 }
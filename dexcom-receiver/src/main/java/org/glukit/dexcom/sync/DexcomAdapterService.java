@@ -2,33 +2,41 @@ package org.glukit.dexcom.sync;
 
 import com.google.common.base.Function;
 import com.google.common.base.Predicate;
-import com.google.common.collect.Collections2;
 import org.glukit.dexcom.sync.g4.DexcomG4Constants;
 import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.GlucoseReadColumns;
 import org.glukit.dexcom.sync.model.GlucoseReadRecord;
 import org.glukit.dexcom.sync.model.ManufacturingParameters;
 import org.glukit.dexcom.sync.model.UserEventRecord;
+import org.glukit.dexcom.sync.model.UserEventRecord.UserEventType;
 import org.glukit.sync.AdapterService;
 import org.glukit.sync.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.threeten.bp.Duration;
 import org.threeten.bp.Instant;
 import org.threeten.bp.LocalDateTime;
-import org.threeten.bp.ZoneId;
+import org.threeten.bp.ZoneOffset;
 
 import javax.annotation.Nullable;
 import java.util.Arrays;
-import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
-import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Lists.newArrayListWithCapacity;
 import static org.glukit.dexcom.sync.model.UserEventRecord.UserEventType.CARBS;
 import static org.glukit.dexcom.sync.model.UserEventRecord.UserEventType.EXERCISE;
 import static org.glukit.dexcom.sync.model.UserEventRecord.UserEventType.INSULIN;
 import static org.glukit.sync.api.ExerciseSession.EMPTY_DESCRIPTION;
 import static org.glukit.sync.api.InsulinInjection.InsulinType.UNKNOWN;
 import static org.glukit.sync.api.InsulinInjection.UNAVAILABLE_INSULIN_NAME;
+import static java.lang.String.format;
 
 /**
  * This service adapts Dexcom-specific physical models to higher-level models.
@@ -36,6 +44,7 @@ import static org.glukit.sync.api.InsulinInjection.UNAVAILABLE_INSULIN_NAME;
  * @author alexandre.normand
  */
 public class DexcomAdapterService implements AdapterService<DexcomSyncData> {
+  private static Logger LOGGER = LoggerFactory.getLogger(DexcomAdapterService.class);
 
   private static final int GLUCOSE_DISPLAY_ONLY_MASK = 0x8000;
   private static final int GLUCOSE_READ_VALUE_MASK = 0x3ff;
@@ -48,89 +57,55 @@ public class DexcomAdapterService implements AdapterService<DexcomSyncData> {
     }
   };
 
+  /**
+   * About 4 months of reads, below that a conversion takes a few milliseconds and isn't worth splitting.
+   */
+  public static final int DEFAULT_PARALLEL_CONVERSION_THRESHOLD = 32 * 1024;
+  // Size of the ranges a parallel conversion is split in, small enough to keep all cores busy on a backfill
+  private static final int PARALLEL_CONVERSION_RANGE_SIZE = 4 * 1024;
+  // Worker threads are daemons and only started on the first parallel conversion
+  private static final ForkJoinPool CONVERSION_POOL = new ForkJoinPool();
+
   static final List<Integer> SPECIAL_GLUCOSE_VALUES = Arrays.asList(0, 1, 2, 3, 5, 6, 9, 10, 12);
+  // Indexed by the masked glucose value so checking a read doesn't box it or scan the list
+  private static final boolean[] SPECIAL_GLUCOSE_VALUE_TABLE = new boolean[GLUCOSE_READ_VALUE_MASK + 1];
 
-  private static final Predicate<UserEventRecord> INSULIN_EVENT_FILTER = new Predicate<UserEventRecord>() {
-    @Override
-    public boolean apply(@Nullable UserEventRecord input) {
-      return input.getEventType() == INSULIN;
+  static {
+    for (int specialGlucoseValue : SPECIAL_GLUCOSE_VALUES) {
+      SPECIAL_GLUCOSE_VALUE_TABLE[specialGlucoseValue] = true;
     }
-  };
+  }
 
-  private static final Predicate<UserEventRecord> EXERCISE_EVENT_FILTER = new Predicate<UserEventRecord>() {
-    @Override
-    public boolean apply(@Nullable UserEventRecord input) {
-      return input.getEventType() == EXERCISE;
-    }
-  };
+  private static final long DEXCOM_EPOCH_SECONDS = DexcomG4Constants.DEXCOM_EPOCH.getEpochSecond();
+  private static final int DEXCOM_EPOCH_NANOS = DexcomG4Constants.DEXCOM_EPOCH.getNano();
 
-  private static final Predicate<UserEventRecord> CARB_EVENT_FILTER = new Predicate<UserEventRecord>() {
-    @Override
-    public boolean apply(@Nullable UserEventRecord input) {
-      return input.getEventType() == CARBS;
-    }
-  };
+  /**
+   * Same as {@code DEXCOM_EPOCH.plusSeconds(secondsSinceDexcomEpoch)} without going through a boxed value.
+   */
+  static Instant toInstant(long secondsSinceDexcomEpoch) {
+    return Instant.ofEpochSecond(DEXCOM_EPOCH_SECONDS + secondsSinceDexcomEpoch, DEXCOM_EPOCH_NANOS);
+  }
 
-  private Function<Long, Instant> DEXCOM_SYSTEM_TIME_TO_INSTANT = new Function<Long, Instant>() {
-    @Nullable
-    @Override
-    public Instant apply(@Nullable Long secondsSinceDexcomEpoch) {
-      checkNotNull(secondsSinceDexcomEpoch, "secondsSinceDexcomEpoch should be non-null.");
-      return DexcomG4Constants.DEXCOM_EPOCH.plusSeconds(secondsSinceDexcomEpoch);
-    }
-  };
+  /**
+   * The receiver's display time is kept as if it were UTC, this is the same as
+   * {@code LocalDateTime.ofInstant(DEXCOM_EPOCH.plusSeconds(secondsSinceDexcomEpoch), ZoneId.of("UTC"))} minus the
+   * zone lookup and intermediate {@link Instant}.
+   */
+  static LocalDateTime toLocalDateTime(long secondsSinceDexcomEpoch) {
+    return LocalDateTime.ofEpochSecond(DEXCOM_EPOCH_SECONDS + secondsSinceDexcomEpoch, DEXCOM_EPOCH_NANOS,
+        ZoneOffset.UTC);
+  }
 
-  private Function<Long, LocalDateTime> DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME = new Function<Long, LocalDateTime>() {
-    @Nullable
-    @Override
-    public LocalDateTime apply(@Nullable Long secondsSinceDexcomEpoch) {
-      checkNotNull(secondsSinceDexcomEpoch, "secondsSinceDexcomEpoch should be non-null.");
-      Instant instantInUTC = DexcomG4Constants.DEXCOM_EPOCH.plusSeconds(secondsSinceDexcomEpoch);
-      return LocalDateTime.ofInstant(instantInUTC, ZoneId.of("UTC"));
+  /**
+   * @return the glucose value or {@link #INVALID_GLUCOSE_RECORD_VALUE} for display only reads and special values.
+   */
+  static float toGlucoseValue(int glucoseValueWithFlags) {
+    boolean isDisplayOnly = (glucoseValueWithFlags & GLUCOSE_DISPLAY_ONLY_MASK) != 0;
+    if (isDisplayOnly || SPECIAL_GLUCOSE_VALUE_TABLE[glucoseValueWithFlags & GLUCOSE_READ_VALUE_MASK]) {
+      return INVALID_GLUCOSE_RECORD_VALUE;
     }
-  };
-
-  private Function<Integer, Float> DEXCOM_GLUCOSE_VALUE_TO_GLUCOSE_VALUE =
-      new Function<Integer, Float>() {
-        @Nullable
-        @Override
-        public Float apply(@Nullable Integer readValue) {
-          checkNotNull(readValue, "readValue should be non-null.");
-
-          boolean isDisplayOnly = (readValue & GLUCOSE_DISPLAY_ONLY_MASK) != 0;
-
-          if (isDisplayOnly) {
-            return INVALID_GLUCOSE_RECORD_VALUE;
-          } else {
-            int actualValue = readValue & GLUCOSE_READ_VALUE_MASK;
-            if (SPECIAL_GLUCOSE_VALUES.contains(actualValue)) {
-              return INVALID_GLUCOSE_RECORD_VALUE;
-            } else {
-              return readValue.floatValue();
-            }
-          }
-        }
-      };
-
-  private Function<GlucoseReadRecord, GlucoseRead> DEXCOM_GLUCOSE_RECORD_TO_GLUCOSE_READ =
-      new Function<GlucoseReadRecord, GlucoseRead>() {
-        @Override
-        public GlucoseRead apply(@javax.annotation.Nullable GlucoseReadRecord glucoseReadRecord) {
-          checkNotNull(glucoseReadRecord, "glucoseReadRecord should be non-null");
-
-          Instant internalTimeUTC =
-              DEXCOM_SYSTEM_TIME_TO_INSTANT.apply(glucoseReadRecord.getInternalSecondsSinceDexcomEpoch());
-          LocalDateTime displayTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(glucoseReadRecord.getLocalSecondsSinceDexcomEpoch());
-
-          float glucoseValue =
-              DEXCOM_GLUCOSE_VALUE_TO_GLUCOSE_VALUE.apply(glucoseReadRecord.getGlucoseValueWithFlags());
-
-          // TODO: remove the hardcoded unit and replace by the actual unit as per the configuration settings of the
-          // receiver
-          return new GlucoseRead(internalTimeUTC, displayTime, glucoseValue, GlucoseRead.Unit.MG_PER_DL);
-        }
-      };
+    return (float) glucoseValueWithFlags;
+  }
 
   private Function<ManufacturingParameters, DeviceInfo> DEXCOM_MANUFACTURING_PARAMS_TO_DEVICE_INFO =
       new Function<ManufacturingParameters, DeviceInfo>() {
@@ -143,44 +118,45 @@ public class DexcomAdapterService implements AdapterService<DexcomSyncData> {
         }
       };
 
-  private Function<UserEventRecord, InsulinInjection> USER_EVENT_RECORD_TO_INSULIN_INJECTION =
-      new Function<UserEventRecord, InsulinInjection>() {
+  private final UserEventHandler INSULIN_EVENT_HANDLER =
+      new UserEventHandler() {
         @Override
-        public InsulinInjection apply(@javax.annotation.Nullable UserEventRecord insulinEvent) {
+        public void handle(UserEventRecord insulinEvent, ConvertedUserEvents convertedUserEvents) {
           checkNotNull(insulinEvent, "insulinEvent should be non-null");
           checkArgument(insulinEvent.getEventType() == INSULIN);
 
           Instant internalTimeUTC =
-              DEXCOM_SYSTEM_TIME_TO_INSTANT.apply(insulinEvent.getInternalSecondsSinceDexcomEpoch());
+              toInstant(insulinEvent.getInternalSecondsSinceDexcomEpoch());
           LocalDateTime localRecordedTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(insulinEvent.getLocalSecondsSinceDexcomEpoch());
+              toLocalDateTime(insulinEvent.getLocalSecondsSinceDexcomEpoch());
           LocalDateTime eventLocalTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(insulinEvent.getEventSecondsSinceDexcomEpoch());
+              toLocalDateTime(insulinEvent.getEventSecondsSinceDexcomEpoch());
 
           float unitValue = insulinEvent.getEventValue() / 100.f;
 
-          return new InsulinInjection(internalTimeUTC, localRecordedTime, eventLocalTime, unitValue, UNKNOWN,
-              UNAVAILABLE_INSULIN_NAME);
+          convertedUserEvents.addInsulinInjection(new InsulinInjection(internalTimeUTC, localRecordedTime,
+              eventLocalTime, unitValue, UNKNOWN, UNAVAILABLE_INSULIN_NAME));
         }
       };
 
-  private Function<UserEventRecord, FoodEvent> USER_EVENT_RECORD_TO_FOOD_EVENT =
-      new Function<UserEventRecord, FoodEvent>() {
+  private final UserEventHandler CARB_EVENT_HANDLER =
+      new UserEventHandler() {
         @Override
-        public FoodEvent apply(@javax.annotation.Nullable UserEventRecord carbEvent) {
-          checkNotNull(carbEvent, "insulinEvent should be non-null");
+        public void handle(UserEventRecord carbEvent, ConvertedUserEvents convertedUserEvents) {
+          checkNotNull(carbEvent, "carbEvent should be non-null");
           checkArgument(carbEvent.getEventType() == CARBS);
 
           Instant internalTimeUTC =
-              DEXCOM_SYSTEM_TIME_TO_INSTANT.apply(carbEvent.getInternalSecondsSinceDexcomEpoch());
+              toInstant(carbEvent.getInternalSecondsSinceDexcomEpoch());
           LocalDateTime localRecordedTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(carbEvent.getLocalSecondsSinceDexcomEpoch());
+              toLocalDateTime(carbEvent.getLocalSecondsSinceDexcomEpoch());
           LocalDateTime eventLocalTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(carbEvent.getEventSecondsSinceDexcomEpoch());
+              toLocalDateTime(carbEvent.getEventSecondsSinceDexcomEpoch());
 
           float unitValue = carbEvent.getEventValue();
 
-          return new FoodEvent(internalTimeUTC, localRecordedTime, eventLocalTime, unitValue, 0f);
+          convertedUserEvents.addFoodEvent(new FoodEvent(internalTimeUTC, localRecordedTime, eventLocalTime,
+              unitValue, 0f));
         }
       };
 
@@ -203,19 +179,19 @@ public class DexcomAdapterService implements AdapterService<DexcomSyncData> {
     }
   };
 
-  private Function<UserEventRecord, ExerciseSession> USER_EVENT_RECORD_TO_EXERCISE_SESSION =
-      new Function<UserEventRecord, ExerciseSession>() {
+  private final UserEventHandler EXERCISE_EVENT_HANDLER =
+      new UserEventHandler() {
         @Override
-        public ExerciseSession apply(@javax.annotation.Nullable UserEventRecord exerciseSession) {
+        public void handle(UserEventRecord exerciseSession, ConvertedUserEvents convertedUserEvents) {
           checkNotNull(exerciseSession, "exerciseSession should be non-null");
           checkArgument(exerciseSession.getEventType() == EXERCISE);
 
           Instant internalTimeUTC =
-              DEXCOM_SYSTEM_TIME_TO_INSTANT.apply(exerciseSession.getInternalSecondsSinceDexcomEpoch());
+              toInstant(exerciseSession.getInternalSecondsSinceDexcomEpoch());
           LocalDateTime localRecordedTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(exerciseSession.getLocalSecondsSinceDexcomEpoch());
+              toLocalDateTime(exerciseSession.getLocalSecondsSinceDexcomEpoch());
           LocalDateTime eventLocalTime =
-              DEXCOM_DISPLAY_TIME_TO_LOCAL_DATE_TIME.apply(exerciseSession.getEventSecondsSinceDexcomEpoch());
+              toLocalDateTime(exerciseSession.getEventSecondsSinceDexcomEpoch());
 
           long duration = exerciseSession.getEventValue();
 
@@ -224,30 +200,194 @@ public class DexcomAdapterService implements AdapterService<DexcomSyncData> {
           ExerciseSession.Intensity intensity =
               DEXCOM_EXERCISE_INTENSITY_TO_INTENSITY.apply(exerciseIntensity);
 
-          return new ExerciseSession(internalTimeUTC, localRecordedTime, eventLocalTime,
-              intensity, Duration.ofMinutes(duration), EMPTY_DESCRIPTION);
+          convertedUserEvents.addExerciseSession(new ExerciseSession(internalTimeUTC, localRecordedTime,
+              eventLocalTime, intensity, Duration.ofMinutes(duration), EMPTY_DESCRIPTION));
         }
       };
 
+  private int parallelConversionThreshold = DEFAULT_PARALLEL_CONVERSION_THRESHOLD;
+  private final Map<UserEventType, UserEventHandler> userEventHandlers =
+      new EnumMap<UserEventType, UserEventHandler>(UserEventType.class);
+
+  public DexcomAdapterService() {
+    this.userEventHandlers.put(INSULIN, INSULIN_EVENT_HANDLER);
+    this.userEventHandlers.put(CARBS, CARB_EVENT_HANDLER);
+    this.userEventHandlers.put(EXERCISE, EXERCISE_EVENT_HANDLER);
+  }
+
+  /**
+   * Registers the handler for a type of user event, replacing the current one if any. There's none for
+   * {@link UserEventType#HEALTH} events by default as there's no model for them yet, events without a handler are
+   * skipped.
+   * <p/>
+   * Handlers should be set before converting data, they're not meant to be changed while a conversion is running.
+   */
+  public void setUserEventHandler(UserEventType eventType, UserEventHandler handler) {
+    this.userEventHandlers.put(checkNotNull(eventType), checkNotNull(handler));
+  }
+
+  /**
+   * Sets the number of records (glucose reads or user events) from which a conversion is split in ranges converted
+   * in parallel on a {@link ForkJoinPool}, {@link Integer#MAX_VALUE} to always convert on the calling thread. The
+   * output is the same, in the same order, either way. Registered {@link UserEventHandler}s can be called from
+   * several threads at once when converting in parallel.
+   */
+  public void setParallelConversionThreshold(int parallelConversionThreshold) {
+    checkArgument(parallelConversionThreshold > 0, "Invalid parallel conversion threshold [%s]",
+        parallelConversionThreshold);
+    this.parallelConversionThreshold = parallelConversionThreshold;
+  }
+
+  private int getParallelConversionRangeSize() {
+    return Math.min(PARALLEL_CONVERSION_RANGE_SIZE, this.parallelConversionThreshold);
+  }
+
+  /**
+   * Converts the user events in a single pass, dispatching each to the handler registered for its type.
+   */
+  private ConvertedUserEvents convertUserEvents(List<UserEventRecord> userEvents) {
+    if (userEvents.size() >= this.parallelConversionThreshold) {
+      return CONVERSION_POOL.invoke(new UserEventConversionTask(userEvents, 0, userEvents.size()));
+    }
+    return convertUserEvents(userEvents, 0, userEvents.size());
+  }
+
+  private ConvertedUserEvents convertUserEvents(List<UserEventRecord> userEvents, int from, int to) {
+    ConvertedUserEvents convertedUserEvents = new ConvertedUserEvents();
+    int skippedEventCount = 0;
+    for (UserEventRecord userEvent : userEvents.subList(from, to)) {
+      UserEventHandler handler = userEvent.getEventType() == null ? null
+          : this.userEventHandlers.get(userEvent.getEventType());
+      if (handler == null) {
+        skippedEventCount++;
+      } else {
+        handler.handle(userEvent, convertedUserEvents);
+      }
+    }
+
+    if (skippedEventCount > 0) {
+      LOGGER.debug(format("Skipped [%d] user events without a handler", skippedEventCount));
+    }
+    return convertedUserEvents;
+  }
+
+  /**
+   * Converts the reads straight from their columns so we don't create a {@link GlucoseReadRecord} for each. Invalid
+   * reads are skipped before anything is created for them.
+   */
+  private List<GlucoseRead> convertGlucoseReads(GlucoseReadColumns glucoseReadColumns) {
+    if (glucoseReadColumns.size() >= this.parallelConversionThreshold) {
+      // Each range fills its own slice of the array so the reads keep their order whatever the scheduling was
+      GlucoseRead[] convertedReads = new GlucoseRead[glucoseReadColumns.size()];
+      CONVERSION_POOL.invoke(new GlucoseReadConversionTask(glucoseReadColumns, convertedReads, 0,
+          convertedReads.length));
+
+      List<GlucoseRead> glucoseReads = newArrayListWithCapacity(convertedReads.length);
+      for (GlucoseRead glucoseRead : convertedReads) {
+        if (glucoseRead != null) {
+          glucoseReads.add(glucoseRead);
+        }
+      }
+      return glucoseReads;
+    }
+
+    List<GlucoseRead> glucoseReads = newArrayListWithCapacity(glucoseReadColumns.size());
+    for (int i = 0; i < glucoseReadColumns.size(); i++) {
+      GlucoseRead glucoseRead = convertGlucoseRead(glucoseReadColumns, i);
+      if (glucoseRead != null) {
+        glucoseReads.add(glucoseRead);
+      }
+    }
+    return glucoseReads;
+  }
+
+  /**
+   * @return the converted read or {@code null} if it's invalid.
+   */
+  private static GlucoseRead convertGlucoseRead(GlucoseReadColumns glucoseReadColumns, int index) {
+    float glucoseValue = toGlucoseValue(glucoseReadColumns.getGlucoseValueWithFlags(index));
+    if (glucoseValue == INVALID_GLUCOSE_RECORD_VALUE) {
+      return null;
+    }
+
+    // TODO: remove the hardcoded unit and replace by the actual unit as per the configuration settings of the
+    // receiver
+    return new GlucoseRead(toInstant(glucoseReadColumns.getInternalSecondsSinceDexcomEpoch(index)),
+        toLocalDateTime(glucoseReadColumns.getLocalSecondsSinceDexcomEpoch(index)), glucoseValue,
+        GlucoseRead.Unit.MG_PER_DL);
+  }
 
   @Override
   public SyncData convertData(DexcomSyncData source) {
-    List<GlucoseRead> glucoseReads = newArrayList(Collections2.filter(Collections2.transform(source.getGlucoseReads(),
-        DEXCOM_GLUCOSE_RECORD_TO_GLUCOSE_READ), VALID_READS_FILTER));
+    List<GlucoseRead> glucoseReads = convertGlucoseReads(source.getGlucoseReadColumns());
 
     DeviceInfo deviceInfo = DEXCOM_MANUFACTURING_PARAMS_TO_DEVICE_INFO.apply(source.getManufacturingParameters());
 
-    Collection<UserEventRecord> insulinEvents = Collections2.filter(source.getUserEvents(), INSULIN_EVENT_FILTER);
-    Collection<UserEventRecord> exerciseEvents = Collections2.filter(source.getUserEvents(), EXERCISE_EVENT_FILTER);
-    Collection<UserEventRecord> carbEvents = Collections2.filter(source.getUserEvents(), CARB_EVENT_FILTER);
+    ConvertedUserEvents userEvents = convertUserEvents(source.getUserEvents());
+
+    return new SyncData(glucoseReads, userEvents.getInsulinInjections(), userEvents.getFoodEvents(),
+        userEvents.getExerciseSessions(), deviceInfo, source.getUpdateTime());
+  }
+
+  /**
+   * Converts a range of glucose reads into the same range of the target array, leaving invalid reads {@code null}.
+   */
+  private class GlucoseReadConversionTask extends RecursiveAction {
+    private final GlucoseReadColumns glucoseReadColumns;
+    private final GlucoseRead[] convertedReads;
+    private final int from;
+    private final int to;
+
+    private GlucoseReadConversionTask(GlucoseReadColumns glucoseReadColumns, GlucoseRead[] convertedReads,
+                                      int from, int to) {
+      this.glucoseReadColumns = glucoseReadColumns;
+      this.convertedReads = convertedReads;
+      this.from = from;
+      this.to = to;
+    }
 
-    List<InsulinInjection> injections =
-        newArrayList(Collections2.transform(insulinEvents, USER_EVENT_RECORD_TO_INSULIN_INJECTION));
-    List<ExerciseSession> exerciseSessions =
-        newArrayList(Collections2.transform(exerciseEvents, USER_EVENT_RECORD_TO_EXERCISE_SESSION));
-    List<FoodEvent> foodEvents =
-        newArrayList(Collections2.transform(carbEvents, USER_EVENT_RECORD_TO_FOOD_EVENT));
+    @Override
+    protected void compute() {
+      if (this.to - this.from <= getParallelConversionRangeSize()) {
+        for (int i = this.from; i < this.to; i++) {
+          this.convertedReads[i] = convertGlucoseRead(this.glucoseReadColumns, i);
+        }
+        return;
+      }
 
-    return new SyncData(glucoseReads, injections, foodEvents, exerciseSessions, deviceInfo, source.getUpdateTime());
+      int middle = (this.from + this.to) >>> 1;
+      invokeAll(new GlucoseReadConversionTask(this.glucoseReadColumns, this.convertedReads, this.from, middle),
+          new GlucoseReadConversionTask(this.glucoseReadColumns, this.convertedReads, middle, this.to));
+    }
+  }
+
+  /**
+   * Converts a range of user events, joining the converted halves back in their original order.
+   */
+  private class UserEventConversionTask extends RecursiveTask<ConvertedUserEvents> {
+    private final List<UserEventRecord> userEvents;
+    private final int from;
+    private final int to;
+
+    private UserEventConversionTask(List<UserEventRecord> userEvents, int from, int to) {
+      this.userEvents = userEvents;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected ConvertedUserEvents compute() {
+      if (this.to - this.from <= getParallelConversionRangeSize()) {
+        return convertUserEvents(this.userEvents, this.from, this.to);
+      }
+
+      int middle = (this.from + this.to) >>> 1;
+      UserEventConversionTask secondHalf = new UserEventConversionTask(this.userEvents, middle, this.to);
+      secondHalf.fork();
+      ConvertedUserEvents convertedUserEvents =
+          new UserEventConversionTask(this.userEvents, this.from, middle).compute();
+      convertedUserEvents.addAll(secondHalf.join());
+      return convertedUserEvents;
+    }
   }
 }
@@ -23,11 +23,19 @@
 package org.glukit.dexcom.sync;
 
 import com.google.inject.Inject;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.usb4java.LibUsb;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.usb.UsbServices;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
 
 /**
  * The daemon that will start the syncing services.
@@ -36,22 +44,67 @@ import javax.usb.UsbServices;
  */
 public class DexcomDaemon {
   private static Logger LOGGER = LoggerFactory.getLogger(DexcomDaemon.class);
+  private static final long SHUTDOWN_TIMEOUT_IN_SECONDS = 60L;
+
   private final UsbServices usbServices;
   private final DexcomWatcher watcher;
+  private final SyncDispatcher syncDispatcher;
+  private final SyncMetrics syncMetrics;
+  private final ProtocolTracer protocolTracer;
 
   @Inject
-  public DexcomDaemon(UsbServices usbServices, DexcomWatcher watcher) {
+  public DexcomDaemon(UsbServices usbServices, DexcomWatcher watcher, SyncDispatcher syncDispatcher,
+                      SyncMetrics syncMetrics, ProtocolTracer protocolTracer) {
     this.usbServices = usbServices;
     this.watcher = watcher;
+    this.syncDispatcher = syncDispatcher;
+    this.syncMetrics = syncMetrics;
+    this.protocolTracer = protocolTracer;
   }
 
   public void start() {
+    registerMBean(this.syncMetrics, SyncMetrics.OBJECT_NAME);
+    registerMBean(this.protocolTracer, ProtocolTracer.OBJECT_NAME);
     this.usbServices.addUsbServicesListener(watcher);
     LibUsb.init(null);
   }
 
   public void stop() {
     this.usbServices.removeUsbServicesListener(watcher);
+    // Let a sync in progress complete so we don't leave the receiver mid-download or an export half written
+    if (!this.syncDispatcher.shutdown(SHUTDOWN_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+      LOGGER.warn("Sync interrupted by the shutdown, the next one will fetch its data again");
+    }
+    this.watcher.closeReceiverSessions();
     LibUsb.exit(null);
+    unregisterMBean(SyncMetrics.OBJECT_NAME);
+    unregisterMBean(ProtocolTracer.OBJECT_NAME);
+  }
+
+  /**
+   * The MBeans are only for monitoring so failing to expose them over JMX doesn't keep the daemon from syncing.
+   */
+  private static void registerMBean(Object mBean, String name) {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(name);
+      if (!mBeanServer.isRegistered(objectName)) {
+        mBeanServer.registerMBean(mBean, objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.warn(format("Error registering MBean [%s], ignoring.", name), e);
+    }
+  }
+
+  private static void unregisterMBean(String name) {
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    try {
+      ObjectName objectName = new ObjectName(name);
+      if (mBeanServer.isRegistered(objectName)) {
+        mBeanServer.unregisterMBean(objectName);
+      }
+    } catch (JMException e) {
+      LOGGER.warn(format("Error unregistering MBean [%s], ignoring.", name), e);
+    }
   }
 }
@@ -23,39 +23,228 @@
 
 package org.glukit.dexcom.sync;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.google.inject.Inject;
+import com.google.inject.Singleton;
 import jssc.SerialPortList;
 import org.glukit.dexcom.sync.tasks.IsReceiverOnThisPortRunner;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import javax.usb.UsbDevice;
+import javax.usb.UsbDeviceDescriptor;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.google.common.collect.Lists.newArrayList;
+import static java.lang.String.format;
+
 /**
  * Finds the {@link jssc.SerialPort} for the Dexcom receiver
  * @author alexandre.normand
  */
+@Singleton
 public class DexcomReceiverFinder {
-  public static final Pattern DEVICE_FILTER = Pattern.compile(".*tty.dexgblrecv.*");
+  private static Logger LOGGER = LoggerFactory.getLogger(DexcomReceiverFinder.class);
+  // The receiver's name on Mac OS X, on Linux it's a generic ACM device
+  public static final Pattern DEVICE_FILTER = Pattern.compile(".*tty.dexgblrecv.*|ttyACM[0-9]{1,3}");
+  // usb4java doesn't expose the bus and address of a device other than in its name, like "Bus 001 Device 005: ..."
+  private static final Pattern USB4JAVA_DEVICE_NAME = Pattern.compile("^Bus (\\d+) Device (\\d+):");
   private final IsReceiverOnThisPortRunner isReceiverOnThisPortRunner;
+  private final SysfsTtyResolver ttyResolver;
+  private final ConcurrentMap<String, String> lastPortsByDeviceSerial = new ConcurrentHashMap<String, String>();
 
   @Inject
-  public DexcomReceiverFinder(IsReceiverOnThisPortRunner isReceiverOnThisPortRunner) {
+  public DexcomReceiverFinder(IsReceiverOnThisPortRunner isReceiverOnThisPortRunner,
+                              SysfsTtyResolver ttyResolver) {
     this.isReceiverOnThisPortRunner = isReceiverOnThisPortRunner;
+    this.ttyResolver = ttyResolver;
+  }
+
+  /**
+   * Finds the port of an attached receiver. On Linux, the tty of the device is resolved from sysfs and opened
+   * directly. Elsewhere, or if it can't be resolved, the candidate ports are probed with
+   * {@link #openReceiverSession(String)}.
+   */
+  public ReceiverSession openReceiverSession(UsbDevice usbDevice) {
+    String deviceSerial = getDeviceSerial(usbDevice);
+    String tty = resolveTty(usbDevice);
+    if (tty != null) {
+      ReceiverSession session = openResolvedSession(tty);
+      if (session != null) {
+        if (deviceSerial != null) {
+          this.lastPortsByDeviceSerial.put(deviceSerial, session.getName());
+        }
+        return session;
+      }
+    }
+
+    return openReceiverSession(deviceSerial);
+  }
+
+  private String resolveTty(UsbDevice usbDevice) {
+    if (!this.ttyResolver.isSupported()) {
+      return null;
+    }
+
+    Matcher deviceName = USB4JAVA_DEVICE_NAME.matcher(String.valueOf(usbDevice));
+    if (!deviceName.find()) {
+      LOGGER.debug(format("No bus and address in device name [%s], can't resolve its tty", usbDevice));
+      return null;
+    }
+
+    UsbDeviceDescriptor deviceDescriptor = usbDevice.getUsbDeviceDescriptor();
+    String tty = this.ttyResolver.resolveTty(Integer.parseInt(deviceName.group(1)),
+            Integer.parseInt(deviceName.group(2)), deviceDescriptor.idVendor(), deviceDescriptor.idProduct());
+    LOGGER.info(format("Resolved tty [%s] for device [%s]", tty, usbDevice));
+    return tty;
+  }
+
+  /**
+   * Opens a port we know is the receiver's without pinging it first, the sync will fail if it doesn't answer.
+   */
+  ReceiverSession openResolvedSession(String portName) {
+    SerialTransport transport = this.isReceiverOnThisPortRunner.getSerialTransportFactory().newTransport(portName);
+    try {
+      transport.open();
+      return new ReceiverSession(transport);
+    } catch (IOException e) {
+      LOGGER.warn(format("Couldn't open resolved port [%s], probing all ports instead.", portName), e);
+      if (transport.isOpened()) {
+        try {
+          transport.close();
+        } catch (IOException ioe) {
+          LOGGER.warn("Error closing port, ignoring.", ioe);
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * @return the USB serial number of the device or {@code null} if it can't be read.
+   */
+  private static String getDeviceSerial(UsbDevice usbDevice) {
+    try {
+      return usbDevice.getSerialNumberString();
+    } catch (Exception e) {
+      LOGGER.debug("Couldn't read the device serial number, its port won't be remembered.", e);
+      return null;
+    }
   }
 
-  public String findReceiverPort() {
+  /**
+   * Finds the receiver's port, trying the port that last answered for the device first and then probing all
+   * other candidates concurrently with a ping.
+   *
+   * @param deviceSerial the serial of the attached device to remember its port by, can be {@code null} if unknown
+   * @return the session of the port that answered, left opened for the sync.
+   */
+  public ReceiverSession openReceiverSession(@Nullable String deviceSerial) {
     String[] portNames = SerialPortList.getPortNames(DEVICE_FILTER);
 
     if (portNames == null || portNames.length == 0) {
       throw new IllegalStateException("Receiver serial port can't be found");
     }
 
-    for (String port : portNames) {
-      if (this.isReceiverOnThisPortRunner.isReceiver(port)) {
-        return port;
+    return openReceiverSession(deviceSerial, Arrays.asList(portNames));
+  }
+
+  ReceiverSession openReceiverSession(@Nullable String deviceSerial, List<String> portNames) {
+    List<String> candidatePorts = newArrayList(portNames);
+    String lastPort = deviceSerial == null ? null : this.lastPortsByDeviceSerial.get(deviceSerial);
+    if (lastPort != null && candidatePorts.remove(lastPort)) {
+      ReceiverSession session = this.isReceiverOnThisPortRunner.reopenSession(lastPort);
+      if (session != null) {
+        return session;
       }
+      LOGGER.info(format("Receiver [%s] doesn't answer on its last port [%s] anymore, probing the others",
+              deviceSerial, lastPort));
+    }
+
+    ReceiverSession session = probeConcurrently(candidatePorts);
+    if (session == null) {
+      throw new IllegalStateException("Found some matching devices but none of them identified as the dexcom " +
+              "receiver. Maybe another application is holding the port?");
+    }
+
+    if (deviceSerial != null) {
+      this.lastPortsByDeviceSerial.put(deviceSerial, session.getName());
     }
+    return session;
+  }
+
+  /**
+   * Probes all ports at once and returns as soon as one answers. The sessions of other ports that also answer
+   * are closed as their probes complete.
+   */
+  private ReceiverSession probeConcurrently(List<String> portNames) {
+    final BlockingQueue<ListenableFuture<ReceiverSession>> completedProbes =
+            new LinkedBlockingQueue<ListenableFuture<ReceiverSession>>();
+    List<ListenableFuture<ReceiverSession>> probes = newArrayList();
+    for (String portName : portNames) {
+      final ListenableFuture<ReceiverSession> probe = this.isReceiverOnThisPortRunner.openSessionAsync(portName);
+      probe.addListener(new Runnable() {
+        @Override
+        public void run() {
+          completedProbes.add(probe);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+      probes.add(probe);
+    }
+
+    for (int i = 0; i < probes.size(); i++) {
+      ReceiverSession session = getSession(Uninterruptibles.takeUninterruptibly(completedProbes));
+      if (session != null) {
+        for (ListenableFuture<ReceiverSession> probe : probes) {
+          closeWhenComplete(probe, session);
+        }
+        return session;
+      }
+    }
+    return null;
+  }
+
+  private static void closeWhenComplete(final ListenableFuture<ReceiverSession> probe,
+                                        final ReceiverSession keptSession) {
+    probe.addListener(new Runnable() {
+      @Override
+      public void run() {
+        ReceiverSession session = getSession(probe);
+        if (session != null && session != keptSession) {
+          session.close();
+        }
+      }
+    }, MoreExecutors.sameThreadExecutor());
+  }
+
+  private static ReceiverSession getSession(Future<ReceiverSession> probe) {
+    try {
+      return Uninterruptibles.getUninterruptibly(probe);
+    } catch (ExecutionException e) {
+      LOGGER.warn("Probe failed, skipping port.", e.getCause());
+      return null;
+    }
+  }
 
-    throw new IllegalStateException("Found some matching devices but none of them identified as the dexcom receiver. " +
-            "Maybe another application is holding the port?");
+  /**
+   * @return {@code true} if the receiver of a session kept from a previous sync still answers a ping, the session
+   * is closed otherwise.
+   */
+  public boolean isValid(ReceiverSession session) {
+    return this.isReceiverOnThisPortRunner.isValid(session);
   }
 }
@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.base.Throwables;
+import org.glukit.dexcom.sync.model.PageHighWaterMark;
+import org.glukit.dexcom.sync.model.RecordType;
+
+import java.util.Map;
+import java.util.prefs.BackingStoreException;
+import java.util.prefs.Preferences;
+
+import static java.lang.String.format;
+
+/**
+ * Wraps {@link Preferences} for the dexcom receiver sync state. This keeps a {@link PageHighWaterMark} per receiver
+ * and {@link RecordType} so that a sync only reads the pages it hasn't seen yet.
+ * <p/>
+ * It also keeps how many pages to read per command, set per receiver or tuned per firmware version by the
+ * {@link PagesPerCommandTuner}. Those are kept apart from the marks so that {@link #clear()} doesn't reset them.
+ *
+ * @author alexandre.normand
+ */
+public class DexcomSyncPreferences {
+  private static final String NEXT_PAGE = "next.page";
+  private static final String NEXT_RECORD_INDEX = "next.record";
+  private static final String PAGES_PER_COMMAND = "pages.per.command";
+  private static final String FIRMWARE_PREFIX = "firmware";
+  private static final long UNSET = -1L;
+
+  private final Preferences preferences;
+  private final Preferences batchSizes;
+
+  public DexcomSyncPreferences() {
+    this(Preferences.userNodeForPackage(DexcomSyncPreferences.class).node("high-water-marks"),
+            Preferences.userNodeForPackage(DexcomSyncPreferences.class).node("batch-sizes"));
+  }
+
+  DexcomSyncPreferences(Preferences preferences, Preferences batchSizes) {
+    this.preferences = preferences;
+    this.batchSizes = batchSizes;
+  }
+
+  /**
+   * @return the mark for the given receiver and record type or {@code null} if we've never synced it.
+   */
+  public PageHighWaterMark getHighWaterMark(String receiverSerialNumber, RecordType recordType) {
+    long nextPage = this.preferences.getLong(key(receiverSerialNumber, recordType, NEXT_PAGE), UNSET);
+    long nextRecordIndex = this.preferences.getLong(key(receiverSerialNumber, recordType, NEXT_RECORD_INDEX), UNSET);
+    if (nextPage == UNSET || nextRecordIndex == UNSET) {
+      return null;
+    }
+
+    return new PageHighWaterMark(nextPage, nextRecordIndex);
+  }
+
+  public void saveHighWaterMarks(String receiverSerialNumber, Map<RecordType, PageHighWaterMark> highWaterMarks) {
+    for (Map.Entry<RecordType, PageHighWaterMark> entry : highWaterMarks.entrySet()) {
+      this.preferences.putLong(key(receiverSerialNumber, entry.getKey(), NEXT_PAGE), entry.getValue().getNextPage());
+      this.preferences.putLong(key(receiverSerialNumber, entry.getKey(), NEXT_RECORD_INDEX),
+              entry.getValue().getNextRecordIndex());
+    }
+  }
+
+  /**
+   * @return the number of pages to read per command from the given receiver or {@code 0} if it's not set.
+   */
+  public int getPagesPerCommand(String receiverSerialNumber) {
+    return this.batchSizes.getInt(format("%s.%s", receiverSerialNumber, PAGES_PER_COMMAND), 0);
+  }
+
+  public void savePagesPerCommand(String receiverSerialNumber, int pagesPerCommand) {
+    this.batchSizes.putInt(format("%s.%s", receiverSerialNumber, PAGES_PER_COMMAND), pagesPerCommand);
+  }
+
+  /**
+   * @return the number of pages per command tuned for the given firmware version or {@code 0} if it's not tuned yet.
+   */
+  public int getTunedPagesPerCommand(String firmwareVersion) {
+    return this.batchSizes.getInt(format("%s.%s.%s", FIRMWARE_PREFIX, firmwareVersion, PAGES_PER_COMMAND), 0);
+  }
+
+  public void saveTunedPagesPerCommand(String firmwareVersion, int pagesPerCommand) {
+    this.batchSizes.putInt(format("%s.%s.%s", FIRMWARE_PREFIX, firmwareVersion, PAGES_PER_COMMAND), pagesPerCommand);
+  }
+
+  /**
+   * Forgets all marks. The next sync will read all pages and rely only on the last sync time.
+   */
+  public void clear() {
+    try {
+      this.preferences.clear();
+    } catch (BackingStoreException e) {
+      throw Throwables.propagate(e);
+    }
+  }
+
+  private static String key(String receiverSerialNumber, RecordType recordType, String field) {
+    return format("%s.%s.%s", receiverSerialNumber, recordType.name(), field);
+  }
+}
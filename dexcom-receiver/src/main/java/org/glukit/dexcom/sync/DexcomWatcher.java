@@ -24,13 +24,19 @@
 package org.glukit.dexcom.sync;
 
 import com.google.common.base.Throwables;
+import com.google.common.primitives.Ints;
 import com.google.inject.Inject;
-import jssc.SerialPort;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
+import org.glukit.dexcom.sync.metrics.SyncReport;
+import org.glukit.dexcom.sync.metrics.SyncReporter;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
 import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.glukit.dexcom.sync.transport.RecordingTransport;
+import org.glukit.dexcom.sync.transport.SerialTransport;
 import org.glukit.sync.AdapterService;
 import org.glukit.sync.api.BloodShepherdPreferences;
+import org.glukit.sync.api.BloodShepherdProperties;
 import org.glukit.sync.api.DataExporter;
-import org.glukit.sync.api.ReceiverSyncData;
 import org.glukit.sync.api.SyncData;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,10 +44,16 @@ import org.threeten.bp.Instant;
 
 import javax.usb.UsbDevice;
 import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbPort;
 import javax.usb.event.UsbServicesEvent;
 import javax.usb.event.UsbServicesListener;
+import java.io.File;
+import java.util.concurrent.ConcurrentMap;
 
+import static com.google.common.collect.Maps.newConcurrentMap;
 import static java.lang.String.format;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND;
 
 /**
  * This will listen on USB for device connection/disconnections and start a sync process
@@ -57,6 +69,13 @@ public class DexcomWatcher implements UsbServicesListener {
   private final AdapterService adapterService;
   private final DataExporter dataExporter;
   private final BloodShepherdPreferences preferences;
+  private final DexcomSyncPreferences syncPreferences;
+  private final BloodShepherdProperties properties;
+  private final SyncDispatcher syncDispatcher;
+  private final SyncMetrics syncMetrics;
+  private final SyncReporter syncReporter;
+  // Kept opened between syncs for as long as the receiver stays attached, by device key
+  private final ConcurrentMap<String, ReceiverSession> receiverSessions = newConcurrentMap();
 
   @Inject
   public DexcomWatcher(DeviceFilter deviceFilter,
@@ -64,55 +83,194 @@ public class DexcomWatcher implements UsbServicesListener {
                        FetchNewDataRunner fetchNewDataRunner,
                        AdapterService adapterService,
                        DataExporter dataExporter,
-                       BloodShepherdPreferences preferences) {
+                       BloodShepherdPreferences preferences,
+                       DexcomSyncPreferences syncPreferences,
+                       BloodShepherdProperties properties,
+                       SyncDispatcher syncDispatcher,
+                       SyncMetrics syncMetrics,
+                       SyncReporter syncReporter) {
     this.deviceFilter = deviceFilter;
     this.receiverFinder = receiverFinder;
     this.fetchNewDataRunner = fetchNewDataRunner;
     this.adapterService = adapterService;
     this.dataExporter = dataExporter;
     this.preferences = preferences;
+    this.syncPreferences = syncPreferences;
+    this.properties = properties;
+    this.syncDispatcher = syncDispatcher;
+    this.syncMetrics = syncMetrics;
+    this.syncReporter = syncReporter;
+
+    String pagesPerCommand = properties.getProperty(BloodShepherdProperties.PAGES_PER_COMMAND);
+    if (pagesPerCommand != null) {
+      Integer parsedPagesPerCommand = Ints.tryParse(pagesPerCommand.trim());
+      if (parsedPagesPerCommand != null && parsedPagesPerCommand > 0 &&
+              parsedPagesPerCommand <= MAX_PAGES_PER_COMMAND) {
+        fetchNewDataRunner.setPagesPerCommand(parsedPagesPerCommand);
+      } else {
+        LOGGER.warn(format("Ignoring invalid %s of [%s], it must be between 1 and %d, reading %d pages per " +
+                "command instead", BloodShepherdProperties.PAGES_PER_COMMAND, pagesPerCommand, MAX_PAGES_PER_COMMAND,
+                DEFAULT_PAGES_PER_COMMAND));
+      }
+    }
+    fetchNewDataRunner.setAutoTunePagesPerCommand(
+            Boolean.parseBoolean(properties.getProperty(BloodShepherdProperties.AUTO_TUNE_PAGES_PER_COMMAND)));
   }
 
+  /**
+   * Only queues the sync on the {@link SyncDispatcher} so the USB services thread is free to handle other events.
+   */
   @Override
   public void usbDeviceAttached(UsbServicesEvent usbServicesEvent) {
-    UsbDevice usbDevice = usbServicesEvent.getUsbDevice();
+    final UsbDevice usbDevice = usbServicesEvent.getUsbDevice();
     UsbDeviceDescriptor deviceDescriptor = usbDevice.getUsbDeviceDescriptor();
     if (this.deviceFilter.isHighlander(deviceDescriptor)) {
-      try {
-        String message = format("Device connected [%s], isConfigured [%b]", usbDevice.getManufacturerString(),
-                usbDevice.isConfigured());
-        LOGGER.info(message);
+      this.syncDispatcher.submit(getDeviceKey(usbDevice), new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sync(usbDevice);
+          } catch (Exception e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      });
+    } else {
+      String message = format("Device plugged was ignored: vendor id [%d], product id [%d]", deviceDescriptor.idVendor(),
+              deviceDescriptor.idProduct());
+      LOGGER.debug(message);
+    }
+  }
 
-        String receiverPort = this.receiverFinder.findReceiverPort();
+  /**
+   * Keys the device on the ports leading to it from the root hub (i.e. <code>vendor:product@1/2</code>). Two receivers
+   * share the same vendor and product ids but they can't be plugged in the same port at once.
+   */
+  private static String getDeviceKey(UsbDevice usbDevice) {
+    StringBuilder portPath = new StringBuilder();
+    for (UsbPort port = usbDevice.getParentUsbPort(); port != null; port = port.getUsbHub().getParentUsbPort()) {
+      portPath.insert(0, port.getPortNumber());
+      portPath.insert(0, '/');
+    }
+    UsbDeviceDescriptor deviceDescriptor = usbDevice.getUsbDeviceDescriptor();
+    return format("%04x:%04x@%s", deviceDescriptor.idVendor(), deviceDescriptor.idProduct(),
+            portPath.length() == 0 ? "/" : portPath.substring(1));
+  }
 
-        Instant lastSyncTime = this.preferences.getLastSyncTime();
-        LOGGER.info(format("Downloading new data since %s...", lastSyncTime));
-        ReceiverSyncData receiverSyncData = this.fetchNewDataRunner.fetchData(new SerialPort(receiverPort),
-                lastSyncTime);
+  /**
+   * Syncs and writes the {@link SyncReport} of the sync, whether it succeeded or not.
+   */
+  private void sync(UsbDevice usbDevice) throws Exception {
+    String deviceKey = getDeviceKey(usbDevice);
+    SyncReport syncReport = this.syncReporter.start(deviceKey);
+    try {
+      sync(usbDevice, deviceKey, syncReport);
+    } catch (Exception e) {
+      syncReport.setFailure(e.toString());
+      throw e;
+    } finally {
+      this.syncReporter.finish(syncReport);
+    }
+  }
 
-        @SuppressWarnings("unchecked")
-        SyncData syncData = this.adapterService.convertData(receiverSyncData);
+  private void sync(UsbDevice usbDevice, String deviceKey, SyncReport syncReport) throws Exception {
+    String message = format("Device connected [%s], isConfigured [%b]", usbDevice.getManufacturerString(),
+            usbDevice.isConfigured());
+    LOGGER.info(message);
 
-        this.dataExporter.exportData(syncData);
+    long discoveryStartNanos = System.nanoTime();
+    ReceiverSession session = getReceiverSession(usbDevice, deviceKey);
+    syncReport.recordPhase(SyncReport.DISCOVERY_PHASE, null, System.nanoTime() - discoveryStartNanos);
 
-        // Save last sync time
-        this.preferences.saveLastSyncTime(syncData.getUpdateTime());
-        LOGGER.info(format("Exported data up to %s", receiverSyncData.getUpdateTime()));
-      } catch (Throwable e) {
-        throw Throwables.propagate(e);
-      }
-    } else {
-      String message = format("Device plugged was ignored: vendor id [%d], product id [%d]", deviceDescriptor.idVendor(),
-              deviceDescriptor.idProduct());
-      LOGGER.debug(message);
+    Instant lastSyncTime = this.preferences.getLastSyncTime();
+    LOGGER.info(format("Downloading new data since %s...", lastSyncTime));
+    DexcomSyncData receiverSyncData = fetchData(session, lastSyncTime, syncReport);
+
+    long conversionStartNanos = System.nanoTime();
+    @SuppressWarnings("unchecked")
+    SyncData syncData = this.adapterService.convertData(receiverSyncData);
+    long conversionNanos = System.nanoTime() - conversionStartNanos;
+    this.syncMetrics.recordConversion(conversionNanos);
+    syncReport.recordPhase(SyncReport.CONVERSION_PHASE, null, conversionNanos);
+
+    long exportStartNanos = System.nanoTime();
+    this.dataExporter.exportData(syncData);
+    long exportNanos = System.nanoTime() - exportStartNanos;
+    this.syncMetrics.recordExport(exportNanos);
+    syncReport.recordPhase(SyncReport.EXPORT_PHASE, null, exportNanos);
+
+    // Save last sync time and how far we've read each record type
+    this.preferences.saveLastSyncTime(syncData.getUpdateTime());
+    if (receiverSyncData.getManufacturingParameters() != null) {
+      this.syncPreferences.saveHighWaterMarks(receiverSyncData.getManufacturingParameters().getSerialNumber(),
+              receiverSyncData.getHighWaterMarks());
+    }
+    LOGGER.info(format("Exported data up to %s", receiverSyncData.getUpdateTime()));
+  }
+
+  /**
+   * @return the session kept from the previous sync of the same device if the receiver still answers on it or a new
+   * one otherwise. The syncs of a device are never concurrent, see {@link SyncDispatcher}.
+   */
+  private ReceiverSession getReceiverSession(UsbDevice usbDevice, String deviceKey) {
+    ReceiverSession session = this.receiverSessions.get(deviceKey);
+    if (session != null && this.receiverFinder.isValid(session)) {
+      LOGGER.info(format("Reusing the session on port [%s] for device [%s]", session.getName(), deviceKey));
+      return session;
+    }
+
+    ReceiverSession newSession = this.receiverFinder.openReceiverSession(usbDevice);
+    ReceiverSession previousSession = this.receiverSessions.put(deviceKey, newSession);
+    if (previousSession != null) {
+      previousSession.close();
+    }
+    return newSession;
+  }
+
+  /**
+   * Closes the session kept for the next sync of a device, if any. A sync still using it will fail.
+   */
+  private void closeReceiverSession(String deviceKey) {
+    ReceiverSession session = this.receiverSessions.remove(deviceKey);
+    if (session != null) {
+      session.close();
+    }
+  }
+
+  /**
+   * Closes the sessions kept for the next sync of every device. A sync still using one will fail.
+   */
+  public void closeReceiverSessions() {
+    for (String deviceKey : this.receiverSessions.keySet()) {
+      closeReceiverSession(deviceKey);
+    }
+  }
+
+  private DexcomSyncData fetchData(ReceiverSession session, Instant lastSyncTime,
+                                   SyncReport syncReport) throws Exception {
+    SerialTransport transport = session.getTransport();
+    String capturePath = this.properties.getProperty(BloodShepherdProperties.CAPTURE_PATH);
+    if (capturePath == null) {
+      return this.fetchNewDataRunner.fetchData(transport, lastSyncTime, syncReport);
+    }
+
+    LOGGER.info(format("Capturing the receiver traffic to [%s]", capturePath));
+    RecordingTransport recordingTransport = new RecordingTransport(transport, new File(capturePath));
+    try {
+      return this.fetchNewDataRunner.fetchData(recordingTransport, lastSyncTime, syncReport);
+    } finally {
+      recordingTransport.stopRecording();
     }
   }
 
   @Override
   public void usbDeviceDetached(UsbServicesEvent usbServicesEvent) {
-    UsbDeviceDescriptor deviceDescriptor = usbServicesEvent.getUsbDevice().getUsbDeviceDescriptor();
+    UsbDevice usbDevice = usbServicesEvent.getUsbDevice();
+    UsbDeviceDescriptor deviceDescriptor = usbDevice.getUsbDeviceDescriptor();
     if (this.deviceFilter.isHighlander(deviceDescriptor)) {
-      LOGGER.info("Dexcom disconnected!");
+      String deviceKey = getDeviceKey(usbDevice);
+      LOGGER.info(format("Dexcom [%s] disconnected!", deviceKey));
+      closeReceiverSession(deviceKey);
     } else {
       String message = format("Device unplugged was ignore: vendor id [%d], product id [%d]",
               deviceDescriptor.idVendor(), deviceDescriptor.idProduct());
@@ -0,0 +1,52 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import static java.lang.String.format;
+
+/**
+ * Thrown when the receiver sends back fewer pages than a
+ * {@link org.glukit.dexcom.sync.model.ReceiverCommand#ReadDatabasePages} command asked for, which is how a firmware
+ * rejects more pages per command than it supports.
+ *
+ * @author alexandre.normand
+ */
+public class MissingPagesException extends IllegalStateException {
+  private final int requestedPages;
+  private final int receivedPages;
+
+  public MissingPagesException(int requestedPages, int receivedPages) {
+    super(format("Requested [%d] pages but received [%d]", requestedPages, receivedPages));
+    this.requestedPages = requestedPages;
+    this.receivedPages = receivedPages;
+  }
+
+  public int getRequestedPages() {
+    return requestedPages;
+  }
+
+  public int getReceivedPages() {
+    return receivedPages;
+  }
+}
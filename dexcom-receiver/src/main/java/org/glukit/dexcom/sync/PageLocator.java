@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.model.TimestampedRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+
+/**
+ * Locates pages of a database without reading all of them. Records are stored in chronological order so the
+ * most recent record of each page only goes up with the page number, which lets us binary search a page range
+ * with O(log n) single page probes rather than scanning through it.
+ * <p/>
+ * Page headers don't carry any timestamp so searching by time has to read the page itself, one at a time.
+ *
+ * @author alexandre.normand
+ */
+public class PageLocator {
+  private static Logger LOGGER = LoggerFactory.getLogger(PageLocator.class);
+
+  private final PageProbe pageProbe;
+
+  public PageLocator(PageProbe pageProbe) {
+    this.pageProbe = pageProbe;
+  }
+
+  /**
+   * Finds the first page in {@code [firstPage, lastPage]} holding at least one record more recent than
+   * {@code sinceRelativeToDexcomEpoch}.
+   *
+   * @return the page number or {@code lastPage + 1} if all pages only hold older records
+   */
+  public long findFirstPageNewerThan(long sinceRelativeToDexcomEpoch, long firstPage, long lastPage) {
+    checkArgument(firstPage <= lastPage + 1, "Invalid page range [%s] to [%s]", firstPage, lastPage);
+    long low = firstPage;
+    long high = lastPage + 1;
+    int probes = 0;
+    while (low < high) {
+      long middle = low + (high - low) / 2;
+      probes++;
+      if (isNewerThan(this.pageProbe.readPageRecords(middle), sinceRelativeToDexcomEpoch)) {
+        high = middle;
+      } else {
+        low = middle + 1;
+      }
+    }
+
+    LOGGER.info(format("Located page [%d] as the first one newer than [%d] in [%d] to [%d] with [%d] probes", low,
+            sinceRelativeToDexcomEpoch, firstPage, lastPage, probes));
+    return low;
+  }
+
+  /**
+   * An empty page can only be the last one, still being filled, so it's considered newer than anything.
+   */
+  private static boolean isNewerThan(List<? extends TimestampedRecord> pageRecords, long sinceRelativeToDexcomEpoch) {
+    if (pageRecords.isEmpty()) {
+      return true;
+    }
+
+    TimestampedRecord newestRecord = pageRecords.get(pageRecords.size() - 1);
+    return newestRecord.getInternalSecondsSinceDexcomEpoch() > sinceRelativeToDexcomEpoch;
+  }
+
+  /**
+   * Reads a single page for the locator.
+   */
+  public static interface PageProbe {
+    List<? extends TimestampedRecord> readPageRecords(long pageNumber);
+  }
+}
@@ -0,0 +1,250 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.primitives.Ints;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.glukit.dexcom.sync.model.DatabaseReadRequestSpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newConcurrentMap;
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
+
+/**
+ * Finds how many pages per command read the fastest for a firmware version. Until it's known, the pages of each sync
+ * are read with each of the {@link #CANDIDATES} in turn and their pages/sec measured from the round trip of every
+ * command. Once every candidate has read {@link #MIN_PAGES_PER_CANDIDATE} pages, which the first sync of a receiver
+ * is usually enough for, the fastest is saved in the {@link DexcomSyncPreferences} and used from then on.
+ * <p/>
+ * A firmware that rejects a number of pages answers with fewer pages than asked for, see
+ * {@link MissingPagesException}. That number and the larger ones are then left out and the sync reads the rejected
+ * pages again with the default, tuning never fails a sync.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class PagesPerCommandTuner {
+  private static Logger LOGGER = LoggerFactory.getLogger(PagesPerCommandTuner.class);
+  static final int[] CANDIDATES = {DEFAULT_PAGES_PER_COMMAND, 8, 16, 32};
+  // Two commands of the largest candidate so a single slow round trip doesn't decide it
+  static final long MIN_PAGES_PER_CANDIDATE = 64L;
+
+  private final DexcomSyncPreferences syncPreferences;
+  private final ConcurrentMap<String, Measurements> measurements = newConcurrentMap();
+
+  @Inject
+  public PagesPerCommandTuner(DexcomSyncPreferences syncPreferences) {
+    this.syncPreferences = syncPreferences;
+  }
+
+  /**
+   * @return a planner with the pages per command tuned for the firmware version or, if it's not tuned yet, one that
+   * measures the candidates.
+   */
+  public ReadPlanner newReadPlanner(String firmwareVersion) {
+    int tunedPagesPerCommand = this.syncPreferences.getTunedPagesPerCommand(firmwareVersion);
+    if (tunedPagesPerCommand > 0) {
+      LOGGER.info(format("Reading [%d] pages per command, as tuned for firmware [%s]", tunedPagesPerCommand,
+              firmwareVersion));
+      return new ReadPlanner(tunedPagesPerCommand);
+    }
+
+    Measurements firmwareMeasurements = new Measurements();
+    Measurements existingMeasurements = this.measurements.putIfAbsent(firmwareVersion, firmwareMeasurements);
+    LOGGER.info(format("Tuning the pages per command of firmware [%s]", firmwareVersion));
+    return new TuningReadPlanner(firmwareVersion,
+            existingMeasurements == null ? firmwareMeasurements : existingMeasurements);
+  }
+
+  private void recordRead(String firmwareVersion, Measurements firmwareMeasurements, int pages, long readNanos) {
+    if (firmwareMeasurements.recordRead(pages, readNanos)) {
+      saveFastest(firmwareVersion, firmwareMeasurements);
+    }
+  }
+
+  private void recordUnsupported(String firmwareVersion, Measurements firmwareMeasurements, int pages) {
+    LOGGER.warn(format("Firmware [%s] doesn't support reading [%d] pages per command", firmwareVersion, pages));
+    if (firmwareMeasurements.recordUnsupported(pages)) {
+      saveFastest(firmwareVersion, firmwareMeasurements);
+    }
+  }
+
+  private void saveFastest(String firmwareVersion, Measurements firmwareMeasurements) {
+    int fastest = firmwareMeasurements.getFastest();
+    LOGGER.info(format("Tuned firmware [%s] to [%d] pages per command: %s", firmwareVersion, fastest,
+            firmwareMeasurements));
+    this.syncPreferences.saveTunedPagesPerCommand(firmwareVersion, fastest);
+    this.measurements.remove(firmwareVersion, firmwareMeasurements);
+  }
+
+  /**
+   * Pages read and time spent for each candidate.
+   */
+  static class Measurements {
+    private final long[] pages = new long[CANDIDATES.length];
+    private final long[] nanos = new long[CANDIDATES.length];
+    private int supportedCandidates = CANDIDATES.length;
+    private boolean tuned;
+
+    /**
+     * @return the candidate with the most pages still to measure once {@code plannedPages} are read or {@code 0} if
+     * they're all measured.
+     */
+    synchronized int nextCandidate(long[] plannedPages) {
+      int next = 0;
+      long mostMissingPages = 0L;
+      for (int i = 0; i < this.supportedCandidates; i++) {
+        long missingPages = MIN_PAGES_PER_CANDIDATE - this.pages[i] - plannedPages[i];
+        if (missingPages > mostMissingPages) {
+          next = i;
+          mostMissingPages = missingPages;
+        }
+      }
+      return mostMissingPages > 0 ? CANDIDATES[next] : 0;
+    }
+
+    /**
+     * @return {@code true} if this completes the measurements.
+     */
+    synchronized boolean recordRead(int pages, long readNanos) {
+      int candidate = Ints.indexOf(CANDIDATES, pages);
+      if (this.tuned || candidate < 0 || candidate >= this.supportedCandidates) {
+        return false;
+      }
+
+      this.pages[candidate] += pages;
+      this.nanos[candidate] += readNanos;
+      return completeIfMeasured();
+    }
+
+    /**
+     * Leaves out the smallest candidate that's not under {@code pages}, the last chunk of a plan can be any size,
+     * along with the larger ones.
+     *
+     * @return {@code true} if this completes the measurements.
+     */
+    synchronized boolean recordUnsupported(int pages) {
+      int candidate = 0;
+      while (candidate < CANDIDATES.length && CANDIDATES[candidate] < pages) {
+        candidate++;
+      }
+      // The default is what the receiver has always been read with, we never leave it out
+      if (this.tuned || candidate <= 0 || candidate >= this.supportedCandidates) {
+        return false;
+      }
+
+      this.supportedCandidates = candidate;
+      return completeIfMeasured();
+    }
+
+    synchronized int getFastest() {
+      int fastest = 0;
+      for (int i = 1; i < this.supportedCandidates; i++) {
+        // Compares pages/nanos without dividing, fast enough measurements could round to the same rate
+        if (this.pages[i] * this.nanos[fastest] > this.pages[fastest] * this.nanos[i]) {
+          fastest = i;
+        }
+      }
+      return CANDIDATES[fastest];
+    }
+
+    private boolean completeIfMeasured() {
+      for (int i = 0; i < this.supportedCandidates; i++) {
+        if (this.pages[i] < MIN_PAGES_PER_CANDIDATE) {
+          return false;
+        }
+      }
+      this.tuned = true;
+      return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+      StringBuilder pagesPerSecond = new StringBuilder();
+      for (int i = 0; i < this.supportedCandidates; i++) {
+        pagesPerSecond.append(format("%s%d: %.1f pages/s", i == 0 ? "" : ", ", CANDIDATES[i],
+                this.nanos[i] == 0L ? 0.0 : this.pages[i] * 1e9 / this.nanos[i]));
+      }
+      return pagesPerSecond.toString();
+    }
+  }
+
+  private class TuningReadPlanner extends ReadPlanner {
+    private final String firmwareVersion;
+    private final Measurements firmwareMeasurements;
+
+    private TuningReadPlanner(String firmwareVersion, Measurements firmwareMeasurements) {
+      super(DEFAULT_PAGES_PER_COMMAND);
+      this.firmwareVersion = firmwareVersion;
+      this.firmwareMeasurements = firmwareMeasurements;
+    }
+
+    /**
+     * Reads with the candidates that still need measuring, the remaining pages with the default.
+     */
+    @Override
+    public List<DatabaseReadRequestSpec> planAscending(long firstPage, long lastPage) {
+      List<DatabaseReadRequestSpec> specs = newArrayList();
+      long[] plannedPages = new long[CANDIDATES.length];
+      for (long chunkStart = firstPage; chunkStart <= lastPage; ) {
+        int candidate = this.firmwareMeasurements.nextCandidate(plannedPages);
+        int pagesPerCommand = candidate > 0 ? candidate : getPagesPerCommand();
+        int pages = (int) Math.min(lastPage - chunkStart + 1, pagesPerCommand);
+        specs.add(new DatabaseReadRequestSpec(chunkStart, (byte) pages));
+        if (candidate > 0) {
+          plannedPages[Ints.indexOf(CANDIDATES, candidate)] += pages;
+        }
+        chunkStart += pages;
+      }
+      return specs;
+    }
+
+    @Override
+    public void recordRead(DatabaseReadRequestSpec readRequestSpec, long readNanos) {
+      PagesPerCommandTuner.this.recordRead(this.firmwareVersion, this.firmwareMeasurements,
+              readRequestSpec.getNumberOfPages(), readNanos);
+    }
+
+    /**
+     * Leaves the rejected number of pages out of the tuning. Only the default fails the sync since it's what the
+     * pages are read again with.
+     */
+    @Override
+    public boolean readRejected(DatabaseReadRequestSpec readRequestSpec) {
+      if (readRequestSpec.getNumberOfPages() <= DEFAULT_PAGES_PER_COMMAND) {
+        return false;
+      }
+
+      recordUnsupported(this.firmwareVersion, this.firmwareMeasurements, readRequestSpec.getNumberOfPages());
+      return true;
+    }
+  }
+}
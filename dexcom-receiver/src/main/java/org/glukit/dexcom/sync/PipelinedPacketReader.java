@@ -0,0 +1,263 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+
+/**
+ * Sends a known sequence of requests and reads their responses on a dedicated I/O thread so the next request is
+ * written as soon as the previous response is in, while the caller is still validating and decoding it. Requests and
+ * responses still alternate on the wire like they would if they were sent one at a time, the receiver never has more
+ * than one request to answer.
+ * <p/>
+ * The packets are handed to the caller through a bounded queue and their buffers come back through another one so
+ * the I/O thread is never more than {@code framesAhead} responses ahead and no buffer is allocated past the first
+ * few. A reader has a single consumer, the thread calling {@link #next()}.
+ *
+ * @author alexandre.normand
+ */
+public class PipelinedPacketReader implements Closeable {
+  private static Logger LOGGER = LoggerFactory.getLogger(PipelinedPacketReader.class);
+  private static final long CLOSE_TIMEOUT_IN_SECONDS = 5L;
+  private static final long STOP_POLL_MILLIS = 10L;
+  // Shared by all readers, the threads are daemons and go away once idle
+  private static final ExecutorService IO_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setNameFormat("receiver-io-%d").setDaemon(true).build());
+  // Queued by the I/O thread in place of the next frame when it fails
+  private static final Frame FAILED = new Frame(ByteBuffer.allocate(0));
+
+  private final SerialTransport transport;
+  private final ResponseReader responseReader;
+  private final List<byte[]> requests;
+  private final BlockingQueue<Frame> frames;
+  private final BlockingQueue<Frame> freeFrames;
+  private final CountDownLatch ioDone = new CountDownLatch(1);
+  private volatile boolean ioStarted;
+  private volatile boolean stopping;
+  private volatile Throwable failure;
+  private Future<?> ioTask;
+  private int framesRemaining;
+
+  /**
+   * @param requests    the packets of the requests to send, in order
+   * @param framesAhead the maximum number of responses read ahead of the ones handed to the caller
+   */
+  public PipelinedPacketReader(SerialTransport transport,
+                               ResponseReader responseReader,
+                               List<byte[]> requests,
+                               int framesAhead) {
+    checkArgument(framesAhead > 0, "Invalid number of frames ahead [%s]", framesAhead);
+    this.transport = transport;
+    this.responseReader = responseReader;
+    this.requests = requests;
+    this.framesRemaining = requests.size();
+
+    // One frame for the caller to decode and the others read ahead, plus room for FAILED
+    this.frames = new ArrayBlockingQueue<Frame>(framesAhead + 1);
+    this.freeFrames = new ArrayBlockingQueue<Frame>(framesAhead + 1);
+    for (int i = 0; i < framesAhead + 1; i++) {
+      this.freeFrames.add(new Frame(ResponseReader.newPacketBuffer()));
+    }
+  }
+
+  public void start() {
+    checkState(this.ioTask == null, "Reader already started");
+    this.ioTask = IO_EXECUTOR.submit(new Runnable() {
+      @Override
+      public void run() {
+        ioStarted = true;
+        try {
+          sendRequests();
+        } catch (InterruptedException e) {
+          LOGGER.debug(format("Reads on port [%s] stopped by the consumer", transport.getName()));
+        } catch (Throwable e) {
+          failure = e;
+          frames.add(FAILED);
+        } finally {
+          ioDone.countDown();
+        }
+      }
+    });
+  }
+
+  private void sendRequests() throws IOException, InterruptedException {
+    ProtocolTracer protocolTracer = this.responseReader.getProtocolTracer();
+    for (byte[] request : this.requests) {
+      Frame frame = this.freeFrames.take();
+      if (this.stopping) {
+        return;
+      }
+      protocolTracer.traceRequest(request);
+      long startNanos = System.nanoTime();
+      this.transport.write(request);
+      frame.packet = this.responseReader.readPacket(this.transport, frame.packet, frame.crc16);
+      frame.roundTripNanos = System.nanoTime() - startNanos;
+      this.frames.put(frame);
+    }
+  }
+
+  /**
+   * Waits for the response of the next request.
+   *
+   * @return the frame of the response, to {@link #recycle} once its packet isn't needed anymore.
+   * @throws IOException if the I/O thread failed to send the request or read its response.
+   */
+  public Frame next() throws IOException {
+    checkState(this.ioTask != null, "Reader not started");
+    checkState(this.framesRemaining > 0, "All [%s] responses were already read", this.requests.size());
+    Frame frame;
+    try {
+      frame = this.frames.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(format("Interrupted while waiting for a response on port [%s]",
+          this.transport.getName()));
+    }
+
+    if (frame == FAILED) {
+      Throwables.propagateIfPossible(this.failure, IOException.class);
+      throw Throwables.propagate(this.failure);
+    }
+    this.framesRemaining--;
+    return frame;
+  }
+
+  public void recycle(Frame frame) {
+    this.freeFrames.add(frame);
+  }
+
+  /**
+   * Stops sending requests once the one in flight, if any, is answered and discards the responses read ahead. Unlike
+   * {@link #close()}, the transport is left between two exchanges and can be used for other requests. The frame
+   * being decoded should be recycled first.
+   *
+   * @throws IOException if the I/O thread failed or is still busy after {@link #CLOSE_TIMEOUT_IN_SECONDS}.
+   */
+  public void stop() throws IOException {
+    checkState(this.ioTask != null, "Reader not started");
+    this.stopping = true;
+    long deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(CLOSE_TIMEOUT_IN_SECONDS);
+    try {
+      // Frames read ahead go back to the I/O thread so it isn't left waiting for one to read into
+      do {
+        for (Frame frame = this.frames.poll(); frame != null; frame = this.frames.poll()) {
+          if (frame != FAILED) {
+            this.freeFrames.add(frame);
+          }
+        }
+      } while (!this.ioDone.await(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS) && System.nanoTime() < deadlineNanos);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(format("Interrupted while stopping reads on port [%s]",
+          this.transport.getName()));
+    }
+
+    if (this.ioDone.getCount() > 0) {
+      throw new IOException(format("I/O thread still busy with port [%s] after [%d] seconds", this.transport.getName(),
+          CLOSE_TIMEOUT_IN_SECONDS));
+    }
+    if (this.failure != null) {
+      Throwables.propagateIfPossible(this.failure, IOException.class);
+      throw Throwables.propagate(this.failure);
+    }
+  }
+
+  /**
+   * Stops the I/O thread if the caller stops before reading all the responses. The transport is then left in the
+   * middle of an exchange and should be closed, see {@link #stop()} to keep using it.
+   */
+  @Override
+  public void close() {
+    if (this.ioTask == null) {
+      return;
+    }
+
+    this.ioTask.cancel(true);
+    // If it hadn't started, the task either never runs or gets interrupted before touching the transport
+    if (!this.ioStarted) {
+      return;
+    }
+
+    try {
+      if (!this.ioDone.await(CLOSE_TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)) {
+        LOGGER.warn(format("I/O thread still busy with port [%s] after [%d] seconds", this.transport.getName(),
+            CLOSE_TIMEOUT_IN_SECONDS));
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public static class Frame {
+    private final Crc16 crc16 = new Crc16();
+    private ByteBuffer packet;
+    private long roundTripNanos;
+
+    private Frame(ByteBuffer packet) {
+      this.packet = packet;
+    }
+
+    /**
+     * @return the packet, as read by {@link ResponseReader#readPacket}.
+     */
+    public ByteBuffer getPacket() {
+      return packet;
+    }
+
+    /**
+     * @return the crc computed while reading the packet, to {@link ResponseReader#decode} it with.
+     */
+    public int getCrc16() {
+      return crc16.getValue();
+    }
+
+    /**
+     * @return the time from writing the request to having read its response.
+     */
+    public long getRoundTripNanos() {
+      return roundTripNanos;
+    }
+  }
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.inject.Singleton;
+import org.glukit.dexcom.sync.transport.SessionLog;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.DecodingUtils.slice;
+import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
+
+/**
+ * Keeps the last frames exchanged with the receiver in a fixed-size ring so they can be dumped when a sync fails or
+ * on demand over JMX. The frames are copied as is in an off-heap buffer and only turned into hex when dumped.
+ * <p/>
+ * Tracing is off unless the logger of this class is at trace level when it's created or it's turned on over JMX.
+ * When it's off, tracing a frame is a single volatile read. Frames longer than {@link #DEFAULT_FRAME_CAPACITY} are
+ * truncated in the ring.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class ProtocolTracer implements ProtocolTracerMXBean {
+  private static Logger LOGGER = LoggerFactory.getLogger(ProtocolTracer.class);
+  public static final String OBJECT_NAME = "org.glukit.dexcom:type=ProtocolTracer";
+
+  public static final int DEFAULT_FRAME_COUNT = 64;
+  // Enough for a read database pages response of 4 pages
+  public static final int DEFAULT_FRAME_CAPACITY = 4096;
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final int frameCapacity;
+  private final ByteBuffer frames;
+  private final SessionLog.Direction[] frameDirections;
+  private final long[] frameNanos;
+  private final int[] frameLengths;
+  private long frameCount;
+  private volatile boolean enabled;
+
+  public ProtocolTracer() {
+    this(DEFAULT_FRAME_COUNT, DEFAULT_FRAME_CAPACITY, LOGGER.isTraceEnabled());
+  }
+
+  public ProtocolTracer(int ringSize, int frameCapacity, boolean enabled) {
+    checkArgument(ringSize > 0, "Invalid ring size [%s]", ringSize);
+    checkArgument(frameCapacity > 0, "Invalid frame capacity [%s]", frameCapacity);
+    this.frameCapacity = frameCapacity;
+    this.frames = ByteBuffer.allocateDirect(ringSize * frameCapacity);
+    this.frameDirections = new SessionLog.Direction[ringSize];
+    this.frameNanos = new long[ringSize];
+    this.frameLengths = new int[ringSize];
+    this.enabled = enabled;
+  }
+
+  public void traceRequest(byte[] packet) {
+    if (this.enabled) {
+      trace(SessionLog.Direction.REQUEST, packet, 0, packet.length);
+    }
+  }
+
+  public void traceResponse(byte[] packet, int offset, int length) {
+    if (this.enabled) {
+      trace(SessionLog.Direction.RESPONSE, packet, offset, length);
+    }
+  }
+
+  private synchronized void trace(SessionLog.Direction direction, byte[] packet, int offset, int length) {
+    int slot = (int) (this.frameCount % this.frameLengths.length);
+    this.frames.clear();
+    this.frames.position(slot * this.frameCapacity);
+    this.frames.put(packet, offset, Math.min(length, this.frameCapacity));
+
+    this.frameDirections[slot] = direction;
+    this.frameNanos[slot] = System.nanoTime();
+    this.frameLengths[slot] = length;
+    this.frameCount++;
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return this.enabled;
+  }
+
+  @Override
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  @Override
+  public synchronized long getFrameCount() {
+    return this.frameCount;
+  }
+
+  @Override
+  public synchronized String dump() {
+    StringBuilder dump = new StringBuilder();
+    long firstFrame = Math.max(0L, this.frameCount - this.frameLengths.length);
+    long firstFrameNanos = this.frameNanos[(int) (firstFrame % this.frameLengths.length)];
+    for (long frame = firstFrame; frame < this.frameCount; frame++) {
+      int slot = (int) (frame % this.frameLengths.length);
+      int length = this.frameLengths[slot];
+      int tracedLength = Math.min(length, this.frameCapacity);
+      dump.append(format("#%d +%.3f ms %s [%d bytes]: %s%s%n", frame,
+          (this.frameNanos[slot] - firstFrameNanos) / NANOS_PER_MILLI, this.frameDirections[slot], length,
+          toHexString(slice(this.frames, slot * this.frameCapacity, tracedLength)),
+          tracedLength < length ? " ..." : ""));
+    }
+    return dump.toString();
+  }
+
+  @Override
+  public synchronized void clear() {
+    this.frameCount = 0L;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.model.DatabaseReadRequestSpec;
+
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Splits the pages of a sync into {@link DatabaseReadRequestSpec}s of a fixed number of pages per command. The
+ * {@link PagesPerCommandTuner} plans varying ones while it measures which works best for a firmware.
+ *
+ * @author alexandre.normand
+ */
+public class ReadPlanner {
+  private final int pagesPerCommand;
+
+  public ReadPlanner(int pagesPerCommand) {
+    this.pagesPerCommand = pagesPerCommand;
+  }
+
+  public int getPagesPerCommand() {
+    return this.pagesPerCommand;
+  }
+
+  /**
+   * @return the commands to read all pages from {@code firstPage} to {@code lastPage}, in ascending order.
+   */
+  public List<DatabaseReadRequestSpec> planAscending(long firstPage, long lastPage) {
+    return newArrayList(new DatabasePagesPager(firstPage, lastPage, DatabasePagesPager.Direction.ASCENDING,
+            this.pagesPerCommand));
+  }
+
+  /**
+   * @return the command to read the most recent pages up to {@code lastPage}.
+   */
+  public DatabaseReadRequestSpec planMostRecent(long firstPage, long lastPage) {
+    return new DatabasePagesPager(firstPage, lastPage, DatabasePagesPager.Direction.DESCENDING,
+            this.pagesPerCommand).iterator().next();
+  }
+
+  /**
+   * Called with the round-trip time of every command read as planned.
+   */
+  public void recordRead(DatabaseReadRequestSpec readRequestSpec, long readNanos) {
+  }
+
+  /**
+   * Called when the receiver rejects a planned command by sending back fewer pages than it asked for.
+   *
+   * @return {@code true} if the pages should be read again with
+   * {@link DatabaseReadRequestSpec#DEFAULT_PAGES_PER_COMMAND} and the ones after them planned again, {@code false} to
+   * fail the sync.
+   */
+  public boolean readRejected(DatabaseReadRequestSpec readRequestSpec) {
+    return false;
+  }
+}
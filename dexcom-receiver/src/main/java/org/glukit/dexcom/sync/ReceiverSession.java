@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * An opened and configured {@link SerialTransport} to a receiver, one that answered a ping or that was resolved from
+ * the attached USB device. The session is created by whatever found the receiver and then handed to the syncs so
+ * the port is only opened and configured once for as long as the receiver stays attached. It's up to the owner of
+ * the session to check it's still valid with a ping before reusing it and to close it once the receiver is detached.
+ *
+ * @author alexandre.normand
+ */
+public class ReceiverSession implements Closeable {
+  private static Logger LOGGER = LoggerFactory.getLogger(ReceiverSession.class);
+
+  private final SerialTransport transport;
+
+  public ReceiverSession(SerialTransport transport) {
+    checkNotNull(transport, "transport should be non-null");
+    checkArgument(transport.isOpened(), "Transport [%s] should be opened", transport.getName());
+    this.transport = transport;
+  }
+
+  public SerialTransport getTransport() {
+    return transport;
+  }
+
+  public String getName() {
+    return this.transport.getName();
+  }
+
+  /**
+   * @return {@code false} once the session was closed or the transport was closed after an error.
+   */
+  public boolean isOpened() {
+    return this.transport.isOpened();
+  }
+
+  /**
+   * Closes the transport if it's still opened, errors are logged and ignored since there's nothing left to do with
+   * the session at that point.
+   */
+  @Override
+  public void close() {
+    if (this.transport.isOpened()) {
+      try {
+        LOGGER.debug(format("Closing port %s", this.transport.getName()));
+        this.transport.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing port, ignoring.", e);
+      }
+    }
+  }
+}
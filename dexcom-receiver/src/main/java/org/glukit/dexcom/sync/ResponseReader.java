@@ -24,100 +24,237 @@
 package org.glukit.dexcom.sync;
 
 import com.google.common.base.Throwables;
-import com.google.common.primitives.Bytes;
 import com.google.inject.Inject;
-import jssc.SerialPort;
 import org.glukit.dexcom.sync.model.ReceiverCommand;
-import org.glukit.dexcom.sync.responses.Response;
+import org.glukit.dexcom.sync.responses.*;
+import org.glukit.dexcom.sync.transport.SerialTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
 
+import static com.google.common.collect.Maps.newHashMap;
 import static java.lang.String.format;
-import static org.glukit.dexcom.sync.DecodingUtils.getCrc16;
+import static org.glukit.dexcom.sync.DecodingUtils.slice;
 import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_DATA_SIZE;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_HEADER_SIZE;
 
 /**
- * Response reader.
+ * Response reader. Packets are read into a single little-endian buffer that's reused from one read to the next
+ * so responses only get a view of it and are valid until the next read. This also means a reader shouldn't be
+ * shared between threads, with the exception of {@link #readPacket} which only uses the buffer and crc it's given and
+ * can be called from an I/O thread while another one decodes the packets.
  *
  * @author alexandre.normand
  */
 public class ResponseReader {
   private static Logger LOGGER = LoggerFactory.getLogger(ResponseReader.class);
 
-  static final int HEADER_SIZE = 4;
+  public static final int HEADER_SIZE = 4;
   public static final int TRAILER_SIZE = 2;
-
+  private static final int MAX_DATABASE_PAGES_PACKET_SIZE = HEADER_SIZE +
+          DEFAULT_PAGES_PER_COMMAND * (PAGE_HEADER_SIZE + PAGE_DATA_SIZE) + TRAILER_SIZE;
 
   private DataInputFactory dataInputFactory;
+  private final ProtocolTracer protocolTracer;
+  private final Map<Class<? extends Response>, ResponseFactory<? extends Response>> responseFactories = newHashMap();
+  private ByteBuffer packetBuffer = newPacketBuffer(MAX_DATABASE_PAGES_PACKET_SIZE);
+  private final Crc16 crc16 = new Crc16();
+  private int lastPacketSize;
 
-  @Inject
   public ResponseReader(DataInputFactory dataInputFactory) {
+    this(dataInputFactory, new ProtocolTracer());
+  }
+
+  @Inject
+  public ResponseReader(DataInputFactory dataInputFactory, ProtocolTracer protocolTracer) {
     this.dataInputFactory = dataInputFactory;
+    this.protocolTracer = protocolTracer;
+    registerDefaultFactories();
   }
 
-  public <T extends Response> T read(Class<T> type, SerialPort serialPort) {
-    try {
-      T response = type.getConstructor(DataInputFactory.class).newInstance(this.dataInputFactory);
-      byte[] header = serialPort.readBytes(HEADER_SIZE);
-      LOGGER.debug(format("Read header from port: %s", toHexString(header)));
-      ResponseHeader responseHeader = readHeader(header);
-
-      int expectedPayloadSize = responseHeader.getPacketSize() - (HEADER_SIZE + TRAILER_SIZE);
-      LOGGER.debug(format("Expected payload of [%d] bytes", expectedPayloadSize));
-
-      byte[] payload = new byte[0];
-      if (expectedPayloadSize > 0) {
-        payload = serialPort.readBytes(expectedPayloadSize);
-        LOGGER.debug(format("Read payload from port: %s", toHexString(payload)));
-        response.fromBytes(payload);
-      } else {
-        LOGGER.debug("No payload expected, skipping to trailer...");
-      }
+  public ProtocolTracer getProtocolTracer() {
+    return this.protocolTracer;
+  }
 
-      byte[] crc16 = serialPort.readBytes(TRAILER_SIZE);
-      LOGGER.debug(format("Read crc16 from port: %s", toHexString(crc16)));
-      validateCrc(Bytes.concat(header, payload, crc16), crc16);
+  public <T extends Response> void register(Class<T> type, ResponseFactory<T> responseFactory) {
+    this.responseFactories.put(type, responseFactory);
+  }
 
+  public <T extends Response> T read(Class<T> type, SerialTransport transport) {
+    try {
+      T response = newResponse(type);
+      this.packetBuffer = readPacket(transport, this.packetBuffer, this.crc16);
+      decode(response, this.packetBuffer, this.crc16.getValue());
       return response;
     } catch (Exception e) {
       throw Throwables.propagate(e);
     }
   }
 
-  private void validateCrc(byte[] packet, byte[] crcBytes) throws IOException {
-    DataInput input = this.dataInputFactory.create(new ByteArrayInputStream(crcBytes));
-    int crc = input.readUnsignedShort();
-    // Validate CRC16 matches what we got
-    int computedCrc16 = getCrc16(packet, 0, packet.length - TRAILER_SIZE);
+  /**
+   * Reads a packet and computes its crc as it comes in, without validating it nor decoding the packet, see
+   * {@link #decode}.
+   *
+   * @param packetBuffer the buffer to read the packet into, replaced by a bigger one if the packet doesn't fit.
+   * @param crc16        reset and updated with the packet as it's read, it then holds the crc to check the packet's
+   *                     trailer against.
+   * @return the buffer holding the packet from index 0 to its limit.
+   */
+  public ByteBuffer readPacket(SerialTransport transport, ByteBuffer packetBuffer, Crc16 crc16) throws IOException {
+    byte[] header = transport.read(HEADER_SIZE);
+    int packetSize = readHeader(header).getPacketSize();
+    if (packetSize < HEADER_SIZE + TRAILER_SIZE) {
+      this.protocolTracer.traceResponse(header, 0, HEADER_SIZE);
+      throw new IllegalStateException(format("Received packet size of [%d] is too small for a valid packet",
+              packetSize));
+    }
 
+    ByteBuffer packet = packetBuffer.capacity() < packetSize ? newPacketBuffer(packetSize) : packetBuffer;
+    packet.clear();
+    packet.put(header);
+    crc16.reset().update(header, 0, HEADER_SIZE);
+    // The payload and crc come in a single read
+    byte[] payloadAndTrailer = transport.read(packetSize - HEADER_SIZE);
+    crc16.update(payloadAndTrailer, 0, payloadAndTrailer.length - TRAILER_SIZE);
+    packet.put(payloadAndTrailer);
+    packet.flip();
+    this.protocolTracer.traceResponse(packet.array(), 0, packetSize);
+    return packet;
+  }
+
+  /**
+   * Validates the crc of a packet read by {@link #readPacket} and decodes it. The response is a view of the packet
+   * and is only valid for as long as the packet buffer isn't reused.
+   *
+   * @param computedCrc16 the crc computed by {@link #readPacket} while reading the packet.
+   */
+  public <T extends Response> T decode(Class<T> type, ByteBuffer packet, int computedCrc16) {
+    T response = newResponse(type);
+    decode(response, packet, computedCrc16);
+    return response;
+  }
+
+  private void decode(Response response, ByteBuffer packet, int computedCrc16) {
+    int packetSize = packet.limit();
+    validateCrc(packet, packetSize, computedCrc16);
+    this.lastPacketSize = packetSize;
+
+    int payloadSize = packetSize - (HEADER_SIZE + TRAILER_SIZE);
+    if (payloadSize > 0) {
+      response.fromBuffer(slice(packet, HEADER_SIZE, payloadSize));
+    } else {
+      LOGGER.debug("No payload received, skipping decoding...");
+    }
+  }
+
+  /**
+   * @return a buffer big enough for any packet we request.
+   */
+  public static ByteBuffer newPacketBuffer() {
+    return newPacketBuffer(MAX_DATABASE_PAGES_PACKET_SIZE);
+  }
+
+  /**
+   * @return the size of the last packet decoded, header and trailer included.
+   */
+  public int getLastPacketSize() {
+    return this.lastPacketSize;
+  }
+
+  private <T extends Response> T newResponse(Class<T> type) {
+    ResponseFactory<? extends Response> responseFactory = this.responseFactories.get(type);
+    if (responseFactory == null) {
+      throw new IllegalArgumentException(format("No response factory registered for [%s]", type.getName()));
+    }
+    return type.cast(responseFactory.create(this.dataInputFactory));
+  }
+
+  private static ByteBuffer newPacketBuffer(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static void validateCrc(ByteBuffer packet, int packetSize, int computedCrc16) {
+    int crc = packet.getShort(packetSize - TRAILER_SIZE) & 0xFFFF;
+    // Validate CRC16 matches what we got
     if (crc != computedCrc16) {
-      throw new IllegalStateException(format("Invalid crc, expected [%s], received [%s]",
-              Integer.toHexString(computedCrc16), Integer.toHexString(crc)));
+      throw new CrcMismatchException(CrcMismatchException.Level.PACKET,
+              format("Invalid crc, expected [%s], received [%s]", Integer.toHexString(computedCrc16),
+                      Integer.toHexString(crc)));
     }
   }
 
   private ResponseHeader readHeader(byte[] headerBytes) {
-    try {
-      DataInput input = this.dataInputFactory.create(new ByteArrayInputStream(headerBytes));
-      byte sof = input.readByte();
-      if (sof != 1) {
-        throw new IllegalStateException(format("Received bad SOF value of [%s], something is wrong",
-                toHexString(new byte[]{sof})));
-      }
+    ByteBuffer header = ByteBuffer.wrap(headerBytes).order(ByteOrder.LITTLE_ENDIAN);
+    byte sof = header.get(0);
+    if (sof != 1) {
+      this.protocolTracer.traceResponse(headerBytes, 0, HEADER_SIZE);
+      throw new IllegalStateException(format("Received bad SOF value of [%s], something is wrong",
+              toHexString(new byte[]{sof})));
+    }
 
-      int packetSize = input.readUnsignedShort();
+    int packetSize = header.getShort(1) & 0xFFFF;
 
-      byte commandId = input.readByte();
-      ReceiverCommand command = ReceiverCommand.fromId(commandId);
+    byte commandId = header.get(3);
+    ReceiverCommand command = ReceiverCommand.fromId(commandId);
 
-      return new ResponseHeader(command, packetSize);
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
+    return new ResponseHeader(command, packetSize);
+  }
+
+  private void registerDefaultFactories() {
+    register(GenericResponse.class, new ResponseFactory<GenericResponse>() {
+      @Override
+      public GenericResponse create(DataInputFactory dataInputFactory) {
+        return new GenericResponse(dataInputFactory);
+      }
+    });
+    register(Utf8PayloadGenericResponse.class, new ResponseFactory<Utf8PayloadGenericResponse>() {
+      @Override
+      public Utf8PayloadGenericResponse create(DataInputFactory dataInputFactory) {
+        return new Utf8PayloadGenericResponse(dataInputFactory);
+      }
+    });
+    register(PageRangeResponse.class, new ResponseFactory<PageRangeResponse>() {
+      @Override
+      public PageRangeResponse create(DataInputFactory dataInputFactory) {
+        return new PageRangeResponse(dataInputFactory);
+      }
+    });
+    register(DatabasePageHeaderResponse.class, new ResponseFactory<DatabasePageHeaderResponse>() {
+      @Override
+      public DatabasePageHeaderResponse create(DataInputFactory dataInputFactory) {
+        return new DatabasePageHeaderResponse(dataInputFactory);
+      }
+    });
+    register(DatabasePagesResponse.class, new ResponseFactory<DatabasePagesResponse>() {
+      @Override
+      public DatabasePagesResponse create(DataInputFactory dataInputFactory) {
+        return new DatabasePagesResponse(dataInputFactory);
+      }
+    });
+    register(ManufacturingDataDatabasePagesResponse.class, new ResponseFactory<ManufacturingDataDatabasePagesResponse>() {
+      @Override
+      public ManufacturingDataDatabasePagesResponse create(DataInputFactory dataInputFactory) {
+        return new ManufacturingDataDatabasePagesResponse(dataInputFactory);
+      }
+    });
+    register(GlucoseReadsDatabasePagesResponse.class, new ResponseFactory<GlucoseReadsDatabasePagesResponse>() {
+      @Override
+      public GlucoseReadsDatabasePagesResponse create(DataInputFactory dataInputFactory) {
+        return new GlucoseReadsDatabasePagesResponse(dataInputFactory);
+      }
+    });
+    register(UserEventsDatabasePagesResponse.class, new ResponseFactory<UserEventsDatabasePagesResponse>() {
+      @Override
+      public UserEventsDatabasePagesResponse create(DataInputFactory dataInputFactory) {
+        return new UserEventsDatabasePagesResponse(dataInputFactory);
+      }
+    });
   }
 
   private static class ResponseHeader {
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Runs syncs on a small pool of worker threads so that whoever triggers them, like the USB hotplug thread, only has to
+ * queue them. Syncs are keyed by device and a sync submitted while one for the same device is still queued or running
+ * is coalesced into it (single-flight). The queue is bounded and a sync that doesn't fit is dropped, the device
+ * will be synced on its next attach.
+ * <p/>
+ * A failed sync is logged and doesn't affect the others.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class SyncDispatcher {
+  private static Logger LOGGER = LoggerFactory.getLogger(SyncDispatcher.class);
+
+  // There's normally a single receiver plugged in and it can only do one sync at a time
+  public static final int DEFAULT_WORKER_COUNT = 1;
+  public static final int DEFAULT_QUEUE_CAPACITY = 8;
+
+  private final ThreadPoolExecutor executor;
+  private final ConcurrentMap<String, Boolean> inFlightSyncs = new ConcurrentHashMap<String, Boolean>();
+
+  @Inject
+  public SyncDispatcher() {
+    this(DEFAULT_WORKER_COUNT, DEFAULT_QUEUE_CAPACITY);
+  }
+
+  public SyncDispatcher(int workerCount, int queueCapacity) {
+    checkArgument(workerCount > 0, "Invalid worker count [%s]", workerCount);
+    checkArgument(queueCapacity > 0, "Invalid queue capacity [%s]", queueCapacity);
+    this.executor = new ThreadPoolExecutor(workerCount, workerCount, 0L, TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<Runnable>(queueCapacity),
+        new ThreadFactoryBuilder().setNameFormat("sync-worker-%d").setDaemon(true).build(),
+        new ThreadPoolExecutor.AbortPolicy());
+  }
+
+  /**
+   * Queues a sync for a device unless there's already one queued or running for it.
+   *
+   * @return {@code true} if the sync was queued, {@code false} if it was coalesced with the one in flight for the
+   * same device or dropped because the queue is full or the dispatcher is shut down.
+   */
+  public boolean submit(final String deviceKey, final Runnable sync) {
+    checkNotNull(deviceKey, "deviceKey should be non-null");
+    checkNotNull(sync, "sync should be non-null");
+
+    if (this.inFlightSyncs.putIfAbsent(deviceKey, Boolean.TRUE) != null) {
+      LOGGER.info(format("Sync already in flight for [%s], coalescing", deviceKey));
+      return false;
+    }
+
+    try {
+      this.executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            sync.run();
+          } catch (Throwable e) {
+            LOGGER.error(format("Sync failed for [%s]", deviceKey), e);
+          } finally {
+            inFlightSyncs.remove(deviceKey);
+          }
+        }
+      });
+      return true;
+    } catch (RejectedExecutionException e) {
+      this.inFlightSyncs.remove(deviceKey);
+      LOGGER.warn(format("Sync for [%s] dropped, the dispatcher is full or shut down", deviceKey));
+      return false;
+    }
+  }
+
+  /**
+   * @return {@code true} if a sync is queued or running for the device.
+   */
+  public boolean isInFlight(String deviceKey) {
+    return this.inFlightSyncs.containsKey(deviceKey);
+  }
+
+  /**
+   * Stops accepting syncs and waits for the queued and running ones to complete. Syncs still running after the
+   * timeout are interrupted.
+   *
+   * @return {@code true} if all syncs completed within the timeout.
+   */
+  public boolean shutdown(long timeout, TimeUnit unit) {
+    this.executor.shutdown();
+    try {
+      if (this.executor.awaitTermination(timeout, unit)) {
+        return true;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    LOGGER.warn(format("Syncs still running after [%d] %s, interrupting them", timeout, unit));
+    this.executor.shutdownNow();
+    return false;
+  }
+}
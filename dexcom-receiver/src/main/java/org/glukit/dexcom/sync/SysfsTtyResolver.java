@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * Resolves the tty node of a USB device on Linux by walking {@code /sys/bus/usb/devices}. The device directory is
+ * the one with the {@code busnum} and {@code devnum} of the device and its tty is under one of its interfaces, as
+ * {@code <interface>/tty/ttyACM0} or {@code <interface>/tty:ttyACM0} on older kernels. This spares probing every
+ * serial port with a ping when we already know which device was just attached.
+ *
+ * @author alexandre.normand
+ */
+public class SysfsTtyResolver {
+  private static Logger LOGGER = LoggerFactory.getLogger(SysfsTtyResolver.class);
+  private static final String USB_DEVICES_PATH = "bus/usb/devices";
+  private static final String TTY_DIRECTORY = "tty";
+  private static final String LEGACY_TTY_PREFIX = "tty:";
+
+  private final File usbDevicesDirectory;
+  private final File devDirectory;
+
+  public SysfsTtyResolver() {
+    this(new File("/sys"), new File("/dev"));
+  }
+
+  /**
+   * @param sysfsRoot    where sysfs is mounted, {@code /sys} on a live system
+   * @param devDirectory where the device nodes are, {@code /dev} on a live system
+   */
+  public SysfsTtyResolver(File sysfsRoot, File devDirectory) {
+    this.usbDevicesDirectory = new File(checkNotNull(sysfsRoot), USB_DEVICES_PATH);
+    this.devDirectory = checkNotNull(devDirectory);
+  }
+
+  /**
+   * @return {@code false} if there's no sysfs to walk, like on anything else than Linux.
+   */
+  public boolean isSupported() {
+    return this.usbDevicesDirectory.isDirectory();
+  }
+
+  /**
+   * @return the path of the tty node of the device, {@code null} if the device or its tty can't be found.
+   */
+  public String resolveTty(int busNumber, int deviceAddress, short vendorId, short productId) {
+    File[] devices = this.usbDevicesDirectory.listFiles();
+    if (devices == null) {
+      return null;
+    }
+
+    for (File device : devices) {
+      // Interfaces are listed alongside devices, as <device>:<configuration>.<interface>
+      if (device.getName().contains(":") || !isDevice(device, busNumber, deviceAddress)) {
+        continue;
+      }
+
+      if (!isProduct(device, vendorId, productId)) {
+        LOGGER.warn(format("Device [%s] at bus [%d] address [%d] isn't [%04x:%04x], not resolving its tty",
+                device.getName(), busNumber, deviceAddress, vendorId, productId));
+        return null;
+      }
+
+      String tty = findTty(device);
+      if (tty == null) {
+        LOGGER.info(format("Device [%s] doesn't have a tty (yet)", device.getName()));
+        return null;
+      }
+      return new File(this.devDirectory, tty).getPath();
+    }
+    return null;
+  }
+
+  private static boolean isDevice(File device, int busNumber, int deviceAddress) {
+    return Integer.toString(busNumber).equals(readAttribute(device, "busnum")) &&
+            Integer.toString(deviceAddress).equals(readAttribute(device, "devnum"));
+  }
+
+  private static boolean isProduct(File device, short vendorId, short productId) {
+    return format("%04x", vendorId).equalsIgnoreCase(readAttribute(device, "idVendor")) &&
+            format("%04x", productId).equalsIgnoreCase(readAttribute(device, "idProduct"));
+  }
+
+  /**
+   * @return the name of the first tty found under the interfaces of the device, in interface order.
+   */
+  private static String findTty(File device) {
+    File[] interfaces = device.listFiles();
+    if (interfaces == null) {
+      return null;
+    }
+
+    Arrays.sort(interfaces);
+    for (File deviceInterface : interfaces) {
+      if (!deviceInterface.getName().startsWith(device.getName() + ":")) {
+        continue;
+      }
+
+      String[] ttys = new File(deviceInterface, TTY_DIRECTORY).list();
+      if (ttys != null && ttys.length > 0) {
+        Arrays.sort(ttys);
+        return ttys[0];
+      }
+
+      String[] entries = deviceInterface.list();
+      if (entries != null) {
+        Arrays.sort(entries);
+        for (String entry : entries) {
+          if (entry.startsWith(LEGACY_TTY_PREFIX)) {
+            return entry.substring(LEGACY_TTY_PREFIX.length());
+          }
+        }
+      }
+    }
+    return null;
+  }
+
+  private static String readAttribute(File device, String attribute) {
+    File attributeFile = new File(device, attribute);
+    if (!attributeFile.isFile()) {
+      return null;
+    }
+
+    try {
+      return Files.toString(attributeFile, Charsets.US_ASCII).trim();
+    } catch (IOException e) {
+      LOGGER.debug(format("Couldn't read [%s]", attributeFile), e);
+      return null;
+    }
+  }
+}
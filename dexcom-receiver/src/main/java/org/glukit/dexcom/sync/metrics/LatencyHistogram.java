@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in power of two buckets of microseconds. Recording a latency is a few atomic
+ * increments and doesn't allocate so it can stay on the sync's hot path. Percentiles are only as precise as the
+ * buckets, they're reported as the upper bound of the bucket they fall in.
+ *
+ * @author alexandre.normand
+ */
+public class LatencyHistogram {
+  // Bucket i holds latencies in [2^(i-1), 2^i) microseconds and bucket 0 the ones under a microsecond. The last
+  // bucket, from about 4.5 minutes, takes everything above.
+  static final int BUCKET_COUNT = 30;
+  private static final double NANOS_PER_MILLI = 1e6;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  public void record(long nanos) {
+    long latencyNanos = Math.max(nanos, 0L);
+    long micros = latencyNanos / 1000L;
+    this.buckets.incrementAndGet(Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros)));
+    this.count.incrementAndGet();
+    this.totalNanos.addAndGet(latencyNanos);
+
+    long max = this.maxNanos.get();
+    while (latencyNanos > max && !this.maxNanos.compareAndSet(max, latencyNanos)) {
+      max = this.maxNanos.get();
+    }
+  }
+
+  public long getCount() {
+    return this.count.get();
+  }
+
+  public long getTotalNanos() {
+    return this.totalNanos.get();
+  }
+
+  /**
+   * Takes a snapshot while latencies are still being recorded so it's only approximately consistent.
+   */
+  public LatencySnapshot snapshot() {
+    long[] bucketCounts = new long[BUCKET_COUNT];
+    long bucketTotal = 0;
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      bucketCounts[i] = this.buckets.get(i);
+      bucketTotal += bucketCounts[i];
+    }
+
+    long count = this.count.get();
+    double meanMillis = count == 0 ? 0.0 : this.totalNanos.get() / NANOS_PER_MILLI / count;
+    double maxMillis = this.maxNanos.get() / NANOS_PER_MILLI;
+    return new LatencySnapshot(count, meanMillis, percentileMillis(bucketCounts, bucketTotal, 0.5, maxMillis),
+        percentileMillis(bucketCounts, bucketTotal, 0.99, maxMillis), maxMillis);
+  }
+
+  public void reset() {
+    for (int i = 0; i < BUCKET_COUNT; i++) {
+      this.buckets.set(i, 0L);
+    }
+    this.count.set(0L);
+    this.totalNanos.set(0L);
+    this.maxNanos.set(0L);
+  }
+
+  private static double percentileMillis(long[] bucketCounts, long bucketTotal, double percentile, double maxMillis) {
+    if (bucketTotal == 0) {
+      return 0.0;
+    }
+
+    long rank = (long) Math.ceil(percentile * bucketTotal);
+    long cumulativeCount = 0;
+    for (int i = 0; i < bucketCounts.length; i++) {
+      cumulativeCount += bucketCounts[i];
+      if (cumulativeCount >= rank) {
+        double upperBoundMillis = (1L << i) / 1000.0;
+        return Math.min(upperBoundMillis, maxMillis);
+      }
+    }
+    return maxMillis;
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import com.google.inject.Singleton;
+import org.glukit.dexcom.sync.CrcMismatchException;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.glukit.dexcom.sync.model.RecordType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.google.common.collect.Maps.newTreeMap;
+
+/**
+ * Metrics of the syncs: round-trip latencies per {@link ReceiverCommand}, read throughput per {@link RecordType},
+ * crc failures per {@link CrcMismatchException.Level} and time spent converting and exporting.
+ * <p/>
+ * Recording never locks nor allocates, it's only atomic increments on counters that all exist up front, so the
+ * metrics are always on. Registered as an MXBean under {@link #OBJECT_NAME} by the daemon.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class SyncMetrics implements SyncMetricsMXBean {
+  public static final String OBJECT_NAME = "org.glukit.dexcom:type=SyncMetrics";
+
+  private static final ReceiverCommand[] COMMANDS = ReceiverCommand.values();
+  private static final RecordType[] RECORD_TYPES = RecordType.values();
+  private static final CrcMismatchException.Level[] CRC_LEVELS = CrcMismatchException.Level.values();
+
+  private final Map<ReceiverCommand, LatencyHistogram> roundTripLatencies =
+      new EnumMap<ReceiverCommand, LatencyHistogram>(ReceiverCommand.class);
+  private final AtomicLongArray pagesRead = new AtomicLongArray(RECORD_TYPES.length);
+  private final AtomicLongArray bytesRead = new AtomicLongArray(RECORD_TYPES.length);
+  private final AtomicLongArray pageReadNanos = new AtomicLongArray(RECORD_TYPES.length);
+  private final AtomicLongArray crcFailures = new AtomicLongArray(CRC_LEVELS.length);
+  private final LatencyHistogram conversionLatency = new LatencyHistogram();
+  private final LatencyHistogram exportLatency = new LatencyHistogram();
+
+  public SyncMetrics() {
+    for (ReceiverCommand command : COMMANDS) {
+      this.roundTripLatencies.put(command, new LatencyHistogram());
+    }
+  }
+
+  public void recordRoundTrip(ReceiverCommand command, long nanos) {
+    this.roundTripLatencies.get(command).record(nanos);
+  }
+
+  public void recordPagesRead(RecordType recordType, int pageCount, int byteCount, long nanos) {
+    int index = recordType.ordinal();
+    this.pagesRead.addAndGet(index, pageCount);
+    this.bytesRead.addAndGet(index, byteCount);
+    this.pageReadNanos.addAndGet(index, nanos);
+  }
+
+  public void recordCrcFailure(CrcMismatchException.Level level) {
+    this.crcFailures.incrementAndGet(level.ordinal());
+  }
+
+  /**
+   * Counts the crc failure that caused a sync or a probe to fail, if that's what it was.
+   */
+  public void recordFailure(Throwable failure) {
+    for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+      if (cause instanceof CrcMismatchException) {
+        recordCrcFailure(((CrcMismatchException) cause).getLevel());
+        return;
+      }
+    }
+  }
+
+  public void recordConversion(long nanos) {
+    this.conversionLatency.record(nanos);
+  }
+
+  public void recordExport(long nanos) {
+    this.exportLatency.record(nanos);
+  }
+
+  @Override
+  public Map<String, LatencySnapshot> getRoundTripLatencies() {
+    Map<String, LatencySnapshot> latencies = newTreeMap();
+    for (Map.Entry<ReceiverCommand, LatencyHistogram> entry : this.roundTripLatencies.entrySet()) {
+      if (entry.getValue().getCount() > 0) {
+        latencies.put(entry.getKey().name(), entry.getValue().snapshot());
+      }
+    }
+    return latencies;
+  }
+
+  @Override
+  public Map<String, Long> getPagesRead() {
+    return byRecordType(this.pagesRead);
+  }
+
+  @Override
+  public Map<String, Long> getBytesRead() {
+    return byRecordType(this.bytesRead);
+  }
+
+  @Override
+  public Map<String, Double> getBytesPerSecond() {
+    return ratesByRecordType(this.bytesRead);
+  }
+
+  @Override
+  public Map<String, Double> getPagesPerSecond() {
+    return ratesByRecordType(this.pagesRead);
+  }
+
+  @Override
+  public Map<String, Long> getCrcFailures() {
+    Map<String, Long> failures = newTreeMap();
+    for (CrcMismatchException.Level level : CRC_LEVELS) {
+      failures.put(level.name(), this.crcFailures.get(level.ordinal()));
+    }
+    return failures;
+  }
+
+  @Override
+  public LatencySnapshot getConversionLatency() {
+    return this.conversionLatency.snapshot();
+  }
+
+  @Override
+  public LatencySnapshot getExportLatency() {
+    return this.exportLatency.snapshot();
+  }
+
+  @Override
+  public void reset() {
+    for (LatencyHistogram histogram : this.roundTripLatencies.values()) {
+      histogram.reset();
+    }
+    for (int i = 0; i < RECORD_TYPES.length; i++) {
+      this.pagesRead.set(i, 0L);
+      this.bytesRead.set(i, 0L);
+      this.pageReadNanos.set(i, 0L);
+    }
+    for (int i = 0; i < CRC_LEVELS.length; i++) {
+      this.crcFailures.set(i, 0L);
+    }
+    this.conversionLatency.reset();
+    this.exportLatency.reset();
+  }
+
+  private static Map<String, Long> byRecordType(AtomicLongArray counters) {
+    Map<String, Long> countsByRecordType = newTreeMap();
+    for (RecordType recordType : RECORD_TYPES) {
+      long count = counters.get(recordType.ordinal());
+      if (count > 0) {
+        countsByRecordType.put(recordType.name(), count);
+      }
+    }
+    return countsByRecordType;
+  }
+
+  private Map<String, Double> ratesByRecordType(AtomicLongArray counters) {
+    Map<String, Double> ratesByRecordType = newTreeMap();
+    for (RecordType recordType : RECORD_TYPES) {
+      long nanos = this.pageReadNanos.get(recordType.ordinal());
+      if (nanos > 0) {
+        ratesByRecordType.put(recordType.name(),
+            counters.get(recordType.ordinal()) * (double) TimeUnit.SECONDS.toNanos(1) / nanos);
+      }
+    }
+    return ratesByRecordType;
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.fasterxml.jackson.databind.ser.std.ToStringSerializer;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.threeten.bp.Instant;
+
+import javax.annotation.Nullable;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+/**
+ * Performance report of a single sync, written as json by the {@link SyncReporter}. Phases are kept in the order
+ * they ran and the page downloads are summed up per {@link RecordType}.
+ * <p/>
+ * Not thread-safe, a report is filled by the thread running its sync.
+ *
+ * @author alexandre.normand
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SyncReport {
+  public static final String DISCOVERY_PHASE = "discovery";
+  public static final String CONVERSION_PHASE = "convertData";
+  public static final String EXPORT_PHASE = "exportData";
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final String deviceKey;
+  private final Instant startTime;
+  private final List<Phase> phases = newArrayList();
+  private final Map<RecordType, RecordTypeReport> recordTypes =
+      new EnumMap<RecordType, RecordTypeReport>(RecordType.class);
+  private double durationMillis;
+  private long syncThreadAllocatedBytes = -1L;
+  private long peakHeapBytes = -1L;
+  private String failure;
+  // Set by the SyncReporter to measure the sync once it's done, they're not part of the report
+  long startNanos;
+  long startAllocatedBytes = -1L;
+
+  public SyncReport(String deviceKey, Instant startTime) {
+    this.deviceKey = deviceKey;
+    this.startTime = startTime;
+  }
+
+  public void recordPhase(String name, @Nullable RecordType recordType, long nanos) {
+    this.phases.add(new Phase(name, recordType, nanos / NANOS_PER_MILLI));
+    sampleHeapUsage();
+  }
+
+  /**
+   * Keeps the heap usage if it's the highest seen since the sync started.
+   */
+  void sampleHeapUsage() {
+    this.peakHeapBytes = Math.max(this.peakHeapBytes,
+        ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+  }
+
+  public void recordPagesRead(RecordType recordType, int pageCount, int byteCount, long nanos) {
+    RecordTypeReport recordTypeReport = getRecordTypeReport(recordType);
+    recordTypeReport.pages += pageCount;
+    recordTypeReport.bytes += byteCount;
+    recordTypeReport.downloadMillis += nanos / NANOS_PER_MILLI;
+  }
+
+  public void recordNewRecords(RecordType recordType, int recordCount) {
+    getRecordTypeReport(recordType).newRecords += recordCount;
+  }
+
+  private RecordTypeReport getRecordTypeReport(RecordType recordType) {
+    RecordTypeReport recordTypeReport = this.recordTypes.get(recordType);
+    if (recordTypeReport == null) {
+      recordTypeReport = new RecordTypeReport();
+      this.recordTypes.put(recordType, recordTypeReport);
+    }
+    return recordTypeReport;
+  }
+
+  public String getDeviceKey() {
+    return deviceKey;
+  }
+
+  @JsonSerialize(using = ToStringSerializer.class)
+  public Instant getStartTime() {
+    return startTime;
+  }
+
+  public List<Phase> getPhases() {
+    return phases;
+  }
+
+  public Map<RecordType, RecordTypeReport> getRecordTypes() {
+    return recordTypes;
+  }
+
+  public long getBytesRead() {
+    long bytesRead = 0L;
+    for (RecordTypeReport recordTypeReport : this.recordTypes.values()) {
+      bytesRead += recordTypeReport.getBytes();
+    }
+    return bytesRead;
+  }
+
+  public double getDurationMillis() {
+    return durationMillis;
+  }
+
+  public void setDurationNanos(long durationNanos) {
+    this.durationMillis = durationNanos / NANOS_PER_MILLI;
+  }
+
+  /**
+   * @return the bytes allocated by the thread running the sync or -1 if the jvm can't tell. This is the sync thread
+   * only, allocations of the threads it hands work to (the receiver I/O thread or the fork/join pool converting the
+   * data) aren't counted since they're shared with other syncs.
+   */
+  public long getSyncThreadAllocatedBytes() {
+    return syncThreadAllocatedBytes;
+  }
+
+  public void setSyncThreadAllocatedBytes(long syncThreadAllocatedBytes) {
+    this.syncThreadAllocatedBytes = syncThreadAllocatedBytes;
+  }
+
+  /**
+   * @return the highest heap usage sampled when the sync started, at the end of each of its phases and when it
+   * finished or -1 if it wasn't sampled. The heap can peak higher between samples.
+   */
+  public long getPeakHeapBytes() {
+    return peakHeapBytes;
+  }
+
+  /**
+   * @return the error that made the sync fail, {@code null} if it succeeded.
+   */
+  public String getFailure() {
+    return failure;
+  }
+
+  public void setFailure(String failure) {
+    this.failure = failure;
+  }
+
+  @JsonInclude(JsonInclude.Include.NON_NULL)
+  public static class Phase {
+    private final String name;
+    private final RecordType recordType;
+    private final double millis;
+
+    private Phase(String name, RecordType recordType, double millis) {
+      this.name = name;
+      this.recordType = recordType;
+      this.millis = millis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public RecordType getRecordType() {
+      return recordType;
+    }
+
+    public double getMillis() {
+      return millis;
+    }
+  }
+
+  public static class RecordTypeReport {
+    private long pages;
+    private long bytes;
+    private long newRecords;
+    private double downloadMillis;
+
+    public long getPages() {
+      return pages;
+    }
+
+    public long getBytes() {
+      return bytes;
+    }
+
+    public long getNewRecords() {
+      return newRecords;
+    }
+
+    public double getDownloadMillis() {
+      return downloadMillis;
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static java.lang.String.format;
+import static org.glukit.sync.api.BloodShepherdProperties.OUTPUT_PATH;
+import static org.glukit.sync.api.BloodShepherdProperties.STATS_PATH;
+
+/**
+ * Starts a {@link SyncReport} for each sync and writes it as json once the sync is done, to the
+ * {@link BloodShepherdProperties#STATS_PATH} or next to the exports if there's none. Reports are only a diagnostic
+ * so failing to write one doesn't fail the sync.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class SyncReporter {
+  private static Logger LOGGER = LoggerFactory.getLogger(SyncReporter.class);
+  static final String REPORT_FILE_NAME_FORMAT = "blood-shepherd-sync-%s.json";
+
+  private static final ObjectWriter OBJECT_WRITER = new ObjectMapper().writerWithDefaultPrettyPrinter();
+
+  private final BloodShepherdProperties properties;
+
+  @Inject
+  public SyncReporter(BloodShepherdProperties properties) {
+    this.properties = properties;
+  }
+
+  /**
+   * Starts the report of a sync about to run on the current thread.
+   */
+  public SyncReport start(String deviceKey) {
+    SyncReport syncReport = new SyncReport(deviceKey, Instant.now());
+    syncReport.startNanos = System.nanoTime();
+    syncReport.startAllocatedBytes = getCurrentThreadAllocatedBytes();
+    syncReport.sampleHeapUsage();
+    return syncReport;
+  }
+
+  /**
+   * Completes the report with the duration and memory usage of its sync and writes it. Must be called from the
+   * thread that started it.
+   */
+  public void finish(SyncReport syncReport) {
+    syncReport.setDurationNanos(System.nanoTime() - syncReport.startNanos);
+    long allocatedBytes = getCurrentThreadAllocatedBytes();
+    if (allocatedBytes >= 0 && syncReport.startAllocatedBytes >= 0) {
+      syncReport.setSyncThreadAllocatedBytes(allocatedBytes - syncReport.startAllocatedBytes);
+    }
+    syncReport.sampleHeapUsage();
+
+    String reportPath = this.properties.getProperty(STATS_PATH, this.properties.getProperty(OUTPUT_PATH));
+    if (reportPath == null) {
+      LOGGER.debug("No path to write the sync report to, skipping it");
+      return;
+    }
+
+    File reportFile = new File(reportPath, format(REPORT_FILE_NAME_FORMAT, syncReport.getStartTime().toEpochMilli()));
+    try {
+      OBJECT_WRITER.writeValue(reportFile, syncReport);
+      LOGGER.info(format("Wrote sync report to [%s]", reportFile.getAbsolutePath()));
+    } catch (IOException e) {
+      LOGGER.warn(format("Error writing sync report to [%s], ignoring.", reportFile.getAbsolutePath()), e);
+    }
+  }
+
+  /**
+   * @return the bytes allocated by the current thread so far or -1 if the jvm doesn't track it.
+   */
+  private static long getCurrentThreadAllocatedBytes() {
+    ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean allocationMXBean = (com.sun.management.ThreadMXBean) threadMXBean;
+      if (allocationMXBean.isThreadAllocatedMemorySupported() && allocationMXBean.isThreadAllocatedMemoryEnabled()) {
+        return allocationMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return -1L;
+  }
+}
@@ -26,6 +26,8 @@ package org.glukit.dexcom.sync.model;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
+import java.nio.ByteBuffer;
+
 /**
  * Database Page
  *
@@ -35,9 +37,9 @@ import lombok.ToString;
 @ToString
 public class DatabasePage {
   private DatabasePageHeader pageHeader;
-  private byte[] pageData = new byte[500];
+  private ByteBuffer pageData;
 
-  public DatabasePage(DatabasePageHeader pageHeader, byte[] pageData) {
+  public DatabasePage(DatabasePageHeader pageHeader, ByteBuffer pageData) {
     this.pageHeader = pageHeader;
     this.pageData = pageData;
   }
@@ -46,7 +48,10 @@ public class DatabasePage {
     return pageHeader;
   }
 
-  public byte[] getPageData() {
-    return pageData;
+  /**
+   * @return the page data, this is a view of the response it was read from and is only valid until the next read.
+   */
+  public ByteBuffer getPageData() {
+    return pageData.duplicate().order(pageData.order());
   }
 }
@@ -35,7 +35,14 @@ import static com.google.common.base.Preconditions.checkArgument;
 @EqualsAndHashCode
 @ToString
 public class DatabaseReadRequestSpec {
-  public static final byte MAX_PAGES_PER_COMMAND = 4;
+  /**
+   * What the G4 firmware is known to support, larger batches can be configured or auto-tuned per device.
+   */
+  public static final byte DEFAULT_PAGES_PER_COMMAND = 4;
+  /**
+   * The most 528 byte pages that fit in a response, whose size is on 16 bits.
+   */
+  public static final byte MAX_PAGES_PER_COMMAND = 124;
   private long startPage;
   private byte numberOfPages;
 
@@ -5,7 +5,9 @@ import lombok.ToString;
 import org.glukit.sync.api.ReceiverSyncData;
 import org.threeten.bp.Instant;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Represents the full set of data from a sync on a {@link org.glukit.dexcom.sync.g4.DexcomG4DeviceFilter}
@@ -19,6 +21,7 @@ public class DexcomSyncData implements ReceiverSyncData {
   private List<UserEventRecord> userEvents;
   private ManufacturingParameters manufacturingParameters;
   private Instant syncTime;
+  private Map<RecordType, PageHighWaterMark> highWaterMarks = Collections.emptyMap();
 
   public DexcomSyncData(List<GlucoseReadRecord> glucoseReads,
                         List<UserEventRecord> userEvents,
@@ -29,6 +32,14 @@ public class DexcomSyncData implements ReceiverSyncData {
     this.syncTime = Instant.now();
   }
 
+  public DexcomSyncData(List<GlucoseReadRecord> glucoseReads,
+                        List<UserEventRecord> userEvents,
+                        ManufacturingParameters manufacturingParameters,
+                        Map<RecordType, PageHighWaterMark> highWaterMarks) {
+    this(glucoseReads, userEvents, manufacturingParameters);
+    this.highWaterMarks = highWaterMarks;
+  }
+
   public DexcomSyncData(List<GlucoseReadRecord> glucoseReads,
                         List<UserEventRecord> userEvents,
                         ManufacturingParameters manufacturingParameters,
@@ -43,6 +54,13 @@ public class DexcomSyncData implements ReceiverSyncData {
     return glucoseReads;
   }
 
+  /**
+   * @return the glucose reads as {@link GlucoseReadColumns}, this is only a copy if they weren't given as such.
+   */
+  public GlucoseReadColumns getGlucoseReadColumns() {
+    return GlucoseReadColumns.copyOf(glucoseReads);
+  }
+
   public ManufacturingParameters getManufacturingParameters() {
     return manufacturingParameters;
   }
@@ -51,6 +69,13 @@ public class DexcomSyncData implements ReceiverSyncData {
     return userEvents;
   }
 
+  /**
+   * @return the {@link PageHighWaterMark}s reached by this sync, to be persisted once the data is safely exported.
+   */
+  public Map<RecordType, PageHighWaterMark> getHighWaterMarks() {
+    return highWaterMarks;
+  }
+
   @Override
   public Instant getUpdateTime() {
     return syncTime;
@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.model;
+
+import com.google.common.primitives.UnsignedInts;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+/**
+ * Columnar container of {@link GlucoseReadRecord}s backed by primitive arrays. Each record takes 19 bytes
+ * instead of a full object so this is what's used to hold long backfills. Fields are all stored in their
+ * receiver width (unsigned 32 bits for seconds and indexes) and widened when read.
+ * <p/>
+ * It's also a {@link java.util.List} of {@link GlucoseReadRecord} for callers that want objects, which are then
+ * created on every {@link #get(int)}.
+ *
+ * @author alexandre.normand
+ */
+public class GlucoseReadColumns extends AbstractList<GlucoseReadRecord> {
+  private static final int DEFAULT_CAPACITY = 256;
+
+  private int size = 0;
+  private int[] internalSeconds;
+  private int[] localSeconds;
+  private short[] glucoseValuesWithFlags;
+  private byte[] trendArrowsAndNoise;
+  private int[] recordNumbers;
+  private int[] pageNumbers;
+
+  public GlucoseReadColumns() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public GlucoseReadColumns(int initialCapacity) {
+    this.internalSeconds = new int[initialCapacity];
+    this.localSeconds = new int[initialCapacity];
+    this.glucoseValuesWithFlags = new short[initialCapacity];
+    this.trendArrowsAndNoise = new byte[initialCapacity];
+    this.recordNumbers = new int[initialCapacity];
+    this.pageNumbers = new int[initialCapacity];
+  }
+
+  /**
+   * @return {@code glucoseReads} if it's already a {@link GlucoseReadColumns} or a copy of it otherwise.
+   */
+  public static GlucoseReadColumns copyOf(Collection<GlucoseReadRecord> glucoseReads) {
+    if (glucoseReads instanceof GlucoseReadColumns) {
+      return (GlucoseReadColumns) glucoseReads;
+    }
+
+    GlucoseReadColumns columns = new GlucoseReadColumns(Math.max(glucoseReads.size(), 1));
+    columns.addAll(glucoseReads);
+    return columns;
+  }
+
+  public void add(long internalSecondsSinceDexcomEpoch,
+                  long localSecondsSinceDexcomEpoch,
+                  int glucoseValueWithFlags,
+                  byte trendArrowAndNoise,
+                  long recordNumber,
+                  long pageNumber) {
+    ensureCapacity(this.size + 1);
+    this.internalSeconds[this.size] = (int) internalSecondsSinceDexcomEpoch;
+    this.localSeconds[this.size] = (int) localSecondsSinceDexcomEpoch;
+    this.glucoseValuesWithFlags[this.size] = (short) glucoseValueWithFlags;
+    this.trendArrowsAndNoise[this.size] = trendArrowAndNoise;
+    this.recordNumbers[this.size] = (int) recordNumber;
+    this.pageNumbers[this.size] = (int) pageNumber;
+    this.size++;
+    this.modCount++;
+  }
+
+  @Override
+  public boolean add(GlucoseReadRecord glucoseReadRecord) {
+    add(glucoseReadRecord.getInternalSecondsSinceDexcomEpoch(), glucoseReadRecord.getLocalSecondsSinceDexcomEpoch(),
+            glucoseReadRecord.getGlucoseValueWithFlags(), glucoseReadRecord.getTrendArrowAndNoise(),
+            glucoseReadRecord.getRecordNumber(), glucoseReadRecord.getPageNumber());
+    return true;
+  }
+
+  @Override
+  public boolean addAll(Collection<? extends GlucoseReadRecord> glucoseReads) {
+    if (glucoseReads instanceof GlucoseReadColumns) {
+      GlucoseReadColumns other = (GlucoseReadColumns) glucoseReads;
+      ensureCapacity(this.size + other.size);
+      System.arraycopy(other.internalSeconds, 0, this.internalSeconds, this.size, other.size);
+      System.arraycopy(other.localSeconds, 0, this.localSeconds, this.size, other.size);
+      System.arraycopy(other.glucoseValuesWithFlags, 0, this.glucoseValuesWithFlags, this.size, other.size);
+      System.arraycopy(other.trendArrowsAndNoise, 0, this.trendArrowsAndNoise, this.size, other.size);
+      System.arraycopy(other.recordNumbers, 0, this.recordNumbers, this.size, other.size);
+      System.arraycopy(other.pageNumbers, 0, this.pageNumbers, this.size, other.size);
+      this.size += other.size;
+      this.modCount++;
+      return other.size > 0;
+    }
+
+    for (GlucoseReadRecord glucoseReadRecord : glucoseReads) {
+      add(glucoseReadRecord);
+    }
+    return !glucoseReads.isEmpty();
+  }
+
+  /**
+   * Removes the reads with an internal time at or before {@code sinceRelativeToDexcomEpoch}, compacting the columns in
+   * place rather than copying the reads we keep.
+   *
+   * @return this, with only the reads strictly after {@code sinceRelativeToDexcomEpoch}.
+   */
+  public GlucoseReadColumns retainNewerThan(long sinceRelativeToDexcomEpoch) {
+    int retained = 0;
+    for (int i = 0; i < this.size; i++) {
+      if (getInternalSecondsSinceDexcomEpoch(i) > sinceRelativeToDexcomEpoch) {
+        if (retained != i) {
+          this.internalSeconds[retained] = this.internalSeconds[i];
+          this.localSeconds[retained] = this.localSeconds[i];
+          this.glucoseValuesWithFlags[retained] = this.glucoseValuesWithFlags[i];
+          this.trendArrowsAndNoise[retained] = this.trendArrowsAndNoise[i];
+          this.recordNumbers[retained] = this.recordNumbers[i];
+          this.pageNumbers[retained] = this.pageNumbers[i];
+        }
+        retained++;
+      }
+    }
+
+    if (retained != this.size) {
+      this.size = retained;
+      this.modCount++;
+    }
+    return this;
+  }
+
+  @Override
+  public GlucoseReadRecord get(int index) {
+    checkElementIndex(index, this.size);
+    return new GlucoseReadRecord(getInternalSecondsSinceDexcomEpoch(index), getLocalSecondsSinceDexcomEpoch(index),
+            getGlucoseValueWithFlags(index), getTrendArrowAndNoise(index), getRecordNumber(index),
+            getPageNumber(index));
+  }
+
+  @Override
+  public int size() {
+    return this.size;
+  }
+
+  public long getInternalSecondsSinceDexcomEpoch(int index) {
+    return UnsignedInts.toLong(this.internalSeconds[index]);
+  }
+
+  public long getLocalSecondsSinceDexcomEpoch(int index) {
+    return UnsignedInts.toLong(this.localSeconds[index]);
+  }
+
+  public int getGlucoseValueWithFlags(int index) {
+    return this.glucoseValuesWithFlags[index] & 0xFFFF;
+  }
+
+  public byte getTrendArrowAndNoise(int index) {
+    return this.trendArrowsAndNoise[index];
+  }
+
+  public long getRecordNumber(int index) {
+    return UnsignedInts.toLong(this.recordNumbers[index]);
+  }
+
+  public long getPageNumber(int index) {
+    return UnsignedInts.toLong(this.pageNumbers[index]);
+  }
+
+  private void ensureCapacity(int minCapacity) {
+    int capacity = this.internalSeconds.length;
+    if (minCapacity <= capacity) {
+      return;
+    }
+
+    int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1) + 1);
+    this.internalSeconds = Arrays.copyOf(this.internalSeconds, newCapacity);
+    this.localSeconds = Arrays.copyOf(this.localSeconds, newCapacity);
+    this.glucoseValuesWithFlags = Arrays.copyOf(this.glucoseValuesWithFlags, newCapacity);
+    this.trendArrowsAndNoise = Arrays.copyOf(this.trendArrowsAndNoise, newCapacity);
+    this.recordNumbers = Arrays.copyOf(this.recordNumbers, newCapacity);
+    this.pageNumbers = Arrays.copyOf(this.pageNumbers, newCapacity);
+  }
+}
@@ -33,8 +33,13 @@ import lombok.ToString;
  */
 @EqualsAndHashCode
 @ToString
-public class GlucoseReadRecord {
+public class GlucoseReadRecord implements TimestampedRecord {
   public static final int RECORD_LENGTH = 13;
+  // Offsets of the fields within a record
+  public static final int INTERNAL_SECONDS_OFFSET = 0;
+  public static final int LOCAL_SECONDS_OFFSET = 4;
+  public static final int GLUCOSE_VALUE_WITH_FLAGS_OFFSET = 8;
+  public static final int TREND_ARROW_AND_NOISE_OFFSET = 10;
 
   private long internalSecondsSinceDexcomEpoch;
   private long localSecondsSinceDexcomEpoch;
@@ -57,6 +62,7 @@ public class GlucoseReadRecord {
     this.pageNumber = pageNumber;
   }
 
+  @Override
   public long getInternalSecondsSinceDexcomEpoch() {
     return internalSecondsSinceDexcomEpoch;
   }
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.model;
+
+import lombok.EqualsAndHashCode;
+import lombok.ToString;
+
+/**
+ * Marks how far a {@link RecordType} partition has been synced. It holds the first page that might still
+ * contain records we haven't seen and the index of the first of those records. The next sync only needs to read
+ * pages starting at {@link #getNextPage()}.
+ *
+ * @author alexandre.normand
+ */
+@EqualsAndHashCode
+@ToString
+public class PageHighWaterMark {
+  private long nextPage;
+  private long nextRecordIndex;
+
+  public PageHighWaterMark(long nextPage, long nextRecordIndex) {
+    this.nextPage = nextPage;
+    this.nextRecordIndex = nextRecordIndex;
+  }
+
+  /**
+   * Builds the mark that follows the last page read during a sync. A page that isn't full yet will get more records
+   * so it has to be read again next time; a full page never changes so we can move on to the one after it.
+   *
+   * @param lastPageHeader  the header of the last page read
+   * @param recordsPerPage  the number of records a page can hold for this record type
+   * @return the mark to persist after the sync
+   */
+  public static PageHighWaterMark after(DatabasePageHeader lastPageHeader, int recordsPerPage) {
+    long nextRecordIndex = lastPageHeader.getFirstRecordIndex() + lastPageHeader.getNumberOfRecords();
+    long nextPage = lastPageHeader.getNumberOfRecords() >= recordsPerPage ?
+            lastPageHeader.getPageNumber() + 1 : lastPageHeader.getPageNumber();
+    return new PageHighWaterMark(nextPage, nextRecordIndex);
+  }
+
+  /**
+   * @return true if this mark can be used against the current page range of the receiver. A mark that points
+   *         before the first page (the receiver wrapped around) or past the page after the last one (the receiver
+   *         was reset or isn't the same one) can't be trusted.
+   */
+  public boolean isWithin(long firstPage, long lastPage) {
+    return this.nextPage >= firstPage && this.nextPage <= lastPage + 1;
+  }
+
+  /**
+   * @return true if the page range has no page at or after the mark, meaning there is nothing new to read.
+   */
+  public boolean isUpToDateWith(long lastPage) {
+    return this.nextPage > lastPage;
+  }
+
+  public long getNextPage() {
+    return nextPage;
+  }
+
+  public long getNextRecordIndex() {
+    return nextRecordIndex;
+  }
+}
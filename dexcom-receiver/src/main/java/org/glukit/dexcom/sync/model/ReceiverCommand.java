@@ -23,10 +23,6 @@
 
 package org.glukit.dexcom.sync.model;
 
-import java.util.Map;
-
-import static com.google.common.collect.Maps.newHashMap;
-
 /**
  * All possible receiver commands.
  *
@@ -84,25 +80,31 @@ public enum ReceiverCommand {
   WriteTransmitterID((byte) 0x1a);
 
   private byte id;
-  private static Map<Byte, ReceiverCommand> mappings;
+  private static final ReceiverCommand[] MAPPINGS = new ReceiverCommand[256];
 
-  private ReceiverCommand(byte id) {
-    this.id = id;
-    addMapping(id, this);
+  static {
+    for (ReceiverCommand receiverCommand : values()) {
+      MAPPINGS[receiverCommand.id & 0xFF] = receiverCommand;
+    }
   }
 
-  private static void addMapping(byte id, ReceiverCommand receiverCommand) {
-    if (mappings == null) {
-      mappings = newHashMap();
-    }
-    mappings.put(id, receiverCommand);
+  private ReceiverCommand(byte id) {
+    this.id = id;
   }
 
   public static ReceiverCommand fromId(byte id) {
-    return mappings.get(id);
+    return MAPPINGS[id & 0xFF];
   }
 
   public byte getId() {
     return id;
   }
+
+  /**
+   * @return {@code true} if the receiver answers requests with this command, from {@link #Ack} to {@link #InvalidMode}.
+   * Responses don't echo the command of their request.
+   */
+  public boolean isResponse() {
+    return this.id >= Ack.id && this.id <= InvalidMode.id;
+  }
 }
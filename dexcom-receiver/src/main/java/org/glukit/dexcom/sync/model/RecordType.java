@@ -23,10 +23,6 @@
 
 package org.glukit.dexcom.sync.model;
 
-import java.util.Map;
-
-import static com.google.common.collect.Maps.newHashMap;
-
 /**
  * Type of record
  *
@@ -49,22 +45,20 @@ public enum RecordType {
   UserSettingData((byte) 0x0C);
 
   private byte id;
-    private static Map<Byte, RecordType> mappings;
+    private static final RecordType[] MAPPINGS = new RecordType[256];
 
-    private RecordType(byte id) {
-      this.id = id;
-      addMapping(id, this);
+    static {
+      for (RecordType recordType : values()) {
+        MAPPINGS[recordType.id & 0xFF] = recordType;
+      }
     }
 
-    private static void addMapping(byte id, RecordType recordType) {
-      if (mappings == null) {
-        mappings = newHashMap();
-      }
-      mappings.put(id, recordType);
+    private RecordType(byte id) {
+      this.id = id;
     }
 
     public static RecordType fromId(byte id) {
-      return mappings.get(id);
+      return MAPPINGS[id & 0xFF];
     }
 
     public byte getId() {
@@ -3,10 +3,6 @@ package org.glukit.dexcom.sync.model;
 import lombok.EqualsAndHashCode;
 import lombok.ToString;
 
-import java.util.Map;
-
-import static com.google.common.collect.Maps.newHashMap;
-
 /**
  * Represents a record of {@link RecordType#UserEventData}.
  *
@@ -14,8 +10,15 @@ import static com.google.common.collect.Maps.newHashMap;
  */
 @ToString
 @EqualsAndHashCode
-public class UserEventRecord {
+public class UserEventRecord implements TimestampedRecord {
   public static final int RECORD_LENGTH = 20;
+  // Offsets of the fields within a record
+  public static final int INTERNAL_SECONDS_OFFSET = 0;
+  public static final int LOCAL_SECONDS_OFFSET = 4;
+  public static final int EVENT_TYPE_OFFSET = 8;
+  public static final int EVENT_SUB_TYPE_OFFSET = 9;
+  public static final int EVENT_SECONDS_OFFSET = 10;
+  public static final int EVENT_VALUE_OFFSET = 14;
 
   private long internalSecondsSinceDexcomEpoch;
   private long localSecondsSinceDexcomEpoch;
@@ -38,6 +41,7 @@ public class UserEventRecord {
     this.eventValue = eventValue;
   }
 
+  @Override
   public long getInternalSecondsSinceDexcomEpoch() {
     return internalSecondsSinceDexcomEpoch;
   }
@@ -71,22 +75,20 @@ public class UserEventRecord {
     NullType((byte) 0);
 
     private byte id;
-    private static Map<Byte, UserEventType> mappings;
+    private static final UserEventType[] MAPPINGS = new UserEventType[256];
 
-    private UserEventType(byte id) {
-      this.id = id;
-      addMapping(id, this);
+    static {
+      for (UserEventType eventType : values()) {
+        MAPPINGS[eventType.id & 0xFF] = eventType;
+      }
     }
 
-    private static void addMapping(byte id, UserEventType recordType) {
-      if (mappings == null) {
-        mappings = newHashMap();
-      }
-      mappings.put(id, recordType);
+    private UserEventType(byte id) {
+      this.id = id;
     }
 
     public static UserEventType fromId(byte id) {
-      return mappings.get(id);
+      return MAPPINGS[id & 0xFF];
     }
 
     public byte getId() {
@@ -102,22 +104,20 @@ public class UserEventRecord {
     Null((byte) 0);
 
     private byte id;
-    private static Map<Byte, ExerciseIntensity> mappings;
+    private static final ExerciseIntensity[] MAPPINGS = new ExerciseIntensity[256];
 
-    private ExerciseIntensity(byte id) {
-      this.id = id;
-      addMapping(id, this);
+    static {
+      for (ExerciseIntensity intensity : values()) {
+        MAPPINGS[intensity.id & 0xFF] = intensity;
+      }
     }
 
-    private static void addMapping(byte id, ExerciseIntensity recordType) {
-      if (mappings == null) {
-        mappings = newHashMap();
-      }
-      mappings.put(id, recordType);
+    private ExerciseIntensity(byte id) {
+      this.id = id;
     }
 
     public static ExerciseIntensity fromId(byte id) {
-      return mappings.get(id);
+      return MAPPINGS[id & 0xFF];
     }
 
     public byte getId() {
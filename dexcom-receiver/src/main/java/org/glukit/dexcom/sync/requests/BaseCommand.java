@@ -2,6 +2,7 @@ package org.glukit.dexcom.sync.requests;
 
 import com.google.common.base.Throwables;
 import com.google.inject.Inject;
+import org.glukit.dexcom.sync.Crc16;
 import org.glukit.dexcom.sync.DataOutputFactory;
 import org.glukit.dexcom.sync.model.ReceiverCommand;
 
@@ -10,7 +11,6 @@ import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
-import static org.glukit.dexcom.sync.DecodingUtils.getCrc16;
 
 /**
  * Base request class.
@@ -41,7 +41,7 @@ public abstract class BaseCommand implements Command {
       output.write(getContent());
       int contentSize = outputStream.size();
 
-      output.writeShort(getCrc16(outputStream.toByteArray(), 0, contentSize));
+      output.writeShort(Crc16.compute(outputStream.toByteArray(), 0, contentSize));
       return outputStream.toByteArray();
     } catch (IOException e) {
       throw Throwables.propagate(e);
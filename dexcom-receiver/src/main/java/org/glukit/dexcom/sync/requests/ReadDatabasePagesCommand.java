@@ -55,8 +55,9 @@ public class ReadDatabasePagesCommand extends BaseCommand {
                                      long pageNumber,
                                      byte numberOfPages) {
     super(dataOutputFactory);
-    checkArgument(numberOfPages > 0 && numberOfPages <= DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND, "Command is limited to [%s] pages or " +
-            "less, given invalid value of [%s]", DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND, numberOfPages);
+    checkArgument(numberOfPages > 0 && numberOfPages <= DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND, "Command is " +
+            "limited to [%s] pages or less, given invalid value of [%s]", DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND,
+            numberOfPages);
     this.recordType = recordType;
     this.pageNumber = pageNumber;
     this.numberOfPages = numberOfPages;
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.responses;
+
+import org.glukit.dexcom.sync.DataInputFactory;
+import org.glukit.dexcom.sync.model.DatabasePageHeader;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_HEADER_SIZE;
+
+/**
+ * Response for {@link org.glukit.dexcom.sync.model.ReceiverCommand#ReadDatabasePageHeader}.
+ *
+ * @author alexandre.normand
+ */
+public class DatabasePageHeaderResponse extends GenericResponse {
+
+  private DatabasePageHeader pageHeader;
+
+  public DatabasePageHeaderResponse(DataInputFactory dataInputFactory) {
+    super(dataInputFactory);
+  }
+
+  @Override
+  public void fromBuffer(ByteBuffer payload) {
+    super.fromBuffer(payload);
+    if (payload.remaining() != PAGE_HEADER_SIZE) {
+      throw new IllegalStateException(format("Expected a page header of [%d] bytes but got [%d]", PAGE_HEADER_SIZE,
+              payload.remaining()));
+    }
+    this.pageHeader = DatabasePagesResponse.readPageHeader(payload, 0);
+  }
+
+  public DatabasePageHeader getPageHeader() {
+    return pageHeader;
+  }
+}
@@ -23,24 +23,22 @@
 
 package org.glukit.dexcom.sync.responses;
 
-import com.google.common.base.Throwables;
 import com.google.common.primitives.UnsignedInts;
 import org.glukit.dexcom.sync.DataInputFactory;
-import org.glukit.dexcom.sync.DecodingUtils;
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.CrcMismatchException;
 import org.glukit.dexcom.sync.model.DatabasePage;
 import org.glukit.dexcom.sync.model.DatabasePageHeader;
 import org.glukit.dexcom.sync.model.RecordType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.String.format;
-import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
+import static org.glukit.dexcom.sync.DecodingUtils.slice;
 
 /**
  * Response for {@link org.glukit.dexcom.sync.model.ReceiverCommand#ReadDatabasePages}.
@@ -50,8 +48,8 @@ import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
 public class DatabasePagesResponse extends GenericResponse {
   private static Logger LOGGER = LoggerFactory.getLogger(DatabasePagesResponse.class);
 
-  private static final int PAGE_HEADER_SIZE = 28;
-  private static final int PAGE_DATA_SIZE = 500;
+  public static final int PAGE_HEADER_SIZE = 28;
+  public static final int PAGE_DATA_SIZE = 500;
 
   private List<DatabasePage> pages;
 
@@ -60,71 +58,68 @@ public class DatabasePagesResponse extends GenericResponse {
   }
 
   @Override
-  public void fromBytes(byte[] responseAsBytes) {
+  public void fromBuffer(ByteBuffer payload) {
+    super.fromBuffer(payload);
     this.pages = newArrayList();
 
-    ByteArrayInputStream inputStream = new ByteArrayInputStream(responseAsBytes);
-    DataInput dataInput = this.dataInputFactory.create(inputStream);
-
-    try {
-      int available = inputStream.available();
-      while (available > 0) {
-        LOGGER.debug(format("Available bytes remaining [%d]", available));
-        if (available < PAGE_HEADER_SIZE + PAGE_DATA_SIZE) {
-          String message =
-                  format("Some bytes are still available but not enough for a page, something is buggy. " +
-                          "Remaining count: [%d]", available);
-          throw new IllegalStateException(message);
-        }
-        byte[] headerBytes = new byte[PAGE_HEADER_SIZE];
-        dataInput.readFully(headerBytes, 0, PAGE_HEADER_SIZE);
-        LOGGER.debug(format("Parsing header from bytes [%s]", toHexString(headerBytes)));
-        DatabasePageHeader pageHeader = readPageHeader(headerBytes);
-
-        byte[] pageData = new byte[PAGE_DATA_SIZE];
-        dataInput.readFully(pageData, 0, PAGE_DATA_SIZE);
-        available = inputStream.available();
-
-        LOGGER.debug(format("Parsing page data from bytes [%s]", toHexString(pageData)));
-        DatabasePage page = new DatabasePage(pageHeader, pageData);
-
-        pages.add(page);
+    int pageSize = PAGE_HEADER_SIZE + PAGE_DATA_SIZE;
+    for (int offset = 0; offset < payload.limit(); offset += pageSize) {
+      int available = payload.limit() - offset;
+      if (available < pageSize) {
+        String message =
+                format("Some bytes are still available but not enough for a page, something is buggy. " +
+                        "Remaining count: [%d]", available);
+        throw new IllegalStateException(message);
       }
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
-  }
 
-  private DatabasePageHeader readPageHeader(byte[] headerBytes) {
-    try {
-      DataInput dataInput = this.dataInputFactory.create(new ByteArrayInputStream(headerBytes));
-
-      long firstRecordIndex = UnsignedInts.toLong(dataInput.readInt());
-      long numberOfRecords = UnsignedInts.toLong(dataInput.readInt());
-      RecordType recordType = RecordType.fromId(dataInput.readByte());
-      byte revision = dataInput.readByte();
-      long pageNumber = UnsignedInts.toLong(dataInput.readInt());
-      long reserved2 = UnsignedInts.toLong(dataInput.readInt());
-      long reserved3 = UnsignedInts.toLong(dataInput.readInt());
-      long reserved4 = UnsignedInts.toLong(dataInput.readInt());
-      int crc = dataInput.readUnsignedShort();
-
-      int expectedCrc = DecodingUtils.getCrc16(headerBytes, 0, PAGE_HEADER_SIZE - 2);
-
-      if (crc != expectedCrc) {
-        throw new IllegalStateException(format("Invalid crc, expected [%s], received [%s]",
-                Integer.toHexString(expectedCrc), Integer.toHexString(crc)));
-      }
+      DatabasePageHeader pageHeader = readPageHeader(payload, offset);
 
-      return new DatabasePageHeader(firstRecordIndex, numberOfRecords, recordType, revision,
-              pageNumber, reserved2, reserved3, reserved4, crc);
+      ByteBuffer pageData = slice(payload, offset + PAGE_HEADER_SIZE, PAGE_DATA_SIZE);
+      DatabasePage page = new DatabasePage(pageHeader, pageData);
+
+      pages.add(page);
+    }
+  }
 
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
+  static DatabasePageHeader readPageHeader(ByteBuffer buffer, int offset) {
+    long firstRecordIndex = UnsignedInts.toLong(buffer.getInt(offset));
+    long numberOfRecords = UnsignedInts.toLong(buffer.getInt(offset + 4));
+    RecordType recordType = RecordType.fromId(buffer.get(offset + 8));
+    byte revision = buffer.get(offset + 9);
+    long pageNumber = UnsignedInts.toLong(buffer.getInt(offset + 10));
+    long reserved2 = UnsignedInts.toLong(buffer.getInt(offset + 14));
+    long reserved3 = UnsignedInts.toLong(buffer.getInt(offset + 18));
+    long reserved4 = UnsignedInts.toLong(buffer.getInt(offset + 22));
+    int crc = buffer.getShort(offset + 26) & 0xFFFF;
+
+    int expectedCrc = Crc16.compute(buffer, offset, PAGE_HEADER_SIZE - 2);
+
+    if (crc != expectedCrc) {
+      throw new CrcMismatchException(CrcMismatchException.Level.PAGE_HEADER,
+              format("Invalid crc, expected [%s], received [%s]", Integer.toHexString(expectedCrc),
+                      Integer.toHexString(crc)));
     }
+
+    return new DatabasePageHeader(firstRecordIndex, numberOfRecords, recordType, revision,
+            pageNumber, reserved2, reserved3, reserved4, crc);
   }
 
   protected List<DatabasePage> getPages() {
     return pages;
   }
+
+  /**
+   * @return the number of pages received, {@code 0} if the receiver rejected the command and sent none.
+   */
+  public int getPageCount() {
+    return this.pages == null ? 0 : this.pages.size();
+  }
+
+  public List<DatabasePageHeader> getPageHeaders() {
+    List<DatabasePageHeader> headers = newArrayList();
+    for (DatabasePage page : this.pages) {
+      headers.add(page.getPageHeader());
+    }
+    return headers;
+  }
 }
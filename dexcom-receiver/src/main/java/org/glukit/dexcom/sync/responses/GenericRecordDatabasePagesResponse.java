@@ -1,16 +1,13 @@
 package org.glukit.dexcom.sync.responses;
 
-import com.google.common.base.Throwables;
 import org.glukit.dexcom.sync.DataInputFactory;
 import org.glukit.dexcom.sync.model.DatabasePage;
 import org.glukit.dexcom.sync.model.DatabasePageHeader;
-import org.glukit.dexcom.sync.model.GlucoseReadRecord;
+import org.glukit.dexcom.sync.model.TimestampedRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
@@ -23,7 +20,7 @@ import static java.lang.String.format;
  *
  * @author alexandre.normand
  */
-public abstract class GenericRecordDatabasePagesResponse<T> extends DatabasePagesResponse {
+public abstract class GenericRecordDatabasePagesResponse<T extends TimestampedRecord> extends DatabasePagesResponse {
   private Logger LOGGER = LoggerFactory.getLogger(this.getClass());
 
   public GenericRecordDatabasePagesResponse(DataInputFactory dataInputFactory) {
@@ -31,29 +28,64 @@ public abstract class GenericRecordDatabasePagesResponse<T> extends DatabasePage
   }
 
   public List<T> getRecords() {
-    List<T> records = newArrayList();
-    try {
-      for (DatabasePage page : getPages()) {
-        DatabasePageHeader header = page.getPageHeader();
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(page.getPageData());
-        DataInput input = this.dataInputFactory.create(inputStream);
+    return getRecords(0L);
+  }
 
-        LOGGER.debug(format("Parsing [%d] records...", header.getNumberOfRecords()));
-        for (int i = 0; i < header.getNumberOfRecords(); i++) {
-          byte[] recordBytes = new byte[getRecordLength()];
-          input.readFully(recordBytes, 0, getRecordLength());
+  /**
+   * Decodes the records of all pages skipping the ones with an index lower than {@code fromRecordIndex}.
+   *
+   * @param fromRecordIndex the index of the first record to return, records before that aren't even parsed.
+   * @return the records
+   */
+  public List<T> getRecords(long fromRecordIndex) {
+    final List<T> records = newArrayList();
+    accept(fromRecordIndex, new RecordVisitor() {
+      @Override
+      public void visit(RecordCursor cursor) {
+        records.add(decode(cursor));
+      }
+    });
+    return records;
+  }
 
-          T record = parseRecord(recordBytes, header, header.getFirstRecordIndex() + i);
+  /**
+   * Walks the records of all pages with a single {@link RecordCursor}, skipping the ones with an index lower than
+   * {@code fromRecordIndex}. The crc of each record is validated before it's visited. This doesn't create any
+   * record so it's the way to go when the caller only needs a few fields.
+   *
+   * @param fromRecordIndex the index of the first record to visit
+   * @param visitor         the visitor
+   */
+  public void accept(long fromRecordIndex, RecordVisitor visitor) {
+    RecordCursor cursor = new RecordCursor();
+    int recordLength = getRecordLength();
+    for (DatabasePage page : getPages()) {
+      DatabasePageHeader header = page.getPageHeader();
+      ByteBuffer pageData = page.getPageData();
 
-          records.add(record);
-        }
+      if (LOGGER.isDebugEnabled()) {
+        LOGGER.debug(format("Parsing [%d] records...", header.getNumberOfRecords()));
+      }
+      long firstVisitedRecord = Math.max(0L, fromRecordIndex - header.getFirstRecordIndex());
+      for (long i = firstVisitedRecord; i < header.getNumberOfRecords(); i++) {
+        cursor.moveTo(pageData, (int) i * recordLength, recordLength, header.getFirstRecordIndex() + i,
+                header.getPageNumber());
+        cursor.validateCrc();
+        visitor.visit(cursor);
       }
-      return records;
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
     }
   }
 
+  /**
+   * @return the number of records that fit in a full page.
+   */
+  public int getRecordsPerPage() {
+    return PAGE_DATA_SIZE / getRecordLength();
+  }
+
   protected abstract int getRecordLength();
-  protected abstract T parseRecord(byte[] recordBytes, DatabasePageHeader header, long recordNumber) throws IOException;
+  /**
+   * Decodes the record the cursor is currently on.
+   */
+  protected abstract T decode(RecordCursor cursor);
 }
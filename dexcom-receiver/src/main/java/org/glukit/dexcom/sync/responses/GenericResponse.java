@@ -25,6 +25,11 @@ package org.glukit.dexcom.sync.responses;
 
 import org.glukit.dexcom.sync.DataInputFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.glukit.dexcom.sync.DecodingUtils.toByteArray;
+
 /**
  * Generic Response
  *
@@ -32,18 +37,28 @@ import org.glukit.dexcom.sync.DataInputFactory;
  */
 public class GenericResponse implements Response {
   protected final DataInputFactory dataInputFactory;
-  private byte[] payload = new byte[0];
+  private ByteBuffer payload = ByteBuffer.allocate(0).order(ByteOrder.LITTLE_ENDIAN);
 
   public GenericResponse(DataInputFactory dataInputFactory) {
     this.dataInputFactory = dataInputFactory;
   }
 
   @Override
+  public void fromBuffer(ByteBuffer payload) {
+    this.payload = payload;
+  }
+
+  /**
+   * Convenience to decode a response from a payload that's already in its own array.
+   */
   public void fromBytes(byte[] responseAsBytes) {
-    this.payload = responseAsBytes;
+    fromBuffer(ByteBuffer.wrap(responseAsBytes).order(ByteOrder.LITTLE_ENDIAN));
   }
 
+  /**
+   * @return a copy of the payload bytes.
+   */
   public byte[] getPayload() {
-    return payload;
+    return toByteArray(payload);
   }
 }
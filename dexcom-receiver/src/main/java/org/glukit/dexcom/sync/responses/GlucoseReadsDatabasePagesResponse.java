@@ -23,20 +23,14 @@
 
 package org.glukit.dexcom.sync.responses;
 
-import com.google.common.primitives.UnsignedInts;
 import org.glukit.dexcom.sync.DataInputFactory;
-import org.glukit.dexcom.sync.model.DatabasePageHeader;
+import org.glukit.dexcom.sync.model.GlucoseReadColumns;
 import org.glukit.dexcom.sync.model.GlucoseReadRecord;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.IOException;
-
 import static java.lang.String.format;
-import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
-import static org.glukit.dexcom.sync.DecodingUtils.validateCrc;
+import static org.glukit.dexcom.sync.model.GlucoseReadRecord.*;
 
 /**
  * Database pages response for {@link org.glukit.dexcom.sync.model.RecordType#EGVData} (GlucoseReads).
@@ -50,22 +44,32 @@ public class GlucoseReadsDatabasePagesResponse extends GenericRecordDatabasePage
     super(dataInputFactory);
   }
 
-  protected GlucoseReadRecord parseRecord(byte[] recordBytes, DatabasePageHeader header,
-                                        long recordNumber) throws IOException {
-    DataInput input = this.dataInputFactory.create(new ByteArrayInputStream(recordBytes));
-    LOGGER.debug(format("Parsing glucose record from bytes [%s]", toHexString(recordBytes)));
-
-    long systemSeconds = UnsignedInts.toLong(input.readInt());
-    long displaySeconds = UnsignedInts.toLong(input.readInt());
-    int glucoseValueWithFlags = input.readUnsignedShort();
-    byte trendAndArrowNoise = input.readByte();
-    int actualReceiverCrc = input.readUnsignedShort();
-
-    validateCrc(actualReceiverCrc, recordBytes);
+  /**
+   * Decodes the glucose reads straight into {@link GlucoseReadColumns} without creating a
+   * {@link GlucoseReadRecord} per read.
+   */
+  @Override
+  public GlucoseReadColumns getRecords(long fromRecordIndex) {
+    final GlucoseReadColumns glucoseReads = new GlucoseReadColumns(Math.max(getPages().size() * getRecordsPerPage(), 1));
+    accept(fromRecordIndex, new RecordVisitor() {
+      @Override
+      public void visit(RecordCursor cursor) {
+        glucoseReads.add(cursor.getUnsignedInt(INTERNAL_SECONDS_OFFSET), cursor.getUnsignedInt(LOCAL_SECONDS_OFFSET),
+                cursor.getUnsignedShort(GLUCOSE_VALUE_WITH_FLAGS_OFFSET), cursor.getByte(TREND_ARROW_AND_NOISE_OFFSET),
+                cursor.getRecordIndex(), cursor.getPageNumber());
+      }
+    });
+    return glucoseReads;
+  }
 
-    GlucoseReadRecord glucoseReadRecord = new GlucoseReadRecord(systemSeconds, displaySeconds,
-            glucoseValueWithFlags, trendAndArrowNoise, recordNumber, header.getPageNumber());
-    LOGGER.debug(format("Parsed GlucoseRead: [%s]", glucoseReadRecord));
+  @Override
+  protected GlucoseReadRecord decode(RecordCursor cursor) {
+    GlucoseReadRecord glucoseReadRecord = new GlucoseReadRecord(cursor.getUnsignedInt(INTERNAL_SECONDS_OFFSET),
+            cursor.getUnsignedInt(LOCAL_SECONDS_OFFSET), cursor.getUnsignedShort(GLUCOSE_VALUE_WITH_FLAGS_OFFSET),
+            cursor.getByte(TREND_ARROW_AND_NOISE_OFFSET), cursor.getRecordIndex(), cursor.getPageNumber());
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(format("Parsed GlucoseRead: [%s]", glucoseReadRecord));
+    }
 
     return glucoseReadRecord;
   }
@@ -23,6 +23,7 @@
 
 package org.glukit.dexcom.sync.responses;
 
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
 import com.google.common.base.Throwables;
 import com.google.common.primitives.UnsignedInts;
@@ -36,6 +37,7 @@ import java.io.IOException;
 import java.util.List;
 
 import static com.google.common.collect.Lists.newArrayList;
+import static org.glukit.dexcom.sync.DecodingUtils.toByteArray;
 import static org.glukit.dexcom.sync.DecodingUtils.validateCrc;
 
 /**
@@ -44,6 +46,9 @@ import static org.glukit.dexcom.sync.DecodingUtils.validateCrc;
  * @author alexandre.normand
  */
 public class ManufacturingDataDatabasePagesResponse extends DatabasePagesResponse {
+  // Readers are immutable and thread-safe, building the mapper is what's expensive so it's done once
+  private static final ObjectReader PARAMETERS_READER = new XmlMapper().readerFor(ManufacturingParameters.class);
+
   public ManufacturingDataDatabasePagesResponse(DataInputFactory dataInputFactory) {
     super(dataInputFactory);
   }
@@ -52,7 +57,8 @@ public class ManufacturingDataDatabasePagesResponse extends DatabasePagesRespons
     List<ManufacturingParameters> manufacturingParameters = newArrayList();
     try {
       for (DatabasePage page : getPages()) {
-        ByteArrayInputStream inputStream = new ByteArrayInputStream(page.getPageData());
+        byte[] pageData = toByteArray(page.getPageData());
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(pageData);
         DataInput input = this.dataInputFactory.create(inputStream);
         // TODO: something better than ignoring the data?
         long systemSeconds = UnsignedInts.toLong(input.readInt());
@@ -61,11 +67,9 @@ public class ManufacturingDataDatabasePagesResponse extends DatabasePagesRespons
         byte[] xmlBytes = new byte[inputStream.available() - 2];
         input.readFully(xmlBytes);
 
-        validateCrc(input.readUnsignedShort(), page.getPageData());
+        validateCrc(input.readUnsignedShort(), pageData);
 
-        XmlMapper xmlMapper = new XmlMapper();
-        ManufacturingParameters parameterPage = xmlMapper.readValue(new String(xmlBytes, "UTF-8"),
-                ManufacturingParameters.class);
+        ManufacturingParameters parameterPage = PARAMETERS_READER.readValue(new String(xmlBytes, "UTF-8"));
         manufacturingParameters.add(parameterPage);
       }
       return manufacturingParameters;
@@ -23,13 +23,10 @@
 
 package org.glukit.dexcom.sync.responses;
 
-import com.google.common.base.Throwables;
 import com.google.common.primitives.UnsignedInts;
 import org.glukit.dexcom.sync.DataInputFactory;
 
-import java.io.ByteArrayInputStream;
-import java.io.DataInput;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * PageRangeResponse
@@ -46,16 +43,10 @@ public class PageRangeResponse extends GenericResponse {
   }
 
   @Override
-  public void fromBytes(byte[] responseAsBytes) {
-    super.fromBytes(responseAsBytes);
-    try {
-      DataInput dataInput = dataInputFactory.create(new ByteArrayInputStream(responseAsBytes));
-      this.firstPage = UnsignedInts.toLong(dataInput.readInt());
-      this.lastPage = UnsignedInts.toLong(dataInput.readInt());
-
-    } catch (IOException e) {
-      throw Throwables.propagate(e);
-    }
+  public void fromBuffer(ByteBuffer payload) {
+    super.fromBuffer(payload);
+    this.firstPage = UnsignedInts.toLong(payload.getInt(0));
+    this.lastPage = UnsignedInts.toLong(payload.getInt(4));
   }
 
   public long getFirstPage() {
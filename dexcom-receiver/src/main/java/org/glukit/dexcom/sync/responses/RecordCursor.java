@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.responses;
+
+import com.google.common.primitives.UnsignedInts;
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.CrcMismatchException;
+
+import java.nio.ByteBuffer;
+
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.DecodingUtils.CRC16_SIZE;
+
+/**
+ * Cursor over the records of {@link GenericRecordDatabasePagesResponse} pages. Fields are read straight from the
+ * page data at their offset in the current record so nothing gets copied. The same cursor is moved from one
+ * record to the next so it shouldn't be kept past a {@link RecordVisitor#visit(RecordCursor)} call.
+ *
+ * @author alexandre.normand
+ */
+public final class RecordCursor {
+  private ByteBuffer pageData;
+  private int recordOffset;
+  private int recordLength;
+  private long recordIndex;
+  private long pageNumber;
+
+  void moveTo(ByteBuffer pageData, int recordOffset, int recordLength, long recordIndex, long pageNumber) {
+    this.pageData = pageData;
+    this.recordOffset = recordOffset;
+    this.recordLength = recordLength;
+    this.recordIndex = recordIndex;
+    this.pageNumber = pageNumber;
+  }
+
+  /**
+   * Validates the crc16 stored in the last two bytes of the record.
+   */
+  void validateCrc() {
+    int crcOffset = this.recordOffset + this.recordLength - CRC16_SIZE;
+    int receiverCrc = this.pageData.getShort(crcOffset) & 0xFFFF;
+    int expectedCrc = Crc16.compute(this.pageData, this.recordOffset, this.recordLength - CRC16_SIZE);
+
+    if (receiverCrc != expectedCrc) {
+      throw new CrcMismatchException(CrcMismatchException.Level.RECORD,
+              format("Invalid crc for record [%d], expected [%s], received [%s]", this.recordIndex,
+                      UnsignedInts.toString(expectedCrc), UnsignedInts.toString(receiverCrc)));
+    }
+  }
+
+  public long getRecordIndex() {
+    return recordIndex;
+  }
+
+  public long getPageNumber() {
+    return pageNumber;
+  }
+
+  public byte getByte(int fieldOffset) {
+    return this.pageData.get(this.recordOffset + fieldOffset);
+  }
+
+  public int getUnsignedShort(int fieldOffset) {
+    return this.pageData.getShort(this.recordOffset + fieldOffset) & 0xFFFF;
+  }
+
+  public long getUnsignedInt(int fieldOffset) {
+    return UnsignedInts.toLong(this.pageData.getInt(this.recordOffset + fieldOffset));
+  }
+}
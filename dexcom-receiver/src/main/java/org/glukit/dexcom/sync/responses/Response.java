@@ -23,11 +23,17 @@
 
 package org.glukit.dexcom.sync.responses;
 
+import java.nio.ByteBuffer;
+
 /**
  * Interface for all responses. Used heavily by {@link org.glukit.dexcom.sync.ResponseReader}.
  *
  * @author alexandre.normand
  */
 public interface Response {
-  void fromBytes(byte[] responseAsBytes);
+  /**
+   * Decodes the response from its payload. The payload is a little-endian view of the packet buffer of the
+   * {@link org.glukit.dexcom.sync.ResponseReader}, starting at index 0, and is only valid until its next read.
+   */
+  void fromBuffer(ByteBuffer payload);
 }
@@ -0,0 +1,262 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.simulator;
+
+import com.google.common.base.Charsets;
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.model.GlucoseReadRecord;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.model.UserEventRecord;
+import org.threeten.bp.Instant;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+import static org.glukit.dexcom.sync.model.UserEventRecord.ExerciseIntensity;
+import static org.glukit.dexcom.sync.model.UserEventRecord.UserEventType;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_DATA_SIZE;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_HEADER_SIZE;
+
+/**
+ * Database of a {@link SimulatedReceiver}. Pages of {@link RecordType#EGVData}, {@link RecordType#UserEventData}
+ * and {@link RecordType#ManufacturingData} are laid out like on the receiver but generated on demand from the
+ * record index so even a receiver full of data costs next to nothing to hold.
+ * <p/>
+ * Glucose reads come every 5 minutes and end at the time of the last read. User events are spread evenly over the
+ * same period and cycle through carbs, insulin and exercise. Other record types have no pages.
+ *
+ * @author alexandre.normand
+ */
+public class SimulatedDatabase {
+  public static final String DEFAULT_SERIAL_NUMBER = "SM00000000";
+  public static final int READ_INTERVAL_IN_SECONDS = 300;
+  public static final int READS_PER_DAY = 24 * 3600 / READ_INTERVAL_IN_SECONDS;
+  public static final int USER_EVENTS_PER_DAY = 7;
+
+  private static final int LOCAL_TIME_OFFSET_IN_SECONDS = -8 * 3600;
+  private static final byte FILLER = (byte) 0xFF;
+
+  private final int glucoseReadCount;
+  private final int userEventCount;
+  private final long lastReadSecondsSinceDexcomEpoch;
+  private final String serialNumber;
+
+  public SimulatedDatabase(int glucoseReadCount,
+                           int userEventCount,
+                           long lastReadSecondsSinceDexcomEpoch,
+                           String serialNumber) {
+    checkArgument(glucoseReadCount >= 0, "glucoseReadCount must be positive");
+    checkArgument(userEventCount >= 0, "userEventCount must be positive");
+    this.glucoseReadCount = glucoseReadCount;
+    this.userEventCount = userEventCount;
+    this.lastReadSecondsSinceDexcomEpoch = lastReadSecondsSinceDexcomEpoch;
+    this.serialNumber = serialNumber;
+  }
+
+  /**
+   * @return a database with {@code days} of glucose reads and user events, up to {@code lastReadTime}.
+   */
+  public static SimulatedDatabase ofDays(int days, Instant lastReadTime) {
+    return new SimulatedDatabase(days * READS_PER_DAY, days * USER_EVENTS_PER_DAY,
+            lastReadTime.getEpochSecond() - DEXCOM_EPOCH.getEpochSecond(), DEFAULT_SERIAL_NUMBER);
+  }
+
+  public int getGlucoseReadCount() {
+    return glucoseReadCount;
+  }
+
+  public int getUserEventCount() {
+    return userEventCount;
+  }
+
+  public String getSerialNumber() {
+    return serialNumber;
+  }
+
+  public long getFirstPage(RecordType recordType) {
+    return 0L;
+  }
+
+  /**
+   * @return the last page of a record type. A record type without records still has an empty first page.
+   */
+  public long getLastPage(RecordType recordType) {
+    int recordCount = getRecordCount(recordType);
+    return recordCount == 0 ? 0L : (recordCount - 1) / getRecordsPerPage(recordType);
+  }
+
+  public boolean hasPage(RecordType recordType, long pageNumber) {
+    return pageNumber >= getFirstPage(recordType) && pageNumber <= getLastPage(recordType);
+  }
+
+  /**
+   * Writes the header of a page at the buffer's position. The buffer is expected to be little-endian.
+   */
+  public void writePageHeader(RecordType recordType, long pageNumber, ByteBuffer buffer) {
+    int recordsPerPage = getRecordsPerPage(recordType);
+    long firstRecordIndex = pageNumber * recordsPerPage;
+    long numberOfRecords = Math.max(0, Math.min(recordsPerPage, getRecordCount(recordType) - firstRecordIndex));
+
+    int start = buffer.position();
+    buffer.putInt((int) firstRecordIndex);
+    buffer.putInt((int) numberOfRecords);
+    buffer.put(recordType.getId());
+    buffer.put(recordType == RecordType.EGVData ? (byte) 2 : (byte) 1);
+    buffer.putInt((int) pageNumber);
+    buffer.putInt(0);
+    buffer.putInt(0);
+    buffer.putInt(0);
+    buffer.putShort((short) Crc16.compute(buffer, start, PAGE_HEADER_SIZE - 2));
+  }
+
+  /**
+   * Writes a full page, header and data, at the buffer's position. The buffer is expected to be little-endian.
+   */
+  public void writePage(RecordType recordType, long pageNumber, ByteBuffer buffer) {
+    writePageHeader(recordType, pageNumber, buffer);
+
+    int dataStart = buffer.position();
+    switch (recordType) {
+      case EGVData:
+      case UserEventData:
+        writeRecords(recordType, pageNumber, buffer);
+        break;
+      case ManufacturingData:
+        writeManufacturingParameters(buffer);
+        break;
+      default:
+        break;
+    }
+
+    while (buffer.position() < dataStart + PAGE_DATA_SIZE) {
+      buffer.put(FILLER);
+    }
+  }
+
+  private void writeRecords(RecordType recordType, long pageNumber, ByteBuffer buffer) {
+    int recordsPerPage = getRecordsPerPage(recordType);
+    long firstRecordIndex = pageNumber * recordsPerPage;
+    long end = Math.min(firstRecordIndex + recordsPerPage, getRecordCount(recordType));
+    for (long recordIndex = firstRecordIndex; recordIndex < end; recordIndex++) {
+      int start = buffer.position();
+      if (recordType == RecordType.EGVData) {
+        writeGlucoseRead(recordIndex, buffer);
+      } else {
+        writeUserEvent(recordIndex, buffer);
+      }
+      buffer.putShort((short) Crc16.compute(buffer, start, buffer.position() - start));
+    }
+  }
+
+  private void writeGlucoseRead(long recordIndex, ByteBuffer buffer) {
+    long internalSeconds = getGlucoseReadSeconds(recordIndex);
+    // A slow wave between 80 and 200 mg/dL, plenty to look real enough
+    int glucoseValue = (int) (140 + 60 * Math.sin(recordIndex / 24.));
+    byte trendArrow = (byte) (1 + recordIndex % 7);
+
+    buffer.putInt((int) internalSeconds);
+    buffer.putInt((int) (internalSeconds + LOCAL_TIME_OFFSET_IN_SECONDS));
+    buffer.putShort((short) glucoseValue);
+    buffer.put(trendArrow);
+  }
+
+  private void writeUserEvent(long recordIndex, ByteBuffer buffer) {
+    long internalSeconds = getUserEventSeconds(recordIndex);
+    UserEventType eventType;
+    byte eventSubType = 0;
+    long eventValue;
+    switch ((int) (recordIndex % 3)) {
+      case 0:
+        eventType = UserEventType.CARBS;
+        eventValue = 20 + recordIndex % 60;
+        break;
+      case 1:
+        eventType = UserEventType.INSULIN;
+        eventValue = 100 + (recordIndex % 10) * 50;
+        break;
+      default:
+        eventType = UserEventType.EXERCISE;
+        eventSubType = ExerciseIntensity.MEDIUM.getId();
+        eventValue = 30;
+        break;
+    }
+
+    buffer.putInt((int) internalSeconds);
+    buffer.putInt((int) (internalSeconds + LOCAL_TIME_OFFSET_IN_SECONDS));
+    buffer.put(eventType.getId());
+    buffer.put(eventSubType);
+    buffer.putInt((int) (internalSeconds - 600 + LOCAL_TIME_OFFSET_IN_SECONDS));
+    buffer.putInt((int) eventValue);
+  }
+
+  private void writeManufacturingParameters(ByteBuffer buffer) {
+    int start = buffer.position();
+    buffer.putInt((int) this.lastReadSecondsSinceDexcomEpoch);
+    buffer.putInt((int) (this.lastReadSecondsSinceDexcomEpoch + LOCAL_TIME_OFFSET_IN_SECONDS));
+    buffer.put(format("<ManufacturingParameters SerialNumber=\"%s\" HardwarePartNumber=\"MD1060-MT20649\" " +
+            "HardwareRevision=\"14\" DateTimeCreated=\"2013-01-03 13:54:05.536 -08:00\" " +
+            "HardwareId=\"{75B7C886-FE10-420F-B511-2D3F9B9BEE7E}\" />", this.serialNumber).getBytes(Charsets.UTF_8));
+    // The parameters record spans the whole page with its crc at the very end
+    while (buffer.position() < start + PAGE_DATA_SIZE - 2) {
+      buffer.put((byte) 0);
+    }
+    buffer.putShort((short) Crc16.compute(buffer, start, PAGE_DATA_SIZE - 2));
+  }
+
+  long getGlucoseReadSeconds(long recordIndex) {
+    return this.lastReadSecondsSinceDexcomEpoch - (this.glucoseReadCount - 1 - recordIndex) * READ_INTERVAL_IN_SECONDS;
+  }
+
+  private long getUserEventSeconds(long recordIndex) {
+    long firstReadSeconds = getGlucoseReadSeconds(0);
+    long period = this.lastReadSecondsSinceDexcomEpoch - firstReadSeconds;
+    return firstReadSeconds + (this.userEventCount == 0 ? 0 : (recordIndex * period) / this.userEventCount);
+  }
+
+  private int getRecordCount(RecordType recordType) {
+    switch (recordType) {
+      case EGVData:
+        return this.glucoseReadCount;
+      case UserEventData:
+        return this.userEventCount;
+      case ManufacturingData:
+        return 1;
+      default:
+        return 0;
+    }
+  }
+
+  private static int getRecordsPerPage(RecordType recordType) {
+    switch (recordType) {
+      case EGVData:
+        return PAGE_DATA_SIZE / GlucoseReadRecord.RECORD_LENGTH;
+      case UserEventData:
+        return PAGE_DATA_SIZE / UserEventRecord.RECORD_LENGTH;
+      default:
+        return 1;
+    }
+  }
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.simulator;
+
+import com.google.common.base.Charsets;
+import org.glukit.dexcom.sync.Crc16;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_DATA_SIZE;
+import static org.glukit.dexcom.sync.responses.DatabasePagesResponse.PAGE_HEADER_SIZE;
+
+/**
+ * In-process G4 receiver behind a {@link SerialTransport}. It speaks the receiver's framing (SOF, size, command,
+ * payload and crc16) and answers {@link ReceiverCommand#Ping}, {@link ReceiverCommand#ReadFirmwareHeader},
+ * {@link ReceiverCommand#ReadDatabasePageRange}, {@link ReceiverCommand#ReadDatabasePageHeader} and
+ * {@link ReceiverCommand#ReadDatabasePages} from a {@link SimulatedDatabase}. Anything else gets an
+ * {@link ReceiverCommand#InvalidCommand} and a packet with a bad crc gets a {@link ReceiverCommand#Nak}.
+ * <p/>
+ * A per-byte latency can be set to get the timing of an actual serial link: both written and read bytes are
+ * charged for it. Reading more than what the receiver has to send fails right away rather than hang.
+ * <p/>
+ * Any number of pages can be read per command unless {@link #setMaxPagesPerCommand} emulates the limit of a firmware,
+ * asking for more gets an {@link ReceiverCommand#InvalidParam}.
+ *
+ * @author alexandre.normand
+ */
+public class SimulatedReceiver implements SerialTransport {
+  private static Logger LOGGER = LoggerFactory.getLogger(SimulatedReceiver.class);
+
+  public static final String FIRMWARE_HEADER = "<FirmwareHeader SchemaVersion='1' ApiVersion='2.2.0.0' " +
+          "TestApiVersion='2.4.0.0' ProductId='G4Receiver' ProductName='Dexcom G4 Receiver' " +
+          "SoftwareNumber='SW10050' FirmwareVersion='2.0.1.104' PortVersion='4.6.4.45' RFVersion='1.0.0.27' " +
+          "DexBootVersion='3'/>";
+
+  private static final byte SOF = 1;
+  private static final int HEADER_SIZE = 4;
+  private static final int TRAILER_SIZE = 2;
+  private static final int PAGE_SIZE = PAGE_HEADER_SIZE + PAGE_DATA_SIZE;
+
+  private final SimulatedDatabase database;
+  private final long latencyInNanosPerByte;
+  private final Crc16 crc16 = new Crc16();
+  private ByteBuffer output = newBuffer(HEADER_SIZE + 4 * PAGE_SIZE + TRAILER_SIZE);
+  private boolean opened = false;
+  private long transferEndNanos = System.nanoTime();
+  private long bytesWritten = 0L;
+  private long bytesRead = 0L;
+  private long commandCount = 0L;
+  private int maxPagesPerCommand = Integer.MAX_VALUE;
+
+  public SimulatedReceiver(SimulatedDatabase database) {
+    this(database, 0L, TimeUnit.NANOSECONDS);
+  }
+
+  public SimulatedReceiver(SimulatedDatabase database, long latencyPerByte, TimeUnit unit) {
+    this.database = database;
+    this.latencyInNanosPerByte = unit.toNanos(latencyPerByte);
+    this.output.flip();
+  }
+
+  @Override
+  public String getName() {
+    return format("simulated-%s", this.database.getSerialNumber());
+  }
+
+  @Override
+  public void open() throws IOException {
+    this.opened = true;
+  }
+
+  @Override
+  public boolean isOpened() {
+    return this.opened;
+  }
+
+  @Override
+  public byte[] read(int byteCount) throws IOException {
+    checkOpened();
+    if (this.output.remaining() < byteCount) {
+      throw new IOException(format("Timed out reading [%d] bytes, only [%d] left to send", byteCount,
+              this.output.remaining()));
+    }
+
+    byte[] bytes = new byte[byteCount];
+    this.output.get(bytes);
+    transfer(byteCount);
+    this.bytesRead += byteCount;
+    return bytes;
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    checkOpened();
+    transfer(bytes.length);
+    this.bytesWritten += bytes.length;
+    this.commandCount++;
+    respondTo(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN));
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.opened = false;
+    this.output.clear().flip();
+  }
+
+  public long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  public long getBytesRead() {
+    return bytesRead;
+  }
+
+  public long getCommandCount() {
+    return commandCount;
+  }
+
+  public void setMaxPagesPerCommand(int maxPagesPerCommand) {
+    this.maxPagesPerCommand = maxPagesPerCommand;
+  }
+
+  private void respondTo(ByteBuffer request) {
+    if (request.limit() < HEADER_SIZE + TRAILER_SIZE || request.get(0) != SOF ||
+            (request.getShort(1) & 0xFFFF) != request.limit()) {
+      respond(ReceiverCommand.IncompletePacketReceived);
+      return;
+    }
+
+    int crcOffset = request.limit() - TRAILER_SIZE;
+    if ((request.getShort(crcOffset) & 0xFFFF) != Crc16.compute(request, 0, crcOffset)) {
+      respond(ReceiverCommand.Nak);
+      return;
+    }
+
+    ReceiverCommand command = ReceiverCommand.fromId(request.get(3));
+    ByteBuffer parameters = request.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    parameters.position(HEADER_SIZE).limit(crcOffset);
+    LOGGER.debug(format("Simulating response to [%s]", command));
+    if (command == null) {
+      respond(ReceiverCommand.InvalidCommand);
+      return;
+    }
+
+    switch (command) {
+      case Ping:
+        respond(ReceiverCommand.Ack);
+        break;
+      case ReadFirmwareHeader:
+        respondWithFirmwareHeader();
+        break;
+      case ReadDatabasePageRange:
+        respondWithPageRange(parameters);
+        break;
+      case ReadDatabasePageHeader:
+        respondWithPageHeader(parameters);
+        break;
+      case ReadDatabasePages:
+        respondWithPages(parameters);
+        break;
+      default:
+        respond(ReceiverCommand.InvalidCommand);
+    }
+  }
+
+  private void respondWithFirmwareHeader() {
+    byte[] firmwareHeader = FIRMWARE_HEADER.getBytes(Charsets.UTF_8);
+    startResponse(ReceiverCommand.Ack, firmwareHeader.length).put(firmwareHeader);
+    endResponse();
+  }
+
+  private void respondWithPageRange(ByteBuffer parameters) {
+    if (parameters.remaining() != 1) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    RecordType recordType = RecordType.fromId(parameters.get());
+    if (recordType == null) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    ByteBuffer payload = startResponse(ReceiverCommand.Ack, 8);
+    payload.putInt((int) this.database.getFirstPage(recordType));
+    payload.putInt((int) this.database.getLastPage(recordType));
+    endResponse();
+  }
+
+  private void respondWithPageHeader(ByteBuffer parameters) {
+    if (parameters.remaining() != 5) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    RecordType recordType = RecordType.fromId(parameters.get());
+    long pageNumber = parameters.getInt() & 0xFFFFFFFFL;
+    if (recordType == null || !this.database.hasPage(recordType, pageNumber)) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    this.database.writePageHeader(recordType, pageNumber, startResponse(ReceiverCommand.Ack, PAGE_HEADER_SIZE));
+    endResponse();
+  }
+
+  private void respondWithPages(ByteBuffer parameters) {
+    if (parameters.remaining() != 6) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    RecordType recordType = RecordType.fromId(parameters.get());
+    long startPage = parameters.getInt() & 0xFFFFFFFFL;
+    int numberOfPages = parameters.get() & 0xFF;
+    if (recordType == null || numberOfPages == 0 || numberOfPages > this.maxPagesPerCommand ||
+            !this.database.hasPage(recordType, startPage) ||
+            !this.database.hasPage(recordType, startPage + numberOfPages - 1)) {
+      respond(ReceiverCommand.InvalidParam);
+      return;
+    }
+
+    ByteBuffer payload = startResponse(ReceiverCommand.Ack, numberOfPages * PAGE_SIZE);
+    for (int i = 0; i < numberOfPages; i++) {
+      this.database.writePage(recordType, startPage + i, payload);
+    }
+    endResponse();
+  }
+
+  private void respond(ReceiverCommand command) {
+    startResponse(command, 0);
+    endResponse();
+  }
+
+  /**
+   * Starts a response packet with its header. The payload is expected to be written to the returned buffer before
+   * calling {@link #endResponse()}.
+   */
+  private ByteBuffer startResponse(ReceiverCommand command, int payloadSize) {
+    int packetSize = HEADER_SIZE + payloadSize + TRAILER_SIZE;
+    if (this.output.capacity() < packetSize) {
+      this.output = newBuffer(packetSize);
+    }
+
+    this.output.clear();
+    this.output.put(SOF);
+    this.output.putShort((short) packetSize);
+    this.output.put(command.getId());
+    return this.output;
+  }
+
+  private void endResponse() {
+    int packetSize = this.output.position() + TRAILER_SIZE;
+    this.output.putShort((short) this.crc16.reset().update(this.output, 0, packetSize - TRAILER_SIZE).getValue());
+    this.output.flip();
+  }
+
+  /**
+   * Waits for the transfer of {@code byteCount} bytes. Waits shorter than the sleep granularity are carried over
+   * so the total time spent stays true to the latency even with lots of small reads.
+   */
+  private void transfer(int byteCount) throws IOException {
+    if (this.latencyInNanosPerByte == 0) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    if (this.transferEndNanos - now < 0) {
+      this.transferEndNanos = now;
+    }
+    this.transferEndNanos += byteCount * this.latencyInNanosPerByte;
+    long waitInMillis = TimeUnit.NANOSECONDS.toMillis(this.transferEndNanos - now);
+    if (waitInMillis > 0) {
+      try {
+        Thread.sleep(waitInMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while simulating transfer latency");
+      }
+    }
+  }
+
+  private void checkOpened() throws IOException {
+    if (!this.opened) {
+      throw new IOException(format("Port [%s] isn't opened", getName()));
+    }
+  }
+
+  private static ByteBuffer newBuffer(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
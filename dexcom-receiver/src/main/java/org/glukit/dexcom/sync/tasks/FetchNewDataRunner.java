@@ -27,27 +27,42 @@ import com.google.common.base.Predicate;
 import com.google.common.base.Throwables;
 import com.google.common.collect.Collections2;
 import com.google.inject.Inject;
-import jssc.SerialPort;
-import jssc.SerialPortException;
 import org.glukit.dexcom.sync.DataInputFactory;
 import org.glukit.dexcom.sync.DataOutputFactory;
 import org.glukit.dexcom.sync.DatabasePagesPager;
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.MissingPagesException;
+import org.glukit.dexcom.sync.PageLocator;
+import org.glukit.dexcom.sync.PagesPerCommandTuner;
+import org.glukit.dexcom.sync.PipelinedPacketReader;
+import org.glukit.dexcom.sync.ProtocolTracer;
+import org.glukit.dexcom.sync.ReadPlanner;
 import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
+import org.glukit.dexcom.sync.metrics.SyncReport;
 import org.glukit.dexcom.sync.model.*;
 import org.glukit.dexcom.sync.requests.*;
 import org.glukit.dexcom.sync.responses.*;
+import org.glukit.dexcom.sync.transport.SerialTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threeten.bp.Instant;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Lists.newArrayList;
+import static com.google.common.collect.Maps.newEnumMap;
 import static java.lang.String.format;
-import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
 import static org.glukit.dexcom.sync.g4.DexcomG4Constants.*;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND;
 import static org.glukit.dexcom.sync.model.RecordType.EGVData;
 import static org.glukit.dexcom.sync.model.RecordType.ManufacturingData;
 import static org.glukit.dexcom.sync.model.RecordType.UserEventData;
@@ -59,59 +74,169 @@ import static org.glukit.dexcom.sync.model.RecordType.UserEventData;
  */
 public class FetchNewDataRunner {
   private static Logger LOGGER = LoggerFactory.getLogger(FetchNewDataRunner.class);
+  // Enough to always have the next response in while one is decoded, decoding being faster than the transfer
+  static final int READ_AHEAD_FRAMES = 2;
+  private static final Pattern FIRMWARE_VERSION = Pattern.compile("FirmwareVersion='([^']*)'");
+  private static final ReadPlanner DEFAULT_READ_PLANNER = new ReadPlanner(DEFAULT_PAGES_PER_COMMAND);
   private final DataOutputFactory dataOutputFactory;
   private final DataInputFactory dataInputFactory;
   private final ResponseReader responseReader;
+  private final DexcomSyncPreferences syncPreferences;
+  private final SyncMetrics syncMetrics;
+  private final ProtocolTracer protocolTracer;
+  private final PagesPerCommandTuner pagesPerCommandTuner;
+  private boolean pipelinedReads = true;
+  private int pagesPerCommand = DEFAULT_PAGES_PER_COMMAND;
+  private boolean autoTunePagesPerCommand;
+
+  public FetchNewDataRunner(DataOutputFactory dataOutputFactory,
+                            DataInputFactory dataInputFactory,
+                            ResponseReader responseReader,
+                            DexcomSyncPreferences syncPreferences) {
+    this(dataOutputFactory, dataInputFactory, responseReader, syncPreferences, new SyncMetrics(),
+            responseReader.getProtocolTracer(), new PagesPerCommandTuner(syncPreferences));
+  }
 
   @Inject
   public FetchNewDataRunner(DataOutputFactory dataOutputFactory,
                             DataInputFactory dataInputFactory,
-                            ResponseReader responseReader) {
+                            ResponseReader responseReader,
+                            DexcomSyncPreferences syncPreferences,
+                            SyncMetrics syncMetrics,
+                            ProtocolTracer protocolTracer,
+                            PagesPerCommandTuner pagesPerCommandTuner) {
     this.dataOutputFactory = dataOutputFactory;
     this.dataInputFactory = dataInputFactory;
     this.responseReader = responseReader;
+    this.syncPreferences = syncPreferences;
+    this.syncMetrics = syncMetrics;
+    this.protocolTracer = protocolTracer;
+    this.pagesPerCommandTuner = pagesPerCommandTuner;
   }
 
+  /**
+   * Sets whether consecutive pages are read by a {@link PipelinedPacketReader} so the transfer of the next pages
+   * overlaps with the decoding of the previous ones, which is the default, or one command at a time.
+   */
+  public void setPipelinedReads(boolean pipelinedReads) {
+    this.pipelinedReads = pipelinedReads;
+  }
 
   /**
-   * Fetches the data from the dexcom
+   * Sets how many pages to read per command from receivers that don't have their own
+   * {@link DexcomSyncPreferences#getPagesPerCommand setting}, {@link DatabaseReadRequestSpec#DEFAULT_PAGES_PER_COMMAND}
+   * by default.
+   */
+  public void setPagesPerCommand(int pagesPerCommand) {
+    checkArgument(pagesPerCommand > 0 && pagesPerCommand <= MAX_PAGES_PER_COMMAND, "Command is limited to [%s] " +
+            "pages or less, given invalid value of [%s]", MAX_PAGES_PER_COMMAND, pagesPerCommand);
+    this.pagesPerCommand = pagesPerCommand;
+  }
+
+  /**
+   * Sets whether the pages per command are tuned per firmware version by the {@link PagesPerCommandTuner} for
+   * receivers that don't have their own setting. This costs a
+   * {@link org.glukit.dexcom.sync.model.ReceiverCommand#ReadFirmwareHeader} per sync.
+   */
+  public void setAutoTunePagesPerCommand(boolean autoTunePagesPerCommand) {
+    this.autoTunePagesPerCommand = autoTunePagesPerCommand;
+  }
+
+  /**
+   * Fetches the data from the dexcom. Only the pages past the {@link PageHighWaterMark} of each record type are
+   * read and the records are then filtered to only keep the ones more recent than {@code since}.
    *
-   * @param serialPort the serial port of the dexcom receiver
-   * @param since      unused at the moment, this optimization might come later
-   * @return the synced data, it's the whole thing of what's still in the receiver memory.
+   * @param transport  the transport to the dexcom receiver, opened here unless a probe already left it opened. It's
+   *                   left opened once the data is fetched, for the owner of the
+   *                   {@link org.glukit.dexcom.sync.ReceiverSession} to reuse or close, and closed on errors.
+   * @param since      the time of the last sync
+   * @return the new data along with the {@link PageHighWaterMark}s to persist once it's been exported.
    */
-  public DexcomSyncData fetchData(final SerialPort serialPort, final Instant since) {
-    try {
-      serialPort.openPort();
-      if (!serialPort.isOpened()) {
-        throw new RuntimeException("Can't open receiver to get the data.");
-      }
+  public DexcomSyncData fetchData(final SerialTransport transport, final Instant since) {
+    return fetchData(transport, since, new SyncReport(transport.getName(), Instant.now()));
+  }
 
-      LOGGER.info(format("Opened port [%s]: %b", serialPort.getPortName(), serialPort.isOpened()));
-      serialPort.setParams(FIRMWARE_BAUD_RATE, DATA_BITS, STOP_BITS, NO_PARITY);
+  /**
+   * Same as {@link #fetchData(SerialTransport, Instant)}, adding the time spent on each command and what was read to
+   * {@code syncReport}.
+   */
+  public DexcomSyncData fetchData(final SerialTransport transport, final Instant since, SyncReport syncReport) {
+    try {
+      transport.open();
+      LOGGER.info(format("Opened port [%s]: %b", transport.getName(), transport.isOpened()));
 
-      final ManufacturingParameters manufacturingData = getManufacturingData(serialPort);
+      final ManufacturingParameters manufacturingData = getManufacturingData(transport, syncReport);
       final long sinceRelativeToDexcomEpoch = since.getEpochSecond() - DEXCOM_EPOCH.getEpochSecond();
 
-      final List<GlucoseReadRecord> glucoseReads = getGlucoseReadsSince(serialPort, sinceRelativeToDexcomEpoch);
-      List<UserEventRecord> userEvents = getUserEventRecordsSince(serialPort, sinceRelativeToDexcomEpoch);
+      final String receiverSerialNumber = manufacturingData == null ? null : manufacturingData.getSerialNumber();
+      Map<RecordType, PageHighWaterMark> highWaterMarks = newEnumMap(RecordType.class);
+      ReadPlanner readPlanner = getReadPlanner(transport, receiverSerialNumber, syncReport);
+
+      final GlucoseReadColumns glucoseReads = getGlucoseReadsSince(transport, sinceRelativeToDexcomEpoch,
+              receiverSerialNumber, highWaterMarks, readPlanner, syncReport);
+      List<UserEventRecord> userEvents = getUserEventRecordsSince(transport, sinceRelativeToDexcomEpoch,
+              receiverSerialNumber, highWaterMarks, readPlanner, syncReport);
+      syncReport.recordNewRecords(EGVData, glucoseReads.size());
+      syncReport.recordNewRecords(UserEventData, userEvents.size());
 
-      return new DexcomSyncData(glucoseReads, userEvents, manufacturingData);
+      return new DexcomSyncData(glucoseReads, userEvents, manufacturingData, highWaterMarks);
     } catch (Throwable e) {
-      if (serialPort.isOpened()) {
+      this.syncMetrics.recordFailure(e);
+      if (this.protocolTracer.isEnabled()) {
+        LOGGER.error(format("Fetching data from [%s] failed after these frames:%n%s", transport.getName(),
+                this.protocolTracer.dump()));
+      }
+      if (transport.isOpened()) {
         try {
-          LOGGER.debug(format("Closing port %s", serialPort.getPortName()));
-          serialPort.closePort();
-        } catch (SerialPortException se) {
-          LOGGER.warn("Error closing port, ignoring.", se);
+          LOGGER.debug(format("Closing port %s", transport.getName()));
+          transport.close();
+        } catch (IOException ioe) {
+          LOGGER.warn("Error closing port, ignoring.", ioe);
         }
       }
       throw Throwables.propagate(e);
     }
   }
 
-  private List<UserEventRecord> getUserEventRecordsSince(SerialPort serialPort, final long sinceRelativeToDexcomEpoch) throws SerialPortException {
-    return newArrayList(Collections2.filter(getUserEvents(serialPort), new Predicate<UserEventRecord>() {
+  /**
+   * The pages per command come from the receiver's own setting if it has one, then from the
+   * {@link PagesPerCommandTuner} if auto-tuning is on and lastly from {@link #setPagesPerCommand}.
+   */
+  private ReadPlanner getReadPlanner(SerialTransport transport,
+                                     @Nullable String receiverSerialNumber,
+                                     SyncReport syncReport) throws IOException {
+    int receiverPagesPerCommand =
+            receiverSerialNumber == null ? 0 : this.syncPreferences.getPagesPerCommand(receiverSerialNumber);
+    if (receiverPagesPerCommand > 0) {
+      LOGGER.info(format("Reading [%d] pages per command, as set for receiver [%s]", receiverPagesPerCommand,
+              receiverSerialNumber));
+      return new ReadPlanner(Math.min(receiverPagesPerCommand, MAX_PAGES_PER_COMMAND));
+    }
+    if (!this.autoTunePagesPerCommand) {
+      return new ReadPlanner(this.pagesPerCommand);
+    }
+
+    long startNanos = System.nanoTime();
+    String firmwareHeader = readFirmwareHeader(transport).asString();
+    syncReport.recordPhase(ReceiverCommand.ReadFirmwareHeader.name(), null, System.nanoTime() - startNanos);
+    Matcher firmwareVersion = FIRMWARE_VERSION.matcher(firmwareHeader);
+    if (!firmwareVersion.find()) {
+      LOGGER.warn(format("No firmware version in header [%s], can't tune the pages per command", firmwareHeader));
+      return new ReadPlanner(this.pagesPerCommand);
+    }
+    return this.pagesPerCommandTuner.newReadPlanner(firmwareVersion.group(1));
+  }
+
+  private List<UserEventRecord> getUserEventRecordsSince(SerialTransport transport,
+                                                         final long sinceRelativeToDexcomEpoch,
+                                                         String receiverSerialNumber,
+                                                         Map<RecordType, PageHighWaterMark> highWaterMarks,
+                                                         ReadPlanner readPlanner,
+                                                         SyncReport syncReport)
+          throws IOException {
+    List<UserEventRecord> userEvents = getRecords(UserEventsDatabasePagesResponse.class, transport, UserEventData,
+            sinceRelativeToDexcomEpoch, receiverSerialNumber, highWaterMarks, readPlanner, syncReport);
+    return newArrayList(Collections2.filter(userEvents, new Predicate<UserEventRecord>() {
       @Override
       public boolean apply(@Nullable UserEventRecord input) {
         return input.getInternalSecondsSinceDexcomEpoch() > sinceRelativeToDexcomEpoch;
@@ -120,26 +245,28 @@ public class FetchNewDataRunner {
     }));
   }
 
-  private List<GlucoseReadRecord> getGlucoseReadsSince(SerialPort serialPort, final long sinceRelativeToDexcomEpoch) throws SerialPortException {
-    return newArrayList(Collections2.filter(getGlucoseReads(serialPort),
-            new Predicate<GlucoseReadRecord>() {
-              @Override
-              public boolean apply(@Nullable GlucoseReadRecord input) {
-                return input.getInternalSecondsSinceDexcomEpoch() > sinceRelativeToDexcomEpoch;
-
-              }
-            }));
+  private GlucoseReadColumns getGlucoseReadsSince(SerialTransport transport,
+                                                  long sinceRelativeToDexcomEpoch,
+                                                  String receiverSerialNumber,
+                                                  Map<RecordType, PageHighWaterMark> highWaterMarks,
+                                                  ReadPlanner readPlanner,
+                                                  SyncReport syncReport)
+          throws IOException {
+    List<GlucoseReadRecord> glucoseReads = getRecords(GlucoseReadsDatabasePagesResponse.class, transport, EGVData,
+            sinceRelativeToDexcomEpoch, receiverSerialNumber, highWaterMarks, readPlanner, syncReport);
+    return GlucoseReadColumns.copyOf(glucoseReads).retainNewerThan(sinceRelativeToDexcomEpoch);
   }
 
-  private ManufacturingParameters getManufacturingData(SerialPort serialPort) throws SerialPortException {
+  private ManufacturingParameters getManufacturingData(SerialTransport transport,
+                                                       SyncReport syncReport) throws IOException {
     ManufacturingParameters manufacturingData = null;
 
-    DatabasePagesPager manufacturingDataPager = getPagerForRecordType(serialPort, ManufacturingData);
+    DatabasePagesPager manufacturingDataPager = getPagerForRecordType(transport, ManufacturingData, syncReport);
 
     for (DatabaseReadRequestSpec readRequestSpec : manufacturingDataPager) {
       ManufacturingDataDatabasePagesResponse manufacturingDataDbResponse =
               readDatabasePage(ManufacturingDataDatabasePagesResponse.class,
-                      serialPort, readRequestSpec, ManufacturingData);
+                      transport, readRequestSpec, ManufacturingData, DEFAULT_READ_PLANNER, syncReport);
 
       // We're assuming we'll always have just one or that the most recent is always going to be the one
       // we want to keep.
@@ -148,102 +275,416 @@ public class FetchNewDataRunner {
       if (!manufacturingParameters.isEmpty()) {
         manufacturingData = manufacturingParameters.iterator().next();
       }
+      syncReport.recordNewRecords(ManufacturingData, manufacturingParameters.size());
     }
 
     return manufacturingData;
   }
 
-  private DatabasePagesPager getPagerForRecordType(SerialPort serialPort,
-                                                   RecordType recordType) throws SerialPortException {
-    PageRangeResponse pageRange = readManufacturingDataPageRange(serialPort, recordType);
+  private DatabasePagesPager getPagerForRecordType(SerialTransport transport,
+                                                   RecordType recordType,
+                                                   SyncReport syncReport) throws IOException {
+    PageRangeResponse pageRange = readManufacturingDataPageRange(transport, recordType, syncReport);
     return new DatabasePagesPager(pageRange.getFirstPage(), pageRange.getLastPage());
   }
 
   private <T extends DatabasePagesResponse> T readDatabasePage(Class<T> responseClass,
-                                                               SerialPort serialPort,
+                                                               SerialTransport transport,
                                                                DatabaseReadRequestSpec readRequestSpec,
-                                                               RecordType recordType)
-          throws SerialPortException {
+                                                               RecordType recordType,
+                                                               ReadPlanner readPlanner,
+                                                               SyncReport syncReport)
+          throws IOException {
     ReadDatabasePagesCommand readDatabasePagesCommand =
             new ReadDatabasePagesCommand(this.dataOutputFactory, recordType, readRequestSpec.getStartPage(),
                     readRequestSpec.getNumberOfPages());
 
     byte[] packet = readDatabasePagesCommand.asBytes();
-    LOGGER.info(format("Sending read database pages for %s: %s", recordType.name(), toHexString(packet)));
-    serialPort.writeBytes(packet);
+    LOGGER.info(format("Sending read database pages for %s from page [%d]", recordType.name(),
+            readRequestSpec.getStartPage()));
+    long startNanos = System.nanoTime();
+    T response = roundTrip(readDatabasePagesCommand, packet, responseClass, transport);
+    long readNanos = System.nanoTime() - startNanos;
+    checkPageCount(readRequestSpec, response);
+    recordPagesRead(recordType, readRequestSpec, this.responseReader.getLastPacketSize(), readNanos, syncReport);
+    readPlanner.recordRead(readRequestSpec, readNanos);
+    return response;
+  }
+
+  private static void checkPageCount(DatabaseReadRequestSpec readRequestSpec, DatabasePagesResponse response) {
+    if (response.getPageCount() != readRequestSpec.getNumberOfPages()) {
+      throw new MissingPagesException(readRequestSpec.getNumberOfPages(), response.getPageCount());
+    }
+  }
+
+  private void recordPagesRead(RecordType recordType,
+                               DatabaseReadRequestSpec readRequestSpec,
+                               int packetSize,
+                               long readNanos,
+                               SyncReport syncReport) {
+    this.syncMetrics.recordPagesRead(recordType, readRequestSpec.getNumberOfPages(), packetSize, readNanos);
+    syncReport.recordPagesRead(recordType, readRequestSpec.getNumberOfPages(), packetSize, readNanos);
+  }
 
-    return this.responseReader.read(responseClass, serialPort);
+  private DatabasePageHeader readDatabasePageHeader(SerialTransport transport,
+                                                    RecordType recordType,
+                                                    long pageNumber,
+                                                    SyncReport syncReport) throws IOException {
+    ReadDatabasePageHeader readDatabasePageHeader =
+            new ReadDatabasePageHeader(this.dataOutputFactory, recordType, pageNumber);
+    byte[] packet = readDatabasePageHeader.asBytes();
+    LOGGER.info(format("Sending read database page header for %s of page [%d]", recordType.name(), pageNumber));
+
+    long startNanos = System.nanoTime();
+    DatabasePageHeaderResponse pageHeaderResponse =
+            roundTrip(readDatabasePageHeader, packet, DatabasePageHeaderResponse.class, transport);
+    syncReport.recordPhase(readDatabasePageHeader.getCommand().name(), recordType, System.nanoTime() - startNanos);
+    return pageHeaderResponse.getPageHeader();
   }
 
-  private PageRangeResponse readManufacturingDataPageRange(SerialPort serialPort,
-                                                           RecordType recordType) throws SerialPortException {
+  private PageRangeResponse readManufacturingDataPageRange(SerialTransport transport,
+                                                           RecordType recordType,
+                                                           SyncReport syncReport) throws IOException {
     ReadDatabasePageRange readDatabasePageRange =
             new ReadDatabasePageRange(this.dataOutputFactory, recordType);
     byte[] packet = readDatabasePageRange.asBytes();
-    LOGGER.info(format("Sending read database page range for %s: %s", recordType.name(),
-            toHexString(packet)));
-    serialPort.writeBytes(packet);
+    LOGGER.info(format("Sending read database page range for %s", recordType.name()));
 
+    long startNanos = System.nanoTime();
     PageRangeResponse pageRangeResponse =
-            this.responseReader.read(PageRangeResponse.class, serialPort);
+            roundTrip(readDatabasePageRange, packet, PageRangeResponse.class, transport);
+    syncReport.recordPhase(readDatabasePageRange.getCommand().name(), recordType, System.nanoTime() - startNanos);
     LOGGER.info(format("Page range for %s: [%d] to [%d]", recordType.name(), pageRangeResponse.getFirstPage(),
             pageRangeResponse.getLastPage()));
 
     return pageRangeResponse;
   }
 
-  private List<GlucoseReadRecord> getGlucoseReads(SerialPort serialPort) throws SerialPortException {
-    List<GlucoseReadRecord> fullGlucoseReadRecords = newArrayList();
+  /**
+   * Reads the records of a record type. If we have a valid {@link PageHighWaterMark} for it, only the pages at or
+   * after the mark are requested and the page reads are skipped entirely if the page range hasn't moved past it.
+   * Without a mark, we only have the time of the last sync to go by so we start from the most recent pages and
+   * search back for the first page with records we don't have yet.
+   * The mark reached by this sync is added to {@code highWaterMarks}.
+   */
+  private <R extends TimestampedRecord, T extends GenericRecordDatabasePagesResponse<R>> List<R> getRecords(
+          Class<T> responseClass,
+          SerialTransport transport,
+          RecordType recordType,
+          long sinceRelativeToDexcomEpoch,
+          String receiverSerialNumber,
+          Map<RecordType, PageHighWaterMark> highWaterMarks,
+          ReadPlanner readPlanner,
+          SyncReport syncReport) throws IOException {
+    PageRangeResponse pageRange = readManufacturingDataPageRange(transport, recordType, syncReport);
+
+    PageHighWaterMark highWaterMark = receiverSerialNumber == null ? null :
+            this.syncPreferences.getHighWaterMark(receiverSerialNumber, recordType);
+    if (highWaterMark != null) {
+      if (highWaterMark.isWithin(pageRange.getFirstPage(), pageRange.getLastPage())) {
+        if (highWaterMark.isUpToDateWith(pageRange.getLastPage())) {
+          LOGGER.info(format("No new pages for %s since [%s], skipping page reads", recordType.name(),
+                  highWaterMark));
+          highWaterMarks.put(recordType, highWaterMark);
+          return newArrayList();
+        }
 
-    DatabasePagesPager manufacturingDataPager = getPagerForRecordType(serialPort, EGVData);
+        DatabasePageHeader nextPageHeader =
+                readDatabasePageHeader(transport, recordType, highWaterMark.getNextPage(), syncReport);
+        if (isConsistentWith(highWaterMark, nextPageHeader)) {
+          return readPagesAscending(responseClass, transport, recordType, highWaterMark.getNextPage(),
+                  pageRange.getLastPage(), highWaterMark.getNextRecordIndex(), highWaterMarks, readPlanner,
+                  syncReport);
+        }
 
-    for (DatabaseReadRequestSpec readRequestSpec : manufacturingDataPager) {
-      GlucoseReadsDatabasePagesResponse glucoseReadResponse =
-              readDatabasePage(GlucoseReadsDatabasePagesResponse.class, serialPort, readRequestSpec, EGVData);
+        LOGGER.warn(format("High-water mark [%s] for %s doesn't match page header [%s], ignoring it",
+                highWaterMark, recordType.name(), nextPageHeader));
+      } else {
+        LOGGER.warn(format("High-water mark [%s] for %s is outside of page range [%d] to [%d], ignoring it",
+                highWaterMark, recordType.name(), pageRange.getFirstPage(), pageRange.getLastPage()));
+      }
+    }
+
+    if (sinceRelativeToDexcomEpoch > 0) {
+      return readPagesSince(responseClass, transport, recordType, pageRange.getFirstPage(),
+              pageRange.getLastPage(), sinceRelativeToDexcomEpoch, highWaterMarks, readPlanner, syncReport);
+    } else {
+      return readPagesAscending(responseClass, transport, recordType, pageRange.getFirstPage(),
+              pageRange.getLastPage(), 0L, highWaterMarks, readPlanner, syncReport);
+    }
+  }
+
+  private <R extends TimestampedRecord, T extends GenericRecordDatabasePagesResponse<R>> List<R> readPagesAscending(
+          Class<T> responseClass,
+          SerialTransport transport,
+          RecordType recordType,
+          long startPage,
+          long lastPage,
+          long fromRecordIndex,
+          Map<RecordType, PageHighWaterMark> highWaterMarks,
+          ReadPlanner readPlanner,
+          SyncReport syncReport) throws IOException {
+    List<DatabaseReadRequestSpec> readRequestSpecs = readPlanner.planAscending(startPage, lastPage);
+    if (this.pipelinedReads && readRequestSpecs.size() > 1) {
+      return readPagesPipelined(responseClass, transport, recordType, readRequestSpecs, lastPage, fromRecordIndex,
+              highWaterMarks, readPlanner, syncReport);
+    }
 
-      List<GlucoseReadRecord> glucoseReadRecords = glucoseReadResponse.getRecords();
-      fullGlucoseReadRecords.addAll(glucoseReadRecords);
+    List<R> records = null;
+    for (DatabaseReadRequestSpec readRequestSpec : readRequestSpecs) {
+      T pagesResponse;
+      try {
+        pagesResponse = readDatabasePage(responseClass, transport, readRequestSpec, recordType, readPlanner,
+                syncReport);
+      } catch (MissingPagesException e) {
+        if (!readPlanner.readRejected(readRequestSpec)) {
+          throw e;
+        }
+        return appendRecords(records, readRejectedPages(responseClass, transport, recordType, readRequestSpec,
+                lastPage, fromRecordIndex, highWaterMarks, readPlanner, syncReport));
+      }
+      records = appendRecords(records, pagesResponse.getRecords(fromRecordIndex));
+      updateHighWaterMark(highWaterMarks, recordType, pagesResponse);
     }
 
-    return fullGlucoseReadRecords;
+    return records == null ? new ArrayList<R>() : records;
   }
 
-  private List<UserEventRecord> getUserEvents(SerialPort serialPort) throws SerialPortException {
-    List<UserEventRecord> allUserEvents = newArrayList();
+  /**
+   * Same as {@link #readPagesAscending} but with the commands sent and their responses read by a
+   * {@link PipelinedPacketReader} while the previous responses are decoded here. The records and high-water marks
+   * are the same as if the pages had been read one command at a time.
+   */
+  private <R extends TimestampedRecord, T extends GenericRecordDatabasePagesResponse<R>> List<R> readPagesPipelined(
+          Class<T> responseClass,
+          SerialTransport transport,
+          RecordType recordType,
+          List<DatabaseReadRequestSpec> readRequestSpecs,
+          long lastPage,
+          long fromRecordIndex,
+          Map<RecordType, PageHighWaterMark> highWaterMarks,
+          ReadPlanner readPlanner,
+          SyncReport syncReport) throws IOException {
+    List<byte[]> requests = newArrayList();
+    for (DatabaseReadRequestSpec readRequestSpec : readRequestSpecs) {
+      requests.add(new ReadDatabasePagesCommand(this.dataOutputFactory, recordType, readRequestSpec.getStartPage(),
+              readRequestSpec.getNumberOfPages()).asBytes());
+    }
+    LOGGER.info(format("Sending [%d] read database pages for %s from page [%d] with read-ahead", requests.size(),
+            recordType.name(), readRequestSpecs.get(0).getStartPage()));
 
-    DatabasePagesPager manufacturingDataPager = getPagerForRecordType(serialPort, UserEventData);
+    List<R> records = null;
+    PipelinedPacketReader packetReader =
+            new PipelinedPacketReader(transport, this.responseReader, requests, READ_AHEAD_FRAMES);
+    try {
+      packetReader.start();
+      for (DatabaseReadRequestSpec readRequestSpec : readRequestSpecs) {
+        PipelinedPacketReader.Frame frame = packetReader.next();
+        this.syncMetrics.recordRoundTrip(ReceiverCommand.ReadDatabasePages, frame.getRoundTripNanos());
+        T pagesResponse = this.responseReader.decode(responseClass, frame.getPacket(), frame.getCrc16());
+        try {
+          checkPageCount(readRequestSpec, pagesResponse);
+        } catch (MissingPagesException e) {
+          if (!readPlanner.readRejected(readRequestSpec)) {
+            throw e;
+          }
+          packetReader.recycle(frame);
+          packetReader.stop();
+          return appendRecords(records, readRejectedPages(responseClass, transport, recordType, readRequestSpec,
+                  lastPage, fromRecordIndex, highWaterMarks, readPlanner, syncReport));
+        }
+        recordPagesRead(recordType, readRequestSpec, frame.getPacket().limit(), frame.getRoundTripNanos(),
+                syncReport);
+        readPlanner.recordRead(readRequestSpec, frame.getRoundTripNanos());
 
-    for (DatabaseReadRequestSpec readRequestSpec : manufacturingDataPager) {
-      UserEventsDatabasePagesResponse userEventRecordPage =
-              readDatabasePage(UserEventsDatabasePagesResponse.class, serialPort, readRequestSpec, UserEventData);
+        records = appendRecords(records, pagesResponse.getRecords(fromRecordIndex));
+        updateHighWaterMark(highWaterMarks, recordType, pagesResponse);
+        packetReader.recycle(frame);
+      }
+    } finally {
+      packetReader.close();
+    }
+
+    return records == null ? new ArrayList<R>() : records;
+  }
+
+  /**
+   * Reads the pages of a command the receiver rejected again with {@link #DEFAULT_READ_PLANNER}, then plans the pages
+   * after them again since the rejection can change what the {@link ReadPlanner} plans.
+   */
+  private <R extends TimestampedRecord, T extends GenericRecordDatabasePagesResponse<R>> List<R> readRejectedPages(
+          Class<T> responseClass,
+          SerialTransport transport,
+          RecordType recordType,
+          DatabaseReadRequestSpec rejectedReadRequestSpec,
+          long lastPage,
+          long fromRecordIndex,
+          Map<RecordType, PageHighWaterMark> highWaterMarks,
+          ReadPlanner readPlanner,
+          SyncReport syncReport) throws IOException {
+    long nextPage = rejectedReadRequestSpec.getStartPage() + rejectedReadRequestSpec.getNumberOfPages();
+    LOGGER.info(format("Reading the [%d] pages for %s from page [%d] again with [%d] pages per command",
+            rejectedReadRequestSpec.getNumberOfPages(), recordType.name(), rejectedReadRequestSpec.getStartPage(),
+            DEFAULT_READ_PLANNER.getPagesPerCommand()));
+    List<R> records = readPagesAscending(responseClass, transport, recordType,
+            rejectedReadRequestSpec.getStartPage(), nextPage - 1, fromRecordIndex, highWaterMarks, DEFAULT_READ_PLANNER,
+            syncReport);
+    if (nextPage <= lastPage) {
+      records = appendRecords(records, readPagesAscending(responseClass, transport, recordType, nextPage, lastPage,
+              fromRecordIndex, highWaterMarks, readPlanner, syncReport));
+    }
+    return records;
+  }
+
+  /**
+   * Reads the most recent chunk of pages first. If it doesn't reach back to {@code sinceRelativeToDexcomEpoch},
+   * the older pages are binary searched with a {@link PageLocator} for the first one with new records and only
+   * the pages from there on are read. Records are returned in ascending order, like they would be with
+   * {@link #readPagesAscending}. A most recent chunk the receiver rejects is read again with
+   * {@link #DEFAULT_READ_PLANNER}, the older pages are still planned by {@code readPlanner}.
+   */
+  private <R extends TimestampedRecord, T extends GenericRecordDatabasePagesResponse<R>> List<R> readPagesSince(
+          final Class<T> responseClass,
+          final SerialTransport transport,
+          final RecordType recordType,
+          long firstPage,
+          long lastPage,
+          long sinceRelativeToDexcomEpoch,
+          Map<RecordType, PageHighWaterMark> highWaterMarks,
+          final ReadPlanner readPlanner,
+          final SyncReport syncReport) throws IOException {
+    DatabaseReadRequestSpec mostRecentChunk = readPlanner.planMostRecent(firstPage, lastPage);
+    T mostRecentResponse;
+    try {
+      mostRecentResponse = readDatabasePage(responseClass, transport, mostRecentChunk, recordType, readPlanner,
+              syncReport);
+    } catch (MissingPagesException e) {
+      if (!readPlanner.readRejected(mostRecentChunk)) {
+        throw e;
+      }
+      mostRecentChunk = DEFAULT_READ_PLANNER.planMostRecent(firstPage, lastPage);
+      LOGGER.info(format("Reading the most recent pages for %s again with [%d] pages per command",
+              recordType.name(), DEFAULT_READ_PLANNER.getPagesPerCommand()));
+      mostRecentResponse = readDatabasePage(responseClass, transport, mostRecentChunk, recordType,
+              DEFAULT_READ_PLANNER, syncReport);
+    }
+    List<R> mostRecentRecords = mostRecentResponse.getRecords();
+
+    List<R> records = null;
+    if (hasPageOlderThan(mostRecentResponse.getPageHeaders(), mostRecentRecords, sinceRelativeToDexcomEpoch)) {
+      LOGGER.info(format("Reached %s records older than [%d] at page [%d], done reading", recordType.name(),
+              sinceRelativeToDexcomEpoch, mostRecentChunk.getStartPage()));
+    } else if (mostRecentChunk.getStartPage() > firstPage) {
+      long olderLastPage = mostRecentChunk.getStartPage() - 1;
+      PageLocator pageLocator = new PageLocator(new PageLocator.PageProbe() {
+        @Override
+        public List<R> readPageRecords(long pageNumber) {
+          try {
+            return readDatabasePage(responseClass, transport, new DatabaseReadRequestSpec(pageNumber, (byte) 1),
+                    recordType, readPlanner, syncReport).getRecords();
+          } catch (IOException e) {
+            throw Throwables.propagate(e);
+          }
+        }
+      });
+      long startPage = pageLocator.findFirstPageNewerThan(sinceRelativeToDexcomEpoch, firstPage, olderLastPage);
+      if (startPage <= olderLastPage) {
+        records = readPagesAscending(responseClass, transport, recordType, startPage, olderLastPage, 0L,
+                highWaterMarks, readPlanner, syncReport);
+      }
+    }
+
+    records = appendRecords(records, mostRecentRecords);
+    updateHighWaterMark(highWaterMarks, recordType, mostRecentResponse);
+    return records;
+  }
 
-      List<UserEventRecord> glucoseReadRecords = userEventRecordPage.getRecords();
-      allUserEvents.addAll(glucoseReadRecords);
+  /**
+   * Appends records to the ones we have so far. The first batch becomes the list we append to so we keep the list
+   * type of the response, such as {@link GlucoseReadColumns}, all the way through.
+   */
+  private static <R> List<R> appendRecords(@Nullable List<R> records, List<R> moreRecords) {
+    if (records == null) {
+      return moreRecords;
     }
 
-    return allUserEvents;
+    records.addAll(moreRecords);
+    return records;
+  }
+
+  /**
+   * Records are in chronological order so if the oldest page of the chunk has a last record that's not more recent
+   * than {@code sinceRelativeToDexcomEpoch}, all pages before it won't have anything new either.
+   */
+  private static boolean hasPageOlderThan(List<DatabasePageHeader> pageHeaders,
+                                          List<? extends TimestampedRecord> chunkRecords,
+                                          long sinceRelativeToDexcomEpoch) {
+    if (pageHeaders.isEmpty()) {
+      return false;
+    }
+
+    int recordsInOldestPage = (int) pageHeaders.get(0).getNumberOfRecords();
+    if (recordsInOldestPage == 0 || recordsInOldestPage > chunkRecords.size()) {
+      return false;
+    }
+
+    TimestampedRecord newestOfOldestPage = chunkRecords.get(recordsInOldestPage - 1);
+    return newestOfOldestPage.getInternalSecondsSinceDexcomEpoch() <= sinceRelativeToDexcomEpoch;
+  }
+
+  /**
+   * A receiver that was reset could have grown back to cover the page of the mark with different records so we
+   * check that the page still holds the record index of the mark before trusting it.
+   */
+  private static boolean isConsistentWith(PageHighWaterMark highWaterMark, DatabasePageHeader nextPageHeader) {
+    long nextRecordIndex = highWaterMark.getNextRecordIndex();
+    return nextRecordIndex >= nextPageHeader.getFirstRecordIndex() &&
+            nextRecordIndex <= nextPageHeader.getFirstRecordIndex() + nextPageHeader.getNumberOfRecords();
+  }
+
+  private static void updateHighWaterMark(Map<RecordType, PageHighWaterMark> highWaterMarks,
+                                          RecordType recordType,
+                                          GenericRecordDatabasePagesResponse<?> pagesResponse) {
+    List<DatabasePageHeader> pageHeaders = pagesResponse.getPageHeaders();
+    if (!pageHeaders.isEmpty()) {
+      DatabasePageHeader lastPageHeader = pageHeaders.get(pageHeaders.size() - 1);
+      highWaterMarks.put(recordType, PageHighWaterMark.after(lastPageHeader, pagesResponse.getRecordsPerPage()));
+    }
+  }
+
+  /**
+   * Writes the packet of a command and reads its response, recording the round-trip latency of the command.
+   */
+  private <T extends Response> T roundTrip(BaseCommand command,
+                                           byte[] packet,
+                                           Class<T> responseClass,
+                                           SerialTransport transport) throws IOException {
+    this.protocolTracer.traceRequest(packet);
+    long startNanos = System.nanoTime();
+    transport.write(packet);
+    T response = this.responseReader.read(responseClass, transport);
+    this.syncMetrics.recordRoundTrip(command.getCommand(), System.nanoTime() - startNanos);
+    return response;
   }
 
-  private Utf8PayloadGenericResponse readFirmwareHeader(SerialPort serialPort) throws SerialPortException {
+  private Utf8PayloadGenericResponse readFirmwareHeader(SerialTransport transport) throws IOException {
     ReadFirmwareHeader readFirmwareHeader = new ReadFirmwareHeader(this.dataOutputFactory);
     byte[] packet = readFirmwareHeader.asBytes();
-    LOGGER.info(format("Sending read firmware header: %s", toHexString(packet)));
-    serialPort.writeBytes(packet);
+    LOGGER.info("Sending read firmware header");
 
     Utf8PayloadGenericResponse utf8PayloadGenericResponse =
-            this.responseReader.read(Utf8PayloadGenericResponse.class, serialPort);
+            roundTrip(readFirmwareHeader, packet, Utf8PayloadGenericResponse.class, transport);
     LOGGER.info(format("Receiver plugged with firmware: %s", utf8PayloadGenericResponse.asString()));
     return utf8PayloadGenericResponse;
   }
 
-  private PageRangeResponse readGlucosePageRange(SerialPort serialPort) throws SerialPortException {
+  private PageRangeResponse readGlucosePageRange(SerialTransport transport) throws IOException {
     ReadDatabasePageRange readGlucoseReadDatabasePageRange = new ReadDatabasePageRange(this.dataOutputFactory, EGVData);
     byte[] packet = readGlucoseReadDatabasePageRange.asBytes();
-    LOGGER.info(format("Sending read database page range for glucose reads: %s", toHexString(packet)));
-    serialPort.writeBytes(packet);
+    LOGGER.info("Sending read database page range for glucose reads");
 
     PageRangeResponse glucosePageRangeResponse =
-            this.responseReader.read(PageRangeResponse.class, serialPort);
+            roundTrip(readGlucoseReadDatabasePageRange, packet, PageRangeResponse.class, transport);
     LOGGER.info(format("Page range for glucose reads: [%d] to [%d]", glucosePageRangeResponse.getFirstPage(),
             glucosePageRangeResponse.getLastPage()));
 
@@ -23,107 +23,243 @@
 
 package org.glukit.dexcom.sync.tasks;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SimpleTimeLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
 import com.google.inject.Inject;
-import jssc.SerialPort;
-import jssc.SerialPortException;
-import jssc.SerialPortTimeoutException;
+import com.google.inject.Singleton;
 import org.glukit.dexcom.sync.DataInputFactory;
 import org.glukit.dexcom.sync.DataOutputFactory;
+import org.glukit.dexcom.sync.ProtocolTracer;
+import org.glukit.dexcom.sync.ReceiverSession;
 import org.glukit.dexcom.sync.ResponseReader;
-import org.glukit.dexcom.sync.g4.DexcomG4Constants;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
 import org.glukit.dexcom.sync.requests.Ping;
 import org.glukit.dexcom.sync.responses.GenericResponse;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.glukit.dexcom.sync.transport.SerialTransportFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 import static java.lang.String.format;
-import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
 
 /**
  * Checks if a given serial device is actually the dexcom receiver.
  *
  * @author alexandre.normand
  */
+@Singleton
 public class IsReceiverOnThisPortRunner {
   private static Logger LOGGER = LoggerFactory.getLogger(IsReceiverOnThisPortRunner.class);
+  // Opening and configuring a port doesn't depend on the receiver so it gets a fixed allowance on top of the ping
+  private static final long OPEN_TIMEOUT_MILLIS = 1000L;
+  // Shared by all probes and their timeouts, the threads are daemons and go away once idle
+  private static final ListeningExecutorService PROBE_EXECUTOR = MoreExecutors.listeningDecorator(
+      Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("receiver-probe-%d").setDaemon(true)
+          .build()));
+
+  private final PingTimeout pingTimeout = new PingTimeout();
 
   private DataOutputFactory dataOutputFactory;
   private DataInputFactory dataInputFactory;
-  private ResponseReader responseReader;
+  private final SyncMetrics syncMetrics;
+  private final ProtocolTracer protocolTracer;
+  private final SerialTransportFactory serialTransportFactory;
 
-  @Inject
   public IsReceiverOnThisPortRunner(DataOutputFactory dataOutputFactory,
                                     DataInputFactory dataInputFactory,
                                     ResponseReader responseReader) {
+    this(dataOutputFactory, dataInputFactory, new SyncMetrics(), responseReader.getProtocolTracer(),
+            new SerialTransportFactory());
+  }
+
+  @Inject
+  public IsReceiverOnThisPortRunner(DataOutputFactory dataOutputFactory,
+                                    DataInputFactory dataInputFactory,
+                                    SyncMetrics syncMetrics,
+                                    ProtocolTracer protocolTracer,
+                                    SerialTransportFactory serialTransportFactory) {
     this.dataOutputFactory = dataOutputFactory;
     this.dataInputFactory = dataInputFactory;
-    this.responseReader = responseReader;
+    this.syncMetrics = syncMetrics;
+    this.protocolTracer = protocolTracer;
+    this.serialTransportFactory = serialTransportFactory;
+  }
+
+  public SerialTransportFactory getSerialTransportFactory() {
+    return this.serialTransportFactory;
   }
 
   public boolean isReceiver(String portName) {
-    ExecutorService executor = Executors.newSingleThreadExecutor();
-    final SerialPort serialPort = new SerialPort(portName);
-    try {
+    return isReceiver(this.serialTransportFactory.newTransport(portName));
+  }
 
-      SimpleTimeLimiter timeout = new SimpleTimeLimiter(executor);
-      Boolean result = timeout.callWithTimeout(new Callable<Boolean>() {
-        @Override
-        public Boolean call() throws Exception {
-          return isFirmware(serialPort);
-        }
-      }, 5, TimeUnit.SECONDS, true);
+  /**
+   * Checks the transport with a ping and closes it, use {@link #openSession(SerialTransport)} to keep it opened
+   * for a sync.
+   */
+  public boolean isReceiver(SerialTransport transport) {
+    ReceiverSession session = openSession(transport);
+    if (session == null) {
+      return false;
+    }
 
+    session.close();
+    return true;
+  }
 
-      return result;
-    } catch (Exception e) {
-      LOGGER.info("Receiver not running on this port since we had an exception while checking.", e);
-      return false;
-    } finally {
-      executor.shutdown();
-      if (serialPort.isOpened()) {
-        try {
-          LOGGER.debug(format("Closing port %s", serialPort.getPortName()));
-          serialPort.closePort();
-        } catch (SerialPortException e) {
-          LOGGER.warn("Error closing port, ignoring.", e);
-        }
+  public ReceiverSession openSession(String portName) {
+    return openSession(this.serialTransportFactory.newTransport(portName));
+  }
+
+  /**
+   * Same as {@link #openSession(String)} for the port the receiver last answered on. The receiver is expected there
+   * so, unlike for a probe, a timeout backs off the ping timeout and a failure is counted in the {@link SyncMetrics}.
+   */
+  public ReceiverSession reopenSession(String portName) {
+    return openSession(this.serialTransportFactory.newTransport(portName), true);
+  }
+
+  /**
+   * Same as {@link #openSession(String)} but on the shared probe executor so several ports can be probed at once.
+   */
+  public ListenableFuture<ReceiverSession> openSessionAsync(final String portName) {
+    return PROBE_EXECUTOR.submit(new Callable<ReceiverSession>() {
+      @Override
+      public ReceiverSession call() throws Exception {
+        return openSession(portName);
       }
-    }
+    });
+  }
+
+  /**
+   * Opens the transport and pings it.
+   *
+   * @return the session with the transport left opened if the receiver answered the ping, {@code null} otherwise,
+   * in which case the transport is closed.
+   */
+  public ReceiverSession openSession(SerialTransport transport) {
+    return openSession(transport, false);
   }
 
-  private boolean isFirmware(SerialPort serialPort) throws SerialPortException, SerialPortTimeoutException {
-    serialPort.openPort();
+  private ReceiverSession openSession(final SerialTransport transport, boolean expectReceiver) {
+    long timeoutMillis = OPEN_TIMEOUT_MILLIS + this.pingTimeout.getTimeoutMillis();
+    boolean isReceiver = pingWithTimeout(transport, timeoutMillis, expectReceiver, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        transport.open();
+        LOGGER.debug(format("Opened port [%s]: %b", transport.getName(), transport.isOpened()));
+        return ping(transport);
+      }
+    });
+
+    if (!isReceiver) {
+      closeQuietly(transport);
+      return null;
+    }
+    return new ReceiverSession(transport);
+  }
 
-    if (!serialPort.isOpened()) {
-      LOGGER.info(format("Couldn't open port %s, assuming this is not the receiver", serialPort.getPortName()));
+  /**
+   * Pings the receiver of a session that's been kept opened since a previous sync. The session is closed if the
+   * receiver doesn't answer anymore.
+   *
+   * @return {@code true} if the session can be reused.
+   */
+  public boolean isValid(final ReceiverSession session) {
+    if (!session.isOpened()) {
       return false;
     }
 
-    printLineStatus(serialPort.getLinesStatus());
-    LOGGER.debug(format("Opened port [%s]: %b", serialPort.getPortName(), serialPort.isOpened()));
-    serialPort.setParams(DexcomG4Constants.FIRMWARE_BAUD_RATE, DexcomG4Constants.DATA_BITS,
-            DexcomG4Constants.STOP_BITS, DexcomG4Constants.NO_PARITY);
+    long timeoutMillis = this.pingTimeout.getTimeoutMillis();
+    boolean isReceiver = pingWithTimeout(session.getTransport(), timeoutMillis, true, new Callable<Boolean>() {
+      @Override
+      public Boolean call() throws Exception {
+        return ping(session.getTransport());
+      }
+    });
 
-    byte[] request = new Ping(this.dataOutputFactory).asBytes();
-    LOGGER.debug(format("Ping with write of [%d] bytes: [%s]", request.length, toHexString(request)));
+    if (!isReceiver) {
+      session.close();
+    }
+    return isReceiver;
+  }
 
-    boolean status = serialPort.writeBytes(request);
-    LOGGER.info(format("Wrote success: %b", status));
+  /**
+   * Only a port we expect the receiver on backs off the ping timeout and counts its failures, the other ports
+   * of a discovery not answering is how we tell they're not the receiver.
+   */
+  private boolean pingWithTimeout(SerialTransport transport,
+                                  long timeoutMillis,
+                                  boolean expectReceiver,
+                                  Callable<Boolean> ping) {
+    try {
+      SimpleTimeLimiter timeout = new SimpleTimeLimiter(PROBE_EXECUTOR);
+      return timeout.callWithTimeout(ping, timeoutMillis, TimeUnit.MILLISECONDS, true);
+    } catch (UncheckedTimeoutException e) {
+      if (expectReceiver) {
+        this.pingTimeout.recordTimeout();
+        this.syncMetrics.recordFailure(e);
+      }
+      LOGGER.info(format("Receiver not running on port [%s] since it didn't answer within [%d] ms.",
+          transport.getName(), timeoutMillis));
+      return false;
+    } catch (Exception e) {
+      if (expectReceiver) {
+        this.syncMetrics.recordFailure(e);
+      }
+      LOGGER.info(format("Receiver not running on port [%s] since we had an exception while checking within [%d] ms.",
+          transport.getName(), timeoutMillis), e);
+      return false;
+    }
+  }
 
-    GenericResponse genericResponse = this.responseReader.read(GenericResponse.class, serialPort);
-    LOGGER.info(format("Received successful ACK response [%s]", toHexString(genericResponse.getPayload())));
-    return true;
+  /**
+   * @return the current ping timeout, adapted to the round-trips observed so far.
+   */
+  public long getPingTimeoutMillis() {
+    return this.pingTimeout.getTimeoutMillis();
   }
 
-  private void printLineStatus(int[] statuses) {
-    for (int status: statuses) {
-      LOGGER.debug(format("Line status is %d", status));
+  private static void closeQuietly(SerialTransport transport) {
+    if (transport.isOpened()) {
+      try {
+        LOGGER.debug(format("Closing port %s", transport.getName()));
+        transport.close();
+      } catch (IOException e) {
+        LOGGER.warn("Error closing port, ignoring.", e);
+      }
     }
   }
+
+  /**
+   * Probes run concurrently so each ping reads its response with its own {@link ResponseReader}, a reader and its
+   * packet buffer can't be shared between threads.
+   */
+  private boolean ping(SerialTransport transport) throws IOException {
+    ResponseReader responseReader = new ResponseReader(this.dataInputFactory, this.protocolTracer);
+    Ping ping = new Ping(this.dataOutputFactory);
+    byte[] request = ping.asBytes();
+    if (LOGGER.isDebugEnabled()) {
+      LOGGER.debug(format("Ping with write of [%d] bytes on port [%s]", request.length, transport.getName()));
+    }
+    this.protocolTracer.traceRequest(request);
+    long startNanos = System.nanoTime();
+    transport.write(request);
+
+    responseReader.read(GenericResponse.class, transport);
+    long roundTripNanos = System.nanoTime() - startNanos;
+    this.pingTimeout.recordRoundTrip(roundTripNanos, TimeUnit.NANOSECONDS);
+    this.syncMetrics.recordRoundTrip(ping.getCommand(), roundTripNanos);
+    LOGGER.info(format("Received successful ACK response on port [%s]", transport.getName()));
+    return true;
+  }
 }
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.tasks;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Timeout of a ping to the receiver that adapts to the round-trips we've observed, the same way TCP computes its
+ * retransmission timeout: an exponentially weighted moving average of the round-trip time plus four times its mean
+ * deviation, kept within {@link #MIN_TIMEOUT_MILLIS} and {@link #MAX_TIMEOUT_MILLIS}. Until a round-trip is
+ * observed, the timeout is the maximum. Like TCP, the timeout doubles after each ping that timed out and goes back to
+ * the estimate once a round-trip is observed again. Only pings of a port the receiver is expected on count as timed
+ * out, ports that aren't the receiver never answer.
+ * <p/>
+ * Thread-safe since probes of several ports record their round-trips concurrently.
+ *
+ * @author alexandre.normand
+ */
+public class PingTimeout {
+  public static final long MIN_TIMEOUT_MILLIS = 250L;
+  public static final long MAX_TIMEOUT_MILLIS = 5000L;
+
+  // Gains of the average and the deviation, 1/8 and 1/4 like TCP
+  private static final double AVERAGE_GAIN = 0.125;
+  private static final double DEVIATION_GAIN = 0.25;
+  private static final int DEVIATION_FACTOR = 4;
+  // Enough doublings to go from the minimum to the maximum
+  private static final int MAX_BACKOFFS = 5;
+
+  private double averageRoundTripMillis = Double.NaN;
+  private double roundTripDeviationMillis;
+  private int backoffs;
+
+  public synchronized void recordRoundTrip(long roundTrip, TimeUnit unit) {
+    checkArgument(roundTrip >= 0, "Invalid round-trip [%s]", roundTrip);
+    double roundTripMillis = unit.toNanos(roundTrip) / 1e6;
+    this.backoffs = 0;
+    if (Double.isNaN(this.averageRoundTripMillis)) {
+      this.averageRoundTripMillis = roundTripMillis;
+      this.roundTripDeviationMillis = roundTripMillis / 2;
+      return;
+    }
+
+    this.roundTripDeviationMillis += DEVIATION_GAIN *
+        (Math.abs(this.averageRoundTripMillis - roundTripMillis) - this.roundTripDeviationMillis);
+    this.averageRoundTripMillis += AVERAGE_GAIN * (roundTripMillis - this.averageRoundTripMillis);
+  }
+
+  /**
+   * Doubles the timeout until the next round-trip, the receiver might just be slower than what we've seen so far.
+   */
+  public synchronized void recordTimeout() {
+    this.backoffs = Math.min(MAX_BACKOFFS, this.backoffs + 1);
+  }
+
+  public synchronized long getTimeoutMillis() {
+    if (Double.isNaN(this.averageRoundTripMillis)) {
+      return MAX_TIMEOUT_MILLIS;
+    }
+
+    long timeoutMillis = (long) Math.ceil(this.averageRoundTripMillis +
+        DEVIATION_FACTOR * this.roundTripDeviationMillis);
+    timeoutMillis = Math.max(MIN_TIMEOUT_MILLIS, Math.min(MAX_TIMEOUT_MILLIS, timeoutMillis));
+    return Math.min(MAX_TIMEOUT_MILLIS, timeoutMillis << this.backoffs);
+  }
+}
@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import jssc.SerialPortEventListener;
+import jssc.SerialPortException;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.DecodingUtils.toHexString;
+import static org.glukit.dexcom.sync.ResponseReader.HEADER_SIZE;
+import static org.glukit.dexcom.sync.ResponseReader.TRAILER_SIZE;
+
+/**
+ * {@link JsscSerialTransport} that doesn't block in {@link SerialPort#readBytes(int)}. Bytes are read as the port
+ * signals them ({@link SerialPortEvent#RXCHAR}) and accumulated until a whole frame, from its start of frame to its
+ * crc, is in. That completes the future of the request waiting for it, {@link #send(byte[])}.
+ * <p/>
+ * Each response has a deadline, enforced by a single thread shared by all transports, so a receiver that stops
+ * mid-frame fails its sync with a {@link ResponseTimeoutException} instead of hanging it. The rest of a response that
+ * timed out or was badly framed could still come in and be taken for the response of the next request so the port's
+ * input is purged and no other request is sent until the transport is closed and reopened. Only the framing and the
+ * response command are checked here, the crc is still validated by the {@link org.glukit.dexcom.sync.ResponseReader}.
+ * <p/>
+ * {@link #read(int)} serves the frame of the last request so this is a drop-in {@link SerialTransport}.
+ *
+ * @author alexandre.normand
+ */
+public class EventDrivenSerialTransport extends JsscSerialTransport implements SerialPortEventListener {
+  private static Logger LOGGER = LoggerFactory.getLogger(EventDrivenSerialTransport.class);
+  private static final byte START_OF_FRAME = 0x01;
+  private static final int INITIAL_FRAMING_BUFFER_SIZE = 1024;
+  private static final ByteBuffer NO_RESPONSE = ByteBuffer.allocate(0);
+  // Only fails late responses, the bytes themselves are read on the port's event thread
+  private static final ScheduledExecutorService DEADLINE_EXECUTOR = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactoryBuilder().setNameFormat("receiver-deadlines-%d").setDaemon(true).build());
+
+  private final long responseTimeoutInNanos;
+  private ByteBuffer framingBuffer = newFramingBuffer(INITIAL_FRAMING_BUFFER_SIZE);
+  private SettableFuture<byte[]> pendingResponse;
+  private ByteBuffer currentResponse = NO_RESPONSE;
+  private boolean listening;
+  private boolean outOfSync;
+
+  public EventDrivenSerialTransport(String portName, long responseTimeout, TimeUnit unit) {
+    this(new SerialPort(portName), responseTimeout, unit);
+  }
+
+  public EventDrivenSerialTransport(SerialPort serialPort, long responseTimeout, TimeUnit unit) {
+    super(serialPort);
+    checkArgument(responseTimeout > 0, "Invalid response timeout [%s]", responseTimeout);
+    this.responseTimeoutInNanos = unit.toNanos(responseTimeout);
+  }
+
+  @Override
+  public void open() throws IOException {
+    super.open();
+    if (this.listening) {
+      return;
+    }
+
+    try {
+      getSerialPort().addEventListener(this, SerialPort.MASK_RXCHAR);
+      this.listening = true;
+    } catch (SerialPortException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Writes a request and returns the future of its response frame. Any request still waiting for its response is
+   * cancelled, and unframed bytes left from it are discarded.
+   *
+   * @throws IOException if a previous response failed, the transport must be reopened before sending requests again.
+   */
+  public ListenableFuture<byte[]> send(byte[] request) throws IOException {
+    final SettableFuture<byte[]> response = SettableFuture.create();
+    synchronized (this) {
+      if (this.outOfSync) {
+        throw new IOException(format("A previous response from [%s] failed, the port must be reopened before " +
+                "sending another request", getName()));
+      }
+      if (this.pendingResponse != null) {
+        this.pendingResponse.cancel(false);
+      }
+      if (this.framingBuffer.position() > 0) {
+        LOGGER.warn(format("Discarding [%d] unframed bytes from [%s]", this.framingBuffer.position(), getName()));
+        this.framingBuffer.clear();
+      }
+      this.pendingResponse = response;
+      this.currentResponse = NO_RESPONSE;
+    }
+
+    final ScheduledFuture<?> deadline = DEADLINE_EXECUTOR.schedule(new Runnable() {
+      @Override
+      public void run() {
+        failResponse(response, new ResponseTimeoutException(getName(), responseTimeoutInNanos,
+                TimeUnit.NANOSECONDS));
+      }
+    }, this.responseTimeoutInNanos, TimeUnit.NANOSECONDS);
+    response.addListener(new Runnable() {
+      @Override
+      public void run() {
+        deadline.cancel(false);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+
+    try {
+      super.write(request);
+    } catch (IOException e) {
+      response.setException(e);
+      throw e;
+    }
+    return response;
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    send(bytes);
+  }
+
+  /**
+   * Reads from the response frame of the last request, waiting for it to be complete if it's the first read since the
+   * request.
+   */
+  @Override
+  public byte[] read(int byteCount) throws IOException {
+    if (!this.currentResponse.hasRemaining()) {
+      SettableFuture<byte[]> response;
+      synchronized (this) {
+        response = this.pendingResponse;
+      }
+      checkState(response != null, "No request waiting for a response from [%s]", getName());
+      // Left pending while we wait so that closing the port fails it
+      this.currentResponse = ByteBuffer.wrap(getResponse(response));
+      synchronized (this) {
+        if (this.pendingResponse == response) {
+          this.pendingResponse = null;
+        }
+      }
+    }
+
+    if (this.currentResponse.remaining() < byteCount) {
+      throw new IOException(format("Asked for [%d] bytes but only [%d] are left of the response from [%s]",
+              byteCount, this.currentResponse.remaining(), getName()));
+    }
+    byte[] bytes = new byte[byteCount];
+    this.currentResponse.get(bytes);
+    return bytes;
+  }
+
+  @Override
+  public void serialEvent(SerialPortEvent event) {
+    if (!event.isRXCHAR() || event.getEventValue() <= 0) {
+      return;
+    }
+
+    try {
+      bytesReceived(getSerialPort().readBytes(event.getEventValue()));
+    } catch (SerialPortException e) {
+      failPendingResponse(new IOException(e));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    failPendingResponse(new IOException(format("Port [%s] closed while waiting for a response", getName())));
+    try {
+      if (this.listening) {
+        this.listening = false;
+        getSerialPort().removeEventListener();
+      }
+    } catch (SerialPortException e) {
+      LOGGER.warn(format("Error removing the event listener of [%s], ignoring.", getName()), e);
+    }
+    super.close();
+    synchronized (this) {
+      this.outOfSync = false;
+    }
+  }
+
+  synchronized void bytesReceived(byte[] bytes) {
+    if (this.pendingResponse == null || this.pendingResponse.isDone()) {
+      LOGGER.warn(format("Ignoring [%d] bytes from [%s] that no request is waiting for", bytes.length, getName()));
+      return;
+    }
+
+    if (this.framingBuffer.remaining() < bytes.length) {
+      ByteBuffer biggerBuffer = newFramingBuffer(Math.max(this.framingBuffer.capacity() * 2,
+              this.framingBuffer.position() + bytes.length));
+      this.framingBuffer.flip();
+      biggerBuffer.put(this.framingBuffer);
+      this.framingBuffer = biggerBuffer;
+    }
+    this.framingBuffer.put(bytes);
+    completeFramedResponse();
+  }
+
+  private void completeFramedResponse() {
+    int received = this.framingBuffer.position();
+    if (received == 0) {
+      return;
+    }
+
+    byte sof = this.framingBuffer.get(0);
+    if (sof != START_OF_FRAME) {
+      failPendingResponse(new IOException(format("Received bad SOF value of [%s] from [%s]",
+              toHexString(new byte[]{sof}), getName())));
+      return;
+    }
+    if (received < HEADER_SIZE) {
+      return;
+    }
+
+    ReceiverCommand command = ReceiverCommand.fromId(this.framingBuffer.get(3));
+    if (command == null || !command.isResponse()) {
+      failPendingResponse(new IOException(format("Received frame with command [%s] from [%s] that isn't a response",
+              command, getName())));
+      return;
+    }
+
+    int frameSize = this.framingBuffer.getShort(1) & 0xFFFF;
+    if (frameSize < HEADER_SIZE + TRAILER_SIZE) {
+      failPendingResponse(new IOException(format("Received frame size of [%d] from [%s] is too small for a valid " +
+              "frame", frameSize, getName())));
+      return;
+    }
+    if (received < frameSize) {
+      return;
+    }
+
+    if (received > frameSize) {
+      LOGGER.warn(format("Discarding [%d] bytes received from [%s] after a complete frame", received - frameSize,
+              getName()));
+    }
+    byte[] frame = new byte[frameSize];
+    this.framingBuffer.flip();
+    this.framingBuffer.get(frame);
+    this.framingBuffer.clear();
+    this.pendingResponse.set(frame);
+  }
+
+  private synchronized void failPendingResponse(IOException e) {
+    this.framingBuffer.clear();
+    if (this.pendingResponse != null) {
+      failResponse(this.pendingResponse, e);
+    }
+  }
+
+  /**
+   * Fails a response still waiting for its frame. What's left of the frame is purged, before the caller sees the
+   * failure, and requests are refused until the transport is reopened since more of it could come in after the next
+   * request.
+   */
+  private synchronized void failResponse(SettableFuture<byte[]> response, IOException e) {
+    if (response.isDone()) {
+      return;
+    }
+
+    this.outOfSync = true;
+    this.framingBuffer.clear();
+    try {
+      getSerialPort().purgePort(SerialPort.PURGE_RXCLEAR);
+    } catch (SerialPortException pe) {
+      LOGGER.warn(format("Error purging the input of [%s], ignoring.", getName()), pe);
+    }
+    response.setException(e);
+  }
+
+  private static byte[] getResponse(SettableFuture<byte[]> response) throws IOException {
+    try {
+      return response.get();
+    } catch (InterruptedException e) {
+      response.cancel(false);
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a response");
+    } catch (ExecutionException e) {
+      Throwables.propagateIfPossible(e.getCause(), IOException.class);
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private static ByteBuffer newFramingBuffer(int capacity) {
+    return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import jssc.SerialPort;
+import jssc.SerialPortException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import static java.lang.String.format;
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.*;
+
+/**
+ * {@link SerialTransport} over a {@link SerialPort}, configured for the receiver's firmware when opened.
+ *
+ * @author alexandre.normand
+ */
+public class JsscSerialTransport implements SerialTransport {
+  private static Logger LOGGER = LoggerFactory.getLogger(JsscSerialTransport.class);
+
+  private final SerialPort serialPort;
+
+  public JsscSerialTransport(String portName) {
+    this(new SerialPort(portName));
+  }
+
+  public JsscSerialTransport(SerialPort serialPort) {
+    this.serialPort = serialPort;
+  }
+
+  protected SerialPort getSerialPort() {
+    return this.serialPort;
+  }
+
+  @Override
+  public String getName() {
+    return this.serialPort.getPortName();
+  }
+
+  @Override
+  public void open() throws IOException {
+    if (isOpened()) {
+      return;
+    }
+
+    try {
+      this.serialPort.openPort();
+      if (!this.serialPort.isOpened()) {
+        throw new IOException(format("Couldn't open port [%s]", getName()));
+      }
+
+      if (LOGGER.isDebugEnabled()) {
+        for (int status : this.serialPort.getLinesStatus()) {
+          LOGGER.debug(format("Line status is %d", status));
+        }
+      }
+      this.serialPort.setParams(FIRMWARE_BAUD_RATE, DATA_BITS, STOP_BITS, NO_PARITY);
+    } catch (SerialPortException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public boolean isOpened() {
+    return this.serialPort.isOpened();
+  }
+
+  @Override
+  public byte[] read(int byteCount) throws IOException {
+    try {
+      return this.serialPort.readBytes(byteCount);
+    } catch (SerialPortException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    try {
+      if (!this.serialPort.writeBytes(bytes)) {
+        throw new IOException(format("Failed to write [%d] bytes to port [%s]", bytes.length, getName()));
+      }
+    } catch (SerialPortException e) {
+      throw new IOException(e);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      this.serialPort.closePort();
+    } catch (SerialPortException e) {
+      throw new IOException(e);
+    }
+  }
+}
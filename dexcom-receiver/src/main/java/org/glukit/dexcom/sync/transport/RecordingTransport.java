@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.IOException;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Decorates a {@link SerialTransport} to capture every request written and every response read, with their timing,
+ * in a {@link SessionLog}. Each time the transport is opened, a new session is appended to the log. The captured
+ * sessions can then be served back by a {@link ReplayTransport}.
+ *
+ * @author alexandre.normand
+ */
+public class RecordingTransport implements SerialTransport {
+  private final SerialTransport delegate;
+  private final File logFile;
+
+  private SessionLog.Writer writer;
+  private long sessionStartNanos;
+
+  public RecordingTransport(SerialTransport delegate, File logFile) {
+    this.delegate = checkNotNull(delegate);
+    this.logFile = checkNotNull(logFile);
+  }
+
+  @Override
+  public String getName() {
+    return this.delegate.getName();
+  }
+
+  @Override
+  public void open() throws IOException {
+    this.delegate.open();
+    if (this.writer == null) {
+      this.writer = new SessionLog.Writer(this.logFile);
+    }
+    this.writer.startSession(getName(), Instant.now());
+    this.sessionStartNanos = System.nanoTime();
+  }
+
+  @Override
+  public boolean isOpened() {
+    return this.delegate.isOpened();
+  }
+
+  @Override
+  public byte[] read(int byteCount) throws IOException {
+    byte[] bytes = this.delegate.read(byteCount);
+    record(SessionLog.Direction.RESPONSE, bytes);
+    return bytes;
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    this.delegate.write(bytes);
+    record(SessionLog.Direction.REQUEST, bytes);
+  }
+
+  /**
+   * Closes the delegate transport and the log.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.delegate.close();
+    } finally {
+      stopRecording();
+    }
+  }
+
+  /**
+   * Closes the log but leaves the delegate transport as it is. A later {@link #open()} will append to the log again.
+   */
+  public void stopRecording() throws IOException {
+    if (this.writer != null) {
+      this.writer.close();
+      this.writer = null;
+    }
+  }
+
+  private void record(SessionLog.Direction direction, byte[] bytes) throws IOException {
+    if (this.writer != null) {
+      this.writer.append(direction, System.nanoTime() - this.sessionStartNanos, bytes);
+    }
+  }
+}
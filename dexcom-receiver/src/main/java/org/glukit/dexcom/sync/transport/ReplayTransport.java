@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.String.format;
+
+/**
+ * {@link SerialTransport} that serves a captured {@link SessionLog.Session} back. Each request written has to match
+ * the next request of the capture, byte for byte, and the responses that followed it in the capture are then served
+ * to reads, however they're split. This makes it possible to run the sync code against the exact byte stream of a
+ * real receiver, either at {@link Pacing#FULL_SPEED} to profile our side of it or at {@link Pacing#ORIGINAL} to
+ * reproduce the receiver's timing.
+ *
+ * @author alexandre.normand
+ */
+public class ReplayTransport implements SerialTransport {
+  private static Logger LOGGER = LoggerFactory.getLogger(ReplayTransport.class);
+
+  private final SessionLog.Session session;
+  private final Pacing pacing;
+
+  private boolean opened = false;
+  private long replayStartNanos;
+  private int nextFrameIndex;
+  private SessionLog.Frame currentResponse;
+  private int currentResponseOffset;
+
+  public static enum Pacing {
+    /**
+     * Responses are available as soon as they're read.
+     */
+    FULL_SPEED,
+    /**
+     * Responses are only available once the time elapsed since opening the transport reaches the time they were
+     * received at in the capture.
+     */
+    ORIGINAL
+  }
+
+  public ReplayTransport(SessionLog.Session session, Pacing pacing) {
+    this.session = checkNotNull(session);
+    this.pacing = checkNotNull(pacing);
+  }
+
+  @Override
+  public String getName() {
+    return format("replay of %s", this.session.getTransportName());
+  }
+
+  /**
+   * Opens the transport and rewinds the replay to the start of the session, unless it was already opened.
+   */
+  @Override
+  public void open() throws IOException {
+    if (this.opened) {
+      return;
+    }
+
+    this.opened = true;
+    this.replayStartNanos = System.nanoTime();
+    this.nextFrameIndex = 0;
+    this.currentResponse = null;
+    this.currentResponseOffset = 0;
+  }
+
+  @Override
+  public boolean isOpened() {
+    return this.opened;
+  }
+
+  @Override
+  public byte[] read(int byteCount) throws IOException {
+    checkOpened();
+    byte[] bytes = new byte[byteCount];
+    int filled = 0;
+    while (filled < byteCount) {
+      if (this.currentResponse == null || this.currentResponseOffset == this.currentResponse.getBytes().length) {
+        nextResponse(byteCount - filled);
+      }
+
+      byte[] responseBytes = this.currentResponse.getBytes();
+      int length = Math.min(byteCount - filled, responseBytes.length - this.currentResponseOffset);
+      System.arraycopy(responseBytes, this.currentResponseOffset, bytes, filled, length);
+      this.currentResponseOffset += length;
+      filled += length;
+    }
+    return bytes;
+  }
+
+  @Override
+  public void write(byte[] bytes) throws IOException {
+    checkOpened();
+    List<SessionLog.Frame> frames = this.session.getFrames();
+    int skippedResponseBytes = remainingBytes(this.currentResponse, this.currentResponseOffset);
+    while (this.nextFrameIndex < frames.size()
+            && frames.get(this.nextFrameIndex).getDirection() == SessionLog.Direction.RESPONSE) {
+      skippedResponseBytes += frames.get(this.nextFrameIndex++).getBytes().length;
+    }
+    if (skippedResponseBytes > 0) {
+      LOGGER.warn(format("Skipping [%d] response bytes of the capture that were never read", skippedResponseBytes));
+    }
+    this.currentResponse = null;
+    this.currentResponseOffset = 0;
+
+    if (this.nextFrameIndex == frames.size()) {
+      throw new IOException(format("Unexpected request of [%d] bytes, the capture has no more requests",
+              bytes.length));
+    }
+
+    SessionLog.Frame expected = frames.get(this.nextFrameIndex);
+    if (!Arrays.equals(expected.getBytes(), bytes)) {
+      throw new IOException(format("Request #%d doesn't match the capture, expected [%d] bytes and got [%d] bytes",
+              this.nextFrameIndex, expected.getBytes().length, bytes.length));
+    }
+    this.nextFrameIndex++;
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.opened = false;
+  }
+
+  /**
+   * @return {@code true} once every frame of the session has been replayed.
+   */
+  public boolean isExhausted() {
+    return this.nextFrameIndex == this.session.getFrames().size()
+            && remainingBytes(this.currentResponse, this.currentResponseOffset) == 0;
+  }
+
+  private void nextResponse(int missingByteCount) throws IOException {
+    List<SessionLog.Frame> frames = this.session.getFrames();
+    if (this.nextFrameIndex == frames.size()
+            || frames.get(this.nextFrameIndex).getDirection() != SessionLog.Direction.RESPONSE) {
+      throw new IOException(format("Read past the captured response, [%d] bytes missing", missingByteCount));
+    }
+
+    this.currentResponse = frames.get(this.nextFrameIndex++);
+    this.currentResponseOffset = 0;
+    if (this.pacing == Pacing.ORIGINAL) {
+      // Sleeps can wake up early since they're only precise to the millisecond so we loop until we're there
+      long responseNanos = this.replayStartNanos + this.currentResponse.getNanosSinceSessionStart();
+      for (long waitInNanos = responseNanos - System.nanoTime(); waitInNanos > 0;
+           waitInNanos = responseNanos - System.nanoTime()) {
+        Uninterruptibles.sleepUninterruptibly(waitInNanos, TimeUnit.NANOSECONDS);
+      }
+    }
+  }
+
+  private void checkOpened() throws IOException {
+    if (!this.opened) {
+      throw new IOException(format("[%s] isn't opened", getName()));
+    }
+  }
+
+  private static int remainingBytes(SessionLog.Frame frame, int offset) {
+    return frame == null ? 0 : frame.getBytes().length - offset;
+  }
+}
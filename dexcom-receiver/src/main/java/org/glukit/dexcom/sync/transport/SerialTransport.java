@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import java.io.IOException;
+
+/**
+ * Byte link to a receiver. The sync only needs to open it, write request packets and read back exactly as many
+ * bytes as it expects so anything from a serial port to an in-process simulator can stand behind it.
+ * <p/>
+ * Implementations aren't expected to be thread-safe.
+ *
+ * @author alexandre.normand
+ */
+public interface SerialTransport {
+  /**
+   * @return a name to identify the transport in logs, the port name for an actual serial port.
+   */
+  String getName();
+
+  /**
+   * Opens the link, doing nothing if it's already opened so a sync can be given a transport that a probe left opened.
+   */
+  void open() throws IOException;
+
+  boolean isOpened();
+
+  /**
+   * Reads exactly {@code byteCount} bytes, blocking until they're available.
+   */
+  byte[] read(int byteCount) throws IOException;
+
+  void write(byte[] bytes) throws IOException;
+
+  void close() throws IOException;
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import com.google.common.primitives.Longs;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.String.format;
+import static org.glukit.sync.api.BloodShepherdProperties.RESPONSE_TIMEOUT_MILLIS;
+
+/**
+ * Creates the transports of the receiver's serial ports. They're {@link EventDrivenSerialTransport}s with a deadline
+ * of {@link BloodShepherdProperties#RESPONSE_TIMEOUT_MILLIS} on each response, or plain blocking
+ * {@link JsscSerialTransport}s if that deadline is {@code 0}.
+ *
+ * @author alexandre.normand
+ */
+@Singleton
+public class SerialTransportFactory {
+  private static Logger LOGGER = LoggerFactory.getLogger(SerialTransportFactory.class);
+  public static final long DEFAULT_RESPONSE_TIMEOUT_MILLIS = 5000L;
+
+  private final long responseTimeoutMillis;
+
+  public SerialTransportFactory() {
+    this(DEFAULT_RESPONSE_TIMEOUT_MILLIS);
+  }
+
+  public SerialTransportFactory(long responseTimeoutMillis) {
+    this.responseTimeoutMillis = responseTimeoutMillis;
+  }
+
+  @Inject
+  public SerialTransportFactory(BloodShepherdProperties properties) {
+    this(getResponseTimeoutMillis(properties));
+  }
+
+  private static long getResponseTimeoutMillis(BloodShepherdProperties properties) {
+    String responseTimeoutMillis = properties.getProperty(RESPONSE_TIMEOUT_MILLIS);
+    if (responseTimeoutMillis == null) {
+      return DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+    }
+
+    Long parsedResponseTimeoutMillis = Longs.tryParse(responseTimeoutMillis.trim());
+    if (parsedResponseTimeoutMillis == null || parsedResponseTimeoutMillis < 0) {
+      LOGGER.warn(format("Ignoring invalid %s of [%s], it must be 0 or more, waiting %d ms for each response " +
+              "instead", RESPONSE_TIMEOUT_MILLIS, responseTimeoutMillis, DEFAULT_RESPONSE_TIMEOUT_MILLIS));
+      return DEFAULT_RESPONSE_TIMEOUT_MILLIS;
+    }
+    if (parsedResponseTimeoutMillis == 0) {
+      LOGGER.info(format("%s is 0, responses are waited for without a deadline", RESPONSE_TIMEOUT_MILLIS));
+    }
+    return parsedResponseTimeoutMillis;
+  }
+
+  public SerialTransport newTransport(String portName) {
+    if (this.responseTimeoutMillis <= 0) {
+      return new JsscSerialTransport(portName);
+    }
+    return new EventDrivenSerialTransport(portName, this.responseTimeoutMillis, TimeUnit.MILLISECONDS);
+  }
+
+  public long getResponseTimeoutMillis() {
+    return this.responseTimeoutMillis;
+  }
+}
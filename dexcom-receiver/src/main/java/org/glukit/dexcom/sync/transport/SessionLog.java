@@ -0,0 +1,245 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.threeten.bp.Instant;
+
+import java.io.*;
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Lists.newArrayList;
+import static java.lang.String.format;
+
+/**
+ * Append-only binary log of the raw frames exchanged with a receiver. A log file starts with a magic header and
+ * holds any number of sessions, each one being a session marker followed by its frames:
+ * <pre>
+ *   file    := MAGIC VERSION session*
+ *   session := SESSION startEpochMillis(8) transportName(modified utf-8) frame*
+ *   frame   := (REQUEST | RESPONSE) nanosSinceSessionStart(8) length(4) bytes
+ * </pre>
+ * Every frame is flushed as soon as it's appended so a capture of a sync that crashes or hangs is still usable. For
+ * the same reason, a truncated frame at the end of the file is dropped when reading it back rather than failing.
+ *
+ * @author alexandre.normand
+ */
+public final class SessionLog {
+  private static Logger LOGGER = LoggerFactory.getLogger(SessionLog.class);
+
+  static final int MAGIC = 0x42534346;
+  static final byte VERSION = 1;
+  static final byte SESSION_MARKER = 0;
+
+  private SessionLog() {
+  }
+
+  public static enum Direction {
+    REQUEST((byte) 1),
+    RESPONSE((byte) 2);
+
+    private final byte id;
+
+    Direction(byte id) {
+      this.id = id;
+    }
+
+    public byte getId() {
+      return id;
+    }
+
+    public static Direction fromId(byte id) {
+      for (Direction direction : values()) {
+        if (direction.id == id) {
+          return direction;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * A request written to or a response read from the receiver, as it went over the wire.
+   */
+  public static class Frame {
+    private final Direction direction;
+    private final long nanosSinceSessionStart;
+    private final byte[] bytes;
+
+    public Frame(Direction direction, long nanosSinceSessionStart, byte[] bytes) {
+      this.direction = checkNotNull(direction);
+      this.nanosSinceSessionStart = nanosSinceSessionStart;
+      this.bytes = checkNotNull(bytes);
+    }
+
+    public Direction getDirection() {
+      return direction;
+    }
+
+    public long getNanosSinceSessionStart() {
+      return nanosSinceSessionStart;
+    }
+
+    public byte[] getBytes() {
+      return bytes;
+    }
+
+    @Override
+    public String toString() {
+      return format("%s of %d bytes at +%dns", direction, bytes.length, nanosSinceSessionStart);
+    }
+  }
+
+  public static class Session {
+    private final String transportName;
+    private final Instant startTime;
+    private final List<Frame> frames;
+
+    public Session(String transportName, Instant startTime, List<Frame> frames) {
+      this.transportName = transportName;
+      this.startTime = startTime;
+      this.frames = Collections.unmodifiableList(frames);
+    }
+
+    public String getTransportName() {
+      return transportName;
+    }
+
+    public Instant getStartTime() {
+      return startTime;
+    }
+
+    public List<Frame> getFrames() {
+      return frames;
+    }
+
+    public long getByteCount(Direction direction) {
+      long byteCount = 0;
+      for (Frame frame : this.frames) {
+        if (frame.getDirection() == direction) {
+          byteCount += frame.getBytes().length;
+        }
+      }
+      return byteCount;
+    }
+  }
+
+  /**
+   * Appends sessions to a log file, creating it if it doesn't exist yet. Not thread-safe.
+   */
+  public static class Writer implements Closeable {
+    private final DataOutputStream output;
+    private boolean sessionStarted = false;
+
+    public Writer(File logFile) throws IOException {
+      boolean newFile = !logFile.exists() || logFile.length() == 0L;
+      this.output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+      if (newFile) {
+        this.output.writeInt(MAGIC);
+        this.output.writeByte(VERSION);
+        this.output.flush();
+      }
+    }
+
+    public void startSession(String transportName, Instant startTime) throws IOException {
+      this.output.writeByte(SESSION_MARKER);
+      this.output.writeLong(startTime.toEpochMilli());
+      this.output.writeUTF(transportName);
+      this.output.flush();
+      this.sessionStarted = true;
+    }
+
+    public void append(Direction direction, long nanosSinceSessionStart, byte[] bytes) throws IOException {
+      checkState(this.sessionStarted, "A session must be started before appending frames");
+      this.output.writeByte(direction.getId());
+      this.output.writeLong(nanosSinceSessionStart);
+      this.output.writeInt(bytes.length);
+      this.output.write(bytes);
+      this.output.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.output.close();
+    }
+  }
+
+  /**
+   * Reads all the sessions of a log file, oldest first.
+   */
+  public static List<Session> read(File logFile) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+    try {
+      if (input.readInt() != MAGIC) {
+        throw new IOException(format("[%s] isn't a session log", logFile));
+      }
+      byte version = input.readByte();
+      if (version != VERSION) {
+        throw new IOException(format("Unsupported session log version [%d] in [%s]", version, logFile));
+      }
+
+      List<Session> sessions = newArrayList();
+      String transportName = null;
+      Instant startTime = null;
+      List<Frame> frames = null;
+      try {
+        while (true) {
+          byte type = input.readByte();
+          if (type == SESSION_MARKER) {
+            if (frames != null) {
+              sessions.add(new Session(transportName, startTime, frames));
+            }
+            startTime = Instant.ofEpochMilli(input.readLong());
+            transportName = input.readUTF();
+            frames = newArrayList();
+          } else {
+            Direction direction = Direction.fromId(type);
+            if (direction == null || frames == null) {
+              throw new IOException(format("Corrupted session log [%s], unexpected frame type [%d]", logFile,
+                      type));
+            }
+            long nanosSinceSessionStart = input.readLong();
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            frames.add(new Frame(direction, nanosSinceSessionStart, bytes));
+          }
+        }
+      } catch (EOFException e) {
+        // Either the end of the log or a frame cut short by a crash, everything complete up to here is kept
+        LOGGER.debug(format("Reached the end of session log [%s]", logFile));
+      }
+
+      if (frames != null) {
+        sessions.add(new Session(transportName, startTime, frames));
+      }
+      return sessions;
+    } finally {
+      input.close();
+    }
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import java.util.Map;
+import java.util.prefs.AbstractPreferences;
+
+import static com.google.common.collect.Maps.newTreeMap;
+
+/**
+ * {@link java.util.prefs.Preferences} kept in memory so tests don't read or write the user's own preferences.
+ *
+ * @author alexandre.normand
+ */
+public class InMemoryPreferences extends AbstractPreferences {
+  private final Map<String, String> values = newTreeMap();
+  private final Map<String, InMemoryPreferences> children = newTreeMap();
+
+  public InMemoryPreferences() {
+    this(null, "");
+  }
+
+  private InMemoryPreferences(InMemoryPreferences parent, String name) {
+    super(parent, name);
+  }
+
+  /**
+   * @return sync preferences with their marks and batch sizes in memory, starting empty.
+   */
+  public static DexcomSyncPreferences newSyncPreferences() {
+    InMemoryPreferences root = new InMemoryPreferences();
+    return new DexcomSyncPreferences(root.node("high-water-marks"), root.node("batch-sizes"));
+  }
+
+  @Override
+  protected void putSpi(String key, String value) {
+    this.values.put(key, value);
+  }
+
+  @Override
+  protected String getSpi(String key) {
+    return this.values.get(key);
+  }
+
+  @Override
+  protected void removeSpi(String key) {
+    this.values.remove(key);
+  }
+
+  @Override
+  protected void removeNodeSpi() {
+    ((InMemoryPreferences) parent()).children.remove(name());
+  }
+
+  @Override
+  protected String[] keysSpi() {
+    return this.values.keySet().toArray(new String[this.values.size()]);
+  }
+
+  @Override
+  protected String[] childrenNamesSpi() {
+    return this.children.keySet().toArray(new String[this.children.size()]);
+  }
+
+  @Override
+  protected AbstractPreferences childSpi(String name) {
+    InMemoryPreferences child = this.children.get(name);
+    if (child == null) {
+      child = new InMemoryPreferences(this, name);
+      this.children.put(name, child);
+    }
+    return child;
+  }
+
+  @Override
+  protected void syncSpi() {
+  }
+
+  @Override
+  protected void flushSpi() {
+  }
+}
@@ -0,0 +1,84 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.glukit.dexcom.sync.DecodingUtils.fromHexString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link Crc16}.
+ *
+ * @author alexandre.normand
+ */
+public class TestCrc16 {
+  private static final byte[] PACKET = fromHexString("01 0c 00 11 04 b9 05 00 00 04 6d 29");
+  private static final int PACKET_CRC = 0x296d;
+
+  @Test
+  public void allVariantsShouldMatchKnownPacketCrc() throws Exception {
+    int length = PACKET.length - 2;
+    assertThat(Crc16.computeBytewise(PACKET, 0, length), equalTo(PACKET_CRC));
+    assertThat(Crc16.computeSlicingBy4(PACKET, 0, length), equalTo(PACKET_CRC));
+    assertThat(Crc16.computeSlicingBy8(PACKET, 0, length), equalTo(PACKET_CRC));
+    assertThat(Crc16.compute(ByteBuffer.wrap(PACKET), 0, length), equalTo(PACKET_CRC));
+  }
+
+  @Test
+  public void allVariantsShouldAgreeOnEveryLengthAndOffset() throws Exception {
+    byte[] bytes = new byte[64];
+    new Random(42).nextBytes(bytes);
+
+    for (int offset = 0; offset < 9; offset++) {
+      for (int length = 0; length <= bytes.length - offset; length++) {
+        int expected = Crc16.computeBytewise(bytes, offset, length);
+        assertThat(Crc16.computeSlicingBy4(bytes, offset, length), equalTo(expected));
+        assertThat(Crc16.computeSlicingBy8(bytes, offset, length), equalTo(expected));
+        assertThat(Crc16.compute(ByteBuffer.wrap(bytes).asReadOnlyBuffer(), offset, length), equalTo(expected));
+      }
+    }
+  }
+
+  @Test
+  public void incrementalUpdatesShouldMatchOneShotCompute() throws Exception {
+    byte[] bytes = new byte[2112];
+    new Random(7).nextBytes(bytes);
+    int expected = Crc16.compute(bytes, 0, bytes.length);
+
+    Crc16 crc16 = new Crc16();
+    crc16.update(bytes[0]);
+    crc16.update(bytes, 1, 3);
+    crc16.update(ByteBuffer.wrap(bytes), 4, 1000);
+    crc16.update(bytes, 1004, bytes.length - 1004);
+    assertThat(crc16.getValue(), equalTo(expected));
+
+    crc16.reset().update(bytes);
+    assertThat(crc16.getValue(), equalTo(expected));
+  }
+}
@@ -28,7 +28,7 @@ import org.junit.Test;
 
 import java.util.Iterator;
 
-import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.MAX_PAGES_PER_COMMAND;
+import static org.glukit.dexcom.sync.model.DatabaseReadRequestSpec.DEFAULT_PAGES_PER_COMMAND;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -65,8 +65,55 @@ public class TestDatabasePagesIterator {
 
     Iterator<DatabaseReadRequestSpec> iterator = planner.iterator();
     assertThat(iterator.hasNext(), is(true));
-    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(140, MAX_PAGES_PER_COMMAND)));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(140, DEFAULT_PAGES_PER_COMMAND)));
     assertThat(iterator.hasNext(), is(true));
     assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(144, (byte) 1)));
   }
+
+  @Test
+  public void rangesOfMoreThan256PagesShouldAlwaysReadFullChunks() throws Exception {
+    // 259 pages to go from page 0 used to overflow to a chunk of 3 pages
+    DatabasePagesPager planner = new DatabasePagesPager(0, 258);
+
+    Iterator<DatabaseReadRequestSpec> iterator = planner.iterator();
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(0, DEFAULT_PAGES_PER_COMMAND)));
+    int pageCount = DEFAULT_PAGES_PER_COMMAND;
+    while (iterator.hasNext()) {
+      pageCount += iterator.next().getNumberOfPages();
+    }
+    assertThat(pageCount, is(259));
+  }
+
+  @Test
+  public void descendingShouldStartWithMostRecentPages() throws Exception {
+    DatabasePagesPager planner = new DatabasePagesPager(140, 144, DatabasePagesPager.Direction.DESCENDING);
+
+    Iterator<DatabaseReadRequestSpec> iterator = planner.iterator();
+    assertThat(iterator.hasNext(), is(true));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(141, DEFAULT_PAGES_PER_COMMAND)));
+    assertThat(iterator.hasNext(), is(true));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(140, (byte) 1)));
+    assertThat(iterator.hasNext(), is(false));
+  }
+
+  @Test
+  public void chunksShouldHaveTheGivenPagesPerCommand() throws Exception {
+    DatabasePagesPager planner = new DatabasePagesPager(100, 139, DatabasePagesPager.Direction.ASCENDING, 16);
+
+    Iterator<DatabaseReadRequestSpec> iterator = planner.iterator();
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(100, (byte) 16)));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(116, (byte) 16)));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(132, (byte) 8)));
+    assertThat(iterator.hasNext(), is(false));
+  }
+
+  @Test
+  public void descendingWithSinglePageShouldReturnSingleElementOf1Page() throws Exception {
+    DatabasePagesPager planner = new DatabasePagesPager(147, 147, DatabasePagesPager.Direction.DESCENDING);
+
+    Iterator<DatabaseReadRequestSpec> iterator = planner.iterator();
+    assertThat(iterator.hasNext(), is(true));
+    assertThat(iterator.next(), equalTo(new DatabaseReadRequestSpec(147, (byte) 1)));
+    assertThat(iterator.hasNext(), is(false));
+  }
 }
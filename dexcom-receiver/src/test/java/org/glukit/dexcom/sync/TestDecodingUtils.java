@@ -82,12 +82,37 @@ public class TestDecodingUtils {
    */
   @Test
   public void crc16CalculationShouldMatchLastTwoBytesOfPacket() throws Exception {
-    int crc16 = DecodingUtils.getCrc16(this.packet, 0, this.packet.length - 2);
+    int crc16 = Crc16.compute(this.packet, 0, this.packet.length - 2);
 
     assertThat(format("CRC16 validation for packet [%s] failed", this.commandId), (short) crc16,
             equalTo(getPacketCrcValue()));
   }
 
+  @Test
+  public void hexStringShouldBeOneLowercasePairPerByte() throws Exception {
+    StringBuilder expected = new StringBuilder();
+    for (byte element : this.packet) {
+      if (expected.length() > 0) {
+        expected.append(' ');
+      }
+      expected.append(format("%02x", element));
+    }
+
+    String hexString = DecodingUtils.toHexString(this.packet);
+    assertThat(hexString, equalTo(expected.toString()));
+    assertThat(fromHexString(hexString), equalTo(this.packet));
+  }
+
+  @Test
+  public void bufferHexStringShouldOnlyCoverTheRemainingBytes() throws Exception {
+    ByteBuffer buffer = ByteBuffer.wrap(this.packet);
+    buffer.position(2);
+
+    assertThat(DecodingUtils.toHexString(buffer),
+            equalTo(DecodingUtils.toHexString(Arrays.copyOfRange(this.packet, 2, this.packet.length))));
+    assertThat(buffer.position(), equalTo(2));
+  }
+
   @Test
   public void testSize() throws Exception {
     System.out.println("Size is " + fromHexString("01 0E 00 01 00 00 00 00 00 00 00 00 2C BB").length);
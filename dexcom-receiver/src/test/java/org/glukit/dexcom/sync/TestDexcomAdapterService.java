@@ -2,6 +2,7 @@ package org.glukit.dexcom.sync;
 
 import org.glukit.dexcom.sync.g4.DexcomG4Constants;
 import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.GlucoseReadColumns;
 import org.glukit.dexcom.sync.model.GlucoseReadRecord;
 import org.glukit.dexcom.sync.model.ManufacturingParameters;
 import org.glukit.dexcom.sync.model.UserEventRecord;
@@ -16,6 +17,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
+import static com.google.common.collect.Lists.newArrayList;
 import static java.lang.String.format;
 import static org.glukit.dexcom.sync.DexcomAdapterService.SPECIAL_GLUCOSE_VALUES;
 import static org.glukit.sync.api.InsulinInjection.InsulinType.UNKNOWN;
@@ -198,6 +200,104 @@ public class TestDexcomAdapterService {
     assertThat(syncData, is(equalTo(expectedSyncData)));
   }
 
+  @Test
+  public void mixedUserEventsShouldBeDispatchedInOrder() throws Exception {
+    DexcomAdapterService dexcomAdapterService = new DexcomAdapterService();
+
+    SyncData syncData = dexcomAdapterService.convertData(
+        new DexcomSyncData(EMPTY_GLUCOSE_READ_RECORDS,
+            Arrays.asList(new UserEventRecord(1000L, 2000L, 1500L, UserEventRecord.UserEventType.CARBS, (byte) 0, 12),
+                new UserEventRecord(1100L, 2100L, 1600L, UserEventRecord.UserEventType.INSULIN, (byte) 0, 350),
+                new UserEventRecord(1200L, 2200L, 1700L, UserEventRecord.UserEventType.HEALTH, (byte) 1, 0),
+                new UserEventRecord(1300L, 2300L, 1800L, UserEventRecord.UserEventType.CARBS, (byte) 0, 30),
+                new UserEventRecord(1400L, 2400L, 1900L, UserEventRecord.UserEventType.INSULIN, (byte) 0, 100)),
+            new ManufacturingParameters(SERIAL_NUMBER, "partNumber", HARDWARE_REVISION, "2013-10-18 10:10", HARDWARE_ID),
+                TEST_TIME));
+
+    List<InsulinInjection> expectedInjections = Arrays.asList(
+        new InsulinInjection(internalTimeFromSeconds(1100L), localDateTimeFromSeconds(2100L),
+            localDateTimeFromSeconds(1600L), 3.5f, UNKNOWN, UNAVAILABLE_INSULIN_NAME),
+        new InsulinInjection(internalTimeFromSeconds(1400L), localDateTimeFromSeconds(2400L),
+            localDateTimeFromSeconds(1900L), 1f, UNKNOWN, UNAVAILABLE_INSULIN_NAME));
+    List<FoodEvent> expectedFoodEvents = Arrays.asList(
+        new FoodEvent(internalTimeFromSeconds(1000L), localDateTimeFromSeconds(2000L),
+            localDateTimeFromSeconds(1500L), 12f, 0f),
+        new FoodEvent(internalTimeFromSeconds(1300L), localDateTimeFromSeconds(2300L),
+            localDateTimeFromSeconds(1800L), 30f, 0f));
+    SyncData expectedSyncData = new SyncData(EMPTY_GLUCOSE_READS, expectedInjections, expectedFoodEvents,
+        EMPTY_EXERCISE_SESSIONS, new DeviceInfo(SERIAL_NUMBER, HARDWARE_ID, HARDWARE_REVISION), TEST_TIME);
+
+    assertThat(syncData, is(equalTo(expectedSyncData)));
+  }
+
+  @Test
+  public void registeredHealthHandlerShouldReceiveHealthEvents() throws Exception {
+    DexcomAdapterService dexcomAdapterService = new DexcomAdapterService();
+    final List<UserEventRecord> healthEvents = newArrayList();
+    dexcomAdapterService.setUserEventHandler(UserEventRecord.UserEventType.HEALTH, new UserEventHandler() {
+      @Override
+      public void handle(UserEventRecord userEvent, ConvertedUserEvents convertedUserEvents) {
+        healthEvents.add(userEvent);
+      }
+    });
+
+    UserEventRecord healthEvent =
+        new UserEventRecord(1200L, 2200L, 1700L, UserEventRecord.UserEventType.HEALTH, (byte) 1, 0);
+    SyncData syncData = dexcomAdapterService.convertData(
+        new DexcomSyncData(EMPTY_GLUCOSE_READ_RECORDS,
+            Arrays.asList(new UserEventRecord(1000L, 2000L, 1500L, UserEventRecord.UserEventType.CARBS, (byte) 0, 12),
+                healthEvent),
+            new ManufacturingParameters(SERIAL_NUMBER, "partNumber", HARDWARE_REVISION, "2013-10-18 10:10", HARDWARE_ID),
+                TEST_TIME));
+
+    assertThat(healthEvents, is(equalTo(Arrays.asList(healthEvent))));
+    assertThat(syncData.getFoodEvents().size(), is(1));
+  }
+
+  @Test
+  public void parallelConversionShouldMatchTheSequentialOne() throws Exception {
+    GlucoseReadColumns glucoseReads = new GlucoseReadColumns();
+    List<UserEventRecord> userEvents = newArrayList();
+    for (int i = 0; i < 5000; i++) {
+      // Sprinkles display only and special values so ranges don't all convert to the same number of reads
+      int glucoseValue = i % 7 == 0 ? 0x8000 | 120 : (i % 11 == 0 ? 5 : 40 + i % 300);
+      glucoseReads.add(1000L + i * 300L, 2000L + i * 300L, glucoseValue, (byte) 0, i, i / 38);
+      userEvents.add(new UserEventRecord(1000L + i * 60L, 2000L + i * 60L, 1500L + i * 60L,
+          UserEventRecord.UserEventType.fromId((byte) (i % 4 + 1)), UserEventRecord.ExerciseIntensity.MEDIUM.getId(), i));
+    }
+    DexcomSyncData dexcomSyncData = new DexcomSyncData(glucoseReads, userEvents,
+        new ManufacturingParameters(SERIAL_NUMBER, "partNumber", HARDWARE_REVISION, "2013-10-18 10:10", HARDWARE_ID),
+        TEST_TIME);
+
+    SyncData sequentialSyncData = new DexcomAdapterService().convertData(dexcomSyncData);
+    DexcomAdapterService parallelAdapterService = new DexcomAdapterService();
+    parallelAdapterService.setParallelConversionThreshold(100);
+    SyncData parallelSyncData = parallelAdapterService.convertData(dexcomSyncData);
+
+    assertThat(parallelSyncData, is(equalTo(sequentialSyncData)));
+    assertThat(parallelSyncData.getGlucoseReads().size() < glucoseReads.size(), is(true));
+    assertThat(parallelSyncData.getInsulinInjections().isEmpty(), is(false));
+  }
+
+  @Test
+  public void primitiveTimeConversionsShouldMatchTheInstantArithmetic() throws Exception {
+    for (long seconds = -100000L; seconds < 500000000L; seconds += 99991L) {
+      assertThat(DexcomAdapterService.toInstant(seconds), equalTo(internalTimeFromSeconds(seconds)));
+      assertThat(DexcomAdapterService.toLocalDateTime(seconds), equalTo(localDateTimeFromSeconds(seconds)));
+    }
+  }
+
+  @Test
+  public void everyGlucoseValueShouldBeClassifiedLikeTheSpecialValueList() throws Exception {
+    for (int valueWithFlags = 0; valueWithFlags <= 0xffff; valueWithFlags++) {
+      boolean displayOnly = (valueWithFlags & 0x8000) != 0;
+      boolean special = SPECIAL_GLUCOSE_VALUES.contains(valueWithFlags & 0x3ff);
+      float expectedValue = displayOnly || special ? -1.0f : (float) valueWithFlags;
+
+      assertThat(DexcomAdapterService.toGlucoseValue(valueWithFlags), is(expectedValue));
+    }
+  }
+
   private Instant internalTimeFromSeconds(long secondsToAdd) {
     return DexcomG4Constants.DEXCOM_EPOCH.plusSeconds(secondsToAdd);
   }
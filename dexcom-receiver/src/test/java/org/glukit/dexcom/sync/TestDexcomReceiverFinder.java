@@ -0,0 +1,107 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+import org.glukit.dexcom.sync.tasks.IsReceiverOnThisPortRunner;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link DexcomReceiverFinder}.
+ *
+ * @author alexandre.normand
+ */
+public class TestDexcomReceiverFinder {
+  private static final String DEVICE_SERIAL = "SM12345678";
+  private static final String RECEIVER_PORT = "/dev/tty.dexgblrecv2";
+
+  private final IsReceiverOnThisPortRunner runner = mock(IsReceiverOnThisPortRunner.class);
+  private final DexcomReceiverFinder finder = new DexcomReceiverFinder(this.runner, new SysfsTtyResolver());
+
+  @Test
+  public void firstPortToAnswerShouldWinAndLateAnswersBeClosed() throws Exception {
+    ReceiverSession receiverSession = newSession(RECEIVER_PORT);
+    ReceiverSession lateSession = newSession("/dev/tty.dexgblrecv3");
+    SettableFuture<ReceiverSession> lateProbe = SettableFuture.create();
+    SettableFuture<ReceiverSession> hangingProbe = SettableFuture.create();
+    when(this.runner.openSessionAsync("/dev/tty.dexgblrecv1")).thenReturn(hangingProbe);
+    when(this.runner.openSessionAsync(RECEIVER_PORT)).thenReturn(Futures.immediateFuture(receiverSession));
+    when(this.runner.openSessionAsync("/dev/tty.dexgblrecv3")).thenReturn(lateProbe);
+
+    ReceiverSession session = this.finder.openReceiverSession(DEVICE_SERIAL,
+        Arrays.asList("/dev/tty.dexgblrecv1", RECEIVER_PORT, "/dev/tty.dexgblrecv3"));
+
+    assertThat(session, is(sameInstance(receiverSession)));
+    lateProbe.set(lateSession);
+    hangingProbe.set(null);
+    verify(lateSession.getTransport()).close();
+    verify(receiverSession.getTransport(), never()).close();
+  }
+
+  @Test
+  public void lastPortOfTheDeviceShouldBeTriedFirst() throws Exception {
+    ReceiverSession receiverSession = newSession(RECEIVER_PORT);
+    when(this.runner.openSessionAsync("/dev/tty.dexgblrecv1")).thenReturn(
+        Futures.<ReceiverSession>immediateFuture(null));
+    when(this.runner.openSessionAsync(RECEIVER_PORT)).thenReturn(Futures.immediateFuture(receiverSession));
+    this.finder.openReceiverSession(DEVICE_SERIAL, Arrays.asList("/dev/tty.dexgblrecv1", RECEIVER_PORT));
+
+    ReceiverSession nextSession = newSession(RECEIVER_PORT);
+    when(this.runner.reopenSession(RECEIVER_PORT)).thenReturn(nextSession);
+    ReceiverSession session =
+        this.finder.openReceiverSession(DEVICE_SERIAL, Arrays.asList("/dev/tty.dexgblrecv1", RECEIVER_PORT));
+
+    assertThat(session, is(sameInstance(nextSession)));
+    verify(this.runner).reopenSession(RECEIVER_PORT);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void noAnsweringPortShouldFail() throws Exception {
+    when(this.runner.openSessionAsync("/dev/tty.dexgblrecv1")).thenReturn(
+        Futures.<ReceiverSession>immediateFuture(null));
+    when(this.runner.openSessionAsync(RECEIVER_PORT)).thenReturn(
+        Futures.<ReceiverSession>immediateFailedFuture(new IllegalStateException("Port busy")));
+
+    this.finder.openReceiverSession(null, Arrays.asList("/dev/tty.dexgblrecv1", RECEIVER_PORT));
+  }
+
+  private static ReceiverSession newSession(String portName) {
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn(portName);
+    when(transport.isOpened()).thenReturn(true);
+    return new ReceiverSession(transport);
+  }
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
+import org.glukit.dexcom.sync.metrics.SyncReport;
+import org.glukit.dexcom.sync.metrics.SyncReporter;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.glukit.sync.AdapterService;
+import org.glukit.sync.api.BloodShepherdPreferences;
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.glukit.sync.api.DataExporter;
+import org.glukit.sync.api.SyncData;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.threeten.bp.Instant;
+
+import javax.usb.UsbDevice;
+import javax.usb.UsbDeviceDescriptor;
+import javax.usb.UsbHub;
+import javax.usb.UsbPort;
+import javax.usb.event.UsbServicesEvent;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link DexcomWatcher}.
+ *
+ * @author alexandre.normand
+ */
+public class TestDexcomWatcher {
+  private final DexcomReceiverFinder receiverFinder = mock(DexcomReceiverFinder.class);
+  private final FetchNewDataRunner fetchNewDataRunner = mock(FetchNewDataRunner.class);
+  private final SyncDispatcher syncDispatcher = mock(SyncDispatcher.class);
+  private DexcomWatcher watcher;
+
+  @Before
+  @SuppressWarnings("unchecked")
+  public void setUp() throws Exception {
+    DeviceFilter deviceFilter = mock(DeviceFilter.class);
+    when(deviceFilter.isHighlander(any(UsbDeviceDescriptor.class))).thenReturn(true);
+    when(this.receiverFinder.isValid(any(ReceiverSession.class))).thenReturn(true);
+    when(this.fetchNewDataRunner.fetchData(any(SerialTransport.class), any(Instant.class), any(SyncReport.class)))
+        .thenReturn(mock(DexcomSyncData.class));
+    AdapterService adapterService = mock(AdapterService.class);
+    when(adapterService.convertData(any(DexcomSyncData.class))).thenReturn(mock(SyncData.class));
+    BloodShepherdPreferences preferences = mock(BloodShepherdPreferences.class);
+    when(preferences.getLastSyncTime()).thenReturn(Instant.ofEpochSecond(1400000000L));
+    // Runs the syncs on the test thread
+    when(this.syncDispatcher.submit(anyString(), any(Runnable.class))).thenAnswer(new Answer<Boolean>() {
+      @Override
+      public Boolean answer(InvocationOnMock invocation) throws Throwable {
+        ((Runnable) invocation.getArguments()[1]).run();
+        return true;
+      }
+    });
+
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    this.watcher = new DexcomWatcher(deviceFilter, this.receiverFinder, this.fetchNewDataRunner, adapterService,
+        mock(DataExporter.class), preferences, mock(DexcomSyncPreferences.class), properties, this.syncDispatcher,
+        new SyncMetrics(), new SyncReporter(properties));
+  }
+
+  @Test
+  public void sessionShouldOnlyBeReusedAndClosedForItsOwnDevice() throws Exception {
+    UsbDevice firstReceiver = newReceiverDevice((byte) 1);
+    UsbDevice secondReceiver = newReceiverDevice((byte) 2);
+    ReceiverSession firstSession = newSession("/dev/ttyACM0");
+    ReceiverSession secondSession = newSession("/dev/ttyACM1");
+    when(this.receiverFinder.openReceiverSession(firstReceiver)).thenReturn(firstSession);
+    when(this.receiverFinder.openReceiverSession(secondReceiver)).thenReturn(secondSession);
+
+    this.watcher.usbDeviceAttached(newEvent(firstReceiver));
+    this.watcher.usbDeviceAttached(newEvent(secondReceiver));
+    this.watcher.usbDeviceAttached(newEvent(firstReceiver));
+
+    verify(this.receiverFinder).openReceiverSession(firstReceiver);
+    verify(this.receiverFinder).openReceiverSession(secondReceiver);
+    verify(this.fetchNewDataRunner, times(2)).fetchData(eq(firstSession.getTransport()), any(Instant.class),
+        any(SyncReport.class));
+    verify(this.fetchNewDataRunner).fetchData(eq(secondSession.getTransport()), any(Instant.class),
+        any(SyncReport.class));
+
+    this.watcher.usbDeviceDetached(newEvent(secondReceiver));
+
+    verify(secondSession.getTransport()).close();
+    verify(firstSession.getTransport(), never()).close();
+  }
+
+  private static UsbDevice newReceiverDevice(byte portNumber) {
+    UsbDeviceDescriptor deviceDescriptor = mock(UsbDeviceDescriptor.class);
+    when(deviceDescriptor.idVendor()).thenReturn((short) 0x22a3);
+    when(deviceDescriptor.idProduct()).thenReturn((short) 0x0047);
+    UsbPort port = mock(UsbPort.class);
+    when(port.getPortNumber()).thenReturn(portNumber);
+    when(port.getUsbHub()).thenReturn(mock(UsbHub.class));
+    UsbDevice usbDevice = mock(UsbDevice.class);
+    when(usbDevice.getUsbDeviceDescriptor()).thenReturn(deviceDescriptor);
+    when(usbDevice.getParentUsbPort()).thenReturn(port);
+    return usbDevice;
+  }
+
+  private static UsbServicesEvent newEvent(UsbDevice usbDevice) {
+    UsbServicesEvent event = mock(UsbServicesEvent.class);
+    when(event.getUsbDevice()).thenReturn(usbDevice);
+    return event;
+  }
+
+  private static ReceiverSession newSession(String portName) {
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn(portName);
+    when(transport.isOpened()).thenReturn(true);
+    return new ReceiverSession(transport);
+  }
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.model.TimestampedRecord;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link PageLocator}
+ *
+ * @author alexandre.normand
+ */
+public class TestPageLocator {
+  private static final int SECONDS_PER_PAGE = 1000;
+
+  @Test
+  public void sinceInTheMiddleShouldLocatePageWithNewerRecords() throws Exception {
+    FakePageProbe pageProbe = new FakePageProbe(100, 1099);
+    PageLocator pageLocator = new PageLocator(pageProbe);
+
+    assertThat(pageLocator.findFirstPageNewerThan(500 * SECONDS_PER_PAGE + 10, 100, 1099), is(equalTo(500L)));
+    assertThat(pageProbe.probes <= 11, is(true));
+  }
+
+  @Test
+  public void sinceOnLastRecordOfPageShouldLocateNextPage() throws Exception {
+    PageLocator pageLocator = new PageLocator(new FakePageProbe(100, 199));
+
+    assertThat(pageLocator.findFirstPageNewerThan(150 * SECONDS_PER_PAGE + 900, 100, 199), is(equalTo(151L)));
+  }
+
+  @Test
+  public void sinceBeforeAllRecordsShouldLocateFirstPage() throws Exception {
+    PageLocator pageLocator = new PageLocator(new FakePageProbe(100, 199));
+
+    assertThat(pageLocator.findFirstPageNewerThan(0L, 100, 199), is(equalTo(100L)));
+  }
+
+  @Test
+  public void sinceAfterAllRecordsShouldReturnPastLastPage() throws Exception {
+    PageLocator pageLocator = new PageLocator(new FakePageProbe(100, 199));
+
+    assertThat(pageLocator.findFirstPageNewerThan(Long.MAX_VALUE, 100, 199), is(equalTo(200L)));
+  }
+
+  @Test
+  public void emptyRangeShouldNotProbe() throws Exception {
+    FakePageProbe pageProbe = new FakePageProbe(100, 199);
+    PageLocator pageLocator = new PageLocator(pageProbe);
+
+    assertThat(pageLocator.findFirstPageNewerThan(0L, 100, 99), is(equalTo(100L)));
+    assertThat(pageProbe.probes, is(equalTo(0)));
+  }
+
+  /**
+   * Each page has 10 records, 100 seconds apart, starting at {@code pageNumber * SECONDS_PER_PAGE}.
+   */
+  private static class FakePageProbe implements PageLocator.PageProbe {
+    private final long firstPage;
+    private final long lastPage;
+    private int probes = 0;
+
+    private FakePageProbe(long firstPage, long lastPage) {
+      this.firstPage = firstPage;
+      this.lastPage = lastPage;
+    }
+
+    @Override
+    public List<? extends TimestampedRecord> readPageRecords(long pageNumber) {
+      probes++;
+      if (pageNumber < firstPage || pageNumber > lastPage) {
+        return Collections.emptyList();
+      }
+
+      List<TimestampedRecord> records = newArrayList();
+      for (int i = 0; i < 10; i++) {
+        final long recordTime = pageNumber * SECONDS_PER_PAGE + i * 100;
+        records.add(new TimestampedRecord() {
+          @Override
+          public long getInternalSecondsSinceDexcomEpoch() {
+            return recordTime;
+          }
+        });
+      }
+      return records;
+    }
+  }
+}
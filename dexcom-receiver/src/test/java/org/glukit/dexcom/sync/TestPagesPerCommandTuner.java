@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.model.DatabaseReadRequestSpec;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.util.List;
+
+import static org.glukit.dexcom.sync.PagesPerCommandTuner.CANDIDATES;
+import static org.glukit.dexcom.sync.PagesPerCommandTuner.MIN_PAGES_PER_CANDIDATE;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link PagesPerCommandTuner}.
+ *
+ * @author alexandre.normand
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestPagesPerCommandTuner {
+  private static final String FIRMWARE_VERSION = "2.0.1.104";
+
+  @Mock
+  private DexcomSyncPreferences syncPreferences;
+
+  @Test
+  public void tunedValueShouldBeUsedForAllReads() throws Exception {
+    when(this.syncPreferences.getTunedPagesPerCommand(FIRMWARE_VERSION)).thenReturn(16);
+
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    assertThat(readPlanner.getPagesPerCommand(), is(16));
+    List<DatabaseReadRequestSpec> specs = readPlanner.planAscending(0, 39);
+    assertThat(specs.size(), is(3));
+    assertThat(specs.get(2), equalTo(new DatabaseReadRequestSpec(32, (byte) 8)));
+  }
+
+  @Test
+  public void planShouldTakeTurnsUntilEachCandidateIsMeasured() throws Exception {
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    List<DatabaseReadRequestSpec> specs = readPlanner.planAscending(0, 999);
+
+    long[] plannedPages = new long[CANDIDATES.length];
+    long page = 0;
+    for (int i = 0; i < specs.size(); i++) {
+      DatabaseReadRequestSpec spec = specs.get(i);
+      assertThat(spec.getStartPage(), is(page));
+      page += spec.getNumberOfPages();
+      if (i < CANDIDATES.length) {
+        assertThat((int) spec.getNumberOfPages(), is(CANDIDATES[i]));
+      }
+      for (int c = 0; c < CANDIDATES.length; c++) {
+        if (CANDIDATES[c] == spec.getNumberOfPages()) {
+          plannedPages[c] += spec.getNumberOfPages();
+        }
+      }
+    }
+    assertThat(page, is(1000L));
+    for (long candidatePages : plannedPages) {
+      assertThat(candidatePages >= MIN_PAGES_PER_CANDIDATE, is(true));
+    }
+  }
+
+  @Test
+  public void fastestCandidateShouldBeSavedOnceAllAreMeasured() throws Exception {
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    for (int pagesPerCommand : CANDIDATES) {
+      // A fixed 10 ms of overhead per command and 1 ms per page, except for 16 pages that read at 0.5 ms per page
+      long nanosPerPage = pagesPerCommand == 16 ? 500000L : 1000000L;
+      for (long pages = 0; pages < MIN_PAGES_PER_CANDIDATE; pages += pagesPerCommand) {
+        verify(this.syncPreferences, never()).saveTunedPagesPerCommand(anyString(), anyInt());
+        readPlanner.recordRead(new DatabaseReadRequestSpec(pages, (byte) pagesPerCommand),
+                10000000L + pagesPerCommand * nanosPerPage);
+      }
+    }
+
+    verify(this.syncPreferences).saveTunedPagesPerCommand(FIRMWARE_VERSION, 16);
+  }
+
+  @Test
+  public void unsupportedCandidateShouldBeLeftOutWithLargerOnes() throws Exception {
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    assertThat(readPlanner.readRejected(new DatabaseReadRequestSpec(0, (byte) 16)), is(true));
+    for (long pages = 0; pages < MIN_PAGES_PER_CANDIDATE; pages += 4) {
+      readPlanner.recordRead(new DatabaseReadRequestSpec(pages, (byte) 4), 20000000L);
+    }
+    for (long pages = 0; pages < MIN_PAGES_PER_CANDIDATE; pages += 8) {
+      readPlanner.recordRead(new DatabaseReadRequestSpec(pages, (byte) 8), 30000000L);
+    }
+
+    verify(this.syncPreferences).saveTunedPagesPerCommand(FIRMWARE_VERSION, 8);
+    for (DatabaseReadRequestSpec spec : readPlanner.planAscending(0, 99)) {
+      assertThat(spec.getNumberOfPages() <= 8, is(true));
+    }
+  }
+
+  @Test
+  public void rejectedLastChunkShouldLeaveOutTheCandidatesItFitsIn() throws Exception {
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    assertThat(readPlanner.readRejected(new DatabaseReadRequestSpec(0, (byte) 12)), is(true));
+
+    for (DatabaseReadRequestSpec spec : readPlanner.planAscending(0, 999)) {
+      assertThat(spec.getNumberOfPages() <= 8, is(true));
+    }
+  }
+
+  @Test
+  public void rejectedDefaultShouldFailTheSync() throws Exception {
+    ReadPlanner readPlanner = new PagesPerCommandTuner(this.syncPreferences).newReadPlanner(FIRMWARE_VERSION);
+
+    assertThat(readPlanner.readRejected(new DatabaseReadRequestSpec(0, (byte) 4)), is(false));
+  }
+}
@@ -0,0 +1,194 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.model.GlucoseReadRecord;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.requests.ReadDatabasePagesCommand;
+import org.glukit.dexcom.sync.responses.GlucoseReadsDatabasePagesResponse;
+import org.glukit.dexcom.sync.simulator.SimulatedDatabase;
+import org.glukit.dexcom.sync.simulator.SimulatedReceiver;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link PipelinedPacketReader}.
+ *
+ * @author alexandre.normand
+ */
+public class TestPipelinedPacketReader {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+
+  private final LittleEndianDataOutputFactory dataOutputFactory = new LittleEndianDataOutputFactory();
+
+  @Test
+  public void responsesShouldMatchTheOnesReadOneAtATime() throws Exception {
+    List<byte[]> requests = newArrayList();
+    for (long page = 0; page < 8; page += 2) {
+      requests.add(new ReadDatabasePagesCommand(this.dataOutputFactory, RecordType.EGVData, page, (byte) 2)
+          .asBytes());
+    }
+
+    SimulatedReceiver sequentialReceiver = newOpenedReceiver();
+    ResponseReader sequentialReader = new ResponseReader(new LittleEndianDataInputFactory());
+    List<GlucoseReadRecord> expectedRecords = newArrayList();
+    for (byte[] request : requests) {
+      sequentialReceiver.write(request);
+      expectedRecords.addAll(sequentialReader.read(GlucoseReadsDatabasePagesResponse.class, sequentialReceiver)
+          .getRecords());
+    }
+
+    SimulatedReceiver pipelinedReceiver = newOpenedReceiver();
+    ResponseReader responseReader = new ResponseReader(new LittleEndianDataInputFactory());
+    List<GlucoseReadRecord> records = newArrayList();
+    PipelinedPacketReader packetReader = new PipelinedPacketReader(pipelinedReceiver, responseReader, requests, 1);
+    try {
+      packetReader.start();
+      for (int i = 0; i < requests.size(); i++) {
+        PipelinedPacketReader.Frame frame = packetReader.next();
+        records.addAll(responseReader.decode(GlucoseReadsDatabasePagesResponse.class, frame.getPacket(),
+            frame.getCrc16()).getRecords());
+        assertThat(frame.getRoundTripNanos() > 0, is(true));
+        packetReader.recycle(frame);
+      }
+    } finally {
+      packetReader.close();
+    }
+
+    assertThat(records.size(), is(expectedRecords.size()));
+    for (int i = 0; i < records.size(); i++) {
+      assertThat(records.get(i).getInternalSecondsSinceDexcomEpoch(),
+          is(expectedRecords.get(i).getInternalSecondsSinceDexcomEpoch()));
+      assertThat(records.get(i).getGlucoseValueWithFlags(), is(expectedRecords.get(i).getGlucoseValueWithFlags()));
+    }
+    assertThat(pipelinedReceiver.getBytesRead(), is(sequentialReceiver.getBytesRead()));
+  }
+
+  @Test
+  public void readFailureShouldBeThrownToTheConsumer() throws Exception {
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn("failing");
+    when(transport.read(anyInt())).thenThrow(new IOException("Port closed"));
+    List<byte[]> requests = newArrayList(new byte[]{1}, new byte[]{2});
+
+    PipelinedPacketReader packetReader = new PipelinedPacketReader(transport,
+        new ResponseReader(new LittleEndianDataInputFactory()), requests, 1);
+    try {
+      packetReader.start();
+      packetReader.next();
+      throw new AssertionError("Expected the read failure");
+    } catch (IOException e) {
+      assertThat(e.getMessage(), equalTo("Port closed"));
+    } finally {
+      packetReader.close();
+    }
+  }
+
+  @Test
+  public void writeFailureShouldBeThrownToTheConsumer() throws Exception {
+    SerialTransport transport = mock(SerialTransport.class);
+    doThrow(new IllegalStateException("Not opened")).when(transport).write(any(byte[].class));
+
+    PipelinedPacketReader packetReader = new PipelinedPacketReader(transport,
+        new ResponseReader(new LittleEndianDataInputFactory()), newArrayList(new byte[]{1}), 1);
+    try {
+      packetReader.start();
+      packetReader.next();
+      throw new AssertionError("Expected the write failure");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage(), equalTo("Not opened"));
+    } finally {
+      packetReader.close();
+    }
+  }
+
+  @Test(timeout = 5000L)
+  public void closeShouldStopTheReadAhead() throws Exception {
+    List<byte[]> requests = newArrayList();
+    for (long page = 0; page < 8; page++) {
+      requests.add(new ReadDatabasePagesCommand(this.dataOutputFactory, RecordType.EGVData, page, (byte) 1)
+          .asBytes());
+    }
+    SimulatedReceiver receiver = newOpenedReceiver();
+
+    PipelinedPacketReader packetReader = new PipelinedPacketReader(receiver,
+        new ResponseReader(new LittleEndianDataInputFactory()), requests, 1);
+    packetReader.start();
+    packetReader.next();
+    packetReader.close();
+
+    // The frame we kept and the one read ahead but no more
+    long commandCount = receiver.getCommandCount();
+    assertThat(commandCount <= 2L, is(true));
+    TimeUnit.MILLISECONDS.sleep(50L);
+    assertThat(receiver.getCommandCount(), is(commandCount));
+  }
+
+  @Test(timeout = 5000L)
+  public void stopShouldLeaveTheTransportReadyForTheNextRequest() throws Exception {
+    List<byte[]> requests = newArrayList();
+    for (long page = 0; page < 8; page++) {
+      requests.add(new ReadDatabasePagesCommand(this.dataOutputFactory, RecordType.EGVData, page, (byte) 1)
+          .asBytes());
+    }
+    SimulatedReceiver receiver = newOpenedReceiver();
+    ResponseReader responseReader = new ResponseReader(new LittleEndianDataInputFactory());
+
+    PipelinedPacketReader packetReader = new PipelinedPacketReader(receiver, responseReader, requests, 1);
+    try {
+      packetReader.start();
+      packetReader.recycle(packetReader.next());
+      packetReader.stop();
+    } finally {
+      packetReader.close();
+    }
+
+    // Every response read ahead was consumed so the next exchange gets its own
+    receiver.write(requests.get(0));
+    List<GlucoseReadRecord> records = responseReader.read(GlucoseReadsDatabasePagesResponse.class, receiver)
+        .getRecords();
+    assertThat(records.isEmpty(), is(false));
+  }
+
+  private static SimulatedReceiver newOpenedReceiver() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME));
+    receiver.open();
+    return receiver;
+  }
+}
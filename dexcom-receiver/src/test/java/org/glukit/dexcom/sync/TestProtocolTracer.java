@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.glukit.dexcom.sync.responses.GenericResponse;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.junit.Test;
+
+import static org.glukit.dexcom.sync.DecodingUtils.fromHexString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link ProtocolTracer}.
+ *
+ * @author alexandre.normand
+ */
+public class TestProtocolTracer {
+  @Test
+  public void disabledTracerShouldKeepNothing() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(4, 16, false);
+
+    protocolTracer.traceRequest(fromHexString("01 06 00 0A 5E 65"));
+
+    assertThat(protocolTracer.getFrameCount(), is(0L));
+    assertThat(protocolTracer.dump(), equalTo(""));
+  }
+
+  @Test
+  public void framesShouldBeDumpedInOrder() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(4, 16, true);
+
+    protocolTracer.traceRequest(fromHexString("01 06 00 0A 5E 65"));
+    byte[] response = fromHexString("ff 01 06 00 01 35 d4");
+    protocolTracer.traceResponse(response, 1, response.length - 1);
+
+    String[] frames = protocolTracer.dump().split("\\r?\\n");
+    assertThat(frames.length, is(2));
+    assertThat(frames[0].startsWith("#0 +0.000 ms REQUEST [6 bytes]: 01 06 00 0a 5e 65"), is(true));
+    assertThat(frames[1].startsWith("#1 "), is(true));
+    assertThat(frames[1].endsWith("RESPONSE [6 bytes]: 01 06 00 01 35 d4"), is(true));
+  }
+
+  @Test
+  public void ringShouldOnlyKeepTheLastFrames() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(2, 16, true);
+
+    for (int i = 0; i < 5; i++) {
+      protocolTracer.traceRequest(new byte[]{(byte) i});
+    }
+
+    String[] frames = protocolTracer.dump().split("\\r?\\n");
+    assertThat(protocolTracer.getFrameCount(), is(5L));
+    assertThat(frames.length, is(2));
+    assertThat(frames[0].startsWith("#3 +0.000 ms REQUEST [1 bytes]: 03"), is(true));
+    assertThat(frames[1].endsWith("[1 bytes]: 04"), is(true));
+  }
+
+  @Test
+  public void longFramesShouldBeTruncated() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(2, 4, true);
+
+    protocolTracer.traceRequest(fromHexString("01 06 00 0A 5E 65"));
+
+    assertThat(protocolTracer.dump().trim().endsWith("[6 bytes]: 01 06 00 0a ..."), is(true));
+  }
+
+  @Test
+  public void clearShouldDropTheFrames() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(2, 4, true);
+    protocolTracer.traceRequest(fromHexString("01 06 00 0A 5E 65"));
+
+    protocolTracer.clear();
+
+    assertThat(protocolTracer.dump(), equalTo(""));
+  }
+
+  @Test
+  public void responseWithInvalidCrcShouldBeTraced() throws Exception {
+    ProtocolTracer protocolTracer = new ProtocolTracer(4, 16, true);
+    ResponseReader responseReader = new ResponseReader(new LittleEndianDataInputFactory(), protocolTracer);
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.read(4)).thenReturn(fromHexString("01 06 00 01"));
+    when(transport.read(2)).thenReturn(fromHexString("00 00"));
+
+    try {
+      responseReader.read(GenericResponse.class, transport);
+    } catch (CrcMismatchException e) {
+      assertThat(protocolTracer.dump().trim().endsWith("RESPONSE [6 bytes]: 01 06 00 01 00 00"), is(true));
+      return;
+    }
+    throw new AssertionError("Expected a crc mismatch");
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link SyncDispatcher}.
+ *
+ * @author alexandre.normand
+ */
+public class TestSyncDispatcher {
+  private static final String DEVICE_KEY = "22a3:0047";
+
+  private final SyncDispatcher syncDispatcher = new SyncDispatcher(1, 1);
+  private final CountDownLatch syncStarted = new CountDownLatch(1);
+  private final CountDownLatch releaseSync = new CountDownLatch(1);
+  private final AtomicInteger syncCount = new AtomicInteger();
+
+  @After
+  public void tearDown() throws Exception {
+    this.releaseSync.countDown();
+    this.syncDispatcher.shutdown(5, TimeUnit.SECONDS);
+  }
+
+  @Test
+  public void duplicateSubmitsShouldBeCoalescedWhileInFlight() throws Exception {
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(true));
+    this.syncStarted.await(5, TimeUnit.SECONDS);
+
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(false));
+    assertThat(this.syncDispatcher.isInFlight(DEVICE_KEY), is(true));
+
+    this.releaseSync.countDown();
+    assertThat(this.syncDispatcher.shutdown(5, TimeUnit.SECONDS), is(true));
+    assertThat(this.syncCount.get(), is(1));
+    assertThat(this.syncDispatcher.isInFlight(DEVICE_KEY), is(false));
+  }
+
+  @Test
+  public void deviceShouldBeSyncedAgainOnceItsSyncCompleted() throws Exception {
+    this.releaseSync.countDown();
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(true));
+    waitUntilNotInFlight(DEVICE_KEY);
+
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(true));
+    assertThat(this.syncDispatcher.shutdown(5, TimeUnit.SECONDS), is(true));
+    assertThat(this.syncCount.get(), is(2));
+  }
+
+  @Test
+  public void syncShouldBeDroppedWhenTheQueueIsFull() throws Exception {
+    assertThat(this.syncDispatcher.submit("running", blockingSync()), is(true));
+    this.syncStarted.await(5, TimeUnit.SECONDS);
+    assertThat(this.syncDispatcher.submit("queued", blockingSync()), is(true));
+
+    assertThat(this.syncDispatcher.submit("dropped", blockingSync()), is(false));
+    assertThat(this.syncDispatcher.isInFlight("dropped"), is(false));
+  }
+
+  @Test
+  public void failedSyncShouldNotStopTheWorker() throws Exception {
+    this.releaseSync.countDown();
+    this.syncDispatcher.submit("failing", new Runnable() {
+      @Override
+      public void run() {
+        throw new IllegalStateException("Receiver unplugged");
+      }
+    });
+    waitUntilNotInFlight("failing");
+
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(true));
+    assertThat(this.syncDispatcher.shutdown(5, TimeUnit.SECONDS), is(true));
+    assertThat(this.syncCount.get(), is(1));
+  }
+
+  @Test
+  public void shutdownShouldDrainQueuedSyncs() throws Exception {
+    assertThat(this.syncDispatcher.submit("running", blockingSync()), is(true));
+    assertThat(this.syncDispatcher.submit("queued", blockingSync()), is(true));
+    this.releaseSync.countDown();
+
+    assertThat(this.syncDispatcher.shutdown(5, TimeUnit.SECONDS), is(true));
+    assertThat(this.syncCount.get(), is(2));
+    assertThat(this.syncDispatcher.submit(DEVICE_KEY, blockingSync()), is(false));
+  }
+
+  private Runnable blockingSync() {
+    return new Runnable() {
+      @Override
+      public void run() {
+        syncStarted.countDown();
+        try {
+          releaseSync.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        syncCount.incrementAndGet();
+      }
+    };
+  }
+
+  private void waitUntilNotInFlight(String deviceKey) throws InterruptedException {
+    for (int i = 0; i < 500 && this.syncDispatcher.isInFlight(deviceKey); i++) {
+      Thread.sleep(10L);
+    }
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link SysfsTtyResolver} against a fake sysfs tree.
+ *
+ * @author alexandre.normand
+ */
+public class TestSysfsTtyResolver {
+  private static final short DEXCOM_VENDOR_ID = (short) 0x22a3;
+  private static final short G4_PRODUCT_ID = (short) 0x0047;
+
+  private File root;
+  private File usbDevices;
+  private SysfsTtyResolver resolver;
+
+  @Before
+  public void setup() throws Exception {
+    this.root = Files.createTempDir();
+    this.usbDevices = new File(this.root, "sys/bus/usb/devices");
+    this.usbDevices.mkdirs();
+    this.resolver = new SysfsTtyResolver(new File(this.root, "sys"), new File("/dev"));
+
+    addDevice("usb1", 1, 1, "1d6b", "0002");
+    addDevice("1-1", 1, 2, "0424", "2514");
+    addDevice("1-1:1.0", -1, -1, null, null);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteRecursively(this.root);
+  }
+
+  @Test
+  public void ttyShouldBeResolvedFromTheInterfaceOfTheDevice() throws Exception {
+    File receiver = addDevice("1-1.2", 1, 5, "22a3", "0047");
+    new File(receiver, "1-1.2:1.0").mkdirs();
+    new File(receiver, "1-1.2:1.1/tty/ttyACM1").mkdirs();
+
+    assertThat(this.resolver.resolveTty(1, 5, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), equalTo("/dev/ttyACM1"));
+  }
+
+  @Test
+  public void legacyTtyLinkShouldBeResolved() throws Exception {
+    File receiver = addDevice("2-3", 2, 7, "22A3", "0047");
+    new File(receiver, "2-3:1.0/tty:ttyACM0").mkdirs();
+
+    assertThat(this.resolver.resolveTty(2, 7, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), equalTo("/dev/ttyACM0"));
+  }
+
+  @Test
+  public void deviceOnAnotherBusShouldNotBeResolved() throws Exception {
+    File receiver = addDevice("1-1.2", 1, 5, "22a3", "0047");
+    new File(receiver, "1-1.2:1.0/tty/ttyACM0").mkdirs();
+
+    assertThat(this.resolver.resolveTty(2, 5, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), is(nullValue()));
+  }
+
+  @Test
+  public void deviceOfAnotherProductShouldNotBeResolved() throws Exception {
+    File modem = addDevice("1-1.3", 1, 6, "1199", "68a3");
+    new File(modem, "1-1.3:1.0/tty/ttyACM0").mkdirs();
+
+    assertThat(this.resolver.resolveTty(1, 6, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), is(nullValue()));
+  }
+
+  @Test
+  public void deviceWithoutTtyShouldNotBeResolved() throws Exception {
+    File receiver = addDevice("1-1.2", 1, 5, "22a3", "0047");
+    new File(receiver, "1-1.2:1.0").mkdirs();
+
+    assertThat(this.resolver.resolveTty(1, 5, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), is(nullValue()));
+  }
+
+  @Test
+  public void missingSysfsShouldNotBeSupported() throws Exception {
+    SysfsTtyResolver resolver = new SysfsTtyResolver(new File(this.root, "nothing"), new File("/dev"));
+
+    assertThat(resolver.isSupported(), is(false));
+    assertThat(resolver.resolveTty(1, 5, DEXCOM_VENDOR_ID, G4_PRODUCT_ID), is(nullValue()));
+    assertThat(this.resolver.isSupported(), is(true));
+  }
+
+  /**
+   * Devices are directories of their own here instead of links to /sys/devices, which is the same when walked.
+   */
+  private File addDevice(String name, int busNumber, int deviceAddress, String vendorId, String productId)
+      throws IOException {
+    File device = new File(this.usbDevices, name);
+    device.mkdirs();
+    if (busNumber >= 0) {
+      Files.write(busNumber + "\n", new File(device, "busnum"), Charsets.US_ASCII);
+      Files.write(deviceAddress + "\n", new File(device, "devnum"), Charsets.US_ASCII);
+      Files.write(vendorId + "\n", new File(device, "idVendor"), Charsets.US_ASCII);
+      Files.write(productId + "\n", new File(device, "idProduct"), Charsets.US_ASCII);
+    }
+    return device;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
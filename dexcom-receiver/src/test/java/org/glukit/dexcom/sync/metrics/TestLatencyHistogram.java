@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link LatencyHistogram}.
+ *
+ * @author alexandre.normand
+ */
+public class TestLatencyHistogram {
+  @Test
+  public void emptyHistogramShouldHaveAZeroSnapshot() throws Exception {
+    LatencySnapshot snapshot = new LatencyHistogram().snapshot();
+
+    assertThat(snapshot.getCount(), is(0L));
+    assertThat(snapshot.getMeanMillis(), equalTo(0.0));
+    assertThat(snapshot.getMedianMillis(), equalTo(0.0));
+    assertThat(snapshot.getP99Millis(), equalTo(0.0));
+    assertThat(snapshot.getMaxMillis(), equalTo(0.0));
+  }
+
+  @Test
+  public void percentilesShouldBeTheUpperBoundOfTheirBucket() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 0; i < 99; i++) {
+      // In the [512, 1024) microseconds bucket
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(600));
+    }
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(30));
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount(), is(100L));
+    assertThat(snapshot.getMedianMillis(), equalTo(1.024));
+    assertThat(snapshot.getP99Millis(), equalTo(1.024));
+    assertThat(snapshot.getMaxMillis(), equalTo(30.0));
+    assertThat(snapshot.getMeanMillis(), equalTo((99 * 0.6 + 30.0) / 100));
+  }
+
+  @Test
+  public void percentilesShouldBeCappedAtTheMax() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(600));
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getMedianMillis(), equalTo(0.6));
+    assertThat(snapshot.getP99Millis(), equalTo(0.6));
+  }
+
+  @Test
+  public void hugeLatenciesShouldGoInTheLastBucket() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.HOURS.toNanos(2));
+
+    LatencySnapshot snapshot = histogram.snapshot();
+    assertThat(snapshot.getCount(), is(1L));
+    assertThat(snapshot.getMedianMillis(), equalTo((1L << (LatencyHistogram.BUCKET_COUNT - 1)) / 1000.0));
+    assertThat(snapshot.getMaxMillis(), equalTo((double) TimeUnit.HOURS.toMillis(2)));
+  }
+
+  @Test
+  public void resetShouldClearTheLatencies() throws Exception {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MILLISECONDS.toNanos(5));
+
+    histogram.reset();
+
+    assertThat(histogram.getCount(), is(0L));
+    assertThat(histogram.getTotalNanos(), is(0L));
+    assertThat(histogram.snapshot().getMaxMillis(), equalTo(0.0));
+  }
+}
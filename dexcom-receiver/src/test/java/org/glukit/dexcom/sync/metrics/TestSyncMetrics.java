@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import org.glukit.dexcom.sync.CrcMismatchException;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link SyncMetrics}.
+ *
+ * @author alexandre.normand
+ */
+public class TestSyncMetrics {
+  @Test
+  public void onlyCommandsSentShouldHaveLatencies() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    syncMetrics.recordRoundTrip(ReceiverCommand.Ping, TimeUnit.MILLISECONDS.toNanos(2));
+    syncMetrics.recordRoundTrip(ReceiverCommand.Ping, TimeUnit.MILLISECONDS.toNanos(4));
+
+    Map<String, LatencySnapshot> latencies = syncMetrics.getRoundTripLatencies();
+    assertThat(latencies.size(), is(1));
+    assertThat(latencies.get("Ping").getCount(), is(2L));
+    assertThat(latencies.get("Ping").getMeanMillis(), equalTo(3.0));
+  }
+
+  @Test
+  public void ratesShouldBeOverTheTimeSpentReading() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    syncMetrics.recordPagesRead(RecordType.EGVData, 4, 2118, TimeUnit.MILLISECONDS.toNanos(250));
+    syncMetrics.recordPagesRead(RecordType.EGVData, 4, 2118, TimeUnit.MILLISECONDS.toNanos(250));
+
+    assertThat(syncMetrics.getPagesRead().get("EGVData"), is(8L));
+    assertThat(syncMetrics.getBytesRead().get("EGVData"), is(4236L));
+    assertThat(syncMetrics.getPagesPerSecond().get("EGVData"), equalTo(16.0));
+    assertThat(syncMetrics.getBytesPerSecond().get("EGVData"), equalTo(8472.0));
+    assertThat(syncMetrics.getPagesPerSecond().get("UserEventData"), nullValue());
+  }
+
+  @Test
+  public void crcFailuresShouldBeFoundInTheCauses() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    syncMetrics.recordFailure(new RuntimeException(
+        new CrcMismatchException(CrcMismatchException.Level.RECORD, "Invalid crc")));
+    syncMetrics.recordFailure(new CrcMismatchException(CrcMismatchException.Level.PACKET, "Invalid crc"));
+    syncMetrics.recordFailure(new IllegalStateException("Not a crc failure"));
+
+    Map<String, Long> crcFailures = syncMetrics.getCrcFailures();
+    assertThat(crcFailures.get("PACKET"), is(1L));
+    assertThat(crcFailures.get("PAGE_HEADER"), is(0L));
+    assertThat(crcFailures.get("RECORD"), is(1L));
+  }
+
+  @Test
+  public void resetShouldClearAllMetrics() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    syncMetrics.recordRoundTrip(ReceiverCommand.ReadDatabasePages, 1000L);
+    syncMetrics.recordPagesRead(RecordType.EGVData, 1, 530, 1000L);
+    syncMetrics.recordCrcFailure(CrcMismatchException.Level.PAGE_HEADER);
+    syncMetrics.recordConversion(1000L);
+    syncMetrics.recordExport(1000L);
+
+    syncMetrics.reset();
+
+    assertThat(syncMetrics.getRoundTripLatencies().isEmpty(), is(true));
+    assertThat(syncMetrics.getPagesRead().isEmpty(), is(true));
+    assertThat(syncMetrics.getBytesPerSecond().isEmpty(), is(true));
+    assertThat(syncMetrics.getCrcFailures().get("PAGE_HEADER"), is(0L));
+    assertThat(syncMetrics.getConversionLatency().getCount(), is(0L));
+    assertThat(syncMetrics.getExportLatency().getCount(), is(0L));
+  }
+
+  @Test
+  public void metricsShouldBeReadableOverJmx() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    syncMetrics.recordRoundTrip(ReceiverCommand.Ping, TimeUnit.MILLISECONDS.toNanos(2));
+    syncMetrics.recordExport(TimeUnit.MILLISECONDS.toNanos(8));
+
+    MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+    ObjectName objectName = new ObjectName(SyncMetrics.OBJECT_NAME + ",name=test");
+    mBeanServer.registerMBean(syncMetrics, objectName);
+    try {
+      CompositeData exportLatency = (CompositeData) mBeanServer.getAttribute(objectName, "ExportLatency");
+      assertThat((Long) exportLatency.get("count"), is(1L));
+      assertThat((Double) exportLatency.get("maxMillis"), equalTo(8.0));
+
+      TabularData roundTripLatencies = (TabularData) mBeanServer.getAttribute(objectName, "RoundTripLatencies");
+      assertThat(roundTripLatencies.size(), is(1));
+    } finally {
+      mBeanServer.unregisterMBean(objectName);
+    }
+  }
+}
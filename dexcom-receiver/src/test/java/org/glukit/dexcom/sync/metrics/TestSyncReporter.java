@@ -0,0 +1,140 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.metrics;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.io.Files;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static java.lang.String.format;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link SyncReporter}.
+ *
+ * @author alexandre.normand
+ */
+public class TestSyncReporter {
+  private File outputDirectory;
+  private File statsDirectory;
+
+  @Before
+  public void setup() throws Exception {
+    this.outputDirectory = Files.createTempDir();
+    this.statsDirectory = Files.createTempDir();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    deleteDirectory(this.outputDirectory);
+    deleteDirectory(this.statsDirectory);
+  }
+
+  @Test
+  public void reportShouldBeWrittenAsJsonNextToTheExports() throws Exception {
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    properties.put(BloodShepherdProperties.OUTPUT_PATH, this.outputDirectory.getAbsolutePath());
+    SyncReporter syncReporter = new SyncReporter(properties);
+
+    SyncReport syncReport = syncReporter.start("22a3:0047");
+    syncReport.recordPhase(SyncReport.DISCOVERY_PHASE, null, 2000000L);
+    syncReport.recordPhase("ReadDatabasePageRange", RecordType.EGVData, 500000L);
+    syncReport.recordPagesRead(RecordType.EGVData, 4, 2118, 8000000L);
+    syncReport.recordPagesRead(RecordType.EGVData, 2, 1062, 4000000L);
+    syncReport.recordNewRecords(RecordType.EGVData, 200);
+    syncReporter.finish(syncReport);
+
+    JsonNode report = readReport(this.outputDirectory, syncReport);
+    assertThat(report.get("deviceKey").asText(), equalTo("22a3:0047"));
+    assertThat(report.get("startTime").asText(), equalTo(syncReport.getStartTime().toString()));
+    assertThat(report.get("phases").size(), is(2));
+    assertThat(report.get("phases").get(0).get("name").asText(), equalTo(SyncReport.DISCOVERY_PHASE));
+    assertThat(report.get("phases").get(0).has("recordType"), is(false));
+    assertThat(report.get("phases").get(0).get("millis").asDouble(), equalTo(2.0));
+    assertThat(report.get("phases").get(1).get("recordType").asText(), equalTo("EGVData"));
+
+    JsonNode glucoseReads = report.get("recordTypes").get("EGVData");
+    assertThat(glucoseReads.get("pages").asLong(), is(6L));
+    assertThat(glucoseReads.get("bytes").asLong(), is(3180L));
+    assertThat(glucoseReads.get("newRecords").asLong(), is(200L));
+    assertThat(glucoseReads.get("downloadMillis").asDouble(), equalTo(12.0));
+    assertThat(report.get("bytesRead").asLong(), is(3180L));
+    assertThat(report.get("durationMillis").asDouble() >= 0.0, is(true));
+    assertThat(report.get("peakHeapBytes").asLong() > 0, is(true));
+    assertThat(report.has("syncThreadAllocatedBytes"), is(true));
+    assertThat(report.has("failure"), is(false));
+  }
+
+  @Test
+  public void statsPathShouldTakePrecedence() throws Exception {
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    properties.put(BloodShepherdProperties.OUTPUT_PATH, this.outputDirectory.getAbsolutePath());
+    properties.put(BloodShepherdProperties.STATS_PATH, this.statsDirectory.getAbsolutePath());
+    SyncReporter syncReporter = new SyncReporter(properties);
+
+    SyncReport syncReport = syncReporter.start("22a3:0047");
+    syncReport.setFailure("java.lang.IllegalStateException: Invalid crc");
+    syncReporter.finish(syncReport);
+
+    assertThat(this.outputDirectory.list().length, is(0));
+    JsonNode report = readReport(this.statsDirectory, syncReport);
+    assertThat(report.get("failure").asText(), equalTo("java.lang.IllegalStateException: Invalid crc"));
+  }
+
+  @Test
+  public void reportShouldBeSkippedWithoutAPath() throws Exception {
+    SyncReporter syncReporter = new SyncReporter(new BloodShepherdProperties());
+
+    SyncReport syncReport = syncReporter.start("22a3:0047");
+    syncReporter.finish(syncReport);
+
+    assertThat(syncReport.getDurationMillis() >= 0.0, is(true));
+  }
+
+  private static JsonNode readReport(File directory, SyncReport syncReport) throws Exception {
+    File reportFile = new File(directory, format(SyncReporter.REPORT_FILE_NAME_FORMAT,
+        syncReport.getStartTime().toEpochMilli()));
+    assertThat(reportFile.exists(), is(true));
+    return new ObjectMapper().readTree(reportFile);
+  }
+
+  private static void deleteDirectory(File directory) {
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    directory.delete();
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link GlucoseReadColumns}
+ *
+ * @author alexandre.normand
+ */
+public class TestGlucoseReadColumns {
+  private static final GlucoseReadRecord FIRST_READ =
+          new GlucoseReadRecord(0xFFFFFFF0L, 0xFFFFFF00L, 0x8027, (byte) 0x94, 0xFFFFFFFEL, 1465L);
+  private static final GlucoseReadRecord SECOND_READ =
+          new GlucoseReadRecord(1000L, 800L, 120, (byte) 0x14, 2L, 1466L);
+
+  @Test
+  public void addedRecordsShouldBeReadBackUnchanged() throws Exception {
+    GlucoseReadColumns columns = new GlucoseReadColumns(1);
+    columns.add(FIRST_READ);
+    columns.add(SECOND_READ);
+
+    assertThat(columns.size(), is(2));
+    assertThat(columns.get(0), equalTo(FIRST_READ));
+    assertThat(columns.get(1), equalTo(SECOND_READ));
+    assertThat(columns.getInternalSecondsSinceDexcomEpoch(0), is(0xFFFFFFF0L));
+    assertThat(columns.getGlucoseValueWithFlags(0), is(0x8027));
+  }
+
+  @Test
+  public void addAllOfColumnsShouldAppend() throws Exception {
+    GlucoseReadColumns columns = GlucoseReadColumns.copyOf(Arrays.asList(FIRST_READ));
+    columns.addAll(GlucoseReadColumns.copyOf(Arrays.asList(SECOND_READ)));
+
+    assertThat(columns, equalTo((List<GlucoseReadRecord>) Arrays.asList(FIRST_READ, SECOND_READ)));
+  }
+
+  @Test
+  public void copyOfColumnsShouldReturnSameInstance() throws Exception {
+    GlucoseReadColumns columns = new GlucoseReadColumns();
+
+    assertThat(GlucoseReadColumns.copyOf(columns), sameInstance(columns));
+  }
+
+  @Test
+  public void retainNewerThanShouldOnlyKeepMoreRecentReads() throws Exception {
+    GlucoseReadColumns columns = GlucoseReadColumns.copyOf(Arrays.asList(SECOND_READ, FIRST_READ, SECOND_READ));
+
+    assertThat(columns.retainNewerThan(1000L), sameInstance(columns));
+    assertThat(columns, equalTo((List<GlucoseReadRecord>) Arrays.asList(FIRST_READ)));
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.model;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link PageHighWaterMark}.
+ *
+ * @author alexandre.normand
+ */
+public class TestPageHighWaterMark {
+  private static final int RECORDS_PER_PAGE = 38;
+
+  @Test
+  public void partialLastPageShouldBeReadAgain() throws Exception {
+    PageHighWaterMark mark = PageHighWaterMark.after(header(1465L, 55670L, 10L), RECORDS_PER_PAGE);
+
+    assertThat(mark, equalTo(new PageHighWaterMark(1465L, 55680L)));
+  }
+
+  @Test
+  public void fullLastPageShouldMoveToNextPage() throws Exception {
+    PageHighWaterMark mark = PageHighWaterMark.after(header(1465L, 55670L, RECORDS_PER_PAGE), RECORDS_PER_PAGE);
+
+    assertThat(mark, equalTo(new PageHighWaterMark(1466L, 55708L)));
+  }
+
+  @Test
+  public void markPastLastPageShouldBeUpToDate() throws Exception {
+    PageHighWaterMark mark = new PageHighWaterMark(1466L, 55708L);
+
+    assertThat(mark.isWithin(1000L, 1465L), is(true));
+    assertThat(mark.isUpToDateWith(1465L), is(true));
+    assertThat(mark.isUpToDateWith(1466L), is(false));
+  }
+
+  @Test
+  public void markOutsideOfRangeShouldNotBeTrusted() throws Exception {
+    assertThat(new PageHighWaterMark(999L, 0L).isWithin(1000L, 1465L), is(false));
+    assertThat(new PageHighWaterMark(1467L, 0L).isWithin(1000L, 1465L), is(false));
+  }
+
+  private static DatabasePageHeader header(long pageNumber, long firstRecordIndex, long numberOfRecords) {
+    return new DatabasePageHeader(firstRecordIndex, numberOfRecords, RecordType.EGVData, (byte) 2, pageNumber, 0L,
+            0L, 0L, 0);
+  }
+}
@@ -0,0 +1,391 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.simulator;
+
+import com.google.common.collect.ImmutableMap;
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.InMemoryPreferences;
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
+import org.glukit.dexcom.sync.PagesPerCommandTuner;
+import org.glukit.dexcom.sync.ReadPlanner;
+import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
+import org.glukit.dexcom.sync.metrics.SyncReport;
+import org.glukit.dexcom.sync.model.DatabaseReadRequestSpec;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.model.GlucoseReadRecord;
+import org.glukit.dexcom.sync.model.PageHighWaterMark;
+import org.glukit.dexcom.sync.model.ReceiverCommand;
+import org.glukit.dexcom.sync.model.RecordType;
+import org.glukit.dexcom.sync.model.UserEventRecord;
+import org.glukit.dexcom.sync.requests.Ping;
+import org.glukit.dexcom.sync.requests.ReadDatabasePageRange;
+import org.glukit.dexcom.sync.requests.ReadFirmwareHeader;
+import org.glukit.dexcom.sync.responses.DatabasePagesResponse;
+import org.glukit.dexcom.sync.responses.PageRangeResponse;
+import org.glukit.dexcom.sync.responses.Utf8PayloadGenericResponse;
+import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.threeten.bp.Instant;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.collect.Lists.newArrayList;
+
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link SimulatedReceiver}, mostly by running actual syncs against it.
+ *
+ * @author alexandre.normand
+ */
+public class TestSimulatedReceiver {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+  private static final int GLUCOSE_READS_PER_PAGE =
+          DatabasePagesResponse.PAGE_DATA_SIZE / GlucoseReadRecord.RECORD_LENGTH;
+
+  private final LittleEndianDataOutputFactory dataOutputFactory = new LittleEndianDataOutputFactory();
+  private final ResponseReader responseReader = new ResponseReader(new LittleEndianDataInputFactory());
+
+  @Test
+  public void pingShouldBeAcknowledged() throws Exception {
+    SimulatedReceiver receiver = newOpenedReceiver(1);
+
+    receiver.write(new Ping(this.dataOutputFactory).asBytes());
+    byte[] response = receiver.read(6);
+
+    assertThat(response[3], equalTo(ReceiverCommand.Ack.getId()));
+  }
+
+  @Test
+  public void firmwareHeaderShouldBeReturned() throws Exception {
+    SimulatedReceiver receiver = newOpenedReceiver(1);
+
+    receiver.write(new ReadFirmwareHeader(this.dataOutputFactory).asBytes());
+    Utf8PayloadGenericResponse response = this.responseReader.read(Utf8PayloadGenericResponse.class, receiver);
+
+    assertThat(response.asString(), equalTo(SimulatedReceiver.FIRMWARE_HEADER));
+  }
+
+  @Test
+  public void pageRangeShouldCoverAllRecords() throws Exception {
+    SimulatedReceiver receiver = newOpenedReceiver(1);
+
+    receiver.write(new ReadDatabasePageRange(this.dataOutputFactory, RecordType.EGVData).asBytes());
+    PageRangeResponse response = this.responseReader.read(PageRangeResponse.class, receiver);
+
+    // 288 reads at 38 reads per page
+    assertThat(response.getFirstPage(), is(0L));
+    assertThat(response.getLastPage(), is(7L));
+  }
+
+  @Test
+  public void packetWithInvalidCrcShouldBeNaked() throws Exception {
+    SimulatedReceiver receiver = newOpenedReceiver(1);
+    byte[] ping = new Ping(this.dataOutputFactory).asBytes();
+    ping[ping.length - 1]++;
+
+    receiver.write(ping);
+    byte[] response = receiver.read(6);
+
+    assertThat(response[3], equalTo(ReceiverCommand.Nak.getId()));
+  }
+
+  @Test(expected = RuntimeException.class)
+  public void readingWithoutRequestShouldFail() throws Exception {
+    this.responseReader.read(PageRangeResponse.class, newOpenedReceiver(1));
+  }
+
+  @Test
+  public void fullSyncShouldReadAllRecords() throws Exception {
+    SimulatedDatabase database = SimulatedDatabase.ofDays(90, LAST_READ_TIME);
+    SimulatedReceiver receiver = new SimulatedReceiver(database);
+
+    DexcomSyncData syncData = newFetchNewDataRunner().fetchData(receiver, DEXCOM_EPOCH);
+
+    assertThat(syncData.getGlucoseReads().size(), is(90 * SimulatedDatabase.READS_PER_DAY));
+    assertThat(syncData.getUserEvents().size(), is(90 * SimulatedDatabase.USER_EVENTS_PER_DAY));
+    assertThat(syncData.getManufacturingParameters().getSerialNumber(),
+            equalTo(SimulatedDatabase.DEFAULT_SERIAL_NUMBER));
+    assertThat(syncData.getGlucoseReads().get(syncData.getGlucoseReads().size() - 1)
+            .getInternalSecondsSinceDexcomEpoch(),
+            is(LAST_READ_TIME.getEpochSecond() - DEXCOM_EPOCH.getEpochSecond()));
+  }
+
+  @Test
+  public void syncSinceShouldOnlyReadNewRecords() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+    Instant since = LAST_READ_TIME.minusSeconds(24 * 3600);
+
+    DexcomSyncData syncData = newFetchNewDataRunner().fetchData(receiver, since);
+
+    assertThat(syncData.getGlucoseReads().size(), is(SimulatedDatabase.READS_PER_DAY));
+    assertThat(syncData.getUserEvents().isEmpty(), is(false));
+    assertThat(syncData.getUserEvents().size() < 2 * SimulatedDatabase.USER_EVENTS_PER_DAY, is(true));
+    long sinceRelativeToDexcomEpoch = since.getEpochSecond() - DEXCOM_EPOCH.getEpochSecond();
+    for (UserEventRecord userEvent : syncData.getUserEvents()) {
+      assertThat(userEvent.getInternalSecondsSinceDexcomEpoch() > sinceRelativeToDexcomEpoch, is(true));
+    }
+    // The most recent chunk and the binary search shouldn't come anywhere near reading all 90 days of pages
+    assertThat(receiver.getBytesRead() < 90L * 8 * 528, is(true));
+  }
+
+  @Test
+  public void highWaterMarkShouldOnlyReadTheNewRecords() throws Exception {
+    DexcomSyncPreferences syncPreferences = InMemoryPreferences.newSyncPreferences();
+    FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+            new LittleEndianDataInputFactory(), this.responseReader, syncPreferences);
+    // A full last page so the mark moves past it and the next sync has no page to read until new reads come in
+    int glucoseReadCount = 20 * GLUCOSE_READS_PER_PAGE;
+    long lastReadSeconds = LAST_READ_TIME.getEpochSecond() - DEXCOM_EPOCH.getEpochSecond();
+    SimulatedDatabase database = new SimulatedDatabase(glucoseReadCount, 0, lastReadSeconds,
+            SimulatedDatabase.DEFAULT_SERIAL_NUMBER);
+
+    DexcomSyncData firstSync = syncAndSaveHighWaterMarks(fetchNewDataRunner, syncPreferences, database);
+    assertThat(firstSync.getGlucoseReads().size(), is(glucoseReadCount));
+    PageHighWaterMark highWaterMark =
+            syncPreferences.getHighWaterMark(SimulatedDatabase.DEFAULT_SERIAL_NUMBER, RecordType.EGVData);
+    assertThat(highWaterMark, equalTo(new PageHighWaterMark(20, glucoseReadCount)));
+
+    DexcomSyncData upToDateSync = syncAndSaveHighWaterMarks(fetchNewDataRunner, syncPreferences, database);
+    assertThat(upToDateSync.getGlucoseReads().isEmpty(), is(true));
+    assertThat(upToDateSync.getHighWaterMarks().get(RecordType.EGVData), equalTo(highWaterMark));
+
+    int newReadCount = 50;
+    SimulatedDatabase grownDatabase = new SimulatedDatabase(glucoseReadCount + newReadCount, 0,
+            lastReadSeconds + newReadCount * SimulatedDatabase.READ_INTERVAL_IN_SECONDS,
+            SimulatedDatabase.DEFAULT_SERIAL_NUMBER);
+    DexcomSyncData grownSync = syncAndSaveHighWaterMarks(fetchNewDataRunner, syncPreferences, grownDatabase);
+    assertThat(grownSync.getGlucoseReads().size(), is(newReadCount));
+    for (int i = 0; i < newReadCount; i++) {
+      assertThat(grownSync.getGlucoseReads().get(i).getInternalSecondsSinceDexcomEpoch(),
+              is(grownDatabase.getGlucoseReadSeconds(glucoseReadCount + i)));
+    }
+  }
+
+  @Test
+  public void highWaterMarkOutsideOfThePageRangeShouldFallBackToSince() throws Exception {
+    long lastPage = SimulatedDatabase.ofDays(90, LAST_READ_TIME).getLastPage(RecordType.EGVData);
+
+    assertSyncFallsBackToSince(new PageHighWaterMark(lastPage + 5, (lastPage + 5) * GLUCOSE_READS_PER_PAGE));
+  }
+
+  @Test
+  public void highWaterMarkThatDoesNotMatchThePageHeaderShouldFallBackToSince() throws Exception {
+    // Page 10 starts at record 380, a receiver that was reset and grew back could have it
+    assertSyncFallsBackToSince(new PageHighWaterMark(10, 0));
+  }
+
+  @Test
+  public void syncReportShouldCoverEachRecordType() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+    SyncReport syncReport = new SyncReport("test", LAST_READ_TIME);
+
+    newFetchNewDataRunner().fetchData(receiver, DEXCOM_EPOCH, syncReport);
+
+    List<String> pageRangePhases = newArrayList();
+    for (SyncReport.Phase phase : syncReport.getPhases()) {
+      if (phase.getName().equals(ReceiverCommand.ReadDatabasePageRange.name())) {
+        pageRangePhases.add(phase.getRecordType().name());
+      }
+    }
+    assertThat(pageRangePhases, equalTo((List<String>) newArrayList("ManufacturingData", "EGVData", "UserEventData")));
+
+    SyncReport.RecordTypeReport glucoseReads = syncReport.getRecordTypes().get(RecordType.EGVData);
+    assertThat(glucoseReads.getNewRecords(), is(90L * SimulatedDatabase.READS_PER_DAY));
+    assertThat(glucoseReads.getPages(), is((90L * SimulatedDatabase.READS_PER_DAY + 37) / 38));
+    assertThat(syncReport.getBytesRead() > 0, is(true));
+    assertThat(syncReport.getBytesRead() < receiver.getBytesRead(), is(true));
+  }
+
+  @Test
+  public void sequentialReadsShouldMatchTheReadAhead() throws Exception {
+    SimulatedReceiver pipelinedReceiver = new SimulatedReceiver(SimulatedDatabase.ofDays(30, LAST_READ_TIME));
+    SimulatedReceiver sequentialReceiver = new SimulatedReceiver(SimulatedDatabase.ofDays(30, LAST_READ_TIME));
+    FetchNewDataRunner sequentialRunner = newFetchNewDataRunner();
+    sequentialRunner.setPipelinedReads(false);
+
+    DexcomSyncData pipelined = newFetchNewDataRunner().fetchData(pipelinedReceiver, DEXCOM_EPOCH);
+    DexcomSyncData sequential = sequentialRunner.fetchData(sequentialReceiver, DEXCOM_EPOCH);
+
+    assertThat(pipelined.getGlucoseReads().size(), is(sequential.getGlucoseReads().size()));
+    assertThat(pipelined.getUserEvents().size(), is(sequential.getUserEvents().size()));
+    assertThat(pipelinedReceiver.getCommandCount(), is(sequentialReceiver.getCommandCount()));
+    assertThat(pipelinedReceiver.getBytesWritten(), is(sequentialReceiver.getBytesWritten()));
+    assertThat(pipelinedReceiver.getBytesRead(), is(sequentialReceiver.getBytesRead()));
+  }
+
+  @Test
+  public void autoTunedSyncShouldSaveThePagesPerCommandOfTheFirmware() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+    DexcomSyncPreferences syncPreferences = mock(DexcomSyncPreferences.class);
+    FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+            new LittleEndianDataInputFactory(), this.responseReader, syncPreferences);
+    fetchNewDataRunner.setAutoTunePagesPerCommand(true);
+
+    DexcomSyncData syncData = fetchNewDataRunner.fetchData(receiver, DEXCOM_EPOCH);
+
+    assertThat(syncData.getGlucoseReads().size(), is(90 * SimulatedDatabase.READS_PER_DAY));
+    assertThat(syncData.getUserEvents().size(), is(90 * SimulatedDatabase.USER_EVENTS_PER_DAY));
+    verify(syncPreferences).saveTunedPagesPerCommand(eq("2.0.1.104"), anyInt());
+  }
+
+  @Test
+  public void rejectedPagesPerCommandShouldBeReadAgainAndLeftOutOfTheTuning() throws Exception {
+    DexcomSyncData expected = newFetchNewDataRunner().fetchData(newOpenedReceiver(90), DEXCOM_EPOCH);
+    PageHighWaterMark expectedHighWaterMark = expected.getHighWaterMarks().get(RecordType.EGVData);
+
+    for (boolean pipelinedReads : new boolean[]{true, false}) {
+      DexcomSyncPreferences syncPreferences = mock(DexcomSyncPreferences.class);
+      FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+              new LittleEndianDataInputFactory(), this.responseReader, syncPreferences);
+      fetchNewDataRunner.setAutoTunePagesPerCommand(true);
+      fetchNewDataRunner.setPipelinedReads(pipelinedReads);
+      SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+      receiver.setMaxPagesPerCommand(8);
+
+      DexcomSyncData syncData = fetchNewDataRunner.fetchData(receiver, DEXCOM_EPOCH);
+
+      assertThat(syncData.getGlucoseReads().size(), is(expected.getGlucoseReads().size()));
+      for (int i = 0; i < expected.getGlucoseReads().size(); i++) {
+        assertThat(syncData.getGlucoseReads().get(i).getInternalSecondsSinceDexcomEpoch(),
+                is(expected.getGlucoseReads().get(i).getInternalSecondsSinceDexcomEpoch()));
+      }
+      assertThat(syncData.getUserEvents().size(), is(expected.getUserEvents().size()));
+      PageHighWaterMark highWaterMark = syncData.getHighWaterMarks().get(RecordType.EGVData);
+      assertThat(highWaterMark.getNextPage(), is(expectedHighWaterMark.getNextPage()));
+      assertThat(highWaterMark.getNextRecordIndex(), is(expectedHighWaterMark.getNextRecordIndex()));
+      ArgumentCaptor<Integer> tunedPagesPerCommand = ArgumentCaptor.forClass(Integer.class);
+      verify(syncPreferences).saveTunedPagesPerCommand(eq("2.0.1.104"), tunedPagesPerCommand.capture());
+      assertThat(tunedPagesPerCommand.getValue() <= 8, is(true));
+    }
+  }
+
+  @Test
+  public void rejectedPagesPerCommandShouldBeReadAgainWhenSyncingSince() throws Exception {
+    Instant since = LAST_READ_TIME.minusSeconds(3 * 24 * 3600);
+    DexcomSyncData expected = newFetchNewDataRunner().fetchData(newOpenedReceiver(90), since);
+    PageHighWaterMark expectedHighWaterMark = expected.getHighWaterMarks().get(RecordType.EGVData);
+
+    // The tuner plans the older pages with every candidate and the fixed planner the most recent ones with 16
+    PagesPerCommandTuner mostRecentChunkTuner = mock(PagesPerCommandTuner.class);
+    when(mostRecentChunkTuner.newReadPlanner(anyString())).thenReturn(new ReadPlanner(16) {
+      @Override
+      public boolean readRejected(DatabaseReadRequestSpec readRequestSpec) {
+        return true;
+      }
+    });
+    DexcomSyncPreferences syncPreferences = mock(DexcomSyncPreferences.class);
+    for (PagesPerCommandTuner pagesPerCommandTuner : newArrayList(new PagesPerCommandTuner(syncPreferences),
+            mostRecentChunkTuner)) {
+      FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+              new LittleEndianDataInputFactory(), this.responseReader, syncPreferences, new SyncMetrics(),
+              this.responseReader.getProtocolTracer(), pagesPerCommandTuner);
+      fetchNewDataRunner.setAutoTunePagesPerCommand(true);
+      SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+      receiver.setMaxPagesPerCommand(8);
+
+      DexcomSyncData syncData = fetchNewDataRunner.fetchData(receiver, since);
+
+      assertThat(syncData.getGlucoseReads().size(), is(expected.getGlucoseReads().size()));
+      for (int i = 0; i < expected.getGlucoseReads().size(); i++) {
+        assertThat(syncData.getGlucoseReads().get(i).getInternalSecondsSinceDexcomEpoch(),
+                is(expected.getGlucoseReads().get(i).getInternalSecondsSinceDexcomEpoch()));
+      }
+      assertThat(syncData.getUserEvents().size(), is(expected.getUserEvents().size()));
+      PageHighWaterMark highWaterMark = syncData.getHighWaterMarks().get(RecordType.EGVData);
+      assertThat(highWaterMark.getNextPage(), is(expectedHighWaterMark.getNextPage()));
+      assertThat(highWaterMark.getNextRecordIndex(), is(expectedHighWaterMark.getNextRecordIndex()));
+    }
+  }
+
+  @Test
+  public void transferShouldTakeAtLeastTheLatency() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME), 1,
+            TimeUnit.MILLISECONDS);
+    receiver.open();
+
+    long start = System.nanoTime();
+    receiver.write(new Ping(this.dataOutputFactory).asBytes());
+    receiver.read(6);
+    long elapsedInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    // 12 bytes at 1 ms per byte, minus the sub-millisecond remainder that isn't waited for
+    assertThat(elapsedInMillis >= 11L, is(true));
+  }
+
+  private static DexcomSyncData syncAndSaveHighWaterMarks(FetchNewDataRunner fetchNewDataRunner,
+                                                         DexcomSyncPreferences syncPreferences,
+                                                         SimulatedDatabase database) {
+    DexcomSyncData syncData = fetchNewDataRunner.fetchData(new SimulatedReceiver(database), DEXCOM_EPOCH);
+    syncPreferences.saveHighWaterMarks(syncData.getManufacturingParameters().getSerialNumber(),
+            syncData.getHighWaterMarks());
+    return syncData;
+  }
+
+  /**
+   * Syncs the last day of 90 with a mark saved for the glucose reads that can't be trusted so the sync should read
+   * what it would without a mark, going by the since time like {@link #syncSinceShouldOnlyReadNewRecords()}.
+   */
+  private void assertSyncFallsBackToSince(PageHighWaterMark highWaterMark) {
+    DexcomSyncPreferences syncPreferences = InMemoryPreferences.newSyncPreferences();
+    syncPreferences.saveHighWaterMarks(SimulatedDatabase.DEFAULT_SERIAL_NUMBER,
+            ImmutableMap.of(RecordType.EGVData, highWaterMark));
+    FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+            new LittleEndianDataInputFactory(), this.responseReader, syncPreferences);
+    Instant since = LAST_READ_TIME.minusSeconds(24 * 3600);
+    SimulatedReceiver receiverWithoutMark = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+    newFetchNewDataRunner().fetchData(receiverWithoutMark, since);
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(90, LAST_READ_TIME));
+
+    DexcomSyncData syncData = fetchNewDataRunner.fetchData(receiver, since);
+
+    assertThat(syncData.getGlucoseReads().size(), is(SimulatedDatabase.READS_PER_DAY));
+    // Reading the header of the mark's page to check it is all that's added to the sync without a mark
+    assertThat(receiver.getBytesRead() <= receiverWithoutMark.getBytesRead() + 528, is(true));
+  }
+
+  private SimulatedReceiver newOpenedReceiver(int days) throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(days, LAST_READ_TIME));
+    receiver.open();
+    return receiver;
+  }
+
+  private FetchNewDataRunner newFetchNewDataRunner() {
+    return new FetchNewDataRunner(this.dataOutputFactory, new LittleEndianDataInputFactory(), this.responseReader,
+            mock(DexcomSyncPreferences.class));
+  }
+}
@@ -0,0 +1,224 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.tasks;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import org.glukit.dexcom.sync.CrcMismatchException;
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
+import org.glukit.dexcom.sync.ReceiverSession;
+import org.glukit.dexcom.sync.ProtocolTracer;
+import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.metrics.SyncMetrics;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.simulator.SimulatedDatabase;
+import org.glukit.dexcom.sync.simulator.SimulatedReceiver;
+import org.glukit.dexcom.sync.transport.SerialTransport;
+import org.glukit.dexcom.sync.transport.SerialTransportFactory;
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+import static com.google.common.collect.Lists.newArrayList;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link IsReceiverOnThisPortRunner}.
+ *
+ * @author alexandre.normand
+ */
+public class TestIsReceiverOnThisPortRunner {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+
+  private final LittleEndianDataOutputFactory dataOutputFactory = new LittleEndianDataOutputFactory();
+  private final ResponseReader responseReader = new ResponseReader(new LittleEndianDataInputFactory());
+  private final IsReceiverOnThisPortRunner runner =
+      new IsReceiverOnThisPortRunner(this.dataOutputFactory, new LittleEndianDataInputFactory(), this.responseReader);
+
+  @Test
+  public void sessionShouldStayOpenedAndValidAcrossSyncs() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME));
+    FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+        new LittleEndianDataInputFactory(), this.responseReader, mock(DexcomSyncPreferences.class));
+
+    ReceiverSession session = this.runner.openSession(receiver);
+    assertThat(session.isOpened(), is(true));
+
+    for (int i = 0; i < 2; i++) {
+      DexcomSyncData syncData = fetchNewDataRunner.fetchData(session.getTransport(), DEXCOM_EPOCH);
+      assertThat(syncData.getGlucoseReads().size(), is(288));
+      assertThat(session.isOpened(), is(true));
+      assertThat(this.runner.isValid(session), is(true));
+    }
+
+    session.close();
+    assertThat(receiver.isOpened(), is(false));
+    assertThat(this.runner.isValid(session), is(false));
+  }
+
+  @Test
+  public void portThatDoesNotAnswerShouldBeClosed() throws Exception {
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn("/dev/tty.other");
+    when(transport.isOpened()).thenReturn(true);
+    doThrow(new IOException("Not a receiver")).when(transport).write(any(byte[].class));
+
+    assertThat(this.runner.openSession(transport), is(nullValue()));
+    verify(transport).close();
+  }
+
+  @Test
+  public void sessionThatStoppedAnsweringShouldBeClosed() throws Exception {
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn("/dev/tty.dexgblrecv");
+    when(transport.isOpened()).thenReturn(true);
+    ReceiverSession session = new ReceiverSession(transport);
+    doThrow(new IOException("Receiver unplugged")).when(transport).write(any(byte[].class));
+
+    assertThat(this.runner.isValid(session), is(false));
+    verify(transport).close();
+  }
+
+  @Test
+  public void pingThatTimesOutShouldBackOffTheTimeout() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME));
+    ReceiverSession session = this.runner.openSession(receiver);
+    long timeoutMillis = this.runner.getPingTimeoutMillis();
+
+    SimulatedReceiver hangingReceiver = newHangingReceiver();
+    hangingReceiver.open();
+    assertThat(this.runner.isValid(new ReceiverSession(hangingReceiver)), is(false));
+    assertThat(this.runner.getPingTimeoutMillis(), is(2 * timeoutMillis));
+
+    assertThat(this.runner.isValid(session), is(true));
+    assertThat(this.runner.getPingTimeoutMillis() < 2 * timeoutMillis, is(true));
+    session.close();
+  }
+
+  @Test
+  public void probeThatTimesOutShouldNotBackOffTheTimeout() throws Exception {
+    long timeoutMillis = this.runner.getPingTimeoutMillis();
+
+    assertThat(this.runner.openSession(newHangingReceiver()), is(nullValue()));
+    assertThat(this.runner.getPingTimeoutMillis(), is(timeoutMillis));
+  }
+
+  @Test
+  public void onlyFailuresOfTheReceiverShouldBeCounted() throws Exception {
+    SyncMetrics syncMetrics = new SyncMetrics();
+    SerialTransportFactory transportFactory = mock(SerialTransportFactory.class);
+    IsReceiverOnThisPortRunner countingRunner = new IsReceiverOnThisPortRunner(this.dataOutputFactory,
+        new LittleEndianDataInputFactory(), syncMetrics, new ProtocolTracer(), transportFactory);
+    SerialTransport transport = mock(SerialTransport.class);
+    when(transport.getName()).thenReturn("/dev/tty.dexgblrecv");
+    when(transport.isOpened()).thenReturn(true);
+    doThrow(new CrcMismatchException(CrcMismatchException.Level.PACKET, "Invalid crc")).when(transport)
+        .write(any(byte[].class));
+    when(transportFactory.newTransport("/dev/tty.dexgblrecv")).thenReturn(transport);
+
+    assertThat(countingRunner.openSession("/dev/tty.dexgblrecv"), is(nullValue()));
+    assertThat(syncMetrics.getCrcFailures().get("PACKET"), is(0L));
+
+    assertThat(countingRunner.reopenSession("/dev/tty.dexgblrecv"), is(nullValue()));
+    assertThat(syncMetrics.getCrcFailures().get("PACKET"), is(1L));
+    assertThat(countingRunner.isValid(new ReceiverSession(transport)), is(false));
+    assertThat(syncMetrics.getCrcFailures().get("PACKET"), is(2L));
+  }
+
+  @Test
+  public void probeShouldCloseThePortItChecked() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME));
+
+    assertThat(this.runner.isReceiver(receiver), is(true));
+    assertThat(receiver.isOpened(), is(false));
+  }
+
+  @Test
+  public void concurrentProbesShouldEachReadTheirOwnResponse() throws Exception {
+    SerialTransportFactory transportFactory = mock(SerialTransportFactory.class);
+    IsReceiverOnThisPortRunner probingRunner = new IsReceiverOnThisPortRunner(this.dataOutputFactory,
+        new LittleEndianDataInputFactory(), new SyncMetrics(), new ProtocolTracer(), transportFactory);
+    int portCount = 8;
+    // Holds the reads of the responses' payloads until all probes have read their headers so they land together
+    final CyclicBarrier payloadReads = new CyclicBarrier(portCount);
+    List<String> portNames = newArrayList();
+    for (int i = 0; i < portCount; i++) {
+      portNames.add("/dev/tty.dexgblrecv" + i);
+      when(transportFactory.newTransport(portNames.get(i))).thenReturn(
+          new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME)) {
+            @Override
+            public byte[] read(int byteCount) throws IOException {
+              if (byteCount != ResponseReader.HEADER_SIZE) {
+                try {
+                  payloadReads.await(1, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                  throw new IOException("Probes didn't read their payloads together", e);
+                }
+              }
+              return super.read(byteCount);
+            }
+          });
+    }
+
+    List<ListenableFuture<ReceiverSession>> probes = newArrayList();
+    for (String portName : portNames) {
+      probes.add(probingRunner.openSessionAsync(portName));
+    }
+
+    for (ReceiverSession session : Futures.allAsList(probes).get()) {
+      assertThat(session, is(notNullValue()));
+      session.close();
+    }
+  }
+
+  private static SimulatedReceiver newHangingReceiver() {
+    return new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME)) {
+      @Override
+      public byte[] read(int byteCount) throws IOException {
+        try {
+          Thread.sleep(PingTimeout.MAX_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+          throw new InterruptedIOException("Interrupted by the ping timeout");
+        }
+        return super.read(byteCount);
+      }
+    };
+  }
+}
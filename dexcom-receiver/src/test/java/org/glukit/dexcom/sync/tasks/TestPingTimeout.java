@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.tasks;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link PingTimeout}.
+ *
+ * @author alexandre.normand
+ */
+public class TestPingTimeout {
+
+  @Test
+  public void timeoutShouldBeTheMaximumWithoutRoundTrips() throws Exception {
+    assertThat(new PingTimeout().getTimeoutMillis(), is(PingTimeout.MAX_TIMEOUT_MILLIS));
+  }
+
+  @Test
+  public void steadyRoundTripsShouldConvergeToTheMinimum() throws Exception {
+    PingTimeout pingTimeout = new PingTimeout();
+    for (int i = 0; i < 50; i++) {
+      pingTimeout.recordRoundTrip(8, TimeUnit.MILLISECONDS);
+    }
+
+    assertThat(pingTimeout.getTimeoutMillis(), is(PingTimeout.MIN_TIMEOUT_MILLIS));
+  }
+
+  @Test
+  public void timeoutShouldCoverTheAverageAndDeviation() throws Exception {
+    PingTimeout pingTimeout = new PingTimeout();
+    pingTimeout.recordRoundTrip(400, TimeUnit.MILLISECONDS);
+
+    // 400 ms average with a 200 ms deviation
+    assertThat(pingTimeout.getTimeoutMillis(), is(1200L));
+
+    pingTimeout.recordRoundTrip(400, TimeUnit.MILLISECONDS);
+    // The deviation shrinks by a quarter, to 150 ms
+    assertThat(pingTimeout.getTimeoutMillis(), is(1000L));
+  }
+
+  @Test
+  public void slowRoundTripsShouldBeCappedToTheMaximum() throws Exception {
+    PingTimeout pingTimeout = new PingTimeout();
+    pingTimeout.recordRoundTrip(10, TimeUnit.SECONDS);
+
+    assertThat(pingTimeout.getTimeoutMillis(), is(PingTimeout.MAX_TIMEOUT_MILLIS));
+  }
+
+  @Test
+  public void timeoutShouldDoubleAfterEachTimeoutUntilTheNextRoundTrip() throws Exception {
+    PingTimeout pingTimeout = new PingTimeout();
+    pingTimeout.recordRoundTrip(400, TimeUnit.MILLISECONDS);
+
+    pingTimeout.recordTimeout();
+    assertThat(pingTimeout.getTimeoutMillis(), is(2400L));
+    pingTimeout.recordTimeout();
+    assertThat(pingTimeout.getTimeoutMillis(), is(4800L));
+    pingTimeout.recordTimeout();
+    assertThat(pingTimeout.getTimeoutMillis(), is(PingTimeout.MAX_TIMEOUT_MILLIS));
+
+    pingTimeout.recordRoundTrip(400, TimeUnit.MILLISECONDS);
+    assertThat(pingTimeout.getTimeoutMillis(), is(1000L));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void negativeRoundTripShouldBeRejected() throws Exception {
+    new PingTimeout().recordRoundTrip(-1, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,188 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import jssc.SerialPort;
+import jssc.SerialPortEvent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.glukit.dexcom.sync.DecodingUtils.fromHexString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test of {@link EventDrivenSerialTransport}.
+ *
+ * @author alexandre.normand
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TestEventDrivenSerialTransport {
+  private static final String PORT_NAME = "ttyACM0";
+  private static final byte[] PING = fromHexString("01 06 00 0A 5E 65");
+  private static final byte[] ACK = fromHexString("01 06 00 01 35 D4");
+
+  @Mock
+  private SerialPort serialPort;
+  private EventDrivenSerialTransport transport;
+
+  @Before
+  public void setup() throws Exception {
+    when(this.serialPort.getPortName()).thenReturn(PORT_NAME);
+    when(this.serialPort.isOpened()).thenReturn(false, true);
+    when(this.serialPort.getLinesStatus()).thenReturn(new int[0]);
+    when(this.serialPort.writeBytes(any(byte[].class))).thenReturn(true);
+    this.transport = new EventDrivenSerialTransport(this.serialPort, 200, TimeUnit.MILLISECONDS);
+    this.transport.open();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.transport.close();
+  }
+
+  @Test
+  public void openShouldListenToReceivedBytes() throws Exception {
+    verify(this.serialPort).addEventListener(this.transport, SerialPort.MASK_RXCHAR);
+  }
+
+  @Test
+  public void responseShouldCompleteOnceFramed() throws Exception {
+    ListenableFuture<byte[]> response = this.transport.send(PING);
+
+    receive(fromHexString("01 06"));
+    assertThat(response.isDone(), is(false));
+    receive(fromHexString("00 01 35"));
+    assertThat(response.isDone(), is(false));
+    receive(fromHexString("D4"));
+
+    assertThat(response.isDone(), is(true));
+    assertThat(response.get(), equalTo(ACK));
+    verify(this.serialPort).writeBytes(PING);
+  }
+
+  @Test
+  public void readsShouldBeServedFromTheResponseFrame() throws Exception {
+    this.transport.write(PING);
+    receive(ACK);
+
+    assertThat(this.transport.read(4), equalTo(fromHexString("01 06 00 01")));
+    assertThat(this.transport.read(2), equalTo(fromHexString("35 D4")));
+  }
+
+  @Test
+  public void stalledReceiverShouldFailAtTheDeadline() throws Exception {
+    this.transport.write(PING);
+    receive(fromHexString("01 06 00"));
+
+    long start = System.nanoTime();
+    try {
+      this.transport.read(4);
+      throw new AssertionError("Expected the response to time out");
+    } catch (ResponseTimeoutException e) {
+      assertThat(e.getPortName(), equalTo(PORT_NAME));
+    }
+    assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 5000L, is(true));
+  }
+
+  @Test(expected = IOException.class)
+  public void badStartOfFrameShouldFailTheResponse() throws Exception {
+    this.transport.write(PING);
+    receive(fromHexString("02 06 00 01 35 D4"));
+
+    this.transport.read(4);
+  }
+
+  @Test
+  public void bytesOfATimedOutResponseShouldBeDiscardedOnceReopened() throws Exception {
+    ListenableFuture<byte[]> lateResponse = this.transport.send(PING);
+    receive(fromHexString("01 06 00"));
+    waitForFailure(lateResponse);
+    verify(this.serialPort).purgePort(SerialPort.PURGE_RXCLEAR);
+
+    this.transport.close();
+    this.transport.open();
+    this.transport.write(PING);
+    receive(ACK);
+
+    assertThat(this.transport.read(6), equalTo(ACK));
+  }
+
+  @Test
+  public void lateFrameShouldNotAnswerTheNextRequest() throws Exception {
+    ListenableFuture<byte[]> lateResponse = this.transport.send(PING);
+    waitForFailure(lateResponse);
+    receive(ACK);
+
+    try {
+      this.transport.send(PING);
+      throw new AssertionError("Expected the request to be refused until the port is reopened");
+    } catch (IOException e) {
+      // Expected, the late ACK could otherwise be taken for the answer to this request
+    }
+    verify(this.serialPort).writeBytes(PING);
+  }
+
+  @Test(expected = IOException.class)
+  public void frameThatIsNotAResponseShouldFail() throws Exception {
+    this.transport.write(PING);
+    // The request echoed back
+    receive(PING);
+
+    this.transport.read(4);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void readingWithoutRequestShouldFail() throws Exception {
+    this.transport.read(4);
+  }
+
+  private static void waitForFailure(ListenableFuture<byte[]> response) throws Exception {
+    try {
+      response.get();
+      throw new AssertionError("Expected the response to fail");
+    } catch (ExecutionException e) {
+      // Expected, the rest of the frame never came
+    }
+  }
+
+  private void receive(byte[] bytes) throws Exception {
+    when(this.serialPort.readBytes(anyInt())).thenReturn(bytes);
+    this.transport.serialEvent(new SerialPortEvent(PORT_NAME, SerialPortEvent.RXCHAR, bytes.length));
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import org.glukit.dexcom.sync.DexcomSyncPreferences;
+import org.glukit.dexcom.sync.LittleEndianDataInputFactory;
+import org.glukit.dexcom.sync.LittleEndianDataOutputFactory;
+import org.glukit.dexcom.sync.ResponseReader;
+import org.glukit.dexcom.sync.model.DexcomSyncData;
+import org.glukit.dexcom.sync.requests.Ping;
+import org.glukit.dexcom.sync.simulator.SimulatedDatabase;
+import org.glukit.dexcom.sync.simulator.SimulatedReceiver;
+import org.glukit.dexcom.sync.tasks.FetchNewDataRunner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.glukit.dexcom.sync.g4.DexcomG4Constants.DEXCOM_EPOCH;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Unit test of {@link RecordingTransport}, {@link SessionLog} and {@link ReplayTransport}, by capturing syncs
+ * against a {@link SimulatedReceiver} and replaying them.
+ *
+ * @author alexandre.normand
+ */
+public class TestReplayTransport {
+  private static final Instant LAST_READ_TIME = Instant.ofEpochSecond(1400000000L);
+
+  private final LittleEndianDataOutputFactory dataOutputFactory = new LittleEndianDataOutputFactory();
+  private final FetchNewDataRunner fetchNewDataRunner = new FetchNewDataRunner(this.dataOutputFactory,
+          new LittleEndianDataInputFactory(), new ResponseReader(new LittleEndianDataInputFactory()),
+          mock(DexcomSyncPreferences.class));
+  private File logFile;
+
+  @Before
+  public void setup() throws Exception {
+    this.logFile = File.createTempFile("session", ".log");
+    this.logFile.delete();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.logFile.delete();
+  }
+
+  @Test
+  public void replayedSyncShouldMatchTheCapturedOne() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(7, LAST_READ_TIME));
+    DexcomSyncData capturedData = capture(receiver, DEXCOM_EPOCH);
+
+    List<SessionLog.Session> sessions = SessionLog.read(this.logFile);
+    assertThat(sessions.size(), is(1));
+    SessionLog.Session session = sessions.get(0);
+    assertThat(session.getTransportName(), equalTo(receiver.getName()));
+    assertThat(session.getByteCount(SessionLog.Direction.REQUEST), is(receiver.getBytesWritten()));
+    assertThat(session.getByteCount(SessionLog.Direction.RESPONSE), is(receiver.getBytesRead()));
+
+    ReplayTransport replay = new ReplayTransport(session, ReplayTransport.Pacing.FULL_SPEED);
+    DexcomSyncData replayedData = this.fetchNewDataRunner.fetchData(replay, DEXCOM_EPOCH);
+
+    assertThat(replay.isExhausted(), is(true));
+    assertThat(replayedData.getGlucoseReads(), equalTo(capturedData.getGlucoseReads()));
+    assertThat(replayedData.getUserEvents(), equalTo(capturedData.getUserEvents()));
+    assertThat(replayedData.getManufacturingParameters().getSerialNumber(),
+            equalTo(capturedData.getManufacturingParameters().getSerialNumber()));
+  }
+
+  @Test
+  public void eachOpenShouldAppendASession() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(2, LAST_READ_TIME));
+    capture(receiver, DEXCOM_EPOCH);
+    capture(receiver, LAST_READ_TIME.minusSeconds(3600));
+
+    List<SessionLog.Session> sessions = SessionLog.read(this.logFile);
+
+    assertThat(sessions.size(), is(2));
+    assertThat(sessions.get(1).getByteCount(SessionLog.Direction.RESPONSE)
+            < sessions.get(0).getByteCount(SessionLog.Direction.RESPONSE), is(true));
+  }
+
+  @Test
+  public void truncatedFrameShouldBeDropped() throws Exception {
+    capture(new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME)), DEXCOM_EPOCH);
+    int frameCount = SessionLog.read(this.logFile).get(0).getFrames().size();
+
+    RandomAccessFile file = new RandomAccessFile(this.logFile, "rw");
+    try {
+      file.setLength(file.length() - 1);
+    } finally {
+      file.close();
+    }
+
+    assertThat(SessionLog.read(this.logFile).get(0).getFrames().size(), is(frameCount - 1));
+  }
+
+  @Test(expected = IOException.class)
+  public void notASessionLogShouldBeRejected() throws Exception {
+    FileOutputStream output = new FileOutputStream(this.logFile);
+    try {
+      output.write(new byte[]{1, 2, 3, 4, 5});
+    } finally {
+      output.close();
+    }
+
+    SessionLog.read(this.logFile);
+  }
+
+  @Test(expected = IOException.class)
+  public void unexpectedRequestShouldFail() throws Exception {
+    ReplayTransport replay = new ReplayTransport(capturePing(), ReplayTransport.Pacing.FULL_SPEED);
+    replay.open();
+
+    byte[] ping = new Ping(this.dataOutputFactory).asBytes();
+    ping[ping.length - 1]++;
+    replay.write(ping);
+  }
+
+  @Test(expected = IOException.class)
+  public void readingPastTheResponseShouldFail() throws Exception {
+    ReplayTransport replay = new ReplayTransport(capturePing(), ReplayTransport.Pacing.FULL_SPEED);
+    replay.open();
+
+    replay.write(new Ping(this.dataOutputFactory).asBytes());
+    replay.read(7);
+  }
+
+  @Test
+  public void responsesCanBeReadInAnyChunks() throws Exception {
+    ReplayTransport replay = new ReplayTransport(capturePing(), ReplayTransport.Pacing.FULL_SPEED);
+    replay.open();
+
+    replay.write(new Ping(this.dataOutputFactory).asBytes());
+    replay.read(1);
+    replay.read(2);
+    replay.read(3);
+
+    assertThat(replay.isExhausted(), is(true));
+  }
+
+  @Test
+  public void originalPacingShouldWaitForTheResponse() throws Exception {
+    SimulatedReceiver receiver = new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME), 2,
+            TimeUnit.MILLISECONDS);
+    SessionLog.Session session = capturePing(receiver);
+    long responseNanos = session.getFrames().get(1).getNanosSinceSessionStart();
+    ReplayTransport replay = new ReplayTransport(session, ReplayTransport.Pacing.ORIGINAL);
+
+    long start = System.nanoTime();
+    replay.open();
+    replay.write(new Ping(this.dataOutputFactory).asBytes());
+    replay.read(6);
+
+    assertThat(System.nanoTime() - start >= responseNanos, is(true));
+  }
+
+  private DexcomSyncData capture(SimulatedReceiver receiver, Instant since) throws IOException {
+    RecordingTransport recordingTransport = new RecordingTransport(receiver, this.logFile);
+    try {
+      return this.fetchNewDataRunner.fetchData(recordingTransport, since);
+    } finally {
+      recordingTransport.stopRecording();
+    }
+  }
+
+  private SessionLog.Session capturePing() throws IOException {
+    return capturePing(new SimulatedReceiver(SimulatedDatabase.ofDays(1, LAST_READ_TIME)));
+  }
+
+  private SessionLog.Session capturePing(SimulatedReceiver receiver) throws IOException {
+    RecordingTransport recordingTransport = new RecordingTransport(receiver, this.logFile);
+    recordingTransport.open();
+    recordingTransport.write(new Ping(this.dataOutputFactory).asBytes());
+    recordingTransport.read(6);
+    recordingTransport.close();
+    return SessionLog.read(this.logFile).get(0);
+  }
+}
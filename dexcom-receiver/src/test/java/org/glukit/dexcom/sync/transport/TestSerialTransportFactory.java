@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Alexandre Normand
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.glukit.dexcom.sync.transport;
+
+import org.glukit.sync.api.BloodShepherdProperties;
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * Unit test of {@link SerialTransportFactory}.
+ *
+ * @author alexandre.normand
+ */
+public class TestSerialTransportFactory {
+  @Test
+  public void responseTimeoutShouldComeFromTheProperties() throws Exception {
+    SerialTransportFactory transportFactory = newTransportFactory(" 250 ");
+
+    assertThat(transportFactory.getResponseTimeoutMillis(), is(250L));
+    assertThat(transportFactory.newTransport("/dev/ttyACM0"), instanceOf(EventDrivenSerialTransport.class));
+  }
+
+  @Test
+  public void zeroResponseTimeoutShouldDisableTheDeadline() throws Exception {
+    SerialTransportFactory transportFactory = newTransportFactory("0");
+
+    assertThat(transportFactory.getResponseTimeoutMillis(), is(0L));
+    assertThat(transportFactory.newTransport("/dev/ttyACM0"), instanceOf(JsscSerialTransport.class));
+  }
+
+  @Test
+  public void invalidResponseTimeoutShouldFallBackToTheDefault() throws Exception {
+    for (String responseTimeoutMillis : new String[]{"5s", "", "-1"}) {
+      SerialTransportFactory transportFactory = newTransportFactory(responseTimeoutMillis);
+
+      assertThat(transportFactory.getResponseTimeoutMillis(),
+          is(SerialTransportFactory.DEFAULT_RESPONSE_TIMEOUT_MILLIS));
+      assertThat(transportFactory.newTransport("/dev/ttyACM0"), instanceOf(EventDrivenSerialTransport.class));
+    }
+  }
+
+  private static SerialTransportFactory newTransportFactory(String responseTimeoutMillis) {
+    BloodShepherdProperties properties = new BloodShepherdProperties();
+    properties.setProperty(BloodShepherdProperties.RESPONSE_TIMEOUT_MILLIS, responseTimeoutMillis);
+    return new SerialTransportFactory(properties);
+  }
+}